@@ -0,0 +1,91 @@
+package edu.washington.escience.myria.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.operator.Operator;
+import edu.washington.escience.myria.operator.TupleSource;
+import edu.washington.escience.myria.operator.agg.Aggregate;
+import edu.washington.escience.myria.operator.agg.AggregatorFactory;
+import edu.washington.escience.myria.operator.agg.MultiGroupByAggregate;
+import edu.washington.escience.myria.operator.agg.PrimitiveAggregator.AggregationOp;
+import edu.washington.escience.myria.operator.agg.SingleColumnAggregatorFactory;
+import edu.washington.escience.myria.operator.agg.SingleGroupByAggregate;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * Running the aggregates to completion on an in-memory relation, computing COUNT, SUM, MIN and MAX of its values.
+ * Scores are per aggregation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AggregateBenchmark {
+
+  /** The aggregate operator. */
+  @Param({ "Aggregate", "SingleGroupByAggregate", "MultiGroupByAggregate" })
+  private String aggregate;
+
+  /** The number of input tuples. */
+  @Param({ "1000000" })
+  private int numTuples;
+
+  /** The number of groups. */
+  @Param({ "100", "100000" })
+  private int numKeys;
+
+  /** The input relation. */
+  private List<TupleBatch> input;
+
+  /** Prepare the input. */
+  @Setup
+  public void setup() {
+    input = BenchmarkData.relation(numTuples, numKeys).getAll();
+  }
+
+  /**
+   * @param bh consumes the aggregates.
+   * @return the number of output tuples.
+   * @throws DbException if the aggregate fails.
+   */
+  @Benchmark
+  public long run(final Blackhole bh) throws DbException {
+    Operator source = new TupleSource(input, BenchmarkData.SCHEMA);
+    AggregatorFactory factory =
+        new SingleColumnAggregatorFactory(1, AggregationOp.COUNT, AggregationOp.SUM, AggregationOp.MIN,
+            AggregationOp.MAX);
+    Operator op;
+    switch (aggregate) {
+      case "Aggregate":
+        op = new Aggregate(source, factory);
+        break;
+      case "SingleGroupByAggregate":
+        op = new SingleGroupByAggregate(source, 0, factory);
+        break;
+      case "MultiGroupByAggregate":
+        /* The name is a function of the key, so grouping on both yields the same groups. */
+        op = new MultiGroupByAggregate(source, new int[] { 0, 3 }, factory);
+        break;
+      default:
+        throw new IllegalArgumentException("unknown aggregate " + aggregate);
+    }
+    return BenchmarkData.drain(op, bh);
+  }
+}
@@ -0,0 +1,95 @@
+package edu.washington.escience.myria.benchmark;
+
+import java.util.Random;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.operator.Operator;
+import edu.washington.escience.myria.parallel.QueryExecutionMode;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+/**
+ * The inputs of the benchmarks, and a way to run an operator to completion.
+ */
+final class BenchmarkData {
+
+  /**
+   * The schema of the generated relations: an integer key, an integer value small enough to be summed without
+   * overflow, a double and a short string.
+   */
+  static final Schema SCHEMA = new Schema(ImmutableList.of(Type.LONG_TYPE, Type.LONG_TYPE, Type.DOUBLE_TYPE,
+      Type.STRING_TYPE), ImmutableList.of("key", "value", "weight", "name"));
+
+  /** The seed of the generated relations, so that every run sees the same data. */
+  private static final long SEED = 0x5eed;
+
+  /** Utility classes cannot be constructed. */
+  private BenchmarkData() {
+  }
+
+  /**
+   * @param numTuples the number of tuples.
+   * @param numKeys the number of distinct keys, which are uniformly distributed.
+   * @return a relation with {@link #SCHEMA}.
+   */
+  static TupleBatchBuffer relation(final int numTuples, final int numKeys) {
+    Random random = new Random(SEED);
+    TupleBatchBuffer ret = new TupleBatchBuffer(SCHEMA);
+    for (int i = 0; i < numTuples; ++i) {
+      long key = random.nextInt(numKeys);
+      ret.putLong(0, key);
+      ret.putLong(1, random.nextInt());
+      ret.putDouble(2, random.nextDouble());
+      ret.putString(3, "name" + key);
+    }
+    return ret;
+  }
+
+  /**
+   * @return a full batch with {@link #SCHEMA} whose keys take 1024 distinct values.
+   */
+  static TupleBatch batch() {
+    return relation(TupleBatch.BATCH_SIZE, 1024).popAny();
+  }
+
+  /**
+   * @return the execution environment of an operator on a worker.
+   */
+  static ImmutableMap<String, Object> execEnvVars() {
+    return ImmutableMap.<String, Object> of(MyriaConstants.EXEC_ENV_VAR_NODE_ID, 1,
+        MyriaConstants.EXEC_ENV_VAR_EXECUTION_MODE, QueryExecutionMode.NON_BLOCKING);
+  }
+
+  /**
+   * Open an operator, consume all its output and close it.
+   * 
+   * @param op the operator.
+   * @param bh consumes the output, so that it is not optimized away.
+   * @return the number of output tuples.
+   * @throws DbException if the operator fails.
+   */
+  static long drain(final Operator op, final Blackhole bh) throws DbException {
+    long numTuples = 0;
+    op.open(execEnvVars());
+    try {
+      while (!op.eos()) {
+        TupleBatch tb = op.nextReady();
+        if (tb != null) {
+          numTuples += tb.numTuples();
+          bh.consume(tb);
+        }
+      }
+    } finally {
+      op.close();
+    }
+    return numTuples;
+  }
+}
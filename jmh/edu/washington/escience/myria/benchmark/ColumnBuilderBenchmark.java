@@ -0,0 +1,81 @@
+package edu.washington.escience.myria.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.builder.DoubleColumnBuilder;
+import edu.washington.escience.myria.column.builder.LongColumnBuilder;
+import edu.washington.escience.myria.column.builder.StringColumnBuilder;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * Filling a column builder with a full batch of values and building the column. Scores are per value.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ColumnBuilderBenchmark {
+
+  /** The values to append. */
+  private TupleBatch batch;
+
+  /** Prepare the input. */
+  @Setup
+  public void setup() {
+    batch = BenchmarkData.batch();
+  }
+
+  /**
+   * @return the built column.
+   */
+  @Benchmark
+  @OperationsPerInvocation(TupleBatch.BATCH_SIZE)
+  public Column<?> buildLongColumn() {
+    LongColumnBuilder builder = new LongColumnBuilder();
+    for (int row = 0; row < batch.numTuples(); ++row) {
+      builder.appendLong(batch.getLong(1, row));
+    }
+    return builder.build();
+  }
+
+  /**
+   * @return the built column.
+   */
+  @Benchmark
+  @OperationsPerInvocation(TupleBatch.BATCH_SIZE)
+  public Column<?> buildDoubleColumn() {
+    DoubleColumnBuilder builder = new DoubleColumnBuilder();
+    for (int row = 0; row < batch.numTuples(); ++row) {
+      builder.appendDouble(batch.getDouble(2, row));
+    }
+    return builder.build();
+  }
+
+  /**
+   * @return the built column.
+   */
+  @Benchmark
+  @OperationsPerInvocation(TupleBatch.BATCH_SIZE)
+  public Column<?> buildStringColumn() {
+    StringColumnBuilder builder = new StringColumnBuilder();
+    for (int row = 0; row < batch.numTuples(); ++row) {
+      builder.appendString(batch.getString(3, row));
+    }
+    return builder.build();
+  }
+}
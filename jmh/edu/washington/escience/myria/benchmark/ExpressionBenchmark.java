@@ -0,0 +1,91 @@
+package edu.washington.escience.myria.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.expression.AndExpression;
+import edu.washington.escience.myria.expression.ConstantExpression;
+import edu.washington.escience.myria.expression.Expression;
+import edu.washington.escience.myria.expression.GreaterThanExpression;
+import edu.washington.escience.myria.expression.LessThanExpression;
+import edu.washington.escience.myria.expression.PlusExpression;
+import edu.washington.escience.myria.expression.TimesExpression;
+import edu.washington.escience.myria.expression.VariableExpression;
+import edu.washington.escience.myria.operator.Apply;
+import edu.washington.escience.myria.operator.Filter;
+import edu.washington.escience.myria.operator.TupleSource;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * Running {@link Filter} and {@link Apply} with compiled expressions over an in-memory relation. The expressions are
+ * compiled once and then served from the compiled expression cache, so the scores, which are per tuple, measure
+ * evaluation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ExpressionBenchmark {
+
+  /** The number of input tuples. */
+  private static final int NUM_TUPLES = 64 * TupleBatch.BATCH_SIZE;
+
+  /** Selects about half of the tuples: key &lt; 512 AND weight &gt; 0.0. */
+  private static final Expression PREDICATE = new Expression("predicate", new AndExpression(new LessThanExpression(
+      new VariableExpression(0), new ConstantExpression(512L)), new GreaterThanExpression(new VariableExpression(2),
+      new ConstantExpression(0.0))));
+
+  /** Computes key + value and weight * 2.0. */
+  private static final List<Expression> EMIT = ImmutableList.of(new Expression("sum", new PlusExpression(
+      new VariableExpression(0), new VariableExpression(1))), new Expression("scaled", new TimesExpression(
+      new VariableExpression(2), new ConstantExpression(2.0))));
+
+  /** The input relation. */
+  private List<TupleBatch> input;
+
+  /** Prepare the input. */
+  @Setup
+  public void setup() {
+    input = BenchmarkData.relation(NUM_TUPLES, 1024).getAll();
+  }
+
+  /**
+   * @param bh consumes the selected tuples.
+   * @return the number of output tuples.
+   * @throws DbException if the filter fails.
+   */
+  @Benchmark
+  @OperationsPerInvocation(NUM_TUPLES)
+  public long filter(final Blackhole bh) throws DbException {
+    return BenchmarkData.drain(new Filter(PREDICATE, new TupleSource(input, BenchmarkData.SCHEMA)), bh);
+  }
+
+  /**
+   * @param bh consumes the computed tuples.
+   * @return the number of output tuples.
+   * @throws DbException if the apply fails.
+   */
+  @Benchmark
+  @OperationsPerInvocation(NUM_TUPLES)
+  public long apply(final Blackhole bh) throws DbException {
+    return BenchmarkData.drain(new Apply(new TupleSource(input, BenchmarkData.SCHEMA), EMIT), bh);
+  }
+}
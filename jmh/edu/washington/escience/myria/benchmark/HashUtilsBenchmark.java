@@ -0,0 +1,95 @@
+package edu.washington.escience.myria.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.HashUtils;
+
+/**
+ * Hashing every row of a full batch with {@link HashUtils}, as hash joins, aggregates and shuffles do. Scores are per
+ * row.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class HashUtilsBenchmark {
+
+  /** The key and value columns. */
+  private static final int[] TWO_LONGS = new int[] { 0, 1 };
+
+  /** The rows to hash. */
+  private TupleBatch batch;
+
+  /** Prepare the input. */
+  @Setup
+  public void setup() {
+    batch = BenchmarkData.batch();
+  }
+
+  /**
+   * @return the combined hash codes, so that they are not optimized away.
+   */
+  @Benchmark
+  @OperationsPerInvocation(TupleBatch.BATCH_SIZE)
+  public int hashLong() {
+    int ret = 0;
+    for (int row = 0; row < batch.numTuples(); ++row) {
+      ret ^= HashUtils.hashValue(batch, 0, row);
+    }
+    return ret;
+  }
+
+  /**
+   * @return the combined hash codes, so that they are not optimized away.
+   */
+  @Benchmark
+  @OperationsPerInvocation(TupleBatch.BATCH_SIZE)
+  public int hashString() {
+    int ret = 0;
+    for (int row = 0; row < batch.numTuples(); ++row) {
+      ret ^= HashUtils.hashValue(batch, 3, row);
+    }
+    return ret;
+  }
+
+  /**
+   * @return the combined hash codes, so that they are not optimized away.
+   */
+  @Benchmark
+  @OperationsPerInvocation(TupleBatch.BATCH_SIZE)
+  public int hashSubRow() {
+    int ret = 0;
+    for (int row = 0; row < batch.numTuples(); ++row) {
+      ret ^= HashUtils.hashSubRow(batch, TWO_LONGS, row);
+    }
+    return ret;
+  }
+
+  /**
+   * @return the combined hash codes, so that they are not optimized away.
+   */
+  @Benchmark
+  @OperationsPerInvocation(TupleBatch.BATCH_SIZE)
+  public int hashRow() {
+    int ret = 0;
+    for (int row = 0; row < batch.numTuples(); ++row) {
+      ret ^= HashUtils.hashRow(batch, row);
+    }
+    return ret;
+  }
+}
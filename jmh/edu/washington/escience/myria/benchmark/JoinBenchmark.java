@@ -0,0 +1,103 @@
+package edu.washington.escience.myria.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.operator.Operator;
+import edu.washington.escience.myria.operator.RightHashCountingJoin;
+import edu.washington.escience.myria.operator.RightHashJoin;
+import edu.washington.escience.myria.operator.SymmetricHashCountingJoin;
+import edu.washington.escience.myria.operator.SymmetricHashJoin;
+import edu.washington.escience.myria.operator.TupleSource;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * Running the hash joins to completion on two in-memory relations that are equi-joined on their keys. Scores are per
+ * join.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class JoinBenchmark {
+
+  /** The join attribute of both sides. */
+  private static final int[] KEY = new int[] { 0 };
+  /** The key and value of the left side, and the value of the right side, are output. */
+  private static final int[] LEFT_ANSWER = new int[] { 0, 1 };
+  /** The value of the right side is output. */
+  private static final int[] RIGHT_ANSWER = new int[] { 1 };
+  /** The names of the output columns of the non-counting joins. */
+  private static final List<String> OUTPUT_COLUMNS = ImmutableList.of("key", "leftValue", "rightValue");
+
+  /** The join operator. */
+  @Param({ "SymmetricHashJoin", "RightHashJoin", "SymmetricHashCountingJoin", "RightHashCountingJoin" })
+  private String join;
+
+  /** The number of tuples on each side. */
+  @Param({ "100000" })
+  private int numTuples;
+
+  /** The number of distinct keys on each side. */
+  @Param({ "10000", "100000" })
+  private int numKeys;
+
+  /** The left relation. */
+  private List<TupleBatch> left;
+  /** The right relation. */
+  private List<TupleBatch> right;
+
+  /** Prepare the input. */
+  @Setup
+  public void setup() {
+    left = BenchmarkData.relation(numTuples, numKeys).getAll();
+    right = BenchmarkData.relation(numTuples, numKeys).getAll();
+  }
+
+  /**
+   * @param bh consumes the join result.
+   * @return the number of output tuples.
+   * @throws DbException if the join fails.
+   */
+  @Benchmark
+  public long run(final Blackhole bh) throws DbException {
+    Operator leftSource = new TupleSource(left, BenchmarkData.SCHEMA);
+    Operator rightSource = new TupleSource(right, BenchmarkData.SCHEMA);
+    Operator op;
+    switch (join) {
+      case "SymmetricHashJoin":
+        op = new SymmetricHashJoin(OUTPUT_COLUMNS, leftSource, rightSource, KEY, KEY, LEFT_ANSWER, RIGHT_ANSWER);
+        break;
+      case "RightHashJoin":
+        op = new RightHashJoin(OUTPUT_COLUMNS, leftSource, rightSource, KEY, KEY, LEFT_ANSWER, RIGHT_ANSWER);
+        break;
+      case "SymmetricHashCountingJoin":
+        op = new SymmetricHashCountingJoin(leftSource, rightSource, KEY, KEY);
+        break;
+      case "RightHashCountingJoin":
+        op = new RightHashCountingJoin(leftSource, rightSource, KEY, KEY);
+        break;
+      default:
+        throw new IllegalArgumentException("unknown join " + join);
+    }
+    return BenchmarkData.drain(op, bh);
+  }
+}
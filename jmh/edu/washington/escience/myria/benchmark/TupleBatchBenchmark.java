@@ -0,0 +1,111 @@
+package edu.washington.escience.myria.benchmark;
+
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
+import edu.washington.escience.myria.operator.network.partition.SingleFieldHashPartitionFunction;
+import edu.washington.escience.myria.proto.TransportProto.TransportMessage;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.IPCUtils;
+
+/**
+ * Filtering and partitioning a full {@link TupleBatch}, and converting it to and from the protobuf messages that are
+ * sent between workers. Scores are per tuple.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TupleBatchBenchmark {
+
+  /** Partitions on the key. */
+  @State(Scope.Thread)
+  public static class Partitioning {
+    /** The number of partitions. */
+    @Param({ "4", "64" })
+    private int numPartitions;
+    /** The partition function. */
+    private PartitionFunction partitionFunction;
+
+    /** Create the partition function. */
+    @Setup
+    public void setup() {
+      partitionFunction = new SingleFieldHashPartitionFunction(numPartitions, 0);
+    }
+  }
+
+  /** The batch. */
+  private TupleBatch batch;
+  /** Selects every other tuple. */
+  private BitSet everyOther;
+  /** The batch serialized as a message. */
+  private byte[] serialized;
+
+  /** Prepare the input. */
+  @Setup
+  public void setup() {
+    batch = BenchmarkData.batch();
+    everyOther = new BitSet(batch.numTuples());
+    for (int row = 0; row < batch.numTuples(); row += 2) {
+      everyOther.set(row);
+    }
+    serialized = batch.toTransportMessage().toByteArray();
+  }
+
+  /**
+   * @return the filtered batch.
+   */
+  @Benchmark
+  @OperationsPerInvocation(TupleBatch.BATCH_SIZE)
+  public TupleBatch filter() {
+    return batch.filter(everyOther);
+  }
+
+  /**
+   * @param partitioning the partition function.
+   * @return the partitions.
+   */
+  @Benchmark
+  @OperationsPerInvocation(TupleBatch.BATCH_SIZE)
+  public TupleBatch[] partition(final Partitioning partitioning) {
+    return batch.partition(partitioning.partitionFunction);
+  }
+
+  /**
+   * @return the serialized batch.
+   */
+  @Benchmark
+  @OperationsPerInvocation(TupleBatch.BATCH_SIZE)
+  public byte[] serialize() {
+    return batch.toTransportMessage().toByteArray();
+  }
+
+  /**
+   * @return the deserialized batch.
+   * @throws InvalidProtocolBufferException if the message is corrupted.
+   */
+  @Benchmark
+  @OperationsPerInvocation(TupleBatch.BATCH_SIZE)
+  public TupleBatch deserialize() throws InvalidProtocolBufferException {
+    TransportMessage message = TransportMessage.parseFrom(serialized);
+    return IPCUtils.tmToTupleBatch(message.getDataMessage(), BenchmarkData.SCHEMA);
+  }
+}
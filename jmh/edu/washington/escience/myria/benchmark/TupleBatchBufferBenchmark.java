@@ -0,0 +1,96 @@
+package edu.washington.escience.myria.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+/**
+ * Appending tuples to a {@link TupleBatchBuffer} cell by cell and batch by batch, and popping its batches. Scores are
+ * per tuple.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TupleBatchBufferBenchmark {
+
+  /** The number of tuples appended per invocation. */
+  private static final int NUM_TUPLES = 4 * TupleBatch.BATCH_SIZE;
+
+  /** The tuples to append. */
+  private TupleBatch batch;
+
+  /** Prepare the input. */
+  @Setup
+  public void setup() {
+    batch = BenchmarkData.batch();
+  }
+
+  /**
+   * @param bh consumes the popped batches.
+   */
+  @Benchmark
+  @OperationsPerInvocation(NUM_TUPLES)
+  public void putCellsAndPop(final Blackhole bh) {
+    TupleBatchBuffer buffer = new TupleBatchBuffer(BenchmarkData.SCHEMA);
+    for (int i = 0; i < NUM_TUPLES; ++i) {
+      int row = i % batch.numTuples();
+      buffer.putLong(0, batch.getLong(0, row));
+      buffer.putLong(1, batch.getLong(1, row));
+      buffer.putDouble(2, batch.getDouble(2, row));
+      buffer.putString(3, batch.getString(3, row));
+    }
+    TupleBatch tb;
+    while ((tb = buffer.popAny()) != null) {
+      bh.consume(tb);
+    }
+  }
+
+  /**
+   * @param bh consumes the popped batches.
+   */
+  @Benchmark
+  @OperationsPerInvocation(NUM_TUPLES)
+  public void putRowsAndPop(final Blackhole bh) {
+    TupleBatchBuffer buffer = new TupleBatchBuffer(BenchmarkData.SCHEMA);
+    for (int i = 0; i < NUM_TUPLES; ++i) {
+      buffer.put(batch, i % batch.numTuples());
+    }
+    TupleBatch tb;
+    while ((tb = buffer.popAny()) != null) {
+      bh.consume(tb);
+    }
+  }
+
+  /**
+   * @param bh consumes the popped batches.
+   */
+  @Benchmark
+  @OperationsPerInvocation(NUM_TUPLES)
+  public void appendBatchesAndPop(final Blackhole bh) {
+    TupleBatchBuffer buffer = new TupleBatchBuffer(BenchmarkData.SCHEMA);
+    for (int i = 0; i < NUM_TUPLES; i += batch.numTuples()) {
+      buffer.appendTB(batch);
+    }
+    TupleBatch tb;
+    while ((tb = buffer.popAny()) != null) {
+      bh.consume(tb);
+    }
+  }
+}
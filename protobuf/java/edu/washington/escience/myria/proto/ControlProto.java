@@ -57,6 +57,44 @@ public final class ControlProto {
      * <code>optional .SocketInfo remote_address = 3;</code>
      */
     edu.washington.escience.myria.proto.ControlProto.SocketInfoOrBuilder getRemoteAddressOrBuilder();
+
+    // optional bytes metrics = 4;
+    /**
+     * <code>optional bytes metrics = 4;</code>
+     * 
+     * <pre>
+     * serialized metrics of the worker, when type is WORKER_HEARTBEAT
+     * </pre>
+     */
+    boolean hasMetrics();
+
+    /**
+     * <code>optional bytes metrics = 4;</code>
+     * 
+     * <pre>
+     * serialized metrics of the worker, when type is WORKER_HEARTBEAT
+     * </pre>
+     */
+    com.google.protobuf.ByteString getMetrics();
+
+    // optional int64 operator_memory_bytes = 5;
+    /**
+     * <code>optional int64 operator_memory_bytes = 5;</code>
+     * 
+     * <pre>
+     * estimated memory held by the operators of the worker, when type is WORKER_HEARTBEAT
+     * </pre>
+     */
+    boolean hasOperatorMemoryBytes();
+
+    /**
+     * <code>optional int64 operator_memory_bytes = 5;</code>
+     * 
+     * <pre>
+     * estimated memory held by the operators of the worker, when type is WORKER_HEARTBEAT
+     * </pre>
+     */
+    long getOperatorMemoryBytes();
   }
   /**
    * Protobuf type {@code ControlMessage}
@@ -142,6 +180,16 @@ public final class ControlProto {
               bitField0_ |= 0x00000004;
               break;
             }
+            case 34: {
+              bitField0_ |= 0x00000008;
+              metrics_ = input.readBytes();
+              break;
+            }
+            case 40: {
+              bitField0_ |= 0x00000010;
+              operatorMemoryBytes_ = input.readInt64();
+              break;
+            }
           }
         }
       } catch (com.google.protobuf.InvalidProtocolBufferException e) {
@@ -429,10 +477,68 @@ public final class ControlProto {
       return remoteAddress_;
     }
 
+    // optional bytes metrics = 4;
+    public static final int METRICS_FIELD_NUMBER = 4;
+    private com.google.protobuf.ByteString metrics_;
+
+    /**
+     * <code>optional bytes metrics = 4;</code>
+     * 
+     * <pre>
+     * serialized metrics of the worker, when type is WORKER_HEARTBEAT
+     * </pre>
+     */
+    @Override
+    public boolean hasMetrics() {
+      return ((bitField0_ & 0x00000008) == 0x00000008);
+    }
+
+    /**
+     * <code>optional bytes metrics = 4;</code>
+     * 
+     * <pre>
+     * serialized metrics of the worker, when type is WORKER_HEARTBEAT
+     * </pre>
+     */
+    @Override
+    public com.google.protobuf.ByteString getMetrics() {
+      return metrics_;
+    }
+
+    // optional int64 operator_memory_bytes = 5;
+    public static final int OPERATOR_MEMORY_BYTES_FIELD_NUMBER = 5;
+    private long operatorMemoryBytes_;
+
+    /**
+     * <code>optional int64 operator_memory_bytes = 5;</code>
+     * 
+     * <pre>
+     * estimated memory held by the operators of the worker, when type is WORKER_HEARTBEAT
+     * </pre>
+     */
+    @Override
+    public boolean hasOperatorMemoryBytes() {
+      return ((bitField0_ & 0x00000010) == 0x00000010);
+    }
+
+    /**
+     * <code>optional int64 operator_memory_bytes = 5;</code>
+     * 
+     * <pre>
+     * estimated memory held by the operators of the worker, when type is WORKER_HEARTBEAT
+     * </pre>
+     */
+    @Override
+    public long getOperatorMemoryBytes() {
+      return operatorMemoryBytes_;
+    }
+
     private void initFields() {
       type_ = edu.washington.escience.myria.proto.ControlProto.ControlMessage.Type.SHUTDOWN;
       workerId_ = 0;
       remoteAddress_ = edu.washington.escience.myria.proto.ControlProto.SocketInfo.getDefaultInstance();
+      metrics_ = com.google.protobuf.ByteString.EMPTY;
+      operatorMemoryBytes_ = 0L;
     }
 
     private byte memoizedIsInitialized = -1;
@@ -470,6 +576,12 @@ public final class ControlProto {
       if (((bitField0_ & 0x00000004) == 0x00000004)) {
         output.writeMessage(3, remoteAddress_);
       }
+      if (((bitField0_ & 0x00000008) == 0x00000008)) {
+        output.writeBytes(4, metrics_);
+      }
+      if (((bitField0_ & 0x00000010) == 0x00000010)) {
+        output.writeInt64(5, operatorMemoryBytes_);
+      }
       getUnknownFields().writeTo(output);
     }
 
@@ -492,6 +604,12 @@ public final class ControlProto {
       if (((bitField0_ & 0x00000004) == 0x00000004)) {
         size += com.google.protobuf.CodedOutputStream.computeMessageSize(3, remoteAddress_);
       }
+      if (((bitField0_ & 0x00000008) == 0x00000008)) {
+        size += com.google.protobuf.CodedOutputStream.computeBytesSize(4, metrics_);
+      }
+      if (((bitField0_ & 0x00000010) == 0x00000010)) {
+        size += com.google.protobuf.CodedOutputStream.computeInt64Size(5, operatorMemoryBytes_);
+      }
       size += getUnknownFields().getSerializedSize();
       memoizedSerializedSize = size;
       return size;
@@ -631,6 +749,10 @@ public final class ControlProto {
           remoteAddressBuilder_.clear();
         }
         bitField0_ = (bitField0_ & ~0x00000004);
+        metrics_ = com.google.protobuf.ByteString.EMPTY;
+        bitField0_ = (bitField0_ & ~0x00000008);
+        operatorMemoryBytes_ = 0L;
+        bitField0_ = (bitField0_ & ~0x00000010);
         return this;
       }
 
@@ -680,6 +802,14 @@ public final class ControlProto {
         } else {
           result.remoteAddress_ = remoteAddressBuilder_.build();
         }
+        if (((from_bitField0_ & 0x00000008) == 0x00000008)) {
+          to_bitField0_ |= 0x00000008;
+        }
+        result.metrics_ = metrics_;
+        if (((from_bitField0_ & 0x00000010) == 0x00000010)) {
+          to_bitField0_ |= 0x00000010;
+        }
+        result.operatorMemoryBytes_ = operatorMemoryBytes_;
         result.bitField0_ = to_bitField0_;
         onBuilt();
         return result;
@@ -708,6 +838,12 @@ public final class ControlProto {
         if (other.hasRemoteAddress()) {
           mergeRemoteAddress(other.getRemoteAddress());
         }
+        if (other.hasMetrics()) {
+          setMetrics(other.getMetrics());
+        }
+        if (other.hasOperatorMemoryBytes()) {
+          setOperatorMemoryBytes(other.getOperatorMemoryBytes());
+        }
         mergeUnknownFields(other.getUnknownFields());
         return this;
       }
@@ -970,6 +1106,119 @@ public final class ControlProto {
         return remoteAddressBuilder_;
       }
 
+      // optional bytes metrics = 4;
+      private com.google.protobuf.ByteString metrics_ = com.google.protobuf.ByteString.EMPTY;
+
+      /**
+       * <code>optional bytes metrics = 4;</code>
+       * 
+       * <pre>
+       * serialized metrics of the worker, when type is WORKER_HEARTBEAT
+       * </pre>
+       */
+      @Override
+      public boolean hasMetrics() {
+        return ((bitField0_ & 0x00000008) == 0x00000008);
+      }
+
+      /**
+       * <code>optional bytes metrics = 4;</code>
+       * 
+       * <pre>
+       * serialized metrics of the worker, when type is WORKER_HEARTBEAT
+       * </pre>
+       */
+      @Override
+      public com.google.protobuf.ByteString getMetrics() {
+        return metrics_;
+      }
+
+      /**
+       * <code>optional bytes metrics = 4;</code>
+       * 
+       * <pre>
+       * serialized metrics of the worker, when type is WORKER_HEARTBEAT
+       * </pre>
+       */
+      public Builder setMetrics(com.google.protobuf.ByteString value) {
+        if (value == null) {
+          throw new NullPointerException();
+        }
+        bitField0_ |= 0x00000008;
+        metrics_ = value;
+        onChanged();
+        return this;
+      }
+
+      /**
+       * <code>optional bytes metrics = 4;</code>
+       * 
+       * <pre>
+       * serialized metrics of the worker, when type is WORKER_HEARTBEAT
+       * </pre>
+       */
+      public Builder clearMetrics() {
+        bitField0_ = (bitField0_ & ~0x00000008);
+        metrics_ = getDefaultInstance().getMetrics();
+        onChanged();
+        return this;
+      }
+
+      // optional int64 operator_memory_bytes = 5;
+      private long operatorMemoryBytes_;
+
+      /**
+       * <code>optional int64 operator_memory_bytes = 5;</code>
+       * 
+       * <pre>
+       * estimated memory held by the operators of the worker, when type is WORKER_HEARTBEAT
+       * </pre>
+       */
+      @Override
+      public boolean hasOperatorMemoryBytes() {
+        return ((bitField0_ & 0x00000010) == 0x00000010);
+      }
+
+      /**
+       * <code>optional int64 operator_memory_bytes = 5;</code>
+       * 
+       * <pre>
+       * estimated memory held by the operators of the worker, when type is WORKER_HEARTBEAT
+       * </pre>
+       */
+      @Override
+      public long getOperatorMemoryBytes() {
+        return operatorMemoryBytes_;
+      }
+
+      /**
+       * <code>optional int64 operator_memory_bytes = 5;</code>
+       * 
+       * <pre>
+       * estimated memory held by the operators of the worker, when type is WORKER_HEARTBEAT
+       * </pre>
+       */
+      public Builder setOperatorMemoryBytes(long value) {
+        bitField0_ |= 0x00000010;
+        operatorMemoryBytes_ = value;
+        onChanged();
+        return this;
+      }
+
+      /**
+       * <code>optional int64 operator_memory_bytes = 5;</code>
+       * 
+       * <pre>
+       * estimated memory held by the operators of the worker, when type is WORKER_HEARTBEAT
+       * </pre>
+       */
+      public Builder clearOperatorMemoryBytes() {
+        bitField0_ = (bitField0_ & ~0x00000010);
+        operatorMemoryBytes_ = 0L;
+        onChanged();
+        return this;
+      }
+
       // @@protoc_insertion_point(builder_scope:ControlMessage)
     }
 
@@ -1603,10 +1852,12 @@ public final class ControlProto {
   private static com.google.protobuf.Descriptors.FileDescriptor descriptor;
   static {
     java.lang.String[] descriptorData =
-        { "\n\rcontrol.proto\"\346\001\n\016ControlMessage\022\"\n\004ty"
+        { "\n\rcontrol.proto\"\226\002\n\016ControlMessage\022\"\n\004ty"
             + "pe\030\001 \002(\0162\024.ControlMessage.Type\022\021\n\tworker"
             + "_id\030\002 \001(\005\022#\n\016remote_address\030\003 \001(\0132\013.Sock"
-            + "etInfo\"x\n\004Type\022\014\n\010SHUTDOWN\020\001\022\024\n\020WORKER_H"
+            + "etInfo\022\017\n\007metrics\030\004 \001(\014\022\035\n\025operator_mem"
+            + "ory_bytes\030\005 \001(\003\"x\n\004Type\022\014\n\010SHUTD"
+            + "OWN\020\001\022\024\n\020WORKER_H"
             + "EARTBEAT\020\002\022\021\n\rREMOVE_WORKER\020\003\022\016\n\nADD_WOR"
             + "KER\020\004\022\025\n\021REMOVE_WORKER_ACK\020\005\022\022\n\016ADD_WORK"
             + "ER_ACK\020\006\"(\n\nSocketInfo\022\014\n\004host\030\001 \002(\t\022\014\n\004"
@@ -1620,7 +1871,7 @@ public final class ControlProto {
             internal_static_ControlMessage_descriptor = getDescriptor().getMessageTypes().get(0);
             internal_static_ControlMessage_fieldAccessorTable =
                 new com.google.protobuf.GeneratedMessage.FieldAccessorTable(internal_static_ControlMessage_descriptor,
-                    new java.lang.String[] { "Type", "WorkerId", "RemoteAddress", });
+                    new java.lang.String[] { "Type", "WorkerId", "RemoteAddress", "Metrics", "OperatorMemoryBytes", });
             internal_static_SocketInfo_descriptor = getDescriptor().getMessageTypes().get(1);
             internal_static_SocketInfo_fieldAccessorTable =
                 new com.google.protobuf.GeneratedMessage.FieldAccessorTable(internal_static_SocketInfo_descriptor,
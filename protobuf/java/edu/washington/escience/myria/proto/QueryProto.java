@@ -2876,6 +2876,25 @@ public final class QueryProto {
      * </pre>
      */
     long getElapse();
+
+    // optional uint64 peak_memory_bytes = 3;
+    /**
+     * <code>optional uint64 peak_memory_bytes = 3;</code>
+     * 
+     * <pre>
+     *peak estimated memory held by operator state, in bytes.
+     * </pre>
+     */
+    boolean hasPeakMemoryBytes();
+
+    /**
+     * <code>optional uint64 peak_memory_bytes = 3;</code>
+     * 
+     * <pre>
+     *peak estimated memory held by operator state, in bytes.
+     * </pre>
+     */
+    long getPeakMemoryBytes();
   }
   /**
    * Protobuf type {@code ExecutionStatistics}
@@ -2934,6 +2953,11 @@ public final class QueryProto {
               elapse_ = input.readUInt64();
               break;
             }
+            case 24: {
+              bitField0_ |= 0x00000002;
+              peakMemoryBytes_ = input.readUInt64();
+              break;
+            }
           }
         }
       } catch (com.google.protobuf.InvalidProtocolBufferException e) {
@@ -3001,8 +3025,37 @@ public final class QueryProto {
       return elapse_;
     }
 
+    // optional uint64 peak_memory_bytes = 3;
+    public static final int PEAK_MEMORY_BYTES_FIELD_NUMBER = 3;
+    private long peakMemoryBytes_;
+
+    /**
+     * <code>optional uint64 peak_memory_bytes = 3;</code>
+     * 
+     * <pre>
+     *peak estimated memory held by operator state, in bytes.
+     * </pre>
+     */
+    @Override
+    public boolean hasPeakMemoryBytes() {
+      return ((bitField0_ & 0x00000002) == 0x00000002);
+    }
+
+    /**
+     * <code>optional uint64 peak_memory_bytes = 3;</code>
+     * 
+     * <pre>
+     *peak estimated memory held by operator state, in bytes.
+     * </pre>
+     */
+    @Override
+    public long getPeakMemoryBytes() {
+      return peakMemoryBytes_;
+    }
+
     private void initFields() {
       elapse_ = 0L;
+      peakMemoryBytes_ = 0L;
     }
 
     private byte memoizedIsInitialized = -1;
@@ -3028,6 +3081,9 @@ public final class QueryProto {
       if (((bitField0_ & 0x00000001) == 0x00000001)) {
         output.writeUInt64(2, elapse_);
       }
+      if (((bitField0_ & 0x00000002) == 0x00000002)) {
+        output.writeUInt64(3, peakMemoryBytes_);
+      }
       getUnknownFields().writeTo(output);
     }
 
@@ -3044,6 +3100,9 @@ public final class QueryProto {
       if (((bitField0_ & 0x00000001) == 0x00000001)) {
         size += com.google.protobuf.CodedOutputStream.computeUInt64Size(2, elapse_);
       }
+      if (((bitField0_ & 0x00000002) == 0x00000002)) {
+        size += com.google.protobuf.CodedOutputStream.computeUInt64Size(3, peakMemoryBytes_);
+      }
       size += getUnknownFields().getSerializedSize();
       memoizedSerializedSize = size;
       return size;
@@ -3175,6 +3234,8 @@ public final class QueryProto {
         super.clear();
         elapse_ = 0L;
         bitField0_ = (bitField0_ & ~0x00000001);
+        peakMemoryBytes_ = 0L;
+        bitField0_ = (bitField0_ & ~0x00000002);
         return this;
       }
 
@@ -3212,6 +3273,10 @@ public final class QueryProto {
           to_bitField0_ |= 0x00000001;
         }
         result.elapse_ = elapse_;
+        if (((from_bitField0_ & 0x00000002) == 0x00000002)) {
+          to_bitField0_ |= 0x00000002;
+        }
+        result.peakMemoryBytes_ = peakMemoryBytes_;
         result.bitField0_ = to_bitField0_;
         onBuilt();
         return result;
@@ -3234,6 +3299,9 @@ public final class QueryProto {
         if (other.hasElapse()) {
           setElapse(other.getElapse());
         }
+        if (other.hasPeakMemoryBytes()) {
+          setPeakMemoryBytes(other.getPeakMemoryBytes());
+        }
         mergeUnknownFields(other.getUnknownFields());
         return this;
       }
@@ -3321,6 +3389,61 @@ public final class QueryProto {
         return this;
       }
 
+      // optional uint64 peak_memory_bytes = 3;
+      private long peakMemoryBytes_;
+
+      /**
+       * <code>optional uint64 peak_memory_bytes = 3;</code>
+       * 
+       * <pre>
+       *peak estimated memory held by operator state, in bytes.
+       * </pre>
+       */
+      @Override
+      public boolean hasPeakMemoryBytes() {
+        return ((bitField0_ & 0x00000002) == 0x00000002);
+      }
+
+      /**
+       * <code>optional uint64 peak_memory_bytes = 3;</code>
+       * 
+       * <pre>
+       *peak estimated memory held by operator state, in bytes.
+       * </pre>
+       */
+      @Override
+      public long getPeakMemoryBytes() {
+        return peakMemoryBytes_;
+      }
+
+      /**
+       * <code>optional uint64 peak_memory_bytes = 3;</code>
+       * 
+       * <pre>
+       *peak estimated memory held by operator state, in bytes.
+       * </pre>
+       */
+      public Builder setPeakMemoryBytes(long value) {
+        bitField0_ |= 0x00000002;
+        peakMemoryBytes_ = value;
+        onChanged();
+        return this;
+      }
+
+      /**
+       * <code>optional uint64 peak_memory_bytes = 3;</code>
+       * 
+       * <pre>
+       *peak estimated memory held by operator state, in bytes.
+       * </pre>
+       */
+      public Builder clearPeakMemoryBytes() {
+        bitField0_ = (bitField0_ & ~0x00000002);
+        peakMemoryBytes_ = 0L;
+        onChanged();
+        return this;
+      }
+
       // @@protoc_insertion_point(builder_scope:ExecutionStatistics)
     }
 
@@ -3360,9 +3483,10 @@ public final class QueryProto {
                 + "MPLETE\020\006\022\021\n\rQUERY_RECOVER\020\003\"\026\n\005Query\022\r\n\005"
                 + "query\030\001 \002(\014\"a\n\013QueryReport\022\017\n\007success\030\001 ",
             "\002(\010\0222\n\024execution_statistics\030\002 \002(\0132\024.Exec"
-                + "utionStatistics\022\r\n\005cause\030\003 \001(\014\"%\n\023Execut"
-                + "ionStatistics\022\016\n\006elapse\030\002 \002(\004B1\n#edu.was"
-                + "hington.escience.myria.protoB\nQueryProto" };
+                + "utionStatistics\022\r\n\005cause\030\003 \001(\014\"@\n\023Execut"
+                + "ionStatistics\022\016\n\006elapse\030\002 \002(\004\022\031\n\021peak_me"
+                + "mory_bytes\030\003 \001(\004B1\n#edu.washington.escie"
+                + "nce.myria.protoB\nQueryProto" };
     com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner assigner =
         new com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner() {
           @Override
@@ -3384,7 +3508,7 @@ public final class QueryProto {
             internal_static_ExecutionStatistics_descriptor = getDescriptor().getMessageTypes().get(3);
             internal_static_ExecutionStatistics_fieldAccessorTable =
                 new com.google.protobuf.GeneratedMessage.FieldAccessorTable(
-                    internal_static_ExecutionStatistics_descriptor, new java.lang.String[] { "Elapse", });
+                    internal_static_ExecutionStatistics_descriptor, new java.lang.String[] { "Elapse", "PeakMemoryBytes", });
             return null;
           }
         };
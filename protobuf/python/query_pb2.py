@@ -13,7 +13,7 @@ from google.protobuf import descriptor_pb2
 DESCRIPTOR = _descriptor.FileDescriptor(
   name='query.proto',
   package='',
-  serialized_pb='\n\x0bquery.proto\"\xcb\x02\n\x0cQueryMessage\x12\x10\n\x08query_id\x18\x01 \x02(\x04\x12\x13\n\x0bsubquery_id\x18\x02 \x02(\x04\x12 \n\x04type\x18\x03 \x02(\x0e\x32\x12.QueryMessage.Type\x12\"\n\x0cquery_report\x18\x04 \x01(\x0b\x32\x0c.QueryReport\x12\x15\n\x05query\x18\x05 \x01(\x0b\x32\x06.Query\x12\x11\n\tworker_id\x18\x06 \x01(\x05\"\xa3\x01\n\x04Type\x12\x14\n\x10QUERY_DISTRIBUTE\x10\x00\x12\x0f\n\x0bQUERY_START\x10\x01\x12\x0f\n\x0bQUERY_PAUSE\x10\x07\x12\x10\n\x0cQUERY_RESUME\x10\x08\x12\x0e\n\nQUERY_KILL\x10\t\x12\x1a\n\x16QUERY_READY_TO_EXECUTE\x10\x02\x12\x12\n\x0eQUERY_COMPLETE\x10\x06\x12\x11\n\rQUERY_RECOVER\x10\x03\"\x16\n\x05Query\x12\r\n\x05query\x18\x01 \x02(\x0c\"a\n\x0bQueryReport\x12\x0f\n\x07success\x18\x01 \x02(\x08\x12\x32\n\x14\x65xecution_statistics\x18\x02 \x02(\x0b\x32\x14.ExecutionStatistics\x12\r\n\x05\x63\x61use\x18\x03 \x01(\x0c\"%\n\x13\x45xecutionStatistics\x12\x0e\n\x06\x65lapse\x18\x02 \x02(\x04\x42\x31\n#edu.washington.escience.myria.protoB\nQueryProto')
+  serialized_pb='\n\x0bquery.proto\"\xcb\x02\n\x0cQueryMessage\x12\x10\n\x08query_id\x18\x01 \x02(\x04\x12\x13\n\x0bsubquery_id\x18\x02 \x02(\x04\x12 \n\x04type\x18\x03 \x02(\x0e\x32\x12.QueryMessage.Type\x12\"\n\x0cquery_report\x18\x04 \x01(\x0b\x32\x0c.QueryReport\x12\x15\n\x05query\x18\x05 \x01(\x0b\x32\x06.Query\x12\x11\n\tworker_id\x18\x06 \x01(\x05\"\xa3\x01\n\x04Type\x12\x14\n\x10QUERY_DISTRIBUTE\x10\x00\x12\x0f\n\x0bQUERY_START\x10\x01\x12\x0f\n\x0bQUERY_PAUSE\x10\x07\x12\x10\n\x0cQUERY_RESUME\x10\x08\x12\x0e\n\nQUERY_KILL\x10\t\x12\x1a\n\x16QUERY_READY_TO_EXECUTE\x10\x02\x12\x12\n\x0eQUERY_COMPLETE\x10\x06\x12\x11\n\rQUERY_RECOVER\x10\x03\"\x16\n\x05Query\x12\r\n\x05query\x18\x01 \x02(\x0c\"a\n\x0bQueryReport\x12\x0f\n\x07success\x18\x01 \x02(\x08\x12\x32\n\x14\x65xecution_statistics\x18\x02 \x02(\x0b\x32\x14.ExecutionStatistics\x12\r\n\x05\x63\x61use\x18\x03 \x01(\x0c\"@\n\x13\x45xecutionStatistics\x12\x0e\n\x06\x65lapse\x18\x02 \x02(\x04\x12\x19\n\x11peak_memory_bytes\x18\x03 \x01(\x04\x42\x31\n#edu.washington.escience.myria.protoB\nQueryProto')
 
 
 
@@ -211,6 +211,13 @@ _EXECUTIONSTATISTICS = _descriptor.Descriptor(
       message_type=None, enum_type=None, containing_type=None,
       is_extension=False, extension_scope=None,
       options=None),
+    _descriptor.FieldDescriptor(
+      name='peak_memory_bytes', full_name='ExecutionStatistics.peak_memory_bytes', index=1,
+      number=3, type=4, cpp_type=4, label=1,
+      has_default_value=False, default_value=0,
+      message_type=None, enum_type=None, containing_type=None,
+      is_extension=False, extension_scope=None,
+      options=None),
   ],
   extensions=[
   ],
@@ -221,7 +228,7 @@ _EXECUTIONSTATISTICS = _descriptor.Descriptor(
   is_extendable=False,
   extension_ranges=[],
   serialized_start=472,
-  serialized_end=509,
+  serialized_end=536,
 )
 
 _QUERYMESSAGE.fields_by_name['type'].enum_type = _QUERYMESSAGE_TYPE
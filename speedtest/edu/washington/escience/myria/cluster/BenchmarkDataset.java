@@ -0,0 +1,151 @@
+package edu.washington.escience.myria.cluster;
+
+import java.util.Random;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+/**
+ * The generated datasets that the cluster benchmark plans read. Every dataset is generated from a fixed seed, so runs
+ * at the same scale and number of workers see the same data.
+ */
+public enum BenchmarkDataset {
+  /** TPC-H-like orders, 15,000 at scale 1. */
+  ORDERS(RelationKey.of("benchmark", "tpch", "orders"), new Schema(ImmutableList.of(Type.LONG_TYPE, Type.LONG_TYPE,
+      Type.DOUBLE_TYPE, Type.STRING_TYPE), ImmutableList.of("o_orderkey", "o_custkey", "o_totalprice",
+      "o_orderpriority")), 15000) {
+    @Override
+    void generate(final Random random, final long first, final int numTuples, final long scaledTuples,
+        final TupleBatchBuffer out) {
+      for (int i = 0; i < numTuples; ++i) {
+        out.putLong(0, first + i);
+        out.putLong(1, (long) (random.nextDouble() * Math.max(1, scaledTuples / 10)));
+        out.putDouble(2, random.nextDouble() * 500000);
+        out.putString(3, PRIORITIES[random.nextInt(PRIORITIES.length)]);
+      }
+    }
+  },
+  /** TPC-H-like line items, four per order on average, with uniformly distributed order keys. */
+  LINEITEM(RelationKey.of("benchmark", "tpch", "lineitem"), new Schema(ImmutableList.of(Type.LONG_TYPE,
+      Type.LONG_TYPE, Type.LONG_TYPE, Type.DOUBLE_TYPE, Type.DOUBLE_TYPE, Type.STRING_TYPE), ImmutableList.of(
+      "l_orderkey", "l_partkey", "l_quantity", "l_extendedprice", "l_discount", "l_returnflag")), 60000) {
+    @Override
+    void generate(final Random random, final long first, final int numTuples, final long scaledTuples,
+        final TupleBatchBuffer out) {
+      long numOrders = Math.max(1, scaledTuples / 4);
+      for (int i = 0; i < numTuples; ++i) {
+        out.putLong(0, (long) (random.nextDouble() * numOrders));
+        out.putLong(1, random.nextInt(200000));
+        long quantity = 1 + random.nextInt(50);
+        out.putLong(2, quantity);
+        out.putDouble(3, quantity * (900 + random.nextInt(100000) / 100.0));
+        out.putDouble(4, random.nextInt(11) / 100.0);
+        out.putString(5, RETURN_FLAGS[random.nextInt(RETURN_FLAGS.length)]);
+      }
+    }
+  },
+  /** A directed graph with ten edges per vertex on average and skewed in-degrees, 100,000 edges at scale 1. */
+  EDGES(RelationKey.of("benchmark", "graph", "edges"), new Schema(ImmutableList.of(Type.LONG_TYPE, Type.LONG_TYPE),
+      ImmutableList.of("src", "dst")), 100000) {
+    @Override
+    void generate(final Random random, final long first, final int numTuples, final long scaledTuples,
+        final TupleBatchBuffer out) {
+      long numVertices = Math.max(1, scaledTuples / 10);
+      for (int i = 0; i < numTuples; ++i) {
+        out.putLong(0, (long) (random.nextDouble() * numVertices));
+        /* Cubing a uniform variable skews the destinations towards the low vertex ids. */
+        double u = random.nextDouble();
+        out.putLong(1, (long) (u * u * u * numVertices));
+      }
+    }
+  },
+  /** Tipsy-like particles with a mass, a position and the group (halo) they belong to, 100,000 at scale 1. */
+  PARTICLES(RelationKey.of("benchmark", "tipsy", "particles"), new Schema(ImmutableList.of(Type.LONG_TYPE,
+      Type.DOUBLE_TYPE, Type.DOUBLE_TYPE, Type.DOUBLE_TYPE, Type.DOUBLE_TYPE, Type.LONG_TYPE), ImmutableList.of(
+      "iOrder", "mass", "x", "y", "z", "grp")), 100000) {
+    @Override
+    void generate(final Random random, final long first, final int numTuples, final long scaledTuples,
+        final TupleBatchBuffer out) {
+      long numGroups = Math.max(1, scaledTuples / 1000);
+      for (int i = 0; i < numTuples; ++i) {
+        out.putLong(0, first + i);
+        out.putDouble(1, random.nextDouble());
+        out.putDouble(2, random.nextGaussian());
+        out.putDouble(3, random.nextGaussian());
+        out.putDouble(4, random.nextGaussian());
+        /* About half of the particles are not in any group. */
+        out.putLong(5, random.nextBoolean() ? 0 : 1 + (long) (random.nextDouble() * numGroups));
+      }
+    }
+  };
+
+  /** The values of o_orderpriority. */
+  private static final String[] PRIORITIES = new String[] { "1-URGENT", "2-HIGH", "3-MEDIUM", "4-NOT SPECIFIED",
+      "5-LOW" };
+  /** The values of l_returnflag. */
+  private static final String[] RETURN_FLAGS = new String[] { "A", "N", "R" };
+
+  /** The relation the dataset is stored in. */
+  private final RelationKey relationKey;
+  /** The schema of the dataset. */
+  private final Schema schema;
+  /** The number of tuples at scale 1. */
+  private final int tuplesPerScale;
+
+  /**
+   * @param relationKey the relation the dataset is stored in.
+   * @param schema the schema of the dataset.
+   * @param tuplesPerScale the number of tuples at scale 1.
+   */
+  BenchmarkDataset(final RelationKey relationKey, final Schema schema, final int tuplesPerScale) {
+    this.relationKey = relationKey;
+    this.schema = schema;
+    this.tuplesPerScale = tuplesPerScale;
+  }
+
+  /**
+   * @return the relation the dataset is stored in.
+   */
+  public RelationKey getRelationKey() {
+    return relationKey;
+  }
+
+  /**
+   * @return the schema of the dataset.
+   */
+  public Schema getSchema() {
+    return schema;
+  }
+
+  /**
+   * Generates the partition of the dataset stored on one worker. Partitions are contiguous ranges of the whole
+   * dataset, each generated from its own seed.
+   * 
+   * @param scale the scale factor.
+   * @param partition the index of the partition, from 0.
+   * @param numPartitions the number of partitions.
+   * @return the tuples of the partition.
+   */
+  public TupleBatchBuffer generatePartition(final double scale, final int partition, final int numPartitions) {
+    long scaledTuples = Math.max(1, (long) (scale * tuplesPerScale));
+    long first = scaledTuples * partition / numPartitions;
+    long end = scaledTuples * (partition + 1) / numPartitions;
+    TupleBatchBuffer out = new TupleBatchBuffer(schema);
+    generate(new Random(31L * ordinal() + partition), first, (int) (end - first), scaledTuples, out);
+    return out;
+  }
+
+  /**
+   * @param random the random generator of the partition.
+   * @param first the index of the first tuple of the partition in the whole dataset.
+   * @param numTuples the number of tuples of the partition.
+   * @param scaledTuples the number of tuples of the whole dataset.
+   * @param out receives the tuples.
+   */
+  abstract void generate(final Random random, final long first, final int numTuples, final long scaledTuples,
+      final TupleBatchBuffer out);
+}
@@ -0,0 +1,329 @@
+package edu.washington.escience.myria.cluster;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.api.MyriaJsonMapperProvider;
+import edu.washington.escience.myria.api.encoding.NodeMetricsEncoding;
+import edu.washington.escience.myria.api.encoding.NodeMetricsEncoding.ChannelStatistics;
+import edu.washington.escience.myria.api.encoding.NodeMetricsEncoding.OperatorStatistics;
+import edu.washington.escience.myria.api.encoding.QueryEncoding;
+import edu.washington.escience.myria.api.encoding.QueryStatusEncoding;
+import edu.washington.escience.myria.parallel.Query;
+import edu.washington.escience.myria.parallel.QueryFuture;
+import edu.washington.escience.myria.parallel.Server;
+import edu.washington.escience.myria.profiling.Direction;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+/**
+ * Runs a catalog of JSON query plans on an {@link InJVMCluster} loaded with the {@link BenchmarkDataset}s, and reports
+ * how long each plan took, how much memory it used, how many bytes it shuffled between workers, and where the time went
+ * in each operator.
+ * 
+ * <pre>
+ * Usage: ClusterBenchmark [--workers N] [--scale S] [--repetitions R] [--plans DIR] [--output FILE]
+ * </pre>
+ * 
+ * Every plan in the directory (default <code>jsonQueries/cluster_benchmark</code>) is run once to warm up and then
+ * <code>R</code> times. The results are printed and written as JSON to the output file (default
+ * <code>build/reports/cluster-benchmark/results.json</code>).
+ */
+public final class ClusterBenchmark {
+
+  /** The logger for this class. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(ClusterBenchmark.class);
+
+  /** Usage. */
+  private static final String USAGE =
+      "Usage: ClusterBenchmark [--workers N] [--scale S] [--repetitions R] [--plans DIR] [--output FILE]";
+
+  /** The measurements of one run of one plan. Public fields, so that it can be written as JSON. */
+  public static final class PlanRun {
+    /** The name of the plan file, without its extension. */
+    public String plan;
+    /** The index of the run, from 1. */
+    public int run;
+    /** The final status of the query. */
+    public String status;
+    /** The elapsed time of the query, as measured by the master, in nanoseconds. */
+    public Long elapsedNanos;
+    /** The largest estimated memory held by operator state of the query, summed across workers, in bytes. */
+    public long peakOperatorMemoryBytes;
+    /** The largest heap usage of the JVM during the run, in bytes. */
+    public long peakHeapBytes;
+    /** The estimated size of the tuples sent by producers to other nodes, in bytes. */
+    public long bytesShuffled;
+    /** The statistics of each operator of the plan, summed across nodes, by operator ID. */
+    public List<OperatorRun> operators = new ArrayList<>();
+  }
+
+  /** The statistics of one operator of a plan in one run. Public fields, so that it can be written as JSON. */
+  public static final class OperatorRun {
+    /** The ID of the operator in the plan. */
+    public int opId;
+    /** The name of the operator in the plan. */
+    public String opName;
+    /** The class of the operator. */
+    public String opType;
+    /** The number of tuples produced. */
+    public long tuplesOut;
+    /** The estimated size of the tuples produced, in bytes. */
+    public long bytesOut;
+    /** The time spent in the operator, excluding its children, in nanoseconds. */
+    public long selfNanos;
+  }
+
+  /** The number of workers. */
+  private int numWorkers = 4;
+  /** The scale factor of the datasets. */
+  private double scale = 1;
+  /** The number of measured runs of each plan. */
+  private int repetitions = 3;
+  /** The directory containing the plans. */
+  private File plansDirectory = new File("jsonQueries/cluster_benchmark");
+  /** The file the results are written to. */
+  private File outputFile = new File("build/reports/cluster-benchmark/results.json");
+
+  /** Use {@link #main(String[])}. */
+  private ClusterBenchmark() {
+  }
+
+  /**
+   * @param args the command line arguments.
+   * @throws Exception if the benchmark fails.
+   */
+  public static void main(final String[] args) throws Exception {
+    ClusterBenchmark benchmark = new ClusterBenchmark();
+    benchmark.processArgs(args);
+    benchmark.run();
+  }
+
+  /**
+   * @param args the command line arguments.
+   */
+  private void processArgs(final String[] args) {
+    if (args.length % 2 != 0) {
+      throw new IllegalArgumentException(USAGE);
+    }
+    for (int i = 0; i < args.length; i += 2) {
+      switch (args[i]) {
+        case "--workers":
+          numWorkers = Integer.parseInt(args[i + 1]);
+          break;
+        case "--scale":
+          scale = Double.parseDouble(args[i + 1]);
+          break;
+        case "--repetitions":
+          repetitions = Integer.parseInt(args[i + 1]);
+          break;
+        case "--plans":
+          plansDirectory = new File(args[i + 1]);
+          break;
+        case "--output":
+          outputFile = new File(args[i + 1]);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown argument " + args[i] + "\n" + USAGE);
+      }
+    }
+  }
+
+  /**
+   * Starts the cluster, loads the datasets, runs the plans and reports the results.
+   * 
+   * @throws Exception if the benchmark fails.
+   */
+  private void run() throws Exception {
+    File[] planFiles = plansDirectory.listFiles();
+    if (planFiles == null) {
+      throw new IllegalArgumentException(plansDirectory + " is not a directory\n" + USAGE);
+    }
+    Arrays.sort(planFiles);
+
+    InJVMCluster cluster =
+        new InJVMCluster(numWorkers, Collections.<String, String> emptyMap(), Collections.<String, String> emptyMap());
+    List<PlanRun> results = new ArrayList<>();
+    try {
+      load(cluster);
+      ObjectReader reader = MyriaJsonMapperProvider.getReader().withType(QueryEncoding.class);
+      for (File planFile : planFiles) {
+        if (!planFile.getName().endsWith(".json")) {
+          continue;
+        }
+        String plan = planFile.getName().substring(0, planFile.getName().length() - ".json".length());
+        /* Run 0 warms up the JVM and the SQLite page caches, and is not reported. */
+        for (int run = 0; run <= repetitions; ++run) {
+          QueryEncoding query = reader.readValue(planFile);
+          PlanRun result = runPlan(cluster, query);
+          result.plan = plan;
+          result.run = run;
+          LOGGER.info("Plan {} run {}: {} in {} ms", plan, run, result.status, result.elapsedNanos == null ? "?"
+              : TimeUnit.NANOSECONDS.toMillis(result.elapsedNanos));
+          if (run > 0) {
+            results.add(result);
+          }
+        }
+      }
+    } finally {
+      cluster.shutdown();
+    }
+
+    report(results);
+  }
+
+  /**
+   * Generates the datasets and stores a partition of each on every worker.
+   * 
+   * @param cluster the cluster.
+   * @throws DbException if the data cannot be stored.
+   * @throws InterruptedException if interrupted while registering the relations.
+   */
+  private void load(final InJVMCluster cluster) throws DbException, InterruptedException {
+    List<Integer> workerIds = new ArrayList<>(cluster.getWorkers().keySet());
+    Collections.sort(workerIds);
+    for (BenchmarkDataset dataset : BenchmarkDataset.values()) {
+      long start = System.nanoTime();
+      long numTuples = 0;
+      for (int i = 0; i < workerIds.size(); ++i) {
+        TupleBatchBuffer partition = dataset.generatePartition(scale, i, workerIds.size());
+        numTuples += partition.numTuples();
+        List<TupleBatch> batches = partition.getAll();
+        cluster.insert(workerIds.get(i), dataset.getRelationKey(), dataset.getSchema(), batches);
+      }
+      cluster.registerRelation(dataset.getRelationKey(), dataset.getSchema());
+      LOGGER.info("Loaded {} tuples of {} in {} ms", numTuples, dataset.getRelationKey(), TimeUnit.NANOSECONDS
+          .toMillis(System.nanoTime() - start));
+    }
+  }
+
+  /**
+   * Runs one plan to completion.
+   * 
+   * @param cluster the cluster.
+   * @param query the plan.
+   * @return the measurements of the run.
+   * @throws Exception if the plan cannot be submitted.
+   */
+  private PlanRun runPlan(final InJVMCluster cluster, final QueryEncoding query) throws Exception {
+    Server server = cluster.getServer();
+    query.validate();
+    List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+        pool.resetPeakUsage();
+        heapPools.add(pool);
+      }
+    }
+
+    QueryFuture future = server.submitQuery(query, query.plan.getPlan());
+    PlanRun result = new PlanRun();
+    try {
+      Query state = future.get();
+      result.status = state.getStatus().toString();
+      result.elapsedNanos = state.getElapsedTime();
+      result.peakOperatorMemoryBytes = state.getPeakMemoryBytes();
+    } catch (ExecutionException e) {
+      LOGGER.warn("Query #{} failed", future.getQueryId(), e.getCause());
+      QueryStatusEncoding status = server.getQueryStatus(future.getQueryId());
+      result.status = status.status.toString();
+      result.elapsedNanos = status.elapsedNanos;
+    }
+
+    for (MemoryPoolMXBean pool : heapPools) {
+      result.peakHeapBytes += pool.getPeakUsage().getUsed();
+    }
+    addMetrics(result, cluster.getQueryMetrics(future.getQueryId()));
+    return result;
+  }
+
+  /**
+   * Sums the metrics of the query across the nodes.
+   * 
+   * @param result the measurements of the run.
+   * @param nodes the metrics of the query on each node.
+   */
+  private void addMetrics(final PlanRun result, final List<NodeMetricsEncoding> nodes) {
+    Map<Integer, OperatorRun> operators = new TreeMap<>();
+    for (NodeMetricsEncoding node : nodes) {
+      for (ChannelStatistics channel : node.channels) {
+        if (channel.direction == Direction.SEND && channel.remoteId != node.nodeId) {
+          result.bytesShuffled += channel.bytes;
+        }
+      }
+      for (OperatorStatistics op : node.operators) {
+        OperatorRun sum = operators.get(op.opId);
+        if (sum == null) {
+          sum = new OperatorRun();
+          sum.opId = op.opId;
+          sum.opName = op.opName;
+          sum.opType = op.opType;
+          operators.put(op.opId, sum);
+        }
+        sum.tuplesOut += op.tuplesOut;
+        sum.bytesOut += op.bytesOut;
+        sum.selfNanos += op.selfNanos;
+      }
+    }
+    result.operators.addAll(operators.values());
+  }
+
+  /**
+   * @param result the measurements of a run.
+   * @return a description of the operator in which the run spent the most time.
+   */
+  private static String hottestOperator(final PlanRun result) {
+    OperatorRun hottest = null;
+    for (OperatorRun op : result.operators) {
+      if (hottest == null || op.selfNanos > hottest.selfNanos) {
+        hottest = op;
+      }
+    }
+    if (hottest == null) {
+      return "-";
+    }
+    return String.format("%d %s (%d ms)", hottest.opId, hottest.opType, TimeUnit.NANOSECONDS
+        .toMillis(hottest.selfNanos));
+  }
+
+  /**
+   * Prints the results and writes them to {@link #outputFile}.
+   * 
+   * @param results the measurements of every run.
+   * @throws IOException if the results cannot be written.
+   */
+  private void report(final List<PlanRun> results) throws IOException {
+    System.out.printf("%-24s %4s %-10s %12s %16s %14s %14s  %s%n", "plan", "run", "status", "elapsed (ms)",
+        "op memory (MB)", "heap (MB)", "shuffled (MB)", "hottest operator");
+    for (PlanRun result : results) {
+      System.out.printf("%-24s %4d %-10s %12s %16.1f %14.1f %14.1f  %s%n", result.plan, result.run, result.status,
+          result.elapsedNanos == null ? "-" : String.valueOf(TimeUnit.NANOSECONDS.toMillis(result.elapsedNanos)),
+          result.peakOperatorMemoryBytes / 1e6, result.peakHeapBytes / 1e6, result.bytesShuffled / 1e6,
+          hottestOperator(result));
+    }
+
+    File directory = outputFile.getAbsoluteFile().getParentFile();
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create " + directory);
+    }
+    MyriaJsonMapperProvider.getWriter().writeValue(outputFile, results);
+    System.out.println("Results written to " + outputFile);
+  }
+}
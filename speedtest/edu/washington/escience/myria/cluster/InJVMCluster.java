@@ -0,0 +1,248 @@
+package edu.washington.escience.myria.cluster;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.mina.util.AvailablePortFinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.MyriaSystemConfigKeys;
+import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.accessmethod.ConnectionInfo;
+import edu.washington.escience.myria.accessmethod.SQLiteAccessMethod;
+import edu.washington.escience.myria.accessmethod.SQLiteInfo;
+import edu.washington.escience.myria.api.encoding.NodeMetricsEncoding;
+import edu.washington.escience.myria.coordinator.catalog.CatalogMaker;
+import edu.washington.escience.myria.coordinator.catalog.WorkerCatalog;
+import edu.washington.escience.myria.parallel.QueryExecutionMode;
+import edu.washington.escience.myria.parallel.Server;
+import edu.washington.escience.myria.parallel.SocketInfo;
+import edu.washington.escience.myria.parallel.Worker;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.FSUtils;
+
+/**
+ * A master and a number of workers that all run in this JVM and store their data in SQLite. Each process talks to
+ * itself over an in-JVM channel and to the others over loopback sockets, so whole queries can be run and measured
+ * without a real cluster.
+ */
+public final class InJVMCluster {
+
+  /** The logger for this class. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(InJVMCluster.class);
+
+  /** The first port to try for the master. */
+  private static final int FIRST_PORT = 8001;
+
+  /** How long to wait for each worker to connect to the master. */
+  private static final long WORKER_BOOTUP_TIMEOUT_PER_WORKER_MS = TimeUnit.SECONDS.toMillis(15);
+
+  /** The directory holding the catalogs and databases of all the processes. */
+  private final String baseFolder;
+  /** The master. */
+  private final Server server;
+  /** The workers. */
+  private final Map<Integer, Worker> workers;
+  /** The ports of the master and the workers. */
+  private final Set<Integer> ports;
+
+  /**
+   * Creates the catalogs of a new cluster in a temporary directory and starts its master and workers.
+   * 
+   * @param numWorkers the number of workers.
+   * @param masterConfigs extra master configurations.
+   * @param workerConfigs extra worker configurations.
+   * @throws Exception if the cluster fails to start.
+   */
+  public InJVMCluster(final int numWorkers, final Map<String, String> masterConfigs,
+      final Map<String, String> workerConfigs) throws Exception {
+    Preconditions.checkArgument(numWorkers > 0, "need at least one worker");
+    baseFolder = Files.createTempDirectory(MyriaConstants.SYSTEM_NAME + "_cluster_benchmark").toString();
+
+    ports = new HashSet<>();
+    int port = nextPort(FIRST_PORT);
+    Map<Integer, SocketInfo> masterSockets = new HashMap<>();
+    masterSockets.put(MyriaConstants.MASTER_ID, new SocketInfo(port));
+    ports.add(port);
+    Map<Integer, SocketInfo> workerSockets = new HashMap<>();
+    for (int workerId = 1; workerId <= numWorkers; ++workerId) {
+      port = nextPort(port + 1);
+      workerSockets.put(workerId, new SocketInfo(port));
+      ports.add(port);
+      Files.createDirectories(new File(getWorkerFolder(workerId)).toPath());
+    }
+    CatalogMaker.makeNNodesLocalParallelCatalog(baseFolder, masterSockets, workerSockets, masterConfigs,
+        workerConfigs);
+
+    server = new Server(FilenameUtils.concat(baseFolder, "master.catalog"));
+    server.start();
+    workers = new HashMap<>();
+    for (int workerId : workerSockets.keySet()) {
+      Worker worker = new Worker(getWorkerFolder(workerId), QueryExecutionMode.NON_BLOCKING);
+      worker.start();
+      workers.put(workerId, worker);
+    }
+
+    long timeout = WORKER_BOOTUP_TIMEOUT_PER_WORKER_MS * numWorkers;
+    for (long start = System.currentTimeMillis(); !server.getAliveWorkers().containsAll(workers.keySet())
+        && System.currentTimeMillis() - start < timeout;) {
+      Thread.sleep(100);
+    }
+    if (!server.getAliveWorkers().containsAll(workers.keySet())) {
+      shutdown();
+      throw new IllegalStateException("Workers " + workers.keySet() + " did not connect within " + timeout + " ms");
+    }
+    LOGGER.info("Started an in-JVM cluster with {} workers in {}", numWorkers, baseFolder);
+  }
+
+  /**
+   * @param from the first port to try.
+   * @return the first port from <code>from</code> on that is not taken.
+   */
+  private static int nextPort(final int from) {
+    int port = AvailablePortFinder.getNextAvailable(from);
+    Preconditions.checkState(port > 0, "no port available from %s", from);
+    return port;
+  }
+
+  /**
+   * @param workerId the id of the worker.
+   * @return the folder containing that worker's files.
+   */
+  private String getWorkerFolder(final int workerId) {
+    return FilenameUtils.concat(baseFolder, "worker_" + workerId);
+  }
+
+  /**
+   * @return the master.
+   */
+  public Server getServer() {
+    return server;
+  }
+
+  /**
+   * @return the workers, by id.
+   */
+  public Map<Integer, Worker> getWorkers() {
+    return workers;
+  }
+
+  /**
+   * Reads the metrics of a query directly from the registry of every node, so that, unlike through the REST API, they
+   * do not lag by a heartbeat.
+   * 
+   * @param queryId the query.
+   * @return the metrics of the query on each node that executed a part of it.
+   */
+  public List<NodeMetricsEncoding> getQueryMetrics(final long queryId) {
+    List<NodeMetricsEncoding> ret = new ArrayList<>();
+    NodeMetricsEncoding master = server.getMetricsRegistry().snapshot(queryId);
+    if (master != null) {
+      ret.add(master);
+    }
+    for (Worker worker : workers.values()) {
+      NodeMetricsEncoding metrics = worker.getMetricsRegistry().snapshot(queryId);
+      if (metrics != null) {
+        ret.add(metrics);
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Stores a partition of a relation on one worker. The relation has to be registered with
+   * {@link #registerRelation(RelationKey, Schema)} once all its partitions are stored.
+   * 
+   * @param workerId the worker.
+   * @param relationKey the relation.
+   * @param schema the schema of the relation.
+   * @param data the tuples, which are appended to the ones already stored.
+   * @throws DbException if the tuples cannot be stored.
+   */
+  public void insert(final int workerId, final RelationKey relationKey, final Schema schema,
+      final Iterable<TupleBatch> data) throws DbException {
+    SQLiteAccessMethod accessMethod = new SQLiteAccessMethod(getSQLiteInfo(workerId), false);
+    try {
+      accessMethod.createTableIfNotExists(relationKey, schema);
+      for (TupleBatch tb : data) {
+        accessMethod.tupleBatchInsert(relationKey, schema, tb);
+      }
+    } finally {
+      accessMethod.close();
+    }
+  }
+
+  /**
+   * Adds a relation stored on all the workers to the master catalog, so that plans can scan it.
+   * 
+   * @param relationKey the relation.
+   * @param schema the schema of the relation.
+   * @throws DbException if the relation cannot be registered.
+   * @throws InterruptedException if interrupted while registering.
+   */
+  public void registerRelation(final RelationKey relationKey, final Schema schema) throws DbException,
+      InterruptedException {
+    server.importDataset(relationKey, schema, ImmutableSet.copyOf(workers.keySet()));
+  }
+
+  /**
+   * @param workerId the worker.
+   * @return the connection information of the SQLite database of that worker.
+   * @throws DbException if the worker catalog cannot be read.
+   */
+  private SQLiteInfo getSQLiteInfo(final int workerId) throws DbException {
+    try {
+      WorkerCatalog catalog = WorkerCatalog.open(FilenameUtils.concat(getWorkerFolder(workerId), "worker.catalog"));
+      try {
+        return (SQLiteInfo) ConnectionInfo.of(MyriaConstants.STORAGE_SYSTEM_SQLITE, catalog
+            .getConfigurationValue(MyriaSystemConfigKeys.WORKER_STORAGE_DATABASE_CONN_INFO));
+      } finally {
+        catalog.close();
+      }
+    } catch (Exception e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * Shuts the master down, waits for the workers to notice and stop, and deletes all the files of the cluster.
+   * 
+   * @throws InterruptedException if interrupted while waiting.
+   * @throws IOException if the files cannot be deleted.
+   */
+  public void shutdown() throws InterruptedException, IOException {
+    server.shutdown();
+    /* The workers shut themselves down once they see that the master is gone. */
+    boolean released = false;
+    long timeout = 10 * MyriaConstants.WORKER_SHUTDOWN_CHECKER_INTERVAL;
+    for (long start = System.currentTimeMillis(); !released && System.currentTimeMillis() - start < timeout;) {
+      released = true;
+      for (int port : ports) {
+        released = released && AvailablePortFinder.available(port);
+      }
+      if (!released) {
+        Thread.sleep(100);
+      }
+    }
+    if (!released) {
+      LOGGER.warn("Some ports of the in-JVM cluster are still taken after {} ms", timeout);
+    }
+    FSUtils.blockingDeleteDirectory(baseFolder);
+  }
+}
@@ -117,6 +117,9 @@ public final class MyriaConstants {
   /** How long do we treat a scheduled new worker as unable to start, in milliseconds. */
   public static final long SCHEDULED_WORKER_UNABLE_TO_START = 15000;
 
+  /** How many times a query in {@link FTMODE#lineage} runs its subqueries again after losing workers. */
+  public static final int LINEAGE_MAX_SUBQUERY_RETRIES = 3;
+
   /**
    * Short wait interval 1 millisecond.
    */
@@ -226,10 +229,68 @@ public final class MyriaConstants {
   public static final int DEFAULT_PIPED_INPUT_STREAM_SIZE = 1024 * 1024 * 16;
 
   /**
-   * The maximum number of currently active (running, queued, paused, ...) queries at the master.
+   * The maximum number of admitted queries at the master. Queries beyond this limit wait in the admission queue.
    */
   public static final int MAX_ACTIVE_QUERIES = 5;
 
+  /**
+   * The maximum number of queries waiting for admission at the master.
+   */
+  public static final int MAX_QUEUED_QUERIES = 100;
+
+  /**
+   * Default value for {@link MyriaSystemConfigKeys#ADMISSION_WORKER_MEMORY_BUDGET_BYTES}.
+   */
+  public static final long ADMISSION_WORKER_MEMORY_BUDGET_BYTES_DEFAULT_VALUE = 2L * GB;
+
+  /**
+   * If {@link MyriaSystemConfigKeys#FRAGMENT_MEMORY_SOFT_LIMIT_BYTES} is not set, the soft limit is this fraction of the
+   * maximum heap size.
+   */
+  public static final double FRAGMENT_MEMORY_SOFT_LIMIT_DEFAULT_HEAP_FRACTION = 0.5;
+
+  /**
+   * If {@link MyriaSystemConfigKeys#FRAGMENT_MEMORY_HARD_LIMIT_BYTES} is not set, the hard limit is this fraction of the
+   * maximum heap size.
+   */
+  public static final double FRAGMENT_MEMORY_HARD_LIMIT_DEFAULT_HEAP_FRACTION = 0.8;
+
+  /**
+   * The minimum time between two estimates of the memory held by the operators of a fragment, in nanoseconds.
+   */
+  public static final long FRAGMENT_MEMORY_SAMPLING_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  /**
+   * Default value for {@link MyriaSystemConfigKeys#FT_BACKUP_BUFFER_MEMORY_TUPLES}.
+   */
+  public static final int FT_BACKUP_BUFFER_MEMORY_TUPLES_DEFAULT_VALUE = 100 * 1000;
+
+  /**
+   * Default value for {@link MyriaSystemConfigKeys#FT_BACKUP_BUFFER_MAX_SEGMENTS}: no limit, since receivers do not
+   * acknowledge tuples and a recovery needs all of them.
+   */
+  public static final int FT_BACKUP_BUFFER_MAX_SEGMENTS_DEFAULT_VALUE = 0;
+
+  /**
+   * The subdirectory of the working directory that holds the spilled backup buffers of producers.
+   */
+  public static final String FT_BACKUP_BUFFER_DIRECTORY = "ft_backup";
+
+  /**
+   * The maximum number of frames of a stack sampled by the CPU profiler.
+   */
+  public static final int CPU_PROFILER_MAX_STACK_DEPTH = 128;
+
+  /**
+   * The number of queries whose CPU profiles a worker keeps.
+   */
+  public static final int CPU_PROFILER_MAX_QUERIES = 32;
+
+  /**
+   * The maximum number of distinct stacks kept in the CPU profile of a query. Further stacks are counted as truncated.
+   */
+  public static final int CPU_PROFILER_MAX_STACKS_PER_QUERY = 20000;
+
   /**
    * The relation that stores profiling information.
    */
@@ -275,13 +336,34 @@ public final class MyriaConstants {
   public static final String[] DEFAULT_JANINO_IMPORTS =
       { "com.google.common.hash.Hashing", "java.nio.charset.Charset" };
 
+  /**
+   * The maximum number of compiled expressions kept by each JVM, see
+   * {@link edu.washington.escience.myria.expression.evaluate.CompiledExpressionCache}.
+   */
+  public static final int COMPILED_EXPRESSION_CACHE_SIZE = 1024;
+
+  /**
+   * The largest estimated number of tuples on the build side of a hash join for which the query builder reduces the
+   * probe side with a Bloom filter of the build side before shuffling it.
+   */
+  public static final long BLOOM_FILTER_MAX_BUILD_TUPLES = 10L * 1000 * 1000;
+
+  /**
+   * The false positive rate of the Bloom filters built for semi-join reduction.
+   */
+  public static final double BLOOM_FILTER_FALSE_POSITIVE_RATE = 0.01;
+
   /** Private constructor to disallow building utility class. */
   private MyriaConstants() {
   }
 
   /** available fault-tolerance mode for each query in Myria. */
   public static enum FTMODE {
-    /** three FT modes are supported. */
-    none, abandon, rejoin
+    /**
+     * none: a lost worker fails the query. abandon: the query goes on without the lost worker. rejoin: the lost worker
+     * is restarted and the producers replay their backup buffers to it. lineage: only the plans that depend on the lost
+     * worker run again, from the persisted inputs of the subquery.
+     */
+    none, abandon, rejoin, lineage
   };
 }
@@ -83,6 +83,43 @@ public final class MyriaSystemConfigKeys {
   /** */
   public static final String DEPLOYMENT_FILE = "deployment.file";
 
+  /**
+   * The memory on each worker, in bytes, that the master lets admitted queries reserve for operator state.
+   * */
+  public static final String ADMISSION_WORKER_MEMORY_BUDGET_BYTES = "admission.worker.memory.budget.bytes";
+
+  /**
+   * The soft memory limit of a worker, in bytes, shared evenly by its running fragments. When the estimated memory held
+   * by the operators of a fragment exceeds its share, a warning with the memory held by each operator is logged; no
+   * operator spills to disk. 0 or negative disables the limit.
+   * */
+  public static final String FRAGMENT_MEMORY_SOFT_LIMIT_BYTES = "fragment.memory.soft.limit.bytes";
+
+  /**
+   * The hard memory limit of a worker, in bytes, shared evenly by its running fragments. When the estimated memory held
+   * by the operators of a fragment exceeds its share, the fragment fails. 0 or negative disables the limit.
+   * */
+  public static final String FRAGMENT_MEMORY_HARD_LIMIT_BYTES = "fragment.memory.hard.limit.bytes";
+
+  /**
+   * The number of tuples that the backup buffer of a producer channel keeps in memory in FTMODE.rejoin. Older tuples are
+   * spilled to segment files in the {@link #WORKING_DIRECTORY}.
+   * */
+  public static final String FT_BACKUP_BUFFER_MEMORY_TUPLES = "ft.backup.buffer.memory.tuples";
+
+  /**
+   * The maximum number of segment files that the backup buffer of a producer channel keeps in FTMODE.rejoin. Once it is
+   * exceeded, the oldest segment is deleted even if its tuples were not acknowledged, and a recovery of the receiver
+   * then fails. 0 or negative, the default, disables the limit.
+   * */
+  public static final String FT_BACKUP_BUFFER_MAX_SEGMENTS = "ft.backup.buffer.max.segments";
+
+  /**
+   * If positive, each worker samples the stacks of its query execution threads every this many milliseconds, and keeps
+   * per-query CPU profiles. 0 or negative disables the sampler.
+   * */
+  public static final String CPU_PROFILER_SAMPLING_INTERVAL_MILLIS = "cpu.profiler.sampling.interval.milliseconds";
+
   /**
    * Add default configurations into a configuraion.
    * 
@@ -119,6 +156,11 @@ public final class MyriaSystemConfigKeys {
     if (!config.containsKey(WORKER_STORAGE_DATABASE_SYSTEM) || config.get(WORKER_STORAGE_DATABASE_SYSTEM) == null) {
       config.put(WORKER_STORAGE_DATABASE_SYSTEM, MyriaConstants.WORKER_STORAGE_DATABASE_SYSTEM_DEFAULT_VALUE + "");
     }
+    if (!config.containsKey(ADMISSION_WORKER_MEMORY_BUDGET_BYTES)
+        || config.get(ADMISSION_WORKER_MEMORY_BUDGET_BYTES) == null) {
+      config.put(ADMISSION_WORKER_MEMORY_BUDGET_BYTES,
+          MyriaConstants.ADMISSION_WORKER_MEMORY_BUDGET_BYTES_DEFAULT_VALUE + "");
+    }
   }
 
   /**
@@ -136,6 +136,44 @@ public final class LogResource {
     return response.build();
   }
 
+  /**
+   * Get the CPU profile of a query, sampled on the workers while it runs: the number of samples of each fragment and
+   * folded stack (frames separated by <code>;</code>, outermost first), from which flame graphs are drawn. The profile
+   * of a running query keeps growing, so it is not cached.
+   * 
+   * @param queryId query id.
+   * @param fragmentId the fragment id, default is all.
+   * @return the CPU profile of the query across all workers.
+   * @throws DbException if there is an error in the database.
+   */
+  @GET
+  @Path("cpu")
+  public Response getCpuProfile(@QueryParam("queryId") final Long queryId,
+      @DefaultValue("-1") @QueryParam("fragmentId") final Long fragmentId) throws DbException {
+
+    Preconditions.checkArgument(queryId != null, "Missing required field queryId.");
+
+    ResponseBuilder response = Response.ok().cacheControl(MyriaApiUtils.doNotCache());
+    response.type(MediaType.TEXT_PLAIN);
+
+    PipedOutputStream writerOutput = new PipedOutputStream();
+    PipedInputStream input;
+    try {
+      input = new PipedInputStream(writerOutput, MyriaConstants.DEFAULT_PIPED_INPUT_STREAM_SIZE);
+    } catch (IOException e) {
+      throw new DbException(e);
+    }
+
+    PipedStreamingOutput entity = new PipedStreamingOutput(input);
+    response.entity(entity);
+
+    TupleWriter writer = new CsvTupleWriter(writerOutput);
+
+    server.startCpuProfileStream(queryId, fragmentId, writer);
+
+    return response.build();
+  }
+
   /**
    * Get information about where tuples were sent.
    * 
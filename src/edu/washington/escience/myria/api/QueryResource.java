@@ -25,6 +25,7 @@ import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 
 import edu.washington.escience.myria.api.encoding.QueryEncoding;
+import edu.washington.escience.myria.api.encoding.QueryMetricsEncoding;
 import edu.washington.escience.myria.api.encoding.QueryStatusEncoding;
 import edu.washington.escience.myria.coordinator.catalog.CatalogException;
 import edu.washington.escience.myria.parallel.QueryFuture;
@@ -150,6 +151,30 @@ public final class QueryResource {
     return response.build();
   }
 
+  /**
+   * Get the live metrics of a query: for each node, the tuples, bytes, and time of each operator, the rates of the
+   * channels of its producers and consumers, and the depths of the executor queues. Worker metrics are those of their
+   * latest heartbeat.
+   * 
+   * @param queryId the query id.
+   * @param uriInfo the URL of the current request.
+   * @return the live metrics of the query.
+   * @throws CatalogException if there is an error in the catalog.
+   */
+  @GET
+  @Path("query-{queryId:\\d+}/metrics")
+  public Response getQueryMetrics(@PathParam("queryId") final long queryId, @Context final UriInfo uriInfo)
+      throws CatalogException {
+    final QueryMetricsEncoding metrics = server.getQueryMetrics(queryId);
+    final URI uri = uriInfo.getAbsolutePath();
+    if (metrics == null) {
+      return Response.status(Status.NOT_FOUND).contentLocation(uri).entity("Query " + queryId + " was not found")
+          .build();
+    }
+    metrics.url = uri;
+    return Response.ok().cacheControl(MyriaApiUtils.doNotCache()).location(uri).entity(metrics).build();
+  }
+
   /**
    * Cancel a running query.
    * 
@@ -198,6 +223,17 @@ public final class QueryResource {
         queries).build();
   }
 
+  /**
+   * Get the state of the admission queue: the queries waiting to be admitted and the memory reserved on each worker.
+   * 
+   * @return the state of the admission queue.
+   */
+  @GET
+  @Path("queue")
+  public Response getAdmissionQueue() {
+    return Response.ok().cacheControl(MyriaApiUtils.doNotCache()).entity(server.getAdmissionStatus()).build();
+  }
+
   /**
    * @param uriInfo information about the URL of the request.
    * @return the canonical URL for this API.
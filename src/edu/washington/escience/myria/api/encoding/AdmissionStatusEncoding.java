@@ -0,0 +1,49 @@
+package edu.washington.escience.myria.api.encoding;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The encoding for the state of the admission queue at the master.
+ */
+public class AdmissionStatusEncoding {
+  /**
+   * A query waiting for admission.
+   */
+  public static class QueuedQuery {
+    /** An empty default constructor. */
+    public QueuedQuery() {
+    }
+
+    /**
+     * @param queryId the ID of the query.
+     * @param priority the priority of the query.
+     * @param bytesPerWorker the estimated memory needed on each worker, in bytes.
+     */
+    public QueuedQuery(final long queryId, final int priority, final long bytesPerWorker) {
+      this.queryId = queryId;
+      this.priority = priority;
+      this.bytesPerWorker = bytesPerWorker;
+    }
+
+    /** The ID of the query. */
+    public long queryId;
+    /** The priority of the query. */
+    public int priority;
+    /** The estimated memory needed on each worker, in bytes. */
+    public long bytesPerWorker;
+  }
+
+  /** The memory available for query state on each worker, in bytes. */
+  public long workerMemoryBudgetBytes;
+  /** The maximum number of admitted queries. */
+  public int maxActiveQueries;
+  /** The admitted queries. */
+  public List<Long> admittedQueries;
+  /** The queries waiting for admission, in admission order. */
+  public List<QueuedQuery> queuedQueries;
+  /** The memory reserved on each worker, in bytes. */
+  public Map<Integer, Long> workerReservedBytes;
+  /** The operator memory each worker reported in its last heartbeat, in bytes. */
+  public Map<Integer, Long> workerUsedBytes;
+}
@@ -0,0 +1,19 @@
+package edu.washington.escience.myria.api.encoding;
+
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.operator.BloomFilterBuild;
+
+public class BloomFilterBuildEncoding extends UnaryOperatorEncoding<BloomFilterBuild> {
+
+  @Required
+  public int[] argKeyColumns;
+  @Required
+  public Integer argNumWords;
+  @Required
+  public Integer argNumHashFunctions;
+
+  @Override
+  public BloomFilterBuild construct(ConstructArgs args) {
+    return new BloomFilterBuild(null, argKeyColumns, argNumWords, argNumHashFunctions);
+  }
+}
@@ -0,0 +1,19 @@
+package edu.washington.escience.myria.api.encoding;
+
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.operator.BloomFilterProbe;
+
+public class BloomFilterProbeEncoding extends BinaryOperatorEncoding<BloomFilterProbe> {
+
+  @Required
+  public int[] argKeyColumns;
+  @Required
+  public Integer argNumWords;
+  @Required
+  public Integer argNumHashFunctions;
+
+  @Override
+  public BloomFilterProbe construct(ConstructArgs args) {
+    return new BloomFilterProbe(null, null, argKeyColumns, argNumWords, argNumHashFunctions);
+  }
+}
@@ -0,0 +1,33 @@
+package edu.washington.escience.myria.api.encoding;
+
+import javax.ws.rs.core.Response.Status;
+
+import edu.washington.escience.myria.api.MyriaApiException;
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.operator.FindHeavyHitters;
+
+public class FindHeavyHittersEncoding extends UnaryOperatorEncoding<FindHeavyHitters> {
+
+  @Required
+  public int[] argKeyColumns;
+  @Required
+  public Double argMinFraction;
+  /** The probability that a tuple is sampled. All the tuples are if it is not set. */
+  public Double argSampleFraction;
+
+  @Override
+  public FindHeavyHitters construct(ConstructArgs args) {
+    return new FindHeavyHitters(null, argKeyColumns, argMinFraction, argSampleFraction == null ? 1
+        : argSampleFraction);
+  }
+
+  @Override
+  protected void validateExtra() {
+    if (argMinFraction <= 0 || argMinFraction > 1) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "argMinFraction must be in (0, 1]");
+    }
+    if (argSampleFraction != null && (argSampleFraction <= 0 || argSampleFraction > 1)) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "argSampleFraction must be in (0, 1]");
+    }
+  }
+}
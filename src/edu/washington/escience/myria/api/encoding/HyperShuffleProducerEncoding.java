@@ -7,6 +7,7 @@ import com.google.common.base.Preconditions;
 import edu.washington.escience.myria.api.MyriaApiException;
 import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
 import edu.washington.escience.myria.operator.network.GenericShuffleProducer;
+import edu.washington.escience.myria.operator.network.partition.HyperCubeOptimizer;
 import edu.washington.escience.myria.operator.network.partition.MFMDHashPartitionFunction;
 import edu.washington.escience.myria.util.MyriaArrayUtils;
 import edu.washington.escience.myria.util.MyriaUtils;
@@ -14,6 +15,10 @@ import edu.washington.escience.myria.util.MyriaUtils;
 /**
  * Producer part of JSON Encoding for HyperCube Join.
  * 
+ * If <code>hyperCubeDimensions</code> and <code>cellPartition</code> are omitted, they are chosen by
+ * {@link QueryConstruct} for all the HyperShuffleProducers that feed the same fragment, from the cardinalities of the
+ * relations, see {@link HyperCubeOptimizer}. If the size of one of the relations is unknown and not given in
+ * <code>estimatedNumTuples</code>, the relations are assumed to have the same size.
  */
 public class HyperShuffleProducerEncoding extends AbstractProducerEncoding<GenericShuffleProducer> {
 
@@ -21,10 +26,10 @@ public class HyperShuffleProducerEncoding extends AbstractProducerEncoding<Gener
   public int[] hashedColumns;
   @Required
   public int[] mappedHCDimensions;
-  @Required
   public int[] hyperCubeDimensions;
-  @Required
   public int[][] cellPartition;
+  /** The number of tuples this producer sends over all workers, if not the size of the relation it scans. */
+  public Long estimatedNumTuples;
 
   @Override
   public GenericShuffleProducer construct(ConstructArgs args) throws MyriaApiException {
@@ -38,9 +43,11 @@ public class HyperShuffleProducerEncoding extends AbstractProducerEncoding<Gener
     for (int d : hyperCubeDimensions) {
       numCells = numCells * d;
     }
+    Preconditions.checkArgument(numCells <= getRealWorkerIds().size(), "the hypercube has %s cells but only %s workers",
+        numCells, getRealWorkerIds().size());
     for (int[] partition : cellPartition) {
       for (int cellId : partition) {
-        Preconditions.checkElementIndex(cellId, getRealWorkerIds().size());
+        Preconditions.checkElementIndex(cellId, numCells);
       }
     }
 
@@ -48,15 +55,30 @@ public class HyperShuffleProducerEncoding extends AbstractProducerEncoding<Gener
     MFMDHashPartitionFunction pf =
         new MFMDHashPartitionFunction(cellPartition.length, hyperCubeDimensions, hashedColumns, mappedHCDimensions);
 
+    /*
+     * Cell i is on the i-th worker of the consuming fragment. Every producer of the join sees the same workers in the
+     * same order, and the workers without a cell only receive EOS.
+     */
     return new GenericShuffleProducer(null, MyriaUtils.getSingleElement(getRealOperatorIds()), cellPartition,
-        MyriaUtils.integerSetToIntArray(args.getServer().getRandomWorkers(numCells)), pf);
+        MyriaUtils.integerSetToIntArray(getRealWorkerIds()), pf);
   }
 
   @Override
   protected void validateExtra() {
+    if ((hyperCubeDimensions == null) != (cellPartition == null)) {
+      throw new MyriaApiException(Status.BAD_REQUEST,
+          "hyperCubeDimensions and cellPartition must either both be given or both be omitted");
+    }
+    if (cellPartition == null) {
+      return;
+    }
+    /* A relation that is not hashed on all dimensions is replicated, so the same cell may appear several times. */
     int[] arr = MyriaArrayUtils.arrayFlattenThenSort(cellPartition);
+    int nextCell = 0;
     for (int i = 0; i < arr.length; i++) {
-      if (arr[i] != i) {
+      if (arr[i] == nextCell) {
+        ++nextCell;
+      } else if (arr[i] != nextCell - 1) {
         throw new MyriaApiException(Status.BAD_REQUEST, "invalid cell partition");
       }
     }
@@ -2,6 +2,8 @@ package edu.washington.escience.myria.api.encoding;
 
 import java.util.List;
 
+import com.google.common.base.Objects;
+
 import edu.washington.escience.myria.api.MyriaApiException;
 import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
 import edu.washington.escience.myria.operator.LeapFrogJoin;
@@ -14,9 +16,12 @@ public class LeapFrogJoinEncoding extends NaryOperatorEncoding<LeapFrogJoin> {
   public int[][][] joinFieldMapping;
   @Required
   public int[][] outputFieldMapping;
+  public Integer numThreads;
+  public Boolean pipelined;
 
   @Override
   public LeapFrogJoin construct(ConstructArgs args) throws MyriaApiException {
-    return new LeapFrogJoin(null, joinFieldMapping, outputFieldMapping, argColumnNames, indexOnFirst);
+    return new LeapFrogJoin(null, joinFieldMapping, outputFieldMapping, argColumnNames, indexOnFirst,
+        Objects.firstNonNull(numThreads, 1), Objects.firstNonNull(pipelined, Boolean.FALSE));
   }
 }
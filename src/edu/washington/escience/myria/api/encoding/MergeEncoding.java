@@ -1,12 +1,27 @@
 package edu.washington.escience.myria.api.encoding;
 
+import javax.ws.rs.core.Response.Status;
+
+import edu.washington.escience.myria.api.MyriaApiException;
 import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
 import edu.washington.escience.myria.operator.Merge;
 
 public class MergeEncoding extends NaryOperatorEncoding<Merge> {
 
+  @Required
+  public int[] argSortColumns;
+  @Required
+  public boolean[] argAscending;
+
   @Override
   public Merge construct(ConstructArgs args) {
-    return new Merge(null, null, null);
+    return new Merge(null, argSortColumns, argAscending);
+  }
+
+  @Override
+  protected void validateExtra() {
+    if (argSortColumns.length != argAscending.length) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "sort columns number should be equal to ascending orders number!");
+    }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,103 @@
+package edu.washington.escience.myria.api.encoding;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import edu.washington.escience.myria.profiling.Direction;
+
+/**
+ * The encoding for the live metrics of one node (the master or a worker): the depths of its executor queues, the
+ * statistics of its cache of compiled expressions, and the statistics of the operators and channels of its running and
+ * recently finished subqueries.
+ */
+public class NodeMetricsEncoding {
+  /**
+   * The statistics of one operator of a subquery on one node.
+   */
+  public static class OperatorStatistics {
+    /** The ID of the query. */
+    public long queryId;
+    /** The ID of the subquery. */
+    public long subQueryId;
+    /** The ID of the operator in the plan. */
+    public int opId;
+    /** The name of the operator in the plan. */
+    public String opName;
+    /** The class of the operator. */
+    public String opType;
+    /** The number of tuples consumed, from children or from input channels. */
+    public long tuplesIn;
+    /** The estimated size of the tuples consumed, in bytes. */
+    public long bytesIn;
+    /** The number of tuples produced. */
+    public long tuplesOut;
+    /** The number of non-empty batches produced. */
+    public long batchesOut;
+    /** The estimated size of the tuples produced, in bytes. */
+    public long bytesOut;
+    /** The time spent in fetchNextReady, including the time of the children, in nanoseconds. */
+    public long nanos;
+    /** The time spent in fetchNextReady, excluding the time of the children, in nanoseconds. */
+    public long selfNanos;
+    /** The number of messages waiting in the input buffer of a consumer, or null for other operators. */
+    public Integer inputBufferSize;
+    /** The soft capacity of the input buffer of a consumer, or null if it has none. */
+    public Integer inputBufferCapacity;
+  }
+
+  /**
+   * The statistics of one channel between an exchange operator on this node and a remote node.
+   */
+  public static class ChannelStatistics {
+    /** The ID of the query. */
+    public long queryId;
+    /** The ID of the subquery. */
+    public long subQueryId;
+    /** The ID of the producer or consumer. */
+    public int opId;
+    /** The node at the other end of the channel. */
+    public int remoteId;
+    /** Whether the operator sends or receives on this channel. */
+    public Direction direction;
+    /** The number of tuples transferred. */
+    public long tuples;
+    /** The number of batches transferred. */
+    public long batches;
+    /** The estimated size of the tuples transferred, in bytes. */
+    public long bytes;
+    /** The time between the first and the last batch, in nanoseconds. */
+    public long nanos;
+    /** The transfer rate, in tuples per second, or 0 if fewer than two batches were transferred. */
+    public double tuplesPerSecond;
+    /** The transfer rate, in bytes per second, or 0 if fewer than two batches were transferred. */
+    public double bytesPerSecond;
+  }
+
+  /**
+   * The statistics of a cache of the node since its JVM started.
+   */
+  public static class CacheStatistics {
+    /** The number of lookups that found an entry. */
+    public long hits;
+    /** The number of lookups that did not find an entry, and computed it. */
+    public long misses;
+    /** The number of entries evicted. */
+    public long evictions;
+    /** The number of entries. */
+    public long size;
+  }
+
+  /** The ID of the node. */
+  public int nodeId;
+  /** When these metrics were collected, in milliseconds since the epoch. */
+  public long timestamp;
+  /** The number of tasks waiting in each executor or message queue of the node. */
+  public Map<String, Integer> queueDepths;
+  /** The statistics of the cache of compiled expressions of the node. */
+  public CacheStatistics compiledExpressionCache;
+  /** The statistics of the operators. */
+  public List<OperatorStatistics> operators = new ArrayList<>();
+  /** The statistics of the channels. */
+  public List<ChannelStatistics> channels = new ArrayList<>();
+}
@@ -23,6 +23,8 @@ import edu.washington.escience.myria.operator.Operator;
 @JsonSubTypes({
     @Type(name = "Aggregate", value = AggregateEncoding.class), @Type(name = "Apply", value = ApplyEncoding.class),
     @Type(name = "BinaryFileScan", value = BinaryFileScanEncoding.class),
+    @Type(name = "BloomFilterBuild", value = BloomFilterBuildEncoding.class),
+    @Type(name = "BloomFilterProbe", value = BloomFilterProbeEncoding.class),
     @Type(name = "BroadcastConsumer", value = BroadcastConsumerEncoding.class),
     @Type(name = "BroadcastProducer", value = BroadcastProducerEncoding.class),
     @Type(name = "CollectConsumer", value = CollectConsumerEncoding.class),
@@ -34,6 +36,7 @@ import edu.washington.escience.myria.operator.Operator;
     @Type(name = "DupElim", value = DupElimEncoding.class), @Type(name = "Empty", value = EmptyRelationEncoding.class),
     @Type(name = "EOSController", value = EOSControllerEncoding.class),
     @Type(name = "FileScan", value = FileScanEncoding.class), @Type(name = "Filter", value = FilterEncoding.class),
+    @Type(name = "FindHeavyHitters", value = FindHeavyHittersEncoding.class),
     @Type(name = "HyperShuffleProducer", value = HyperShuffleProducerEncoding.class),
     @Type(name = "HyperShuffleConsumer", value = HyperShuffleConsumerEncoding.class),
     @Type(name = "IDBController", value = IDBControllerEncoding.class),
@@ -44,10 +47,12 @@ import edu.washington.escience.myria.operator.Operator;
     @Type(name = "Merge", value = MergeEncoding.class), @Type(name = "MergeJoin", value = MergeJoinEncoding.class),
     @Type(name = "MultiGroupByAggregate", value = MultiGroupByAggregateEncoding.class),
     @Type(name = "NChiladaFileScan", value = NChiladaFileScanEncoding.class),
+    @Type(name = "ParallelPipeline", value = ParallelPipelineEncoding.class),
     @Type(name = "RightHashCountingJoin", value = RightHashCountingJoinEncoding.class),
     @Type(name = "RightHashJoin", value = RightHashJoinEncoding.class),
     @Type(name = "SeaFlowScan", value = SeaFlowFileScanEncoding.class),
     @Type(name = "SetGlobal", value = SetGlobalEncoding.class),
+    @Type(name = "SetHeavyHitters", value = SetHeavyHittersEncoding.class),
     @Type(name = "ShuffleConsumer", value = ShuffleConsumerEncoding.class),
     @Type(name = "ShuffleProducer", value = ShuffleProducerEncoding.class),
     @Type(name = "SingleGroupByAggregate", value = SingleGroupByAggregateEncoding.class),
@@ -61,7 +66,9 @@ import edu.washington.escience.myria.operator.Operator;
     @Type(name = "TempInsert", value = TempInsertEncoding.class),
     @Type(name = "TempTableScan", value = TempTableScanEncoding.class),
     @Type(name = "TipsyFileScan", value = TipsyFileScanEncoding.class),
-    @Type(name = "UnionAll", value = UnionAllEncoding.class) })
+    @Type(name = "TopK", value = TopKEncoding.class),
+    @Type(name = "UnionAll", value = UnionAllEncoding.class),
+    @Type(name = "WindowAggregate", value = WindowAggregateEncoding.class) })
 public abstract class OperatorEncoding<T extends Operator> extends MyriaApiEncoding {
 
   @Required
@@ -0,0 +1,74 @@
+package edu.washington.escience.myria.api.encoding;
+
+import java.util.List;
+
+import javax.ws.rs.core.Response.Status;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.api.MyriaApiException;
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.operator.Operator;
+import edu.washington.escience.myria.operator.ParallelPipeline;
+
+public class ParallelPipelineEncoding extends UnaryOperatorEncoding<ParallelPipeline> {
+
+  /** The pipeline operators, from the bottom to the top. Each one consumes the output of the previous one. */
+  @Required
+  public List<UnaryOperatorEncoding<?>> argStages;
+  /** The operator that merges the outputs of all the pipeline copies, optional. */
+  public UnaryOperatorEncoding<?> argMerge;
+  /** The number of pipeline copies, optional. Defaults to the parallelism of the worker. */
+  public Integer argDegreeOfParallelism;
+
+  @Override
+  public ParallelPipeline construct(ConstructArgs args) throws MyriaApiException {
+    ImmutableList.Builder<Operator> stages = ImmutableList.builder();
+    for (UnaryOperatorEncoding<?> stage : argStages) {
+      stages.add(constructNested(stage, args));
+    }
+    Operator merge = null;
+    if (argMerge != null) {
+      merge = constructNested(argMerge, args);
+    }
+    if (argDegreeOfParallelism == null) {
+      return new ParallelPipeline(null, stages.build(), merge);
+    }
+    return new ParallelPipeline(null, stages.build(), merge, argDegreeOfParallelism);
+  }
+
+  /**
+   * @param encoding the encoding of a pipeline stage or of the merge operator.
+   * @param args construction arguments.
+   * @return the instantiated operator.
+   */
+  private static Operator constructNested(final UnaryOperatorEncoding<?> encoding, final ConstructArgs args) {
+    Operator op = encoding.construct(args);
+    /* helpful for debugging. */
+    op.setOpName(Objects.firstNonNull(encoding.opName, "Operator" + String.valueOf(encoding.opId)));
+    op.setOpId(encoding.opId);
+    return op;
+  }
+
+  @Override
+  protected void validateExtra() {
+    if (argStages.isEmpty()) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "a parallel pipeline needs at least one stage");
+    }
+    if (argDegreeOfParallelism != null && argDegreeOfParallelism <= 0) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "degree of parallelism must be positive");
+    }
+    /* The children of the nested operators are implied by their order. */
+    Integer previous = argChild;
+    for (UnaryOperatorEncoding<?> stage : argStages) {
+      stage.argChild = previous;
+      stage.validate();
+      previous = stage.opId;
+    }
+    if (argMerge != null) {
+      argMerge.argChild = opId;
+      argMerge.validate();
+    }
+  }
+}
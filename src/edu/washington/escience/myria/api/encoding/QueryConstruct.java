@@ -18,7 +18,9 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
 
+import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.MyriaConstants.FTMODE;
 import edu.washington.escience.myria.RelationKey;
@@ -29,6 +31,7 @@ import edu.washington.escience.myria.coordinator.catalog.CatalogException;
 import edu.washington.escience.myria.expression.ConstantExpression;
 import edu.washington.escience.myria.expression.Expression;
 import edu.washington.escience.myria.expression.VariableExpression;
+import edu.washington.escience.myria.expression.evaluate.SqlExpressionTranslator;
 import edu.washington.escience.myria.operator.Apply;
 import edu.washington.escience.myria.operator.DbQueryScan;
 import edu.washington.escience.myria.operator.IDBController;
@@ -36,13 +39,19 @@ import edu.washington.escience.myria.operator.Operator;
 import edu.washington.escience.myria.operator.RootOperator;
 import edu.washington.escience.myria.operator.SinkRoot;
 import edu.washington.escience.myria.operator.UpdateCatalog;
+import edu.washington.escience.myria.operator.agg.AggregatorFactory;
 import edu.washington.escience.myria.operator.agg.MultiGroupByAggregate;
 import edu.washington.escience.myria.operator.agg.PrimitiveAggregator.AggregationOp;
 import edu.washington.escience.myria.operator.agg.SingleColumnAggregatorFactory;
+import edu.washington.escience.myria.operator.agg.UserDefinedAggregatorFactory;
 import edu.washington.escience.myria.operator.network.CollectConsumer;
 import edu.washington.escience.myria.operator.network.CollectProducer;
 import edu.washington.escience.myria.operator.network.Consumer;
 import edu.washington.escience.myria.operator.network.EOSController;
+import edu.washington.escience.myria.operator.network.partition.HyperCubeOptimizer;
+import edu.washington.escience.myria.operator.network.partition.MultiFieldHashPartitionFunction;
+import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
+import edu.washington.escience.myria.operator.network.partition.SingleFieldHashPartitionFunction;
 import edu.washington.escience.myria.parallel.ExchangePairID;
 import edu.washington.escience.myria.parallel.JsonSubQuery;
 import edu.washington.escience.myria.parallel.RelationWriteMetadata;
@@ -66,10 +75,16 @@ public class QueryConstruct {
    */
   public static Map<Integer, SubQueryPlan> instantiate(List<PlanFragmentEncoding> fragments, final ConstructArgs args)
       throws CatalogException {
+    /* Compute the aggregates that can be combined partially, before their input is shuffled or collected. */
+    splitCombinableAggregates(fragments);
     /* First, we need to know which workers run on each plan. */
     setupWorkersForFragments(fragments, args);
+    /* Choose the shares of the HyperCube shuffles that the plan leaves open. */
+    optimizeHyperCubeShares(fragments, args);
     /* Next, we need to know which pipes (operators) are produced and consumed on which workers. */
     setupWorkerNetworkOperators(fragments);
+    /* Then, we let the database do the filtering and projection of the relations we scan where it can. */
+    pushDownIntoTableScans(fragments, args);
 
     HashMap<Integer, PlanFragmentEncoding> op2OwnerFragmentMapping = new HashMap<Integer, PlanFragmentEncoding>();
     int idx = 0;
@@ -114,6 +129,237 @@ public class QueryConstruct {
     }
   }
 
+  /**
+   * Push the Filters and Applies that sit directly on top of a TableScan down into the SQL query of the scan, so that
+   * the database filters and projects the tuples, possibly using its indexes, before they are read into Java. An
+   * operator is only pushed down if all its expressions can be translated exactly, see {@link SqlExpressionTranslator}.
+   * The scan then takes the place, i.e., the opId, of the operator it absorbed.
+   * 
+   * @param fragments the JSON-encoded query fragments.
+   * @param args the construction arguments.
+   */
+  private static void pushDownIntoTableScans(final List<PlanFragmentEncoding> fragments, final ConstructArgs args) {
+    Map<RelationKey, Schema> schemas = new HashMap<RelationKey, Schema>();
+    for (PlanFragmentEncoding fragment : fragments) {
+      for (OperatorEncoding<?> operator : fragment.operators) {
+        if (operator instanceof TableScanEncoding) {
+          RelationKey relationKey = ((TableScanEncoding) operator).relationKey;
+          try {
+            Schema schema = args.getServer().getSchema(relationKey);
+            if (schema != null) {
+              schemas.put(relationKey, schema);
+            }
+          } catch (final CatalogException e) {
+            LOGGER.debug("Not pushing operators down into the scan of {}", relationKey, e);
+          }
+        }
+      }
+    }
+    pushDownIntoTableScans(fragments, schemas, args.getServer().getDBMS());
+  }
+
+  /**
+   * @param fragments the JSON-encoded query fragments.
+   * @param schemas the schemas of the scanned relations. Nothing is pushed down into the scans of other relations.
+   * @param dbms the database system that runs the scans.
+   * @see #pushDownIntoTableScans(List, ConstructArgs)
+   */
+  static void pushDownIntoTableScans(final List<PlanFragmentEncoding> fragments, final Map<RelationKey, Schema> schemas,
+      final String dbms) {
+    for (PlanFragmentEncoding fragment : fragments) {
+      boolean pushed = true;
+      while (pushed) {
+        pushed = false;
+        Map<Integer, OperatorEncoding<?>> operators = new HashMap<Integer, OperatorEncoding<?>>();
+        for (OperatorEncoding<?> operator : fragment.operators) {
+          operators.put(operator.opId, operator);
+        }
+        for (OperatorEncoding<?> operator : fragment.operators) {
+          if (!(operator instanceof FilterEncoding) && !(operator instanceof ApplyEncoding)) {
+            continue;
+          }
+          OperatorEncoding<?> child = operators.get(((UnaryOperatorEncoding<?>) operator).argChild);
+          if (!(child instanceof TableScanEncoding)) {
+            continue;
+          }
+          TableScanEncoding scan = (TableScanEncoding) child;
+          Schema schema = schemas.get(scan.relationKey);
+          if (schema == null) {
+            continue;
+          }
+          if (operator instanceof FilterEncoding) {
+            pushed = scan.pushDownFilter((FilterEncoding) operator, schema, dbms);
+          } else {
+            pushed = scan.pushDownApply((ApplyEncoding) operator, schema, dbms);
+          }
+          if (pushed) {
+            LOGGER.debug("Pushed operator {} down into the scan of {}", operator.opId, scan.relationKey);
+            scan.opId = operator.opId;
+            List<OperatorEncoding<? extends Operator>> remaining =
+                new ArrayList<OperatorEncoding<? extends Operator>>(fragment.operators);
+            remaining.remove(operator);
+            fragment.operators = remaining;
+            break;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Compute the user-defined aggregates that have combiners in two phases: a partial aggregate in the fragment that
+   * sends their input, just before the producer, and a final aggregate that combines the partial states it receives.
+   * This is done when all the aggregators of an aggregate are user-defined and combinable, and the aggregate reads
+   * from a CollectConsumer, or from a ShuffleConsumer whose tuples are hashed on group columns only. The partial states
+   * are then hashed on the same group columns, which have moved to the front.
+   * 
+   * @param fragments the JSON-encoded query fragments.
+   */
+  static void splitCombinableAggregates(final List<PlanFragmentEncoding> fragments) {
+    Map<Integer, OperatorEncoding<?>> allOperators = new HashMap<Integer, OperatorEncoding<?>>();
+    Map<Integer, PlanFragmentEncoding> owners = new HashMap<Integer, PlanFragmentEncoding>();
+    int nextOpId = 0;
+    for (PlanFragmentEncoding fragment : fragments) {
+      for (OperatorEncoding<?> operator : fragment.operators) {
+        allOperators.put(operator.opId, operator);
+        owners.put(operator.opId, fragment);
+        nextOpId = Math.max(nextOpId, operator.opId + 1);
+      }
+    }
+
+    for (OperatorEncoding<?> operator : ImmutableList.copyOf(allOperators.values())) {
+      AggregatorFactory[] aggregators;
+      int[] groupFields;
+      if (operator instanceof AggregateEncoding) {
+        aggregators = ((AggregateEncoding) operator).aggregators;
+        groupFields = new int[0];
+      } else if (operator instanceof SingleGroupByAggregateEncoding) {
+        aggregators = ((SingleGroupByAggregateEncoding) operator).aggregators;
+        groupFields = new int[] { ((SingleGroupByAggregateEncoding) operator).argGroupField };
+      } else if (operator instanceof MultiGroupByAggregateEncoding) {
+        aggregators = ((MultiGroupByAggregateEncoding) operator).aggregators;
+        groupFields = ((MultiGroupByAggregateEncoding) operator).argGroupFields;
+      } else {
+        continue;
+      }
+      if (!isCombinable(aggregators)) {
+        continue;
+      }
+      OperatorEncoding<?> consumer = allOperators.get(((UnaryOperatorEncoding<?>) operator).argChild);
+      if (!(consumer instanceof AbstractConsumerEncoding)
+          || owners.get(consumer.opId) != owners.get(operator.opId)) {
+        continue;
+      }
+      OperatorEncoding<?> producer = allOperators.get(((AbstractConsumerEncoding<?>) consumer).getArgOperatorId());
+      PartitionFunction pf = null;
+      if (producer instanceof ShuffleProducerEncoding
+          && ((ShuffleProducerEncoding) producer).argBufferStateType == null) {
+        pf = getGroupPartitionFunction(((ShuffleProducerEncoding) producer).argPf, groupFields);
+        if (pf == null) {
+          continue;
+        }
+      } else if (!(producer instanceof CollectProducerEncoding)) {
+        continue;
+      }
+
+      /* The partial aggregate emits the group columns, then the states of the aggregators, one after the other. */
+      AggregatorFactory[] partialAggregators = new AggregatorFactory[aggregators.length];
+      AggregatorFactory[] finalAggregators = new AggregatorFactory[aggregators.length];
+      int firstStateColumn = groupFields.length;
+      for (int i = 0; i < aggregators.length; ++i) {
+        UserDefinedAggregatorFactory aggregator = (UserDefinedAggregatorFactory) aggregators[i];
+        partialAggregators[i] = aggregator.getPartialFactory(firstStateColumn);
+        finalAggregators[i] = aggregator.getFinalFactory(firstStateColumn);
+        firstStateColumn += aggregator.getNumStates();
+      }
+      UnaryOperatorEncoding<?> partial;
+      if (operator instanceof AggregateEncoding) {
+        AggregateEncoding partialAggregate = new AggregateEncoding();
+        partialAggregate.aggregators = partialAggregators;
+        ((AggregateEncoding) operator).aggregators = finalAggregators;
+        partial = partialAggregate;
+      } else if (operator instanceof SingleGroupByAggregateEncoding) {
+        SingleGroupByAggregateEncoding partialAggregate = new SingleGroupByAggregateEncoding();
+        partialAggregate.argGroupField = groupFields[0];
+        partialAggregate.aggregators = partialAggregators;
+        ((SingleGroupByAggregateEncoding) operator).argGroupField = 0;
+        ((SingleGroupByAggregateEncoding) operator).aggregators = finalAggregators;
+        partial = partialAggregate;
+      } else {
+        MultiGroupByAggregateEncoding partialAggregate = new MultiGroupByAggregateEncoding();
+        partialAggregate.argGroupFields = groupFields;
+        partialAggregate.aggregators = partialAggregators;
+        int[] finalGroupFields = new int[groupFields.length];
+        for (int i = 0; i < finalGroupFields.length; ++i) {
+          finalGroupFields[i] = i;
+        }
+        ((MultiGroupByAggregateEncoding) operator).argGroupFields = finalGroupFields;
+        ((MultiGroupByAggregateEncoding) operator).aggregators = finalAggregators;
+        partial = partialAggregate;
+      }
+      partial.opId = nextOpId++;
+      partial.opName = "Partial " + (operator.opName == null ? operator.opId : operator.opName);
+      partial.argChild = ((UnaryOperatorEncoding<?>) producer).argChild;
+      ((UnaryOperatorEncoding<?>) producer).argChild = partial.opId;
+      if (pf != null) {
+        ((ShuffleProducerEncoding) producer).argPf = pf;
+      }
+      PlanFragmentEncoding producerFragment = owners.get(producer.opId);
+      List<OperatorEncoding<? extends Operator>> operators =
+          new ArrayList<OperatorEncoding<? extends Operator>>(producerFragment.operators);
+      operators.add(partial);
+      producerFragment.operators = operators;
+      LOGGER.debug("Split aggregate {} into partial aggregate {} before producer {}", operator.opId, partial.opId,
+          producer.opId);
+    }
+  }
+
+  /**
+   * @param aggregators some aggregators.
+   * @return true if all the aggregators are user-defined aggregates that can be computed in two phases.
+   */
+  private static boolean isCombinable(final AggregatorFactory[] aggregators) {
+    if (aggregators == null || aggregators.length == 0) {
+      return false;
+    }
+    for (AggregatorFactory aggregator : aggregators) {
+      if (!(aggregator instanceof UserDefinedAggregatorFactory)
+          || !((UserDefinedAggregatorFactory) aggregator).isCombinable()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param pf a partition function over the input of an aggregate.
+   * @param groupFields the group columns of the aggregate.
+   * @return the same partition function over the output of the partial aggregate, in which the group columns come
+   *         first, or null if the function does not only hash group columns.
+   */
+  private static PartitionFunction getGroupPartitionFunction(final PartitionFunction pf, final int[] groupFields) {
+    List<Integer> groups = Ints.asList(groupFields);
+    if (pf instanceof SingleFieldHashPartitionFunction) {
+      SingleFieldHashPartitionFunction hash = (SingleFieldHashPartitionFunction) pf;
+      int index = groups.indexOf(hash.getIndex());
+      if (index < 0) {
+        return null;
+      }
+      return new SingleFieldHashPartitionFunction(null, index, hash.getSeedIndex());
+    } else if (pf instanceof MultiFieldHashPartitionFunction) {
+      int[] indexes = ((MultiFieldHashPartitionFunction) pf).getIndexes();
+      int[] newIndexes = new int[indexes.length];
+      for (int i = 0; i < indexes.length; ++i) {
+        newIndexes[i] = groups.indexOf(indexes[i]);
+        if (newIndexes[i] < 0) {
+          return null;
+        }
+      }
+      return new MultiFieldHashPartitionFunction(null, newIndexes);
+    }
+    return null;
+  }
+
   /**
    * Figures out which workers are needed for every fragment.
    * 
@@ -186,6 +432,166 @@ public class QueryConstruct {
     }
   }
 
+  /**
+   * Fill in the hypercube dimensions and cell partitions of the HyperShuffleProducers that do not specify them. All the
+   * HyperShuffleProducers that feed the same fragment belong to the same multiway join. Their shares are chosen by
+   * {@link HyperCubeOptimizer} from the number of workers of that fragment and the number of tuples of every producer,
+   * which is either given in the plan or the size of the relation its fragment scans, according to the catalog. If the
+   * catalog does not know the size of one of these relations, e.g. because it was imported, all the relations of the
+   * join are assumed to have the same size.
+   * 
+   * @param fragments the JSON-encoded query fragments.
+   * @param args the construction arguments.
+   * @throws CatalogException if there is an error in the Catalog.
+   */
+  private static void optimizeHyperCubeShares(final List<PlanFragmentEncoding> fragments, final ConstructArgs args)
+      throws CatalogException {
+    Map<RelationKey, Long> relationSizes = new HashMap<RelationKey, Long>();
+    boolean hasOpenProducers = false;
+    for (PlanFragmentEncoding fragment : fragments) {
+      for (OperatorEncoding<?> operator : fragment.operators) {
+        if (operator instanceof HyperShuffleProducerEncoding
+            && ((HyperShuffleProducerEncoding) operator).hyperCubeDimensions == null) {
+          hasOpenProducers = true;
+        }
+      }
+    }
+    if (!hasOpenProducers) {
+      return;
+    }
+    for (PlanFragmentEncoding fragment : fragments) {
+      for (OperatorEncoding<?> operator : fragment.operators) {
+        if (operator instanceof TableScanEncoding) {
+          RelationKey relationKey = ((TableScanEncoding) operator).relationKey;
+          try {
+            DatasetStatus status = args.getServer().getDatasetStatus(relationKey);
+            if (status != null) {
+              relationSizes.put(relationKey, status.getNumTuples());
+            }
+          } catch (DbException e) {
+            throw new CatalogException(e);
+          }
+        }
+      }
+    }
+    optimizeHyperCubeShares(fragments, relationSizes);
+  }
+
+  /**
+   * @param fragments the JSON-encoded query fragments.
+   * @param relationSizes the number of tuples of the scanned relations according to the catalog, negative if unknown.
+   * @see #optimizeHyperCubeShares(List, ConstructArgs)
+   */
+  static void optimizeHyperCubeShares(final List<PlanFragmentEncoding> fragments,
+      final Map<RelationKey, Long> relationSizes) {
+    Map<Integer, HyperShuffleProducerEncoding> openProducers = new HashMap<Integer, HyperShuffleProducerEncoding>();
+    Map<Integer, PlanFragmentEncoding> producerFragments = new HashMap<Integer, PlanFragmentEncoding>();
+    for (PlanFragmentEncoding fragment : fragments) {
+      for (OperatorEncoding<?> operator : fragment.operators) {
+        if (operator instanceof HyperShuffleProducerEncoding
+            && ((HyperShuffleProducerEncoding) operator).hyperCubeDimensions == null) {
+          openProducers.put(operator.opId, (HyperShuffleProducerEncoding) operator);
+          producerFragments.put(operator.opId, fragment);
+        }
+      }
+    }
+    if (openProducers.isEmpty()) {
+      return;
+    }
+
+    for (PlanFragmentEncoding fragment : fragments) {
+      List<HyperShuffleProducerEncoding> producers = new ArrayList<HyperShuffleProducerEncoding>();
+      for (OperatorEncoding<?> operator : fragment.operators) {
+        if (operator instanceof HyperShuffleConsumerEncoding) {
+          HyperShuffleProducerEncoding producer =
+              openProducers.get(((HyperShuffleConsumerEncoding) operator).getArgOperatorId());
+          if (producer != null) {
+            producers.add(producer);
+          }
+        }
+      }
+      if (producers.isEmpty()) {
+        continue;
+      }
+
+      int numDimensions = 0;
+      int[][] relationDimensions = new int[producers.size()][];
+      long[] cardinalities = new long[producers.size()];
+      boolean unknownCardinality = false;
+      for (int i = 0; i < producers.size(); ++i) {
+        HyperShuffleProducerEncoding producer = producers.get(i);
+        relationDimensions[i] = producer.mappedHCDimensions;
+        for (int d : producer.mappedHCDimensions) {
+          numDimensions = Math.max(numDimensions, d + 1);
+        }
+        cardinalities[i] = getNumTuples(producer, producerFragments.get(producer.opId), relationSizes);
+        unknownCardinality |= cardinalities[i] < 0;
+      }
+      if (unknownCardinality) {
+        LOGGER.warn("The number of tuples of some relations joined by HyperShuffleProducers {} is unknown: {}. Assuming"
+            + " that they all have the same size.", getOpIds(producers), Arrays.toString(cardinalities));
+        Arrays.fill(cardinalities, 1);
+      }
+
+      int numWorkers = fragment.workers.size();
+      int[] shares = HyperCubeOptimizer.optimalShares(numDimensions, relationDimensions, cardinalities, numWorkers);
+      for (HyperShuffleProducerEncoding producer : producers) {
+        producer.hyperCubeDimensions = shares;
+        producer.cellPartition = HyperCubeOptimizer.cellPartition(shares, producer.mappedHCDimensions);
+      }
+      if (LOGGER.isInfoEnabled()) {
+        LOGGER.info("HyperCube shares {} for relations of {} tuples on {} of {} workers: predicted load {} tuples per"
+            + " worker", new Object[] {
+            Arrays.toString(shares), Arrays.toString(cardinalities), HyperCubeOptimizer.numCells(shares), numWorkers,
+            (long) HyperCubeOptimizer.expectedLoad(shares, relationDimensions, cardinalities) });
+      }
+    }
+  }
+
+  /**
+   * @param producers some HyperShuffleProducers.
+   * @return their operator ids.
+   */
+  private static List<Integer> getOpIds(final List<HyperShuffleProducerEncoding> producers) {
+    List<Integer> ret = new ArrayList<Integer>(producers.size());
+    for (HyperShuffleProducerEncoding producer : producers) {
+      ret.add(producer.opId);
+    }
+    return ret;
+  }
+
+  /**
+   * @param producer a HyperShuffleProducer.
+   * @param fragment the fragment of the producer.
+   * @param relationSizes the number of tuples of the scanned relations according to the catalog, negative if unknown.
+   * @return the number of tuples that the producer sends, over all workers, or a negative number if it is unknown.
+   */
+  private static long getNumTuples(final HyperShuffleProducerEncoding producer, final PlanFragmentEncoding fragment,
+      final Map<RelationKey, Long> relationSizes) {
+    if (producer.estimatedNumTuples != null) {
+      return producer.estimatedNumTuples;
+    }
+    TableScanEncoding scan = null;
+    for (OperatorEncoding<?> operator : fragment.operators) {
+      if (operator instanceof TableScanEncoding) {
+        if (scan != null) {
+          scan = null;
+          break;
+        }
+        scan = (TableScanEncoding) operator;
+      }
+    }
+    if (scan == null) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "HyperShuffleProducer " + producer.opId
+          + " must set estimatedNumTuples, its fragment does not scan exactly one relation");
+    }
+    Long numTuples = relationSizes.get(scan.relationKey);
+    if (numTuples == null) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "Specified relation " + scan.relationKey + " does not exist.");
+    }
+    return numTuples;
+  }
+
   /**
    * Loop through all the operators in a plan fragment and connect them up.
    */
@@ -474,6 +880,58 @@ public class QueryConstruct {
     return new JsonSubQuery(fragments.build());
   }
 
+  /**
+   * Builds the sampling subquery that chooses the heavy hitters of a skewed join automatically: every worker storing
+   * the relation finds the heavy hitters of its sample of the relation, and the master stores their union in a global
+   * variable of the query. A later subquery of the same query then shuffles both sides of the join with a
+   * {@link edu.washington.escience.myria.operator.network.partition.SkewedHashPartitionFunction} whose heavy hitters
+   * are read from that variable, see {@link ShuffleProducerEncoding#argHeavyHittersGlobal}.
+   * 
+   * @param relation the skewed side of the join.
+   * @param keyColumns the join columns of the relation.
+   * @param minFraction a key is a heavy hitter if it makes up at least this fraction of the sample on a worker.
+   * @param sampleFraction the probability that a tuple is part of the sample.
+   * @param global the global variable in which the heavy hitters are stored.
+   * @return the sampling subquery.
+   */
+  public static JsonSubQuery findHeavyHitters(final RelationKey relation, final int[] keyColumns,
+      final double minFraction, final double sampleFraction, final String global) {
+    int opId = 0;
+
+    /* The worker part: scan the relation, find the heavy hitters of the sample, and send them to master. */
+    TableScanEncoding scan = new TableScanEncoding();
+    scan.opId = opId++;
+    scan.opName = "Scan[" + relation + "]";
+    scan.relationKey = relation;
+    FindHeavyHittersEncoding find = new FindHeavyHittersEncoding();
+    find.opId = opId++;
+    find.opName = "FindHeavyHitters[" + relation + "]";
+    find.argChild = scan.opId;
+    find.argKeyColumns = keyColumns;
+    find.argMinFraction = minFraction;
+    find.argSampleFraction = sampleFraction;
+    CollectProducerEncoding producer = new CollectProducerEncoding();
+    producer.opId = opId++;
+    producer.opName = "CollectProducer[" + find.opName + "]";
+    producer.argChild = find.opId;
+    PlanFragmentEncoding workerFragment = PlanFragmentEncoding.of(scan, find, producer);
+
+    /* The master part: collect the heavy hitters, set the variable. */
+    CollectConsumerEncoding consumer = new CollectConsumerEncoding();
+    consumer.opId = opId++;
+    consumer.opName = "CollectConsumer";
+    consumer.argOperatorId = producer.opId;
+    SetHeavyHittersEncoding setHeavyHitters = new SetHeavyHittersEncoding();
+    setHeavyHitters.opId = opId++;
+    setHeavyHitters.opName = "SetHeavyHitters[" + global + "]";
+    setHeavyHitters.argChild = consumer.opId;
+    setHeavyHitters.key = global;
+    PlanFragmentEncoding masterFragment = PlanFragmentEncoding.of(consumer, setHeavyHitters);
+    masterFragment.workers = ImmutableList.of(MyriaConstants.MASTER_ID);
+
+    return new JsonSubQuery(ImmutableList.of(workerFragment, masterFragment));
+  }
+
   public final static class ConstructArgs {
     private final Server server;
     private final long queryId;
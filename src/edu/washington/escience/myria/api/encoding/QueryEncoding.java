@@ -29,6 +29,8 @@ public class QueryEncoding extends MyriaApiEncoding {
   public boolean profilingMode = false;
   /** The fault-tolerance mode used in this query, default: none. */
   public FTMODE ftMode = FTMODE.none;
+  /** The admission priority of this query, higher is admitted first. (default is 0) */
+  public int priority = 0;
 
   /** The old physical query plan encoding. */
   public List<PlanFragmentEncoding> fragments;
@@ -0,0 +1,16 @@
+package edu.washington.escience.myria.api.encoding;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * The encoding for the live metrics of a query, collected from the master and the latest heartbeat of every worker.
+ */
+public class QueryMetricsEncoding {
+  /** The URL of this resource. */
+  public URI url;
+  /** The ID of the query. */
+  public long queryId;
+  /** The metrics of the query on each node that ran a part of it. */
+  public List<NodeMetricsEncoding> nodes;
+}
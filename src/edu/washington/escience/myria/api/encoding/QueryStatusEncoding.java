@@ -61,6 +61,8 @@ public class QueryStatusEncoding {
   public String message;
   /** The execution time of this query (in nanoseconds). */
   public Long elapsedNanos;
+  /** The peak estimated memory held by operator state, summed over all workers (in bytes). */
+  public Long peakMemoryBytes;
   /** The status of the query. */
   public Status status;
   /** The profilingMode of the query. */
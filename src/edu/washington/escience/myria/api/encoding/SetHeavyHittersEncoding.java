@@ -0,0 +1,15 @@
+package edu.washington.escience.myria.api.encoding;
+
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.operator.SetHeavyHitters;
+
+public class SetHeavyHittersEncoding extends UnaryOperatorEncoding<SetHeavyHitters> {
+
+  @Required
+  public String key;
+
+  @Override
+  public SetHeavyHitters construct(ConstructArgs args) {
+    return new SetHeavyHitters(null, key, args.getServer());
+  }
+}
@@ -2,9 +2,12 @@ package edu.washington.escience.myria.api.encoding;
 
 import java.util.Set;
 
+import com.google.common.base.Preconditions;
+
 import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
 import edu.washington.escience.myria.operator.network.GenericShuffleProducer;
 import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
+import edu.washington.escience.myria.operator.network.partition.SkewedHashPartitionFunction;
 import edu.washington.escience.myria.util.MyriaUtils;
 
 /**
@@ -15,14 +18,38 @@ public class ShuffleProducerEncoding extends AbstractProducerEncoding<GenericShu
   @Required
   public PartitionFunction argPf;
   public StreamingStateEncoding<?> argBufferStateType;
+  /**
+   * The query global variable holding the heavy hitters of a {@link SkewedHashPartitionFunction}, set by a previous
+   * subquery, e.g. with {@link QueryConstruct#findHeavyHitters}.
+   */
+  public String argHeavyHittersGlobal;
 
   @Override
   public GenericShuffleProducer construct(ConstructArgs args) {
     Set<Integer> workerIds = getRealWorkerIds();
-    argPf.setNumPartitions(workerIds.size());
-    GenericShuffleProducer producer =
-        new GenericShuffleProducer(null, MyriaUtils.getSingleElement(getRealOperatorIds()), MyriaUtils
-            .integerSetToIntArray(workerIds), argPf);
+    PartitionFunction pf = argPf;
+    if (argHeavyHittersGlobal != null) {
+      Preconditions.checkArgument(pf instanceof SkewedHashPartitionFunction,
+          "argHeavyHittersGlobal requires a SkewedHash partition function, not %s", pf.getClass().getSimpleName());
+      Object heavyHitters = args.getServer().getQueryGlobal(args.getQueryId(), argHeavyHittersGlobal);
+      Preconditions.checkState(heavyHitters instanceof int[], "no heavy hitters in global variable %s",
+          argHeavyHittersGlobal);
+      pf = ((SkewedHashPartitionFunction) pf).withHeavyHitters((int[]) heavyHitters);
+    }
+    GenericShuffleProducer producer;
+    if (pf instanceof SkewedHashPartitionFunction && ((SkewedHashPartitionFunction) pf).isReplicate()) {
+      SkewedHashPartitionFunction skewedPf = (SkewedHashPartitionFunction) pf;
+      skewedPf.setNumPartitions(skewedPf.getNumPartitions(workerIds.size()));
+      producer =
+          new GenericShuffleProducer(null, MyriaUtils.getSingleElement(getRealOperatorIds()),
+              SkewedHashPartitionFunction.replicatingCellPartition(workerIds.size()), MyriaUtils
+                  .integerSetToIntArray(workerIds), skewedPf);
+    } else {
+      pf.setNumPartitions(workerIds.size());
+      producer =
+          new GenericShuffleProducer(null, MyriaUtils.getSingleElement(getRealOperatorIds()), MyriaUtils
+              .integerSetToIntArray(workerIds), pf);
+    }
     if (argBufferStateType != null) {
       if (argBufferStateType instanceof KeepMinValueStateEncoding) {
         producer.setBackupBufferAsMin(((KeepMinValueStateEncoding) argBufferStateType).keyColIndices,
@@ -5,6 +5,7 @@ import java.util.List;
 import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
 import edu.washington.escience.myria.expression.Expression;
 import edu.washington.escience.myria.operator.Apply;
+import edu.washington.escience.myria.operator.KeyedStatefulApply;
 import edu.washington.escience.myria.operator.StatefulApply;
 
 public class StatefulApplyEncoding extends UnaryOperatorEncoding<Apply> {
@@ -15,9 +16,14 @@ public class StatefulApplyEncoding extends UnaryOperatorEncoding<Apply> {
   public List<Expression> initializerExpressions;
   @Required
   public List<Expression> updaterExpressions;
+  /** If present, a separate state is kept for every distinct value of these columns. */
+  public int[] keyColumns;
 
   @Override
   public Apply construct(ConstructArgs args) {
+    if (keyColumns != null && keyColumns.length > 0) {
+      return new KeyedStatefulApply(null, keyColumns, emitExpressions, initializerExpressions, updaterExpressions);
+    }
     return new StatefulApply(null, emitExpressions, initializerExpressions, updaterExpressions);
   }
 
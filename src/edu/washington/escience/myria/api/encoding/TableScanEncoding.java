@@ -1,14 +1,23 @@
 package edu.washington.escience.myria.api.encoding;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.ws.rs.core.Response.Status;
 
+import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 
 import edu.washington.escience.myria.RelationKey;
 import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.api.MyriaApiException;
 import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
 import edu.washington.escience.myria.coordinator.catalog.CatalogException;
+import edu.washington.escience.myria.expression.Expression;
+import edu.washington.escience.myria.expression.evaluate.ExpressionOperatorParameter;
+import edu.washington.escience.myria.expression.evaluate.SqlExpressionTranslator;
 import edu.washington.escience.myria.operator.DbQueryScan;
 import edu.washington.escience.myria.parallel.Server;
 
@@ -18,6 +27,13 @@ public class TableScanEncoding extends LeafOperatorEncoding<DbQueryScan> {
   public RelationKey relationKey;
   public Integer storedRelationId;
 
+  /** The SQL conditions of the Filters that have been pushed down into this scan. */
+  private final List<String> pushedConditions = new ArrayList<String>();
+  /** The SQL select list of the Apply that has been pushed down into this scan, or null. */
+  private String pushedSelectList;
+  /** The output schema of the Apply that has been pushed down into this scan, or null. */
+  private Schema pushedSchema;
+
   @Override
   public DbQueryScan construct(ConstructArgs args) {
     Schema schema;
@@ -28,6 +44,76 @@ public class TableScanEncoding extends LeafOperatorEncoding<DbQueryScan> {
       throw new MyriaApiException(Status.INTERNAL_SERVER_ERROR, e);
     }
     Preconditions.checkArgument(schema != null, "Specified relation %s does not exist.", relationKey);
-    return new DbQueryScan(relationKey, schema);
+    return construct(schema);
+  }
+
+  /**
+   * @param schema the schema of the scanned relation.
+   * @return the scan of the relation, including the Filters and the Apply that have been pushed down into it.
+   */
+  DbQueryScan construct(final Schema schema) {
+    if (pushedSelectList == null && pushedConditions.isEmpty()) {
+      return new DbQueryScan(relationKey, schema);
+    }
+    String condition = null;
+    if (!pushedConditions.isEmpty()) {
+      condition = Joiner.on(" AND ").join(pushedConditions);
+    }
+    Schema outputSchema = schema;
+    if (pushedSchema != null) {
+      outputSchema = pushedSchema;
+    }
+    return new DbQueryScan(relationKey, outputSchema, pushedSelectList, condition);
+  }
+
+  /**
+   * Push the predicate of a Filter on top of this scan down into the SQL query of the scan. Filters can only be pushed
+   * down below an Apply that has not been pushed down.
+   * 
+   * @param filter the Filter.
+   * @param schema the schema of the scanned relation.
+   * @param dbms the database system that runs the scan.
+   * @return true if the predicate was pushed down, i.e., this scan now also does the work of the Filter.
+   */
+  boolean pushDownFilter(final FilterEncoding filter, final Schema schema, final String dbms) {
+    if (pushedSelectList != null) {
+      return false;
+    }
+    String condition =
+        SqlExpressionTranslator.toSqlCondition(filter.argPredicate.getRootExpressionOperator(), schema, dbms);
+    if (condition == null) {
+      return false;
+    }
+    pushedConditions.add(condition);
+    return true;
+  }
+
+  /**
+   * Push the expressions of an Apply on top of this scan down into the select list of the SQL query of the scan.
+   * 
+   * @param apply the Apply.
+   * @param schema the schema of the scanned relation.
+   * @param dbms the database system that runs the scan.
+   * @return true if the expressions were pushed down, i.e., this scan now also does the work of the Apply.
+   */
+  boolean pushDownApply(final ApplyEncoding apply, final Schema schema, final String dbms) {
+    if (pushedSelectList != null) {
+      return false;
+    }
+    List<String> columns = new ArrayList<String>();
+    ImmutableList.Builder<Type> types = ImmutableList.builder();
+    ImmutableList.Builder<String> names = ImmutableList.builder();
+    for (Expression expression : apply.emitExpressions) {
+      String column = SqlExpressionTranslator.toSqlColumn(expression.getRootExpressionOperator(), schema, dbms);
+      if (column == null) {
+        return false;
+      }
+      columns.add(column);
+      types.add(expression.getOutputType(new ExpressionOperatorParameter(schema)));
+      names.add(expression.getOutputName());
+    }
+    pushedSelectList = Joiner.on(", ").join(columns);
+    pushedSchema = new Schema(types.build(), names.build());
+    return true;
   }
-}
\ No newline at end of file
+}
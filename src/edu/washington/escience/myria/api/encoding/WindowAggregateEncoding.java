@@ -0,0 +1,33 @@
+package edu.washington.escience.myria.api.encoding;
+
+import javax.ws.rs.core.Response.Status;
+
+import edu.washington.escience.myria.api.MyriaApiException;
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.operator.agg.WindowAggregate;
+import edu.washington.escience.myria.operator.agg.WindowFunction;
+
+public class WindowAggregateEncoding extends UnaryOperatorEncoding<WindowAggregate> {
+
+  @Required
+  public int[] argPartitionColumns;
+  @Required
+  public int[] argOrderColumns;
+  @Required
+  public boolean[] argAscending;
+  @Required
+  public WindowFunction[] functions;
+
+  @Override
+  public WindowAggregate construct(ConstructArgs args) {
+    return new WindowAggregate(null, argPartitionColumns, argOrderColumns, argAscending, functions);
+  }
+
+  @Override
+  protected void validateExtra() {
+    if (argOrderColumns.length != argAscending.length) {
+      throw new MyriaApiException(Status.BAD_REQUEST,
+          "order columns number should be equal to ascending orders number!");
+    }
+  }
+}
@@ -7,6 +7,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 
+import edu.washington.escience.myria.api.encoding.PlanFragmentEncoding;
 import edu.washington.escience.myria.api.encoding.Required;
 import edu.washington.escience.myria.parallel.DoWhile;
 import edu.washington.escience.myria.parallel.QueryPlan;
@@ -46,4 +47,12 @@ public class DoWhileEncoding extends SubPlanEncoding {
     return ret.build();
   }
 
+  @Override
+  public List<PlanFragmentEncoding> collectFragments() {
+    ImmutableList.Builder<PlanFragmentEncoding> ret = ImmutableList.builder();
+    for (SubPlanEncoding p : body) {
+      ret.addAll(p.collectFragments());
+    }
+    return ret.build();
+  }
 }
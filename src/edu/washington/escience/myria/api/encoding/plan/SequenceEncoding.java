@@ -7,6 +7,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 
+import edu.washington.escience.myria.api.encoding.PlanFragmentEncoding;
 import edu.washington.escience.myria.api.encoding.Required;
 import edu.washington.escience.myria.parallel.QueryPlan;
 import edu.washington.escience.myria.parallel.Sequence;
@@ -44,4 +45,12 @@ public class SequenceEncoding extends SubPlanEncoding {
     return ret.build();
   }
 
+  @Override
+  public List<PlanFragmentEncoding> collectFragments() {
+    ImmutableList.Builder<PlanFragmentEncoding> ret = ImmutableList.builder();
+    for (SubPlanEncoding p : plans) {
+      ret.addAll(p.collectFragments());
+    }
+    return ret.build();
+  }
 }
@@ -1,5 +1,6 @@
 package edu.washington.escience.myria.api.encoding.plan;
 
+import java.util.List;
 import java.util.Set;
 
 import com.fasterxml.jackson.annotation.JsonSubTypes;
@@ -7,6 +8,7 @@ import com.fasterxml.jackson.annotation.JsonSubTypes.Type;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 
 import edu.washington.escience.myria.api.encoding.MyriaApiEncoding;
+import edu.washington.escience.myria.api.encoding.PlanFragmentEncoding;
 import edu.washington.escience.myria.parallel.QueryPlan;
 
 @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.PROPERTY, property = "type")
@@ -27,4 +29,11 @@ public abstract class SubPlanEncoding extends MyriaApiEncoding {
    * @return the set of workers requested by the client for this subplan.
    */
   public abstract Set<Integer> getWorkers();
+
+  /**
+   * Return all the plan fragments in this subplan, including those of nested subplans.
+   * 
+   * @return all the plan fragments in this subplan.
+   */
+  public abstract List<PlanFragmentEncoding> collectFragments();
 }
@@ -45,4 +45,9 @@ public class SubQueryEncoding extends SubPlanEncoding {
     }
     return ret.build();
   }
-}
\ No newline at end of file
+
+  @Override
+  public List<PlanFragmentEncoding> collectFragments() {
+    return fragments;
+  }
+}
@@ -31,11 +31,14 @@ import edu.washington.escience.myria.api.MyriaApiException;
 import edu.washington.escience.myria.api.MyriaJsonMapperProvider;
 import edu.washington.escience.myria.api.encoding.AbstractConsumerEncoding;
 import edu.washington.escience.myria.api.encoding.AbstractProducerEncoding;
+import edu.washington.escience.myria.api.encoding.BloomFilterBuildEncoding;
+import edu.washington.escience.myria.api.encoding.BloomFilterProbeEncoding;
 import edu.washington.escience.myria.api.encoding.BroadcastConsumerEncoding;
 import edu.washington.escience.myria.api.encoding.BroadcastProducerEncoding;
 import edu.washington.escience.myria.api.encoding.CollectConsumerEncoding;
 import edu.washington.escience.myria.api.encoding.CollectProducerEncoding;
 import edu.washington.escience.myria.api.encoding.ConsumerEncoding;
+import edu.washington.escience.myria.api.encoding.DatasetStatus;
 import edu.washington.escience.myria.api.encoding.DbInsertEncoding;
 import edu.washington.escience.myria.api.encoding.DupElimEncoding;
 import edu.washington.escience.myria.api.encoding.DupElimStateEncoding;
@@ -59,8 +62,12 @@ import edu.washington.escience.myria.api.encoding.SymmetricHashJoinEncoding;
 import edu.washington.escience.myria.api.encoding.TableScanEncoding;
 import edu.washington.escience.myria.api.encoding.TipsyFileScanEncoding;
 import edu.washington.escience.myria.api.encoding.UnionAllEncoding;
+import edu.washington.escience.myria.coordinator.catalog.CatalogException;
+import edu.washington.escience.myria.coordinator.catalog.MasterCatalog;
 import edu.washington.escience.myria.expression.Expression;
 import edu.washington.escience.myria.io.FileSource;
+import edu.washington.escience.myria.operator.BloomFilterBuild;
+import edu.washington.escience.myria.operator.BloomFilterProbe;
 import edu.washington.escience.myria.operator.DbQueryScan;
 import edu.washington.escience.myria.operator.DupElim;
 import edu.washington.escience.myria.operator.FileScan;
@@ -78,6 +85,7 @@ import edu.washington.escience.myria.operator.network.CollectProducer;
 import edu.washington.escience.myria.operator.network.LocalMultiwayConsumer;
 import edu.washington.escience.myria.operator.network.LocalMultiwayProducer;
 import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
+import edu.washington.escience.myria.util.BloomFilter;
 import edu.washington.escience.myria.util.MyriaArrayUtils;
 
 /**
@@ -116,6 +124,11 @@ public class JsonQueryBaseBuilder implements JsonQueryBuilder {
      */
     private final Random rand = new Random();
 
+    /**
+     * The catalog whose statistics guide the choice of operators. Null if there is none.
+     */
+    private MasterCatalog catalog;
+
     /**
      * Constructor.
      */
@@ -203,6 +216,8 @@ public class JsonQueryBaseBuilder implements JsonQueryBuilder {
     OPERATOR_PREFICES.put(TipsyFileScanEncoding.class, "tipsy");
     OPERATOR_PREFICES.put(FileScanEncoding.class, "file");
     OPERATOR_PREFICES.put(FilterEncoding.class, "filter");
+    OPERATOR_PREFICES.put(BloomFilterBuildEncoding.class, "bloomBuild");
+    OPERATOR_PREFICES.put(BloomFilterProbeEncoding.class, "bloomProbe");
   }
 
   /**
@@ -489,6 +504,18 @@ public class JsonQueryBaseBuilder implements JsonQueryBuilder {
     return this;
   }
 
+  /**
+   * Set the catalog whose statistics guide the choice of operators, e.g. whether {@link #hashEquiJoin} drops the tuples
+   * that cannot join with a Bloom filter first.
+   * 
+   * @param catalog the catalog of the relations scanned by the query.
+   * @return this builder.
+   */
+  public final JsonQueryBaseBuilder catalog(final MasterCatalog catalog) {
+    sharedData.catalog = Preconditions.checkNotNull(catalog, "catalog");
+    return this;
+  }
+
   /**
    * @param b the builder.
    * @return the operator name.
@@ -708,9 +735,9 @@ public class JsonQueryBaseBuilder implements JsonQueryBuilder {
     if (currentOp.childrenFields.length == 1) {
       try {
         Field childrenField = currentOp.op.getClass().getField(currentOp.childrenFields[0]);
-        if (childrenField.getType().equals(String.class)) {
+        if (childrenField.getType().equals(Integer.class)) {
           childrenField.set(currentOp.op, childrenNames[0]);
-        } else if (childrenField.getType().equals(String[].class)) {
+        } else if (childrenField.getType().equals(Integer[].class)) {
           childrenField.set(currentOp.op, childrenNames);
         }
       } catch (NoSuchFieldException | SecurityException | IllegalArgumentException | IllegalAccessException e) {
@@ -830,7 +857,9 @@ public class JsonQueryBaseBuilder implements JsonQueryBuilder {
   }
 
   /**
-   * {@link SymmetricHashJoin}.
+   * {@link SymmetricHashJoin}. If the catalog, see {@link #catalog}, shows that the other side is small enough, the
+   * tuples of this side that cannot join are dropped first with a Bloom filter of the other side. See
+   * {@link #bloomFilterReduce}.
    * 
    * @return builder.
    * @param other to join
@@ -841,10 +870,15 @@ public class JsonQueryBaseBuilder implements JsonQueryBuilder {
    */
   public JsonQueryBaseBuilder hashEquiJoin(final JsonQueryBuilder other, final int[] myCmpColumns,
       final int[] myResultColumns, final int[] otherCmpColumns, final int[] otherResultColumns) {
+    JsonQueryBaseBuilder probe = this;
+    long otherEstimatedTuples = ((JsonQueryBaseBuilder) other).estimateNumTuples();
+    if (otherEstimatedTuples >= 0 && otherEstimatedTuples <= MyriaConstants.BLOOM_FILTER_MAX_BUILD_TUPLES) {
+      probe = bloomFilterReduce(other, myCmpColumns, otherCmpColumns, otherEstimatedTuples);
+    }
 
     JsonQueryBaseBuilder jbb =
         buildOperator(SymmetricHashJoinEncoding.class, new String[] { "argChild1", "argChild2" },
-            new JsonQueryBaseBuilder[] { this, (JsonQueryBaseBuilder) other }, NO_PREFERENCE);
+            new JsonQueryBaseBuilder[] { probe, (JsonQueryBaseBuilder) other }, NO_PREFERENCE);
 
     SymmetricHashJoinEncoding join = (SymmetricHashJoinEncoding) jbb.op;
     join.argColumns1 = myCmpColumns;
@@ -854,6 +888,69 @@ public class JsonQueryBaseBuilder implements JsonQueryBuilder {
     return jbb;
   }
 
+  /**
+   * @return an upper bound of the number of tuples output by this operator over all workers, from the number of tuples
+   *         of the relation it scans in the catalog, or -1 if it is not known.
+   */
+  private long estimateNumTuples() {
+    if (op instanceof TableScanEncoding) {
+      if (sharedData.catalog == null) {
+        return -1;
+      }
+      DatasetStatus status;
+      try {
+        status = sharedData.catalog.getDatasetStatus(((TableScanEncoding) op).relationKey);
+      } catch (CatalogException e) {
+        return -1;
+      }
+      if (status == null) {
+        return -1;
+      }
+      /* Imported relations are recorded with an unknown (negative) number of tuples. */
+      return Math.max(-1, status.getNumTuples());
+    }
+    /* These operators output at most the tuples of their only child. */
+    if (children.length == 1
+        && (op instanceof FilterEncoding || op instanceof DupElimEncoding || op instanceof ShuffleProducerEncoding
+            || op instanceof ShuffleConsumerEncoding || op instanceof CollectProducerEncoding
+            || op instanceof CollectConsumerEncoding)) {
+      return children[0].estimateNumTuples();
+    }
+    return -1;
+  }
+
+  /**
+   * {@link BloomFilterBuild} on every worker of the other side, whose words are broadcast to a {@link BloomFilterProbe}
+   * that drops the tuples of this side whose key has definitely not been seen by any of the filters.
+   * 
+   * @return builder.
+   * @param other the side whose keys are added to the filter
+   * @param myKeyColumns my key columns
+   * @param otherKeyColumns other key columns
+   * @param otherEstimatedTuples the estimated number of tuples of the other side, over all workers.
+   */
+  public JsonQueryBaseBuilder bloomFilterReduce(final JsonQueryBuilder other, final int[] myKeyColumns,
+      final int[] otherKeyColumns, final long otherEstimatedTuples) {
+    int numWords = BloomFilter.optimalNumWords(otherEstimatedTuples, MyriaConstants.BLOOM_FILTER_FALSE_POSITIVE_RATE);
+    int numHashFunctions = BloomFilter.optimalNumHashFunctions(otherEstimatedTuples, numWords);
+
+    JsonQueryBaseBuilder build =
+        buildOperator(BloomFilterBuildEncoding.class, "argChild", (JsonQueryBaseBuilder) other, NO_PREFERENCE);
+    BloomFilterBuildEncoding buildEncoding = (BloomFilterBuildEncoding) build.op;
+    buildEncoding.argKeyColumns = otherKeyColumns;
+    buildEncoding.argNumWords = numWords;
+    buildEncoding.argNumHashFunctions = numHashFunctions;
+
+    JsonQueryBaseBuilder probe =
+        buildOperator(BloomFilterProbeEncoding.class, new String[] { "argChild1", "argChild2" },
+            new JsonQueryBaseBuilder[] { this, build.broadcast() }, NO_PREFERENCE);
+    BloomFilterProbeEncoding probeEncoding = (BloomFilterProbeEncoding) probe.op;
+    probeEncoding.argKeyColumns = myKeyColumns;
+    probeEncoding.argNumWords = numWords;
+    probeEncoding.argNumHashFunctions = numHashFunctions;
+    return probe;
+  }
+
   /**
    * {@link Filter}.
    * 
@@ -989,7 +1086,7 @@ public class JsonQueryBaseBuilder implements JsonQueryBuilder {
    */
   public JsonQueryBaseBuilder broadcast() {
     JsonQueryBaseBuilder p = buildOperator(BroadcastProducerEncoding.class, "argChild", this, NO_PREFERENCE);
-    return buildOperator(BroadcastProducerEncoding.class, "argOperatorId", p, NO_PREFERENCE);
+    return buildOperator(BroadcastConsumerEncoding.class, "argOperatorId", p, NO_PREFERENCE);
   }
 
   /**
@@ -105,6 +105,73 @@ public abstract class Column<T extends Comparable<?>> implements ReadableColumn,
     return new FilteredColumn<T>(this, filter);
   }
 
+  /**
+   * Creates a new Column containing the contents of this column including only the specified rows.
+   * 
+   * @param rows the rows to be kept, in increasing order. The array is shared with the new Column, so it must not be
+   *          modified.
+   * @return a new Column containing the contents of this column including only the specified rows.
+   */
+  public Column<T> filter(final int[] rows) {
+    return new FilteredColumn<T>(this, rows);
+  }
+
+  /**
+   * Get the values of this column as an array, e.g., for a loop over the entire column. The array may be the one that
+   * backs this column, so it must not be modified.
+   * 
+   * @return an array whose first {@link #size()} entries are the values of this column.
+   */
+  public int[] getIntValues() {
+    int[] values = new int[size()];
+    for (int row = 0; row < values.length; ++row) {
+      values[row] = getInt(row);
+    }
+    return values;
+  }
+
+  /**
+   * Get the values of this column as an array, e.g., for a loop over the entire column. The array may be the one that
+   * backs this column, so it must not be modified.
+   * 
+   * @return an array whose first {@link #size()} entries are the values of this column.
+   */
+  public long[] getLongValues() {
+    long[] values = new long[size()];
+    for (int row = 0; row < values.length; ++row) {
+      values[row] = getLong(row);
+    }
+    return values;
+  }
+
+  /**
+   * Get the values of this column as an array, e.g., for a loop over the entire column. The array may be the one that
+   * backs this column, so it must not be modified.
+   * 
+   * @return an array whose first {@link #size()} entries are the values of this column.
+   */
+  public float[] getFloatValues() {
+    float[] values = new float[size()];
+    for (int row = 0; row < values.length; ++row) {
+      values[row] = getFloat(row);
+    }
+    return values;
+  }
+
+  /**
+   * Get the values of this column as an array, e.g., for a loop over the entire column. The array may be the one that
+   * backs this column, so it must not be modified.
+   * 
+   * @return an array whose first {@link #size()} entries are the values of this column.
+   */
+  public double[] getDoubleValues() {
+    double[] values = new double[size()];
+    for (int row = 0; row < values.length; ++row) {
+      values[row] = getDouble(row);
+    }
+    return values;
+  }
+
   /**
    * @param type the type of the column to be returned.
    * @return a new empty column of the specified type.
@@ -39,6 +39,11 @@ public final class IntArrayColumn extends IntColumn {
     return data[row];
   }
 
+  @Override
+  public int[] getIntValues() {
+    return data;
+  }
+
   @Override
   public int size() {
     return position;
@@ -52,6 +52,11 @@ public class Expression implements Serializable {
    * Variable name of state.
    */
   public static final String STATE = "state";
+  /**
+   * Prefix of the variable names of the input column arrays in column-at-a-time code, see
+   * {@link ExpressionOperatorParameter#readsColumnArrays()}.
+   */
+  public static final String COLUMN = "col";
 
   /**
    * This is not really unused, it's used automagically by Jackson deserialization.
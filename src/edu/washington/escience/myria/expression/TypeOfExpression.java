@@ -37,7 +37,7 @@ public class TypeOfExpression extends ZeroaryExpression {
 
   @Override
   public Type getOutputType(final ExpressionOperatorParameter parameters) {
-    return parameters.getSchema().getColumnType(columnIdx);
+    return parameters.getSchema().getColumnType(parameters.getInputOffset() + columnIdx);
   }
 
   @Override
@@ -37,14 +37,19 @@ public class VariableExpression extends ZeroaryExpression {
 
   @Override
   public Type getOutputType(final ExpressionOperatorParameter parameters) {
-    return parameters.getSchema().getColumnType(columnIdx);
+    return parameters.getSchema().getColumnType(parameters.getInputOffset() + columnIdx);
   }
 
   @Override
   public String getJavaString(final ExpressionOperatorParameter parameters) {
+    int column = parameters.getInputOffset() + columnIdx;
+    if (parameters.readsColumnArrays()) {
+      return new StringBuilder(Expression.COLUMN).append(column).append('[').append(Expression.ROW).append(']')
+          .toString();
+    }
     // We generate a variable access into the tuple buffer.
     return new StringBuilder(Expression.TB).append(".get").append(getOutputType(parameters).getName()).append(
-        "(").append(columnIdx).append(", ").append(Expression.ROW).append(")").toString();
+        "(").append(column).append(", ").append(Expression.ROW).append(")").toString();
   }
 
   /**
@@ -4,16 +4,18 @@ import edu.washington.escience.myria.expression.VariableExpression;
 import edu.washington.escience.myria.storage.TupleBatch;
 
 /**
- * Interface for evaluating janino expressions that return bools.
+ * Interface for evaluating janino predicates over whole tuple batches.
  */
 public interface BooleanEvalInterface {
   /**
-   * The interface for applying expressions. We only need a reference to the tuple batch and a row id. The variables
-   * will be fetched from the tuple buffer using the rowId provided in {@link VariableExpression}.
+   * The interface for applying predicates. The generated code loops over the rows of the tuple batch and writes the
+   * rows that satisfy the predicate to the selection vector. The variables are fetched from the tuple batch using the
+   * row provided in {@link VariableExpression}.
    * 
    * @param tb a tuple batch
-   * @param rowId the row in the tb that should be used.
-   * @return the result from the evaluation
+   * @param selection the selection vector, with room for at least as many rows as the tuple batch has.
+   * @return the number of rows that satisfy the predicate, which are written in increasing order to the beginning of
+   *         the selection vector.
    */
-  boolean evaluate(final TupleBatch tb, final int rowId);
+  int evaluate(final TupleBatch tb, final int[] selection);
 }
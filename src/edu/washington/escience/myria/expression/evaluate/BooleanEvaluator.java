@@ -1,30 +1,53 @@
 package edu.washington.escience.myria.expression.evaluate;
 
-import java.lang.reflect.InvocationTargetException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 import org.codehaus.commons.compiler.CompilerFactoryFactory;
-import org.codehaus.commons.compiler.IExpressionEvaluator;
+import org.codehaus.commons.compiler.IScriptEvaluator;
 
 import com.google.common.base.Preconditions;
 
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.expression.AndExpression;
 import edu.washington.escience.myria.expression.Expression;
+import edu.washington.escience.myria.expression.ExpressionOperator;
 import edu.washington.escience.myria.storage.TupleBatch;
 
 /**
- * An Expression evaluator for stateless boolean expressions.
+ * An Expression evaluator for stateless boolean expressions. The expression is evaluated over a whole tuple batch at a
+ * time and produces a selection vector of the rows that satisfy it.
+ * 
+ * A conjunction is split into its conjuncts, which are evaluated one after the other, each only on the rows that
+ * satisfied the previous ones. Conjuncts that are constant are folded when compiling.
  */
 public class BooleanEvaluator extends Evaluator {
+  /**
+   * The name of the selection vector in the generated code.
+   */
+  public static final String SELECTION = "selection";
+
+  /**
+   * The names of the parameters of {@link BooleanEvalInterface#evaluate} in the generated code.
+   */
+  private static final String[] PARAMETER_NAMES = new String[] { Expression.TB, SELECTION };
+
   /**
    * Expression evaluator.
    */
   private BooleanEvalInterface evaluator;
 
+  /**
+   * If the expression always evaluates to the same value, that value. Otherwise <code>null</code>.
+   */
+  private Boolean constantValue;
+
   /**
    * Default constructor.
-   *
+   * 
    * @param expression the expression for the evaluator
    * @param parameters parameters that are passed to the expression
    */
@@ -34,36 +57,153 @@ public class BooleanEvaluator extends Evaluator {
   }
 
   /**
-   * Compiles the {@link #javaExpression}.
-   *
+   * The predicate always needs to be compiled, since the constant and copied cases are handled in {@link #compile()}.
+   * 
+   * @return true
+   */
+  @Override
+  public boolean needsCompiling() {
+    return true;
+  }
+
+  /**
+   * Folds the constant conjuncts of the expression and compiles the others into a single loop over a tuple batch.
+   * 
    * @throws DbException compilation failed
    */
   @Override
   public void compile() throws DbException {
+    List<ExpressionOperator> conjuncts = new LinkedList<>();
+    for (ExpressionOperator conjunct : getConjuncts(getExpression().getRootExpressionOperator())) {
+      Expression conjunctExpression = new Expression(conjunct);
+      if (!conjunctExpression.isConstant()) {
+        conjuncts.add(conjunct);
+      } else if (!(Boolean) new ConstantEvaluator(conjunctExpression, getParameters()).eval()) {
+        constantValue = false;
+        return;
+      }
+    }
+    if (conjuncts.isEmpty()) {
+      constantValue = true;
+      return;
+    }
+
+    final String script = getJavaScript(conjuncts);
+    evaluator =
+        CompiledExpressionCache.get(BooleanEvalInterface.class, PARAMETER_NAMES, script,
+            new Callable<BooleanEvalInterface>() {
+              @Override
+              public BooleanEvalInterface call() throws DbException {
+                return compile(script);
+              }
+            });
+  }
+
+  /**
+   * Compiles the body of a {@link BooleanEvalInterface#evaluate} method with Janino.
+   *
+   * @param script the body of the method.
+   * @return the compiled evaluator.
+   * @throws DbException compilation failed
+   */
+  private static BooleanEvalInterface compile(final String script) throws DbException {
     try {
-      IExpressionEvaluator se = CompilerFactoryFactory.getDefaultCompilerFactory().newExpressionEvaluator();
+      IScriptEvaluator se = CompilerFactoryFactory.getDefaultCompilerFactory().newScriptEvaluator();
 
       se.setDefaultImports(MyriaConstants.DEFAULT_JANINO_IMPORTS);
 
-      evaluator =
-          (BooleanEvalInterface) se.createFastEvaluator(getJavaExpression(), BooleanEvalInterface.class, new String[] {
-              Expression.TB, Expression.ROW });
+      return (BooleanEvalInterface) se.createFastEvaluator(script, BooleanEvalInterface.class, PARAMETER_NAMES);
     } catch (Exception e) {
-      throw new DbException("Error when compiling expression " + this, e);
+      throw new DbException("Error when compiling expression " + script, e);
     }
   }
 
   /**
-   * Evaluates the {@link #getJavaExpression()} using the {@link #evaluator}.
-   *
+   * @param op the root of a boolean expression.
+   * @return the operands of the top-level conjunction of the expression, in order.
+   */
+  private static List<ExpressionOperator> getConjuncts(final ExpressionOperator op) {
+    List<ExpressionOperator> conjuncts = new LinkedList<>();
+    if (op instanceof AndExpression) {
+      conjuncts.addAll(getConjuncts(((AndExpression) op).getLeft()));
+      conjuncts.addAll(getConjuncts(((AndExpression) op).getRight()));
+    } else {
+      conjuncts.add(op);
+    }
+    return conjuncts;
+  }
+
+  /**
+   * @param conjuncts the conjuncts of the expression.
+   * @return the body of the generated {@link BooleanEvalInterface#evaluate} method.
+   */
+  private String getJavaScript(final List<ExpressionOperator> conjuncts) {
+    String row = Expression.ROW;
+    StringBuilder sb = new StringBuilder();
+    sb.append("final int numTuples = ").append(Expression.TB).append(".numTuples();\n");
+    sb.append("int count = 0;\n");
+    boolean first = true;
+    for (ExpressionOperator conjunct : conjuncts) {
+      String java = conjunct.getJavaString(getParameters());
+      if (first) {
+        sb.append("for (int ").append(row).append(" = 0; ").append(row).append(" < numTuples; ++").append(row).append(
+            ") {\n");
+        sb.append("  if (").append(java).append(") {\n");
+        sb.append("    ").append(SELECTION).append("[count++] = ").append(row).append(";\n");
+        sb.append("  }\n");
+        sb.append("}\n");
+        sb.append("int remaining;\n");
+        first = false;
+      } else {
+        sb.append("remaining = 0;\n");
+        sb.append("for (int i = 0; i < count; ++i) {\n");
+        sb.append("  final int ").append(row).append(" = ").append(SELECTION).append("[i];\n");
+        sb.append("  if (").append(java).append(") {\n");
+        sb.append("    ").append(SELECTION).append("[remaining++] = ").append(row).append(";\n");
+        sb.append("  }\n");
+        sb.append("}\n");
+        sb.append("count = remaining;\n");
+      }
+    }
+    sb.append("return count;\n");
+    return sb.toString();
+  }
+
+  /**
+   * @return true if the expression is known to be true for every row. Only valid after {@link #compile()}.
+   */
+  public boolean isAlwaysTrue() {
+    return constantValue != null && constantValue;
+  }
+
+  /**
+   * @return true if the expression is known to be false for every row. Only valid after {@link #compile()}.
+   */
+  public boolean isAlwaysFalse() {
+    return constantValue != null && !constantValue;
+  }
+
+  /**
+   * Evaluates the expression on every row of a tuple batch.
+   * 
    * @param tb a tuple batch
-   * @param rowId the row that should be used for input data
-   * @return the result from the evaluation
-   * @throws InvocationTargetException exception thrown from janino
+   * @param selection the selection vector, with room for at least as many rows as the tuple batch has.
+   * @return the number of rows that satisfy the expression, which are written in increasing order to the beginning of
+   *         the selection vector.
    */
-  public boolean eval(final TupleBatch tb, final int rowId) throws InvocationTargetException {
-    Preconditions.checkArgument(evaluator != null,
-        "Call compile first or copy the data if it is the same in the input.");
-    return evaluator.evaluate(tb, rowId);
+  public int evaluate(final TupleBatch tb, final int[] selection) {
+    Preconditions.checkArgument(selection.length >= tb.numTuples(), "selection vector too short");
+    if (constantValue != null) {
+      if (!constantValue) {
+        return 0;
+      }
+      final int numTuples = tb.numTuples();
+      for (int row = 0; row < numTuples; ++row) {
+        selection[row] = row;
+      }
+      return numTuples;
+    }
+    Preconditions.checkArgument(evaluator != null, "Call compile first.");
+    return evaluator.evaluate(tb, selection);
   }
 }
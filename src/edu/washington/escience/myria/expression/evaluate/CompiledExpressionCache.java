@@ -0,0 +1,117 @@
+package edu.washington.escience.myria.expression.evaluate;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants;
+
+/**
+ * A per-JVM cache of the evaluators that Janino compiles from generated Java code. Compiling takes tens of
+ * milliseconds per expression, and the same expressions are compiled by every fragment instance, for every subquery
+ * and for every iteration of a loop.
+ * 
+ * Entries are keyed by the interface that the evaluator implements, its parameter names and the generated code. The
+ * code already encodes everything it depends on from the input and state schemas, i.e., the column indexes and types
+ * that it reads. Compiled evaluators have no state of their own, so one instance is shared by all users. The least
+ * recently used entries are evicted once the cache holds {@link MyriaConstants#COMPILED_EXPRESSION_CACHE_SIZE}
+ * evaluators. Failed compilations are not cached.
+ */
+public final class CompiledExpressionCache {
+  /** Utility class cannot be instantiated. */
+  private CompiledExpressionCache() {
+  }
+
+  /** The compiled evaluators. */
+  private static final Cache<Key, Object> CACHE = CacheBuilder.newBuilder().maximumSize(
+      MyriaConstants.COMPILED_EXPRESSION_CACHE_SIZE).recordStats().build();
+
+  /**
+   * Get the evaluator compiled from some code, compiling it if it is not cached.
+   * 
+   * @param <T> the interface that the evaluator implements.
+   * @param evalInterface the interface that the evaluator implements.
+   * @param parameterNames the names of the parameters of the interface method, as used by the code.
+   * @param code the generated code.
+   * @param compiler compiles the code into an evaluator.
+   * @return the evaluator.
+   * @throws DbException if the code does not compile.
+   */
+  public static <T> T get(final Class<T> evalInterface, final String[] parameterNames, final String code,
+      final Callable<? extends T> compiler) throws DbException {
+    try {
+      return evalInterface.cast(CACHE.get(new Key(evalInterface, parameterNames, code), compiler));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      if (e.getCause() instanceof DbException) {
+        throw (DbException) e.getCause();
+      }
+      throw new DbException("Error when compiling expression: " + code, e.getCause());
+    }
+  }
+
+  /**
+   * @return the hit, miss and eviction counts of the cache since the JVM started.
+   */
+  public static CacheStats getStats() {
+    return CACHE.stats();
+  }
+
+  /**
+   * @return the number of cached evaluators.
+   */
+  public static long size() {
+    return CACHE.size();
+  }
+
+  /**
+   * Drop all cached evaluators.
+   */
+  public static void clear() {
+    CACHE.invalidateAll();
+  }
+
+  /**
+   * The key of a cached evaluator.
+   */
+  private static final class Key {
+    /** The interface that the evaluator implements. */
+    private final Class<?> evalInterface;
+    /** The names of the parameters of the interface method. */
+    private final String[] parameterNames;
+    /** The generated code. */
+    private final String code;
+
+    /**
+     * @param evalInterface the interface that the evaluator implements.
+     * @param parameterNames the names of the parameters of the interface method.
+     * @param code the generated code.
+     */
+    Key(final Class<?> evalInterface, final String[] parameterNames, final String code) {
+      this.evalInterface = Objects.requireNonNull(evalInterface, "evalInterface");
+      this.parameterNames = parameterNames.clone();
+      this.code = Objects.requireNonNull(code, "code");
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(evalInterface, Arrays.hashCode(parameterNames), code);
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      Key otherKey = (Key) other;
+      return evalInterface.equals(otherKey.evalInterface) && Arrays.equals(parameterNames, otherKey.parameterNames)
+          && code.equals(otherKey.code);
+    }
+  }
+}
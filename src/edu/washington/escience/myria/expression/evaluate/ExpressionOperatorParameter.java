@@ -12,6 +12,12 @@ public class ExpressionOperatorParameter {
   private final Schema stateSchema;
   /** The id of the worker that is running the expression. */
   private final Integer workerID;
+  /** True if the values of the input columns are read from primitive arrays instead of the input tuple batch. */
+  private final boolean columnArrays;
+  /** True if the values of the state are read from fields instead of the state tuple. */
+  private final boolean stateFields;
+  /** The column of the input tuple batch that is read as column 0. */
+  private final int inputOffset;
 
   /**
    * Simple constructor.
@@ -20,6 +26,9 @@ public class ExpressionOperatorParameter {
     schema = null;
     stateSchema = null;
     workerID = null;
+    columnArrays = false;
+    stateFields = false;
+    inputOffset = 0;
   }
 
   /**
@@ -29,6 +38,9 @@ public class ExpressionOperatorParameter {
     this.schema = schema;
     stateSchema = null;
     workerID = null;
+    columnArrays = false;
+    stateFields = false;
+    inputOffset = 0;
   }
 
   /**
@@ -39,6 +51,9 @@ public class ExpressionOperatorParameter {
     this.schema = schema;
     this.stateSchema = stateSchema;
     workerID = null;
+    columnArrays = false;
+    stateFields = false;
+    inputOffset = 0;
   }
 
   /**
@@ -49,6 +64,9 @@ public class ExpressionOperatorParameter {
     this.schema = schema;
     stateSchema = null;
     this.workerID = workerID;
+    columnArrays = false;
+    stateFields = false;
+    inputOffset = 0;
   }
 
   /**
@@ -60,6 +78,75 @@ public class ExpressionOperatorParameter {
     this.schema = schema;
     this.stateSchema = stateSchema;
     this.workerID = workerID;
+    columnArrays = false;
+    stateFields = false;
+    inputOffset = 0;
+  }
+
+  /**
+   * @param schema the input schema
+   * @param stateSchema the schema of the state
+   * @param workerID id of the worker that is running the expression, or null
+   * @param columnArrays true if the values of the input columns are read from primitive arrays
+   * @param stateFields true if the values of the state are read from fields
+   * @param inputOffset the column of the input tuple batch that is read as column 0
+   */
+  private ExpressionOperatorParameter(final Schema schema, final Schema stateSchema, final Integer workerID,
+      final boolean columnArrays, final boolean stateFields, final int inputOffset) {
+    this.schema = schema;
+    this.stateSchema = stateSchema;
+    this.workerID = workerID;
+    this.columnArrays = columnArrays;
+    this.stateFields = stateFields;
+    this.inputOffset = inputOffset;
+  }
+
+  /**
+   * @return a copy of these parameters for generating column-at-a-time code, in which the value of column i is read
+   *         from the primitive array named {@link edu.washington.escience.myria.expression.Expression#COLUMN}i.
+   */
+  public ExpressionOperatorParameter withColumnArrays() {
+    return new ExpressionOperatorParameter(schema, stateSchema, workerID, true, stateFields, inputOffset);
+  }
+
+  /**
+   * @return a copy of these parameters for generating code of a class that keeps the state in fields, in which the
+   *         value of state column i is read from the field named
+   *         {@link edu.washington.escience.myria.expression.Expression#STATE}i.
+   */
+  public ExpressionOperatorParameter withStateFields() {
+    return new ExpressionOperatorParameter(schema, stateSchema, workerID, columnArrays, true, inputOffset);
+  }
+
+  /**
+   * @param offset the column of the input tuple batch that is read as column 0. The input schema is the schema of the
+   *          whole tuple batch.
+   * @return a copy of these parameters for generating code in which input column i is read from column
+   *         <code>offset + i</code> of the input tuple batch.
+   */
+  public ExpressionOperatorParameter withInputOffset(final int offset) {
+    return new ExpressionOperatorParameter(schema, stateSchema, workerID, columnArrays, stateFields, offset);
+  }
+
+  /**
+   * @return true if the values of the input columns are read from primitive arrays instead of the input tuple batch.
+   */
+  public boolean readsColumnArrays() {
+    return columnArrays;
+  }
+
+  /**
+   * @return true if the values of the state are read from fields instead of the state tuple.
+   */
+  public boolean readsStateFields() {
+    return stateFields;
+  }
+
+  /**
+   * @return the column of the input tuple batch that is read as column 0.
+   */
+  public int getInputOffset() {
+    return inputOffset;
   }
 
   /**
@@ -1,10 +1,15 @@
 package edu.washington.escience.myria.expression.evaluate;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.LinkedList;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
 
 import org.codehaus.commons.compiler.CompileException;
 import org.codehaus.commons.compiler.CompilerFactoryFactory;
 import org.codehaus.commons.compiler.IExpressionEvaluator;
+import org.codehaus.commons.compiler.IScriptEvaluator;
 
 import com.google.common.base.Preconditions;
 
@@ -12,6 +17,10 @@ import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.DoubleColumn;
+import edu.washington.escience.myria.column.FloatColumn;
+import edu.washington.escience.myria.column.IntArrayColumn;
+import edu.washington.escience.myria.column.LongColumn;
 import edu.washington.escience.myria.column.builder.ColumnBuilder;
 import edu.washington.escience.myria.column.builder.ColumnFactory;
 import edu.washington.escience.myria.column.builder.WritableColumn;
@@ -33,11 +42,28 @@ public class GenericEvaluator extends Evaluator {
    * */
   private static final org.slf4j.Logger LOGGER = org.slf4j.LoggerFactory.getLogger(GenericEvaluator.class);
 
+  /**
+   * The names of the parameters of {@link EvalInterface#evaluate} in the generated code.
+   */
+  private static final String[] PARAMETER_NAMES = new String[] {
+      Expression.TB, Expression.ROW, Expression.RESULT, Expression.STATE };
+
+  /**
+   * The names of the parameters of {@link VectorEvalInterface#evaluate} in the generated code.
+   */
+  private static final String[] VECTOR_PARAMETER_NAMES = new String[] { Expression.TB };
+
   /**
    * Expression evaluator.
    */
   private EvalInterface evaluator;
 
+  /**
+   * Column-at-a-time expression evaluator, or <code>null</code> if the expression cannot be evaluated a column at a
+   * time.
+   */
+  private VectorEvalInterface vectorEvaluator;
+
   /**
    * Default constructor.
    *
@@ -58,7 +84,152 @@ public class GenericEvaluator extends Evaluator {
     Preconditions.checkArgument(needsCompiling() || (getStateSchema() != null),
         "This expression does not need to be compiled.");
 
-    String javaExpression = getJavaExpression();
+    final String javaExpression = getJavaExpression();
+    evaluator =
+        CompiledExpressionCache.get(EvalInterface.class, PARAMETER_NAMES, javaExpression, new Callable<EvalInterface>() {
+          @Override
+          public EvalInterface call() throws DbException {
+            return compile(javaExpression);
+          }
+        });
+
+    if (isVectorizable()) {
+      final String script = getVectorJavaScript();
+      vectorEvaluator =
+          CompiledExpressionCache.get(VectorEvalInterface.class, VECTOR_PARAMETER_NAMES, script,
+              new Callable<VectorEvalInterface>() {
+                @Override
+                public VectorEvalInterface call() throws DbException {
+                  return compileVector(script);
+                }
+              });
+    }
+  }
+
+  /**
+   * An expression can be evaluated a column at a time if it only reads numeric input columns, does not use state, and
+   * has a numeric result. Each input column is then read from a primitive array in a tight loop that the JIT can
+   * optimize, instead of through a virtual call per row and value.
+   * 
+   * @return true if the expression can be evaluated a column at a time.
+   */
+  private boolean isVectorizable() {
+    if (needsState() || getStateSchema() != null || !isNumeric(getOutputType())) {
+      return false;
+    }
+    /* A Java expression given in the plan overrides the generated one, and reads from the tuple batch. */
+    if (!getExpression().getJavaExpression(getParameters()).equals(
+        getExpression().getRootExpressionOperator().getJavaString(getParameters()))) {
+      return false;
+    }
+    for (int column : getInputColumns()) {
+      if (!isNumeric(getInputSchema().getColumnType(column))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param type a type.
+   * @return true if the type is a numeric type with a primitive array column.
+   */
+  private static boolean isNumeric(final Type type) {
+    return type == Type.INT_TYPE || type == Type.LONG_TYPE || type == Type.FLOAT_TYPE || type == Type.DOUBLE_TYPE;
+  }
+
+  /**
+   * @return the input columns that the expression reads, in increasing order.
+   */
+  private SortedSet<Integer> getInputColumns() {
+    SortedSet<Integer> columns = new TreeSet<Integer>();
+    LinkedList<ExpressionOperator> ops = new LinkedList<ExpressionOperator>();
+    ops.add(getExpression().getRootExpressionOperator());
+    while (!ops.isEmpty()) {
+      ExpressionOperator op = ops.pop();
+      if (op instanceof VariableExpression) {
+        columns.add(((VariableExpression) op).getColumnIdx());
+      }
+      ops.addAll(op.getChildren());
+    }
+    return columns;
+  }
+
+  /**
+   * @return the body of a {@link VectorEvalInterface#evaluate} method that evaluates the expression over an entire
+   *         tuple batch.
+   */
+  private String getVectorJavaScript() {
+    ExpressionOperatorParameter arrayParameters = getParameters().withColumnArrays();
+    Type type = getOutputType();
+    String resultType = type.toJavaType().getName();
+    StringBuilder script = new StringBuilder();
+    script.append("final int numTuples = ").append(Expression.TB).append(".numTuples();\n");
+    for (int column : getInputColumns()) {
+      Type columnType = getInputSchema().getColumnType(column);
+      script.append("final ").append(columnType.toJavaType().getName()).append("[] ").append(Expression.COLUMN).append(
+          column).append(" = ((").append(Column.class.getName()).append(") ").append(Expression.TB).append(
+          ".getDataColumns().get(").append(column).append(")).get").append(columnType.getName()).append("Values();\n");
+    }
+    script.append("final ").append(resultType).append("[] ").append(Expression.RESULT).append(" = new ").append(
+        resultType).append("[numTuples];\n");
+    script.append("for (int ").append(Expression.ROW).append(" = 0; ").append(Expression.ROW).append(
+        " < numTuples; ++").append(Expression.ROW).append(") {\n");
+    script.append("  ").append(Expression.RESULT).append('[').append(Expression.ROW).append("] = ").append(
+        getExpression().getJavaExpression(arrayParameters)).append(";\n");
+    script.append("}\n");
+    script.append("return new ").append(getResultColumnClass(type).getName()).append('(').append(Expression.RESULT)
+        .append(", numTuples);\n");
+    return script.toString();
+  }
+
+  /**
+   * @param type a numeric type.
+   * @return the column class that wraps a primitive array of that type.
+   */
+  private static Class<?> getResultColumnClass(final Type type) {
+    switch (type) {
+      case INT_TYPE:
+        return IntArrayColumn.class;
+      case LONG_TYPE:
+        return LongColumn.class;
+      case FLOAT_TYPE:
+        return FloatColumn.class;
+      case DOUBLE_TYPE:
+        return DoubleColumn.class;
+      default:
+        throw new IllegalArgumentException("No primitive array column of type " + type);
+    }
+  }
+
+  /**
+   * Compiles the body of a {@link VectorEvalInterface#evaluate} method with Janino.
+   * 
+   * @param script the body of the method.
+   * @return the compiled evaluator.
+   * @throws DbException compilation failed
+   */
+  private static VectorEvalInterface compileVector(final String script) throws DbException {
+    try {
+      IScriptEvaluator se = CompilerFactoryFactory.getDefaultCompilerFactory().newScriptEvaluator();
+
+      se.setDefaultImports(MyriaConstants.DEFAULT_JANINO_IMPORTS);
+
+      return (VectorEvalInterface) se.createFastEvaluator(script, VectorEvalInterface.class, VECTOR_PARAMETER_NAMES);
+    } catch (Exception e) {
+      LOGGER.error("Error when compiling expression {}: {}", script, e);
+      throw new DbException("Error when compiling expression: " + script, e);
+    }
+  }
+
+  /**
+   * Compiles a Java expression with Janino.
+   *
+   * @param javaExpression the Java expression.
+   * @return the compiled evaluator.
+   * @throws DbException compilation failed
+   */
+  private static EvalInterface compile(final String javaExpression) throws DbException {
     IExpressionEvaluator se;
     try {
       se = CompilerFactoryFactory.getDefaultCompilerFactory().newExpressionEvaluator();
@@ -71,9 +242,7 @@ public class GenericEvaluator extends Evaluator {
     se.setDefaultImports(MyriaConstants.DEFAULT_JANINO_IMPORTS);
 
     try {
-      evaluator =
-          (EvalInterface) se.createFastEvaluator(javaExpression, EvalInterface.class, new String[] {
-              Expression.TB, Expression.ROW, Expression.RESULT, Expression.STATE });
+      return (EvalInterface) se.createFastEvaluator(javaExpression, EvalInterface.class, PARAMETER_NAMES);
     } catch (CompileException e) {
       LOGGER.error("Error when compiling expression {}: {}", javaExpression, e);
       throw new DbException("Error when compiling expression: " + javaExpression, e);
@@ -112,7 +281,7 @@ public class GenericEvaluator extends Evaluator {
 
   /**
    * Evaluate an expression over an entire TupleBatch and return the column of results. This method cannot take state
-   * into consideration.
+   * into consideration. Numeric expressions over numeric columns are evaluated a column at a time.
    *
    * @param tb the tuples to be input to this expression
    * @return a column containing the result of evaluating this expression on the entire TupleBatch
@@ -125,6 +294,15 @@ public class GenericEvaluator extends Evaluator {
       return tb.getDataColumns().get(((VariableExpression) op).getColumnIdx());
     }
 
+    if (vectorEvaluator != null) {
+      try {
+        return vectorEvaluator.evaluate(tb);
+      } catch (Exception e) {
+        LOGGER.error(getJavaExpression(), e);
+        throw e;
+      }
+    }
+
     Type type = getOutputType();
 
     ColumnBuilder<?> ret = ColumnFactory.allocateColumn(type);
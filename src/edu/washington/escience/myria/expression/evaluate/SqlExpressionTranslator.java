@@ -0,0 +1,273 @@
+package edu.washington.escience.myria.expression.evaluate;
+
+import java.util.Objects;
+
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.expression.AndExpression;
+import edu.washington.escience.myria.expression.BinaryExpression;
+import edu.washington.escience.myria.expression.ConstantExpression;
+import edu.washington.escience.myria.expression.EqualsExpression;
+import edu.washington.escience.myria.expression.ExpressionOperator;
+import edu.washington.escience.myria.expression.GreaterThanExpression;
+import edu.washington.escience.myria.expression.GreaterThanOrEqualsExpression;
+import edu.washington.escience.myria.expression.LessThanExpression;
+import edu.washington.escience.myria.expression.LessThanOrEqualsExpression;
+import edu.washington.escience.myria.expression.MinusExpression;
+import edu.washington.escience.myria.expression.NegateExpression;
+import edu.washington.escience.myria.expression.NotEqualsExpression;
+import edu.washington.escience.myria.expression.NotExpression;
+import edu.washington.escience.myria.expression.OrExpression;
+import edu.washington.escience.myria.expression.PlusExpression;
+import edu.washington.escience.myria.expression.TimesExpression;
+import edu.washington.escience.myria.expression.VariableExpression;
+
+/**
+ * Translates expressions over the columns of a relation into SQL that Postgres and SQLite evaluate like the compiled
+ * Java expression would, so that a filter or projection can run inside the database.
+ * 
+ * Only a conservative subset is translated: column references, numeric and string constants, comparisons, AND, OR and
+ * NOT, and +, -, * and negation on longs. Strings are only compared for equality because the collation of the database
+ * may order them differently from Java. Booleans, datetimes, floating point arithmetic and division are not translated
+ * because their semantics differ between Java and SQL. Neither is arithmetic on ints: Java wraps around at 32 bits,
+ * while SQLite computes in 64 bits and Postgres raises an error.
+ * 
+ * Two differences remain. When arithmetic on longs overflows, Java wraps around, SQLite switches to floating point, and
+ * Postgres raises an error. And Postgres orders NaN after every other floating point value, while every Java
+ * comparison with NaN is false.
+ */
+public final class SqlExpressionTranslator {
+  /** Utility class cannot be instantiated. */
+  private SqlExpressionTranslator() {
+  }
+
+  /**
+   * Translate a predicate to a SQL condition.
+   * 
+   * @param predicate the predicate.
+   * @param schema the schema of the relation that the predicate refers to.
+   * @param dbms the database system that evaluates the condition, e.g. {@link MyriaConstants#STORAGE_SYSTEM_SQLITE}.
+   * @return the SQL condition, or <code>null</code> if the predicate cannot be translated.
+   */
+  public static String toSqlCondition(final ExpressionOperator predicate, final Schema schema, final String dbms) {
+    Objects.requireNonNull(predicate, "predicate");
+    Objects.requireNonNull(schema, "schema");
+    Objects.requireNonNull(dbms, "dbms");
+    if (getType(predicate, schema) != Type.BOOLEAN_TYPE) {
+      return null;
+    }
+    return toSql(predicate, schema, dbms);
+  }
+
+  /**
+   * Translate an expression that computes a column to a SQL select list entry.
+   * 
+   * @param expression the expression.
+   * @param schema the schema of the relation that the expression refers to.
+   * @param dbms the database system that evaluates the expression, e.g. {@link MyriaConstants#STORAGE_SYSTEM_SQLITE}.
+   * @return the SQL expression, or <code>null</code> if the expression cannot be translated.
+   */
+  public static String toSqlColumn(final ExpressionOperator expression, final Schema schema, final String dbms) {
+    Objects.requireNonNull(expression, "expression");
+    Objects.requireNonNull(schema, "schema");
+    Objects.requireNonNull(dbms, "dbms");
+    Type type = getType(expression, schema);
+    if (type == null || type == Type.BOOLEAN_TYPE || type == Type.DATETIME_TYPE) {
+      return null;
+    }
+    return toSql(expression, schema, dbms);
+  }
+
+  /**
+   * @param expression an expression.
+   * @param schema the schema of the relation that the expression refers to.
+   * @return the output type of the expression, or <code>null</code> if it does not type check.
+   */
+  private static Type getType(final ExpressionOperator expression, final Schema schema) {
+    try {
+      return expression.getOutputType(new ExpressionOperatorParameter(schema));
+    } catch (IllegalArgumentException | IndexOutOfBoundsException | NullPointerException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @param type a type.
+   * @return true if the type is a numeric type.
+   */
+  private static boolean isNumeric(final Type type) {
+    return type == Type.INT_TYPE || type == Type.LONG_TYPE || type == Type.FLOAT_TYPE || type == Type.DOUBLE_TYPE;
+  }
+
+  /**
+   * @param name the name of a column.
+   * @param dbms the database system.
+   * @return the column reference, quoted as the access method of the database system quotes it when it creates tables.
+   *         SQLite columns are created as <code>[name]</code>, which allows keywords such as <code>group</code>. The
+   *         JDBC access methods create them unquoted, and quoting them would make Postgres match them case-sensitively.
+   */
+  private static String columnToSql(final String name, final String dbms) {
+    if (MyriaConstants.STORAGE_SYSTEM_SQLITE.equals(dbms)) {
+      return "[" + name + "]";
+    }
+    return name;
+  }
+
+  /**
+   * @param expression an expression that type checks.
+   * @param schema the schema of the relation that the expression refers to.
+   * @param dbms the database system.
+   * @return the SQL of the expression, or <code>null</code> if it cannot be translated.
+   */
+  private static String toSql(final ExpressionOperator expression, final Schema schema, final String dbms) {
+    if (expression instanceof VariableExpression) {
+      int column = ((VariableExpression) expression).getColumnIdx();
+      Type type = schema.getColumnType(column);
+      if (!isNumeric(type) && type != Type.STRING_TYPE) {
+        return null;
+      }
+      return columnToSql(schema.getColumnName(column), dbms);
+    }
+    if (expression instanceof ConstantExpression) {
+      return constantToSql((ConstantExpression) expression, schema);
+    }
+    if (expression instanceof NotExpression) {
+      String operand = toSql(((NotExpression) expression).getOperand(), schema, dbms);
+      if (operand == null) {
+        return null;
+      }
+      return "(NOT " + operand + ")";
+    }
+    if (expression instanceof NegateExpression) {
+      ExpressionOperator operand = ((NegateExpression) expression).getOperand();
+      if (getType(operand, schema) != Type.LONG_TYPE) {
+        return null;
+      }
+      String sql = toSql(operand, schema, dbms);
+      if (sql == null) {
+        return null;
+      }
+      /* The space keeps a negative operand from turning into a SQL comment. */
+      return "(- " + sql + ")";
+    }
+    if (expression instanceof AndExpression) {
+      return binaryToSql((BinaryExpression) expression, " AND ", schema, dbms);
+    }
+    if (expression instanceof OrExpression) {
+      return binaryToSql((BinaryExpression) expression, " OR ", schema, dbms);
+    }
+    if (expression instanceof PlusExpression || expression instanceof MinusExpression
+        || expression instanceof TimesExpression) {
+      BinaryExpression binary = (BinaryExpression) expression;
+      /* A long result means that both operands are ints or longs, and that Java computes in 64 bits. */
+      if (getType(binary, schema) != Type.LONG_TYPE) {
+        return null;
+      }
+      String infix;
+      if (expression instanceof PlusExpression) {
+        infix = " + ";
+      } else if (expression instanceof MinusExpression) {
+        infix = " - ";
+      } else {
+        infix = " * ";
+      }
+      return binaryToSql(binary, infix, schema, dbms);
+    }
+    if (expression instanceof EqualsExpression) {
+      return comparisonToSql((BinaryExpression) expression, " = ", true, schema, dbms);
+    }
+    if (expression instanceof NotEqualsExpression) {
+      return comparisonToSql((BinaryExpression) expression, " <> ", true, schema, dbms);
+    }
+    if (expression instanceof LessThanExpression) {
+      return comparisonToSql((BinaryExpression) expression, " < ", false, schema, dbms);
+    }
+    if (expression instanceof LessThanOrEqualsExpression) {
+      return comparisonToSql((BinaryExpression) expression, " <= ", false, schema, dbms);
+    }
+    if (expression instanceof GreaterThanExpression) {
+      return comparisonToSql((BinaryExpression) expression, " > ", false, schema, dbms);
+    }
+    if (expression instanceof GreaterThanOrEqualsExpression) {
+      return comparisonToSql((BinaryExpression) expression, " >= ", false, schema, dbms);
+    }
+    return null;
+  }
+
+  /**
+   * @param expression a binary expression.
+   * @param infix the SQL operator.
+   * @param schema the schema of the relation that the expression refers to.
+   * @param dbms the database system.
+   * @return the SQL of the expression, or <code>null</code> if either child cannot be translated.
+   */
+  private static String binaryToSql(final BinaryExpression expression, final String infix, final Schema schema,
+      final String dbms) {
+    String left = toSql(expression.getLeft(), schema, dbms);
+    if (left == null) {
+      return null;
+    }
+    String right = toSql(expression.getRight(), schema, dbms);
+    if (right == null) {
+      return null;
+    }
+    return "(" + left + infix + right + ")";
+  }
+
+  /**
+   * @param expression a comparison.
+   * @param infix the SQL operator.
+   * @param equality true if the comparison only tests for equality.
+   * @param schema the schema of the relation that the expression refers to.
+   * @param dbms the database system.
+   * @return the SQL of the comparison, or <code>null</code> if it cannot be translated.
+   */
+  private static String comparisonToSql(final BinaryExpression expression, final String infix,
+      final boolean equality, final Schema schema, final String dbms) {
+    Type leftType = getType(expression.getLeft(), schema);
+    if (!isNumeric(leftType) && !(equality && leftType == Type.STRING_TYPE)) {
+      return null;
+    }
+    return binaryToSql(expression, infix, schema, dbms);
+  }
+
+  /**
+   * @param constant a constant.
+   * @param schema the schema of the relation.
+   * @return the SQL literal of the constant, or <code>null</code> if it cannot be translated.
+   */
+  private static String constantToSql(final ConstantExpression constant, final Schema schema) {
+    String value = constant.getValue();
+    try {
+      switch (constant.getOutputType(new ExpressionOperatorParameter(schema))) {
+        case INT_TYPE:
+          return String.valueOf(Integer.parseInt(value));
+        case LONG_TYPE:
+          return String.valueOf(Long.parseLong(value.substring(0, value.length() - 1)));
+        case FLOAT_TYPE:
+          /* The database compares float columns as doubles, so use the exact double value of the float. */
+          return finiteToSql(Float.parseFloat(value));
+        case DOUBLE_TYPE:
+          return finiteToSql(Double.parseDouble(value));
+        case STRING_TYPE:
+          return "'" + value.replace("'", "''") + "'";
+        default:
+          return null;
+      }
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @param value a floating point value.
+   * @return the SQL literal of the value, or <code>null</code> if it is not finite.
+   */
+  private static String finiteToSql(final double value) {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      return null;
+    }
+    return Double.toString(value);
+  }
+}
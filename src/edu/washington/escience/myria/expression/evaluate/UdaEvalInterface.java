@@ -0,0 +1,65 @@
+package edu.washington.escience.myria.expression.evaluate;
+
+import edu.washington.escience.myria.storage.AppendableTable;
+import edu.washington.escience.myria.storage.ReadableTable;
+import edu.washington.escience.myria.storage.Tuple;
+
+/**
+ * Interface for user-defined aggregates compiled by janino. Each instance holds the state of one aggregate in
+ * primitive fields.
+ */
+public interface UdaEvalInterface {
+  /**
+   * @return a new instance of the aggregate, with the state set by the initializers.
+   */
+  UdaEvalInterface newState();
+
+  /**
+   * Update the state with a row of the input. All updaters see the state as it was before this row.
+   * 
+   * @param tb the input
+   * @param row the row of the input
+   */
+  void update(final ReadableTable tb, final int row);
+
+  /**
+   * Update the state with all rows of the input.
+   * 
+   * @param tb the input
+   */
+  void updateAll(final ReadableTable tb);
+
+  /**
+   * Append the values of the emitters to a table.
+   * 
+   * @param dest the table
+   * @param destColumn the column of the table that the value of the first emitter is appended to
+   */
+  void emit(final AppendableTable dest, final int destColumn);
+
+  /**
+   * Append the values of the emitters to a table, when the emitters may also read a row of the input, as in a
+   * {@link edu.washington.escience.myria.operator.StatefulApply}.
+   * 
+   * @param tb the input
+   * @param row the row of the input
+   * @param dest the table
+   * @param destColumn the column of the table that the value of the first emitter is appended to
+   */
+  void emit(final ReadableTable tb, final int row, final AppendableTable dest, final int destColumn);
+
+  /**
+   * Copy the state variables to a tuple, e.g., to serialize them.
+   * 
+   * @param dest the tuple, with one column per state variable
+   */
+  void saveState(final Tuple dest);
+
+  /**
+   * Set the state variables to the values saved by {@link #saveState(Tuple)}.
+   * 
+   * @param src the saved state, with one column per state variable
+   * @param row the row of the saved state
+   */
+  void loadState(final ReadableTable src, final int row);
+}
@@ -0,0 +1,18 @@
+package edu.washington.escience.myria.expression.evaluate;
+
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * Interface for evaluating janino expressions a column at a time.
+ */
+public interface VectorEvalInterface {
+  /**
+   * The interface for applying expressions to entire tuple batches. The generated code reads each input column into a
+   * primitive array once and computes the result in a tight loop over these arrays.
+   * 
+   * @param tb a tuple batch
+   * @return the column holding the value of the expression for each row of the tuple batch.
+   */
+  Column<?> evaluate(final TupleBatch tb);
+}
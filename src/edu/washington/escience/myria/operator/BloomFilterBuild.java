@@ -0,0 +1,108 @@
+package edu.washington.escience.myria.operator;
+
+import java.util.Objects;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.BloomFilter;
+
+/**
+ * Builds a {@link BloomFilter} on the key columns of its input, and returns its non-zero words as tuples of
+ * {@link #FILTER_SCHEMA} when the input ends. Broadcasting these tuples to a {@link BloomFilterProbe} on every worker
+ * merges the filters of all workers into a filter of the whole relation.
+ */
+public final class BloomFilterBuild extends UnaryOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** The schema of the words of a Bloom filter. */
+  public static final Schema FILTER_SCHEMA = Schema.ofFields("word", Type.INT_TYPE, "bits", Type.LONG_TYPE);
+
+  /** The key columns. */
+  private final int[] keyColumns;
+  /** The number of 64-bit words of the filter. */
+  private final int numWords;
+  /** The number of bits set for each key. */
+  private final int numHashFunctions;
+
+  /** The filter. */
+  private transient BloomFilter filter;
+  /** Buffers the words of the filter until they are returned. */
+  private transient TupleBatchBuffer ans;
+
+  /**
+   * @param child the source of the keys.
+   * @param keyColumns the key columns.
+   * @param numWords the number of 64-bit words of the filter.
+   * @param numHashFunctions the number of bits set for each key.
+   */
+  public BloomFilterBuild(final Operator child, final int[] keyColumns, final int numWords,
+      final int numHashFunctions) {
+    super(child);
+    this.keyColumns = Objects.requireNonNull(keyColumns, "keyColumns");
+    Preconditions.checkArgument(keyColumns.length > 0, "must specify at least one key column");
+    this.numWords = numWords;
+    this.numHashFunctions = numHashFunctions;
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    filter = new BloomFilter(numWords, numHashFunctions);
+    ans = null;
+  }
+
+  @Override
+  protected void cleanup() throws DbException {
+    filter = null;
+    ans = null;
+  }
+
+  @Override
+  public long getEstimatedMemoryBytes() {
+    if (filter == null) {
+      return 0;
+    }
+    return (long) numWords * (Long.SIZE / Byte.SIZE);
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws DbException {
+    if (ans != null) {
+      return ans.popAny();
+    }
+
+    final Operator child = getChild();
+    TupleBatch tb = child.nextReady();
+    while (tb != null) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        filter.add(tb, keyColumns, row);
+      }
+      tb = child.nextReady();
+    }
+    if (!child.eos()) {
+      return null;
+    }
+
+    ans = new TupleBatchBuffer(FILTER_SCHEMA);
+    for (int word = 0; word < filter.numWords(); ++word) {
+      long bits = filter.getWord(word);
+      if (bits != 0) {
+        ans.putInt(0, word);
+        ans.putLong(1, bits);
+      }
+    }
+    return ans.popAny();
+  }
+
+  @Override
+  protected Schema generateSchema() {
+    return FILTER_SCHEMA;
+  }
+}
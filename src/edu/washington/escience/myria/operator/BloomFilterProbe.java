@@ -0,0 +1,115 @@
+package edu.washington.escience.myria.operator;
+
+import java.util.BitSet;
+import java.util.Objects;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.BloomFilter;
+
+/**
+ * Semi-join reduction: drops the tuples of the left child whose key is definitely not in a relation, given the words of
+ * the {@link BloomFilter}s that {@link BloomFilterBuild}s built on that relation as the right child. The right child is
+ * drained and its words are merged first, then the left child is filtered.
+ * 
+ * Placed before the shuffle of the probe side of a hash join, it keeps most tuples without a match off the network.
+ */
+public final class BloomFilterProbe extends BinaryOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** The key columns of the left child. */
+  private final int[] keyColumns;
+  /** The number of 64-bit words of the filter. */
+  private final int numWords;
+  /** The number of bits set for each key. */
+  private final int numHashFunctions;
+
+  /** The merged filter. */
+  private transient BloomFilter filter;
+
+  /**
+   * @param left the tuples to be filtered.
+   * @param right the words of the filters, in {@link BloomFilterBuild#FILTER_SCHEMA}.
+   * @param keyColumns the key columns of the left child, in the order of the key columns of the filter.
+   * @param numWords the number of 64-bit words of the filter.
+   * @param numHashFunctions the number of bits set for each key.
+   */
+  public BloomFilterProbe(final Operator left, final Operator right, final int[] keyColumns, final int numWords,
+      final int numHashFunctions) {
+    super(left, right);
+    this.keyColumns = Objects.requireNonNull(keyColumns, "keyColumns");
+    Preconditions.checkArgument(keyColumns.length > 0, "must specify at least one key column");
+    this.numWords = numWords;
+    this.numHashFunctions = numHashFunctions;
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    Preconditions.checkArgument(getRight().getSchema().getColumnTypes().equals(
+        BloomFilterBuild.FILTER_SCHEMA.getColumnTypes()),
+        "the right child of BloomFilterProbe must return the words of a Bloom filter");
+    filter = new BloomFilter(numWords, numHashFunctions);
+  }
+
+  @Override
+  protected void cleanup() throws DbException {
+    filter = null;
+  }
+
+  @Override
+  public long getEstimatedMemoryBytes() {
+    if (filter == null) {
+      return 0;
+    }
+    return (long) numWords * (Long.SIZE / Byte.SIZE);
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws DbException {
+    final Operator right = getRight();
+    while (!right.eos()) {
+      TupleBatch words = right.nextReady();
+      if (words == null) {
+        /* The right child may have realized it's EOS now. If so, we must move onto left child to avoid livelock. */
+        if (right.eos()) {
+          break;
+        }
+        return null;
+      }
+      for (int row = 0; row < words.numTuples(); ++row) {
+        filter.mergeWord(words.getInt(0, row), words.getLong(1, row));
+      }
+    }
+
+    final Operator left = getLeft();
+    TupleBatch tb = left.nextReady();
+    while (tb != null) {
+      BitSet keep = new BitSet(tb.numTuples());
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        if (filter.mightContain(tb, keyColumns, row)) {
+          keep.set(row);
+        }
+      }
+      if (!keep.isEmpty()) {
+        return tb.filter(keep);
+      }
+      tb = left.nextReady();
+    }
+    return null;
+  }
+
+  @Override
+  protected Schema generateSchema() {
+    final Operator left = getLeft();
+    if (left == null) {
+      return null;
+    }
+    return left.getSchema();
+  }
+}
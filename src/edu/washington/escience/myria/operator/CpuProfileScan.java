@@ -0,0 +1,87 @@
+package edu.washington.escience.myria.operator;
+
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.parallel.LocalSubQuery;
+import edu.washington.escience.myria.parallel.WorkerSubQuery;
+import edu.washington.escience.myria.profiling.CpuSampler;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+/**
+ * Reads the CPU profile of a query from the {@link CpuSampler} of the worker it runs on: one tuple per fragment and
+ * folded stack, with the number of samples of that stack. Returns nothing if the sampler is disabled.
+ */
+public final class CpuProfileScan extends LeafOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** The schema of the profile. */
+  public static final Schema SCHEMA = Schema.ofFields("fragmentId", Type.INT_TYPE, "stack", Type.STRING_TYPE,
+      "numSamples", Type.LONG_TYPE);
+
+  /** The query whose profile is read. */
+  private final long queryId;
+  /** The fragment whose profile is read. All fragments, if < 0. */
+  private final long fragmentId;
+  /** The samples not returned yet. */
+  private transient TupleBatchBuffer samples;
+
+  /**
+   * @param queryId the query whose profile is read.
+   * @param fragmentId the fragment whose profile is read. All fragments, if < 0.
+   */
+  public CpuProfileScan(final long queryId, final long fragmentId) {
+    this.queryId = queryId;
+    this.fragmentId = fragmentId;
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    samples = new TupleBatchBuffer(SCHEMA);
+    LocalSubQuery subQuery = getLocalSubQuery();
+    if (!(subQuery instanceof WorkerSubQuery)) {
+      return;
+    }
+    CpuSampler sampler = ((WorkerSubQuery) subQuery).getWorker().getCpuSampler();
+    if (sampler == null) {
+      return;
+    }
+    for (Entry<Integer, Map<String, Long>> fragment : sampler.getProfile(queryId).entrySet()) {
+      if (fragmentId >= 0 && fragment.getKey() != fragmentId) {
+        continue;
+      }
+      for (Entry<String, Long> stack : fragment.getValue().entrySet()) {
+        samples.putInt(0, fragment.getKey());
+        samples.putString(1, stack.getKey());
+        samples.putLong(2, stack.getValue());
+      }
+    }
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws DbException {
+    TupleBatch tb = samples.popAny();
+    if (tb == null) {
+      setEOS();
+    }
+    return tb;
+  }
+
+  @Override
+  protected void cleanup() throws DbException {
+    samples = null;
+  }
+
+  @Override
+  protected Schema generateSchema() {
+    return SCHEMA;
+  }
+}
@@ -55,6 +55,16 @@ public class DbQueryScan extends LeafOperator implements DbReader {
    */
   private final boolean[] ascending;
 
+  /**
+   * The SQL select list of a query over {@link #relationKey}, or <code>null</code> for <code>*</code>.
+   */
+  private final String selectList;
+
+  /**
+   * The SQL condition of a query over {@link #relationKey}, or <code>null</code> if all tuples are returned.
+   */
+  private final String condition;
+
   /** Required for Java serialization. */
   private static final long serialVersionUID = 1L;
 
@@ -77,6 +87,8 @@ public class DbQueryScan extends LeafOperator implements DbReader {
     tuples = null;
     sortedColumns = null;
     ascending = null;
+    selectList = null;
+    condition = null;
   }
 
   /**
@@ -109,6 +121,8 @@ public class DbQueryScan extends LeafOperator implements DbReader {
     tuples = null;
     sortedColumns = null;
     ascending = null;
+    selectList = null;
+    condition = null;
   }
 
   /**
@@ -145,6 +159,8 @@ public class DbQueryScan extends LeafOperator implements DbReader {
     baseSQL = null;
     connectionInfo = null;
     tuples = null;
+    selectList = null;
+    condition = null;
   }
 
   /**
@@ -164,6 +180,31 @@ public class DbQueryScan extends LeafOperator implements DbReader {
     this.connectionInfo = connectionInfo;
   }
 
+  /**
+   * Construct a new DbQueryScan object that runs <code>SELECT selectList FROM relationKey WHERE condition</code>. This
+   * is how filters and projections over a relation are pushed down into the database.
+   * 
+   * @param relationKey the relation to be scanned.
+   * @param outputSchema the Schema of the returned tuples, which must match the select list.
+   * @param selectList the SQL select list, or <code>null</code> for <code>*</code>.
+   * @param condition the SQL condition, or <code>null</code> if all tuples should be returned.
+   */
+  public DbQueryScan(final RelationKey relationKey, final Schema outputSchema, final String selectList,
+      final String condition) {
+    Objects.requireNonNull(relationKey);
+    Objects.requireNonNull(outputSchema);
+
+    this.relationKey = relationKey;
+    this.outputSchema = outputSchema;
+    this.selectList = selectList;
+    this.condition = condition;
+    baseSQL = null;
+    connectionInfo = null;
+    tuples = null;
+    sortedColumns = null;
+    ascending = null;
+  }
+
   @Override
   public final void cleanup() {
     tuples = null;
@@ -211,7 +252,11 @@ public class DbQueryScan extends LeafOperator implements DbReader {
     }
 
     if (relationKey != null) {
-      baseSQL = "SELECT * FROM " + relationKey.toString(connectionInfo.getDbms());
+      baseSQL =
+          "SELECT " + Objects.toString(selectList, "*") + " FROM " + relationKey.toString(connectionInfo.getDbms());
+      if (condition != null) {
+        baseSQL = baseSQL.concat(" WHERE " + condition);
+      }
 
       String prefix = "";
       if (sortedColumns != null && sortedColumns.length > 0) {
@@ -172,4 +172,13 @@ public final class Difference extends BinaryOperator {
     tuplesToRemove = null;
     tupleIndices = null;
   }
+
+  @Override
+  public long getEstimatedMemoryBytes() {
+    if (tuplesToRemove == null) {
+      return 0;
+    }
+    return tuplesToRemove.getEstimatedMemoryBytes()
+        + TupleUtils.estimateHashIndexBytes(tupleIndices, tuplesToRemove.numTuples());
+  }
 }
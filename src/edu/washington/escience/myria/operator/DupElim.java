@@ -50,6 +50,15 @@ public final class DupElim extends StreamingState {
     uniqueTupleIndices = null;
   }
 
+  @Override
+  public long getEstimatedMemoryBytes() {
+    if (uniqueTuples == null) {
+      return 0;
+    }
+    return uniqueTuples.getEstimatedMemoryBytes()
+        + TupleUtils.estimateHashIndexBytes(uniqueTupleIndices, uniqueTuples.numTuples());
+  }
+
   /**
    * Do duplicate elimination for tb.
    * 
@@ -1,8 +1,5 @@
 package edu.washington.escience.myria.operator;
 
-import java.lang.reflect.InvocationTargetException;
-import java.util.BitSet;
-
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
 
@@ -30,6 +27,11 @@ public final class Filter extends UnaryOperator {
    */
   private BooleanEvaluator evaluator;
 
+  /**
+   * The rows of the current batch that satisfy {@link #predicate}.
+   */
+  private transient int[] selection;
+
   /**
    * Constructor accepts a predicate to apply and a child operator to read tuples to filter from.
    * 
@@ -45,24 +47,25 @@ public final class Filter extends UnaryOperator {
   protected TupleBatch fetchNextReady() throws DbException {
     Operator child = getChild();
     for (TupleBatch tb = child.nextReady(); tb != null; tb = child.nextReady()) {
-      BitSet bits = new BitSet(tb.numTuples());
-      for (int rowIdx = 0; rowIdx < tb.numTuples(); rowIdx++) {
-        Boolean valid;
-        try {
-          valid = evaluator.eval(tb, rowIdx);
-        } catch (InvocationTargetException e) {
-          throw new DbException(e);
-        }
-        if (valid) {
-          bits.set(rowIdx);
-        }
+      if (evaluator.isAlwaysTrue()) {
+        return tb;
+      } else if (evaluator.isAlwaysFalse()) {
+        /* Keep consuming the child so that it reaches EOS. */
+        continue;
       }
 
-      if (bits.cardinality() == 0) {
+      final int numTuples = tb.numTuples();
+      if (selection == null || selection.length < numTuples) {
+        selection = new int[Math.max(numTuples, TupleBatch.BATCH_SIZE)];
+      }
+      final int numSelected = evaluator.evaluate(tb, selection);
+      if (numSelected == 0) {
         continue;
+      } else if (numSelected == numTuples) {
+        return tb;
       }
 
-      return tb.filter(bits);
+      return tb.filter(selection, numSelected);
     }
     return null;
   }
@@ -76,9 +79,7 @@ public final class Filter extends UnaryOperator {
     final ExpressionOperatorParameter parameters = new ExpressionOperatorParameter(inputSchema, getNodeID());
 
     evaluator = new BooleanEvaluator(predicate, parameters);
-    if (evaluator.needsCompiling()) {
-      evaluator.compile();
-    }
+    evaluator.compile();
   }
 
   @Override
@@ -0,0 +1,111 @@
+package edu.washington.escience.myria.operator;
+
+import java.util.Objects;
+import java.util.Random;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.operator.network.partition.SkewedHashPartitionFunction;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.HeavyHitterSketch;
+
+/**
+ * Samples the keys of its input and returns, once the input is over, the hash codes of the keys that make up at least
+ * a given fraction of the sample, as used by {@link SkewedHashPartitionFunction}. The keys are counted in a
+ * {@link HeavyHitterSketch}, so the memory used does not depend on the number of distinct keys.
+ * 
+ * A key that makes up a fraction of a distributed relation makes up at least that fraction of the relation on one of
+ * the workers. The union of the heavy hitters found on every worker, e.g. by {@link SetHeavyHitters} at the master,
+ * therefore contains the heavy hitters of the whole relation.
+ */
+public final class FindHeavyHitters extends UnaryOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** The number of counters of the sketch of the key frequencies. */
+  private static final int SKETCH_COUNTERS = 128;
+
+  /** The output schema. */
+  private static final Schema SCHEMA = Schema.ofFields("hash", Type.INT_TYPE);
+
+  /** The columns of the key. */
+  private final int[] keyColumns;
+  /** A key is a heavy hitter if it makes up at least this fraction of the sample. */
+  private final double minFraction;
+  /** The probability that a tuple is part of the sample. */
+  private final double sampleFraction;
+
+  /** Chooses the tuples of the sample. */
+  private transient Random random;
+  /** The key frequencies of the sample. */
+  private transient HeavyHitterSketch sketch;
+  /** Whether the heavy hitters have been returned. */
+  private transient boolean done;
+
+  /**
+   * @param child the source of the tuples.
+   * @param keyColumns the columns of the key.
+   * @param minFraction a key is a heavy hitter if it makes up at least this fraction of the sample.
+   * @param sampleFraction the probability that a tuple is part of the sample.
+   */
+  public FindHeavyHitters(final Operator child, final int[] keyColumns, final double minFraction,
+      final double sampleFraction) {
+    super(child);
+    this.keyColumns = Objects.requireNonNull(keyColumns, "keyColumns");
+    Preconditions.checkArgument(keyColumns.length > 0, "at least 1 key column is required");
+    Preconditions.checkArgument(minFraction > 0 && minFraction <= 1, "minFraction must be in (0, 1]");
+    Preconditions.checkArgument(sampleFraction > 0 && sampleFraction <= 1, "sampleFraction must be in (0, 1]");
+    this.minFraction = minFraction;
+    this.sampleFraction = sampleFraction;
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws Exception {
+    random = new Random();
+    sketch = new HeavyHitterSketch(SKETCH_COUNTERS);
+    done = false;
+  }
+
+  @Override
+  protected void cleanup() throws Exception {
+    random = null;
+    sketch = null;
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws Exception {
+    if (done) {
+      return null;
+    }
+    final Operator child = getChild();
+    TupleBatch tb = child.nextReady();
+    while (tb != null) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        if (sampleFraction == 1 || random.nextDouble() < sampleFraction) {
+          sketch.add(tb, keyColumns, row);
+        }
+      }
+      tb = child.nextReady();
+    }
+    if (!child.eos()) {
+      return null;
+    }
+
+    done = true;
+    TupleBatchBuffer ans = new TupleBatchBuffer(SCHEMA);
+    for (int hash : sketch.getHeavyHitters(minFraction)) {
+      ans.putInt(0, hash);
+    }
+    return ans.popAny();
+  }
+
+  @Override
+  protected Schema generateSchema() {
+    return SCHEMA;
+  }
+}
@@ -236,6 +236,11 @@ public class IDBController extends Operator implements StreamingStateful {
     state.cleanup();
   }
 
+  @Override
+  public long getEstimatedMemoryBytes() {
+    return state.getEstimatedMemoryBytes();
+  }
+
   /**
    * @return the operator ID of the EOI receiving Consumer of the EOSController.
    * */
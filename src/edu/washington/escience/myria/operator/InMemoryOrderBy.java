@@ -1,25 +1,19 @@
 package edu.washington.escience.myria.operator;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
 
 import edu.washington.escience.myria.Schema;
-import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.Column;
 import edu.washington.escience.myria.storage.MutableTupleBuffer;
-import edu.washington.escience.myria.storage.ReadableColumn;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.storage.TupleSorter;
 
 /**
  * Orders tuples in memory.
- * 
- * Note: not efficient so only use it in tests
  */
 public final class InMemoryOrderBy extends UnaryOperator {
 
@@ -56,7 +50,7 @@ public final class InMemoryOrderBy extends UnaryOperator {
   /**
    * A list of indexes into columns that defines the sort order.
    */
-  private ArrayList<Integer> indexes;
+  private int[] indexes;
 
   /**
    * @param child the source of the tuples.
@@ -76,6 +70,21 @@ public final class InMemoryOrderBy extends UnaryOperator {
     table = new MutableTupleBuffer(getSchema());
   }
 
+  @Override
+  public long getEstimatedMemoryBytes() {
+    long bytes = 0;
+    if (table != null) {
+      bytes += table.getEstimatedMemoryBytes();
+    }
+    if (ans != null) {
+      bytes += ans.getEstimatedMemoryBytes();
+    }
+    if (indexes != null) {
+      bytes += (long) indexes.length * (Integer.SIZE / Byte.SIZE);
+    }
+    return bytes;
+  }
+
   @Override
   protected TupleBatch fetchNextReady() throws Exception {
     TupleBatch nexttb = ans.popFilled();
@@ -115,73 +124,12 @@ public final class InMemoryOrderBy extends UnaryOperator {
     return nexttb;
   }
 
-  /**
-   * Comparator for tuples made up of columns.
-   */
-  class TupleComparator implements Comparator<Integer> {
-    @Override
-    public int compare(final Integer rowIdx, final Integer otherRowIdx) {
-      int i = 0;
-      for (int columnIdx : sortColumns) {
-        int compared = 0;
-        switch (getSchema().getColumnType(columnIdx)) {
-          case INT_TYPE:
-            compared = Type.compareRaw(table.getInt(columnIdx, rowIdx), table.getInt(columnIdx, otherRowIdx));
-            break;
-          case FLOAT_TYPE:
-            compared = Type.compareRaw(table.getFloat(columnIdx, rowIdx), table.getFloat(columnIdx, otherRowIdx));
-            break;
-          case LONG_TYPE:
-            compared = Type.compareRaw(table.getLong(columnIdx, rowIdx), table.getLong(columnIdx, otherRowIdx));
-            break;
-          case DOUBLE_TYPE:
-            compared = Type.compareRaw(table.getDouble(columnIdx, rowIdx), table.getDouble(columnIdx, otherRowIdx));
-            break;
-          case BOOLEAN_TYPE:
-            compared = Type.compareRaw(table.getBoolean(columnIdx, rowIdx), table.getBoolean(columnIdx, otherRowIdx));
-            break;
-          case STRING_TYPE:
-            compared = Type.compareRaw(table.getString(columnIdx, rowIdx), table.getString(columnIdx, otherRowIdx));
-            break;
-          case DATETIME_TYPE:
-            compared = Type.compareRaw(table.getDateTime(columnIdx, rowIdx), table.getDateTime(columnIdx, otherRowIdx));
-            break;
-        }
-        if (compared != 0) {
-          if (ascending[i]) {
-            return compared;
-          } else {
-            return -compared;
-          }
-        }
-        i++;
-      }
-      return 0;
-    }
-  }
-
   /**
    * Sorts the tuples. First, we get an array of indexes by which we sort the data. Then we actually reorder the rows.
    */
   public void sort() {
-    final int numTuples = table.numTuples();
-    indexes = new ArrayList<>();
-    indexes.ensureCapacity(numTuples);
-    for (int i = 0; i < numTuples; i++) {
-      indexes.add(i);
-    }
-
-    TupleComparator comparator = new TupleComparator();
-    Collections.sort(indexes, comparator);
-
-    for (int rowIdx = 0; rowIdx < numTuples; rowIdx++) {
-      for (int columnIdx = 0; columnIdx < getSchema().numColumns(); columnIdx++) {
-        int sourceRow = indexes.get(rowIdx);
-        int tupleIdx = table.getTupleIndexInContainingTB(sourceRow);
-        ReadableColumn hashTblColumn = table.getColumns(sourceRow)[columnIdx];
-        ans.put(columnIdx, hashTblColumn, tupleIdx);
-      }
-    }
+    indexes = TupleSorter.sort(table, sortColumns, ascending);
+    TupleSorter.appendInOrder(table, indexes, ans);
   }
 
   @Override
@@ -5,6 +5,8 @@ import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.Column;
 import edu.washington.escience.myria.storage.MutableTupleBuffer;
 import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.storage.TupleSorter;
 import edu.washington.escience.myria.storage.TupleUtils;
 import edu.washington.escience.myria.util.HashUtils;
 import gnu.trove.list.TIntList;
@@ -66,6 +68,15 @@ public final class KeepAndSortOnMinValue extends StreamingState {
     uniqueTupleIndices = null;
   }
 
+  @Override
+  public long getEstimatedMemoryBytes() {
+    if (uniqueTuples == null) {
+      return 0;
+    }
+    return uniqueTuples.getEstimatedMemoryBytes()
+        + TupleUtils.estimateHashIndexBytes(uniqueTupleIndices, uniqueTuples.numTuples());
+  }
+
   /**
    * Check if a tuple in uniqueTuples equals to the comparing tuple (cntTuple).
    * 
@@ -154,9 +165,10 @@ public final class KeepAndSortOnMinValue extends StreamingState {
 
   @Override
   public List<TupleBatch> exportState() {
-    MutableTupleBuffer tmp = uniqueTuples.clone();
-    sortOn(tmp, valueColIndex);
-    return tmp.getAll();
+    int[] order = TupleSorter.sort(uniqueTuples, new int[] { valueColIndex }, new boolean[] { true });
+    TupleBatchBuffer sorted = new TupleBatchBuffer(getSchema());
+    TupleSorter.appendInOrder(uniqueTuples, order, sorted);
+    return sorted.getAll();
   }
 
   /**
@@ -195,83 +207,6 @@ public final class KeepAndSortOnMinValue extends StreamingState {
     }
   };
 
-  /**
-   * sort the given TukpleBuffer on a column.
-   * 
-   * @param tuples tuples
-   * @param col column index
-   */
-  private void sortOn(final MutableTupleBuffer tuples, final int col) {
-    quicksort(tuples, col, 0, tuples.numTuples() - 1);
-  }
-
-  /**
-   * quick sort on column col, tuple with smaller values are put in the front.
-   * 
-   * @param tuples tuples
-   * @param col the column index
-   * @param low lower bound
-   * @param high upper bound
-   */
-  private void quicksort(final MutableTupleBuffer tuples, final int col, final int low, final int high) {
-    int i = low, j = high;
-    int pivot = low + (high - low) / 2;
-
-    while (i <= j) {
-      while (compare(tuples, col, i, pivot) < 0) {
-        i++;
-      }
-      while (compare(tuples, col, j, pivot) > 0) {
-        j--;
-      }
-      if (i <= j) {
-        if (i != j) {
-          if (i == pivot) {
-            pivot = j;
-          } else if (j == pivot) {
-            pivot = i;
-          }
-          for (int c = 0; c < tuples.numColumns(); ++c) {
-            tuples.swap(c, i, j);
-          }
-        }
-        i++;
-        j--;
-      }
-    }
-    if (low < j) {
-      quicksort(tuples, col, low, j);
-    }
-    if (i < high) {
-      quicksort(tuples, col, i, high);
-    }
-  }
-
-  /**
-   * compare a value in a column with pivot.
-   * 
-   * @param tuples tuples
-   * @param column the column index
-   * @param row row index to compare with
-   * @param pivot the index of the pivot value
-   * @return if the value is smaller than (-1), equal to (0) or bigger than (1) pivot
-   */
-  public int compare(final MutableTupleBuffer tuples, final int column, final int row, final int pivot) {
-    Type t = getSchema().getColumnType(column);
-    switch (t) {
-      case LONG_TYPE:
-        return Type.compareRaw(tuples.getLong(column, row), tuples.getLong(column, pivot));
-      case INT_TYPE:
-        return Type.compareRaw(tuples.getInt(column, row), tuples.getInt(column, pivot));
-      case DOUBLE_TYPE:
-        return Type.compareRaw(tuples.getDouble(column, row), tuples.getDouble(column, pivot));
-      case FLOAT_TYPE:
-        return Type.compareRaw(tuples.getFloat(column, row), tuples.getFloat(column, pivot));
-      default:
-        throw new RuntimeException("compare() doesn't support type " + t);
-    }
-  }
-
   @Override
   public int numTuples() {
     return uniqueTuples.numTuples();
@@ -66,6 +66,15 @@ public final class KeepMinValue extends StreamingState {
     uniqueTupleIndices = null;
   }
 
+  @Override
+  public long getEstimatedMemoryBytes() {
+    if (uniqueTuples == null) {
+      return 0;
+    }
+    return uniqueTuples.getEstimatedMemoryBytes()
+        + TupleUtils.estimateHashIndexBytes(uniqueTupleIndices, uniqueTuples.numTuples());
+  }
+
   /**
    * Check if a tuple in uniqueTuples equals to the comparing tuple (cntTuple).
    * 
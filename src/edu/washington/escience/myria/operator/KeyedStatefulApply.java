@@ -0,0 +1,156 @@
+package edu.washington.escience.myria.operator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.expression.Expression;
+import edu.washington.escience.myria.expression.evaluate.UdaEvalInterface;
+import edu.washington.escience.myria.storage.AppendableTable;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBuffer;
+import edu.washington.escience.myria.storage.TupleUtils;
+import edu.washington.escience.myria.util.HashUtils;
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+/**
+ * Apply operator that carries one state per distinct value of the key columns, e.g., a running total per sensor. Every
+ * key starts from the initial state and is updated only by the tuples with that key, in arrival order. The state of a
+ * key is never shared across workers, so after a hash shuffle on the key columns the keys can be processed in parallel
+ * without sorting the input first.
+ * 
+ * @see StatefulApply
+ */
+public class KeyedStatefulApply extends StatefulApply {
+  /***/
+  private static final long serialVersionUID = 1L;
+
+  /** The key columns. */
+  private final int[] keyColumns;
+  /** An array [0, 1, .., keyColumns.length-1] used for comparing keys. */
+  private final int[] keyRange;
+
+  /** Holds the distinct keys. */
+  private transient TupleBuffer keys;
+  /** Maps the hash of a key to a list of indices in {@link #keys}. */
+  private transient TIntObjectMap<TIntList> keyMap;
+  /** The state of each key in {@link #keys}. */
+  private transient List<UdaEvalInterface> states;
+
+  /**
+   * @param child child operator that data is fetched from
+   * @param keyColumns the columns whose values identify the state that a tuple updates
+   * @param emitExpression expressions that creates the output
+   * @param initializerExpressions expressions that initializes the state
+   * @param updaterExpressions expressions that update the state
+   */
+  public KeyedStatefulApply(final Operator child, final int[] keyColumns, final List<Expression> emitExpression,
+      final List<Expression> initializerExpressions, final List<Expression> updaterExpressions) {
+    super(child, emitExpression, initializerExpressions, updaterExpressions);
+    this.keyColumns = Objects.requireNonNull(keyColumns, "keyColumns");
+    Preconditions.checkArgument(keyColumns.length > 0, "must specify at least one key column");
+    keyRange = new int[keyColumns.length];
+    for (int i = 0; i < keyColumns.length; ++i) {
+      keyRange[i] = i;
+    }
+  }
+
+  @Override
+  protected void updateState(final TupleBatch tb, final AppendableTable dest) throws DbException {
+    final int[] stateIndices = findStates(tb);
+    for (int rowIdx = 0; rowIdx < tb.numTuples(); rowIdx++) {
+      final UdaEvalInterface state = states.get(stateIndices[rowIdx]);
+      state.update(tb, rowIdx);
+      if (dest != null) {
+        state.emit(tb, rowIdx, dest, 0);
+      }
+    }
+  }
+
+  /**
+   * Look up the index of the state of the key of every row in the batch, creating the states of new keys.
+   * 
+   * @param tb the input batch
+   * @return the index in {@link #states} of the state of each row of <code>tb</code>
+   * @throws DbException if the state of a new key cannot be created.
+   */
+  private int[] findStates(final TupleBatch tb) throws DbException {
+    final int[] stateIndices = new int[tb.numTuples()];
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      final int keyHash = HashUtils.hashSubRow(tb, keyColumns, row);
+      TIntList hashMatches = keyMap.get(keyHash);
+      if (hashMatches == null) {
+        hashMatches = new TIntArrayList(1);
+        keyMap.put(keyHash, hashMatches);
+      }
+      int stateIdx = -1;
+      TIntIterator matches = hashMatches.iterator();
+      while (stateIdx < 0 && matches.hasNext()) {
+        int curKey = matches.next();
+        if (TupleUtils.tupleEquals(tb, keyColumns, row, keys, keyRange, curKey)) {
+          stateIdx = curKey;
+        }
+      }
+      if (stateIdx < 0) {
+        stateIdx = newKey(tb, row, hashMatches);
+      }
+      stateIndices[row] = stateIdx;
+    }
+    return stateIndices;
+  }
+
+  /**
+   * Since the key of row <code>row</code> in <code>tb</code> does not appear in {@link #keys}, add it together with a
+   * new initial state.
+   * 
+   * @param tb the input batch
+   * @param row the row in <code>tb</code> that contains the new key
+   * @param hashMatches the indices of the keys with the same hash
+   * @return the index of the new key
+   * @throws DbException if the state cannot be created.
+   */
+  private int newKey(final TupleBatch tb, final int row, final TIntList hashMatches) throws DbException {
+    int newIndex = keys.numTuples();
+    for (int column = 0; column < keyColumns.length; ++column) {
+      TupleUtils.copyValue(tb, keyColumns[column], row, keys, column);
+    }
+    hashMatches.add(newIndex);
+    states.add(newState());
+    Preconditions.checkState(keys.numTuples() == states.size(), "keys %s != states %s", keys.numTuples(), states
+        .size());
+    return newIndex;
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    super.init(execEnvVars);
+    keys = new TupleBuffer(getChild().getSchema().getSubSchema(keyColumns));
+    keyMap = new TIntObjectHashMap<>();
+    states = new ArrayList<>();
+  }
+
+  @Override
+  protected void cleanup() throws DbException {
+    super.cleanup();
+    keys = null;
+    keyMap = null;
+    states = null;
+  }
+
+  @Override
+  public long getEstimatedMemoryBytes() {
+    if (keys == null) {
+      return 0;
+    }
+    return keys.getEstimatedMemoryBytes() + TupleUtils.estimateHashIndexBytes(keyMap, keys.numTuples())
+        + (long) states.size() * TupleUtils.estimateTupleBytes(getStateSchema());
+  }
+}
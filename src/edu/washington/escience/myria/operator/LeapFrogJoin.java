@@ -2,11 +2,13 @@ package edu.washington.escience.myria.operator;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
@@ -14,16 +16,19 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 
 import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.parallel.LocalFragment;
+import edu.washington.escience.myria.parallel.LocalFragmentResourceManager;
 import edu.washington.escience.myria.storage.MutableTupleBuffer;
 import edu.washington.escience.myria.storage.ReadableColumn;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.storage.TupleBatchBuffer;
 import edu.washington.escience.myria.storage.TupleUtils;
-import gnu.trove.list.TIntList;
-import gnu.trove.list.array.TIntArrayList;
+import edu.washington.escience.myria.util.concurrent.IntraFragmentExecutor;
+import edu.washington.escience.myria.util.concurrent.ResumableTask;
 
 /**
  * 
@@ -32,6 +37,23 @@ import gnu.trove.list.array.TIntArrayList;
  * 
  * It takes pre-sorted relations as input. The variable ordering must be implied at joinFieldMapping.
  * 
+ * Once all children are drained, every table is indexed by a {@link TrieIndex} on its join fields in local order, and
+ * the leap-frog iterators move over the nodes of the tries with galloping seeks. A table that is not sorted on its join
+ * fields is sorted while its trie is built.
+ * 
+ * With more than one thread, the level-0 nodes of the table with the most distinct values of the first join variable
+ * are split into ranges. Each search claims a range, restricts the level-0 iterators of all tables to it, and runs an
+ * independent search over the shared, read-only tries; the ranges shrink as the join nears its end, so that skewed
+ * ranges are spread over the searches. The searches run on the threads of the worker shared by all the fragments, see
+ * {@link IntraFragmentExecutor}, and give their thread back while their outputs wait to be returned. The outputs are
+ * returned as they are produced, in no particular order.
+ * 
+ * In pipelined mode, the children that have the first join variable must deliver their tuples sorted on it, e.g.
+ * through a {@link Merge} of sorted exchange streams; the other children are read in full first. A key of the first
+ * variable is complete once every unfinished child has delivered a greater key, so the operator repeatedly joins the
+ * complete keys it has buffered as a segment, emits the result, and drops the segment. This returns results before
+ * the children reach EOS, and only the incomplete tail of the sorted inputs is kept. Pipelined mode runs on the
+ * fragment thread.
  */
 public class LeapFrogJoin extends NAryOperator {
   /**
@@ -39,13 +61,26 @@ public class LeapFrogJoin extends NAryOperator {
    */
   private static final long serialVersionUID = 1L;
 
+  /** The logger for this class. */
+  private static final org.slf4j.Logger LOGGER = org.slf4j.LoggerFactory.getLogger(LeapFrogJoin.class);
+
+  /** The number of ranges of the first join variable that each search thread claims, if the work is evenly spread. */
+  private static final int RANGES_PER_THREAD = 4;
+
+  /** The number of output batches that may be queued per search. */
+  private static final int BATCHES_PER_THREAD = 2;
+
+  /** In pipelined mode, the number of complete tuples of the sorted children that start a segment before EOS. */
+  private static final int PIPELINED_SEGMENT_TUPLES = TupleBatch.BATCH_SIZE;
+
   /**
    * {@code {@link #userJoinFieldMapping}[i]} represents the list of JoinField of i-th join variable.
    */
   private final int[][][] userJoinFieldMapping;
 
   /**
-   * whether to create an index on the first joined field in each relation.
+   * whether to create an index on the first joined field in each relation. Only checked for compatibility: every level
+   * of the {@link TrieIndex} of a relation is indexed.
    */
   private transient boolean[] indexOnFirst;
 
@@ -95,105 +130,86 @@ public class LeapFrogJoin extends NAryOperator {
   private transient boolean joinFinished = false;
 
   /**
-   * Iterators on child tables.
+   * The number of searches of the tries that run in parallel.
    */
-  private transient TableIterator[] iterators;
+  private final int numThreads;
 
   /**
-   * current join field (index of {@link joinFieldMapping} ).
+   * Whether to join the complete ranges of the first join variable while the children are still being read.
    */
-  private transient int currentDepth;
+  private final boolean pipelined;
 
   /**
-   * current iterator index in joinFieldMapping[currentDepth].
+   * In pipelined mode, the tuples of every child that have not been joined yet.
    */
-  private transient int currentIteratorIndex;
+  private transient MutableTupleBuffer[] pending;
 
   /**
-   * answer buffer.
+   * In pipelined mode, the index of the first pending tuple of every child that has not been joined yet. The tuples
+   * before it are dropped once they are at least half of the pending tuples, so every tuple is copied a constant
+   * number of times on average.
    */
-  private transient TupleBatchBuffer ansTBB;
+  private transient int[] pendingStart;
 
   /**
-   * index on field with first local order in each table.
+   * In pipelined mode, whether the first join variable is on level 0 of the trie of every child.
    */
-  private transient TIntList[] firstVarIndices;
+  private transient boolean[] hasFirstVariable;
 
   /**
-   * Pointer to a cell in a table.
-   * 
+   * The trie of every child table, on its join fields in local order.
    */
-  private final class CellPointer {
-    /**
-     * Table index of this CellPointer.
-     */
-    private final int tableIndex;
+  private transient TrieIndex[] tries;
 
-    /**
-     * @return Table index of this CellPointer
-     */
-    public int getTableIndex() {
-      return tableIndex;
-    }
+  /**
+   * The search, if it runs on the fragment thread.
+   */
+  private transient LeapFrogSearch search;
 
-    /**
-     * @return Field index of this CellPointer
-     */
-    public int getFieldIndex() {
-      return fieldIndex;
-    }
+  /**
+   * answer buffer.
+   */
+  private transient TupleBatchBuffer ansTBB;
 
-    /**
-     * Field index of this CellPointer.
-     */
-    private final int fieldIndex;
+  /**
+   * The table whose level-0 nodes are split into the ranges that the search threads claim.
+   */
+  private transient int pivotTable;
 
-    /**
-     * row number.
-     */
-    private int row;
+  /**
+   * The first level-0 node of the pivot table that has not been claimed by a search.
+   */
+  private transient AtomicInteger nextPivotNode;
 
-    /**
-     * @return row number
-     */
-    public int getRow() {
-      return row;
-    }
+  /**
+   * The outputs of the parallel searches that wait to be returned.
+   */
+  private transient BlockingQueue<TupleBatch> results;
 
-    /**
-     * @param row row number to set
-     */
-    public void setRow(final int row) {
-      Preconditions.checkElementIndex(row, tables[tableIndex].numTuples(), "row out of bound when setting row");
-      this.row = row;
-    }
+  /**
+   * The number of parallel searches that have not finished yet.
+   */
+  private transient AtomicInteger runningSearches;
 
-    /**
-     * @param tableIndex the table index of this CellPointer
-     * @param fieldIndex the field index of this CellPointer
-     * @param row row number
-     */
-    public CellPointer(final int tableIndex, final int fieldIndex, final int row) {
-      Preconditions.checkElementIndex(tableIndex, tables.length, "tableIndex exceeds legal range.");
-      Preconditions.checkElementIndex(fieldIndex, tables[tableIndex].numColumns(), "fieldIndex exceeds legal range.");
-      Preconditions.checkState(row >= 0 && row <= tables[tableIndex].numTuples(), "row number exceeds legal range.");
-      this.tableIndex = tableIndex;
-      this.fieldIndex = fieldIndex;
-      this.row = row;
-    }
+  /**
+   * The first failure thrown by a parallel search, if any.
+   */
+  private transient volatile Throwable failure;
 
-    /**
-     * @param cp the CellPointer to copy from
-     */
-    public CellPointer(final CellPointer cp) {
-      this(cp.getTableIndex(), cp.getFieldIndex(), cp.getRow());
-    }
+  /**
+   * Whether this operator is being closed, so the parallel searches must stop.
+   */
+  private transient volatile boolean stopped;
 
-    @Override
-    public String toString() {
-      return "t:" + tableIndex + " f:" + fieldIndex + " r:" + row;
-    }
-  }
+  /**
+   * The parallel searches, or null if the search runs on the fragment thread.
+   */
+  private transient List<SearchTask> searches;
+
+  /**
+   * The fragment to wake up when there is progress. May be null, e.g. in tests.
+   */
+  private transient LocalFragment fragment;
 
   /**
    * 
@@ -233,210 +249,6 @@ public class LeapFrogJoin extends NAryOperator {
 
   }
 
-  /**
-   * Iterator of table, which implements a Trie like interface.
-   * 
-   */
-  private class TableIterator {
-
-    /**
-     * table index.
-     */
-    private final int tableIdx;
-
-    /**
-     * current field.
-     */
-    private int currentField = -1;
-
-    /**
-     * row number on {@value firstValueIndices[tableIndex]}.
-     */
-    private int rowOnIndex = 0;
-
-    /**
-     * iterator positions on different fields.
-     */
-    private final int[] rowIndices;
-
-    /**
-     * @return iterator position on current field.
-     */
-    public int getRowOfCurrentField() {
-      return rowIndices[currentField];
-    }
-
-    /**
-     * @param field field index.
-     * @return iterator position on given field.
-     */
-    public int getRow(final int field) {
-      Preconditions.checkElementIndex(field, rowIndices.length, "field index cannot exceed number of columns.");
-      return rowIndices[field];
-    }
-
-    /**
-     * 
-     * Set iterator position on current field.
-     * 
-     * @param row the row number.
-     */
-    public void setRowOfCurrentField(final int row) {
-      rowIndices[currentField] = row;
-      Preconditions.checkArgument(row < ranges[currentField].getMaxRow(),
-          "row: %s >= maxRow: %s, currentField: %s, tableIdx: %s, curDepth: %s", row, ranges[currentField].getMaxRow(),
-          currentField, tableIdx, currentDepth);
-      Preconditions.checkArgument(row >= ranges[currentField].getMinRow(), "row: %s < minRow: %s", row,
-          ranges[currentField].getMinRow());
-    }
-
-    /**
-     * Set iterator position on given field.
-     * 
-     * @param field the field index.
-     * @param row row number.
-     */
-    public void setRow(final int field, final int row) {
-      Preconditions.checkElementIndex(field, rowIndices.length, "field index cannot exceed number of columns.");
-      rowIndices[field] = row;
-    }
-
-    /**
-     * @param currentField current field.
-     */
-    private void setCurrentField(final int currentField) {
-      this.currentField = currentField;
-    }
-
-    /**
-     * proceed to the next value of current field.
-     */
-    public void nextValue() {
-      rowIndices[currentField] = ranges[currentField].getMaxRow();
-    }
-
-    /**
-     * the ranges of different fields.
-     */
-    private final IteratorRange[] ranges;
-
-    /**
-     * @param tableIndex table index.
-     */
-    public TableIterator(final int tableIndex) {
-      Preconditions.checkPositionIndex(tableIndex, getChildren().length,
-          "table index cannot exceed number of children.");
-
-      tableIdx = tableIndex;
-      /* initiate ranges */
-      ranges = new IteratorRange[tables[tableIndex].numColumns()];
-      for (int i = 0; i < tables[tableIndex].numColumns(); ++i) {
-        ranges[i] = new IteratorRange(0, tables[tableIndex].numTuples());
-      }
-
-      /* initiate rowIndices */
-      rowIndices = new int[tables[tableIndex].numColumns()];
-      Arrays.fill(rowIndices, 0);
-    }
-
-    /**
-     * The legal range of an iterator on a field. This is to simulate the trie data structure.
-     * 
-     */
-    private class IteratorRange {
-      /**
-       * minRow is reachable.
-       */
-      private int minRow;
-
-      /**
-       * @return minimal row.
-       */
-      public int getMinRow() {
-        return minRow;
-      }
-
-      /**
-       * @param minRow minimal row.
-       */
-      public void setMinRow(final int minRow) {
-        this.minRow = minRow;
-        Preconditions.checkState(minRow < maxRow, "minRow >= maxRow. (minRow=%s, ,maxRow=%s)", minRow, maxRow);
-      }
-
-      /**
-       * @return maximal row.
-       */
-      public int getMaxRow() {
-        return maxRow;
-      }
-
-      /**
-       * @param maxRow maximal row.
-       */
-      public void setMaxRow(final int maxRow) {
-        this.maxRow = maxRow;
-        Preconditions.checkArgument(maxRow > 0, "maxRow: %s", maxRow);
-        Preconditions.checkState(minRow < maxRow, "minRow >= maxRow. (minRow=%s, ,maxRow=%s)", minRow, maxRow);
-      }
-
-      /**
-       * @param minRow minimal row number of this range, inclusive.
-       * @param maxRow maximal row number of this range, exclusive.
-       */
-      public void setRange(final int minRow, final int maxRow) {
-        this.minRow = minRow;
-        this.maxRow = maxRow;
-        Preconditions.checkArgument(maxRow > 0, "maxRow: %s", maxRow);
-        Preconditions.checkState(minRow < maxRow, "minRow >= maxRow. (minRow=%s, ,maxRow=%s)", minRow, maxRow);
-      }
-
-      /**
-       * maxRow is unreachable.
-       */
-      private int maxRow;
-
-      /**
-       * @param aIteratorRange another IteratorRange object copying from
-       */
-      public void setRange(final IteratorRange aIteratorRange) {
-        setRange(aIteratorRange.minRow, aIteratorRange.maxRow);
-      }
-
-      /**
-       * @param minRow minimal row.
-       * @param maxRow maximal row.
-       */
-      public IteratorRange(final int minRow, final int maxRow) {
-        Preconditions.checkArgument(maxRow > 0, "maxRow: %s", maxRow);
-        this.minRow = minRow;
-        this.maxRow = maxRow;
-      }
-    }
-
-  }
-
-  /**
-   * Helper function, check whether a JoinField is ordered first in its own relation.
-   * 
-   * @param jf JoinField
-   * @return true if this JoinField is ordered first, false otherwise.
-   */
-  private boolean isIndexed(final JoinField jf) {
-    return indexOnFirst[jf.table] && getLocalOrder(jf) == 0;
-  }
-
-  /**
-   * Comparator class for sorting iterators.
-   */
-  private class JoinIteratorCompare implements Comparator<JoinField> {
-    @Override
-    public int compare(final JoinField o1, final JoinField o2) {
-      return TupleUtils.cellCompare(tables[o1.table], o1.column, iterators[o1.table].getRowOfCurrentField(),
-          tables[o2.table], o2.column, iterators[o2.table].getRowOfCurrentField());
-    }
-  }
-
   /**
    * the attribute order of a joined column.
    * 
@@ -496,11 +308,49 @@ public class LeapFrogJoin extends NAryOperator {
    * @param joinFieldMapping mapping of join field to child table field
    * @param outputFieldMapping mapping of output field to child table field
    * @param outputColumnNames output column names
-   * @param indexOnFirst whether the first join field of a child is indexed or not
+   * @param indexOnFirst whether the first join field of a child is indexed or not; ignored, all join fields are
+   *          indexed
    */
   public LeapFrogJoin(final Operator[] children, final int[][][] joinFieldMapping, final int[][] outputFieldMapping,
       final List<String> outputColumnNames, final boolean[] indexOnFirst) {
+    this(children, joinFieldMapping, outputFieldMapping, outputColumnNames, indexOnFirst, 1);
+  }
+
+  /**
+   * @param children list of child operators
+   * @param joinFieldMapping mapping of join field to child table field
+   * @param outputFieldMapping mapping of output field to child table field
+   * @param outputColumnNames output column names
+   * @param indexOnFirst whether the first join field of a child is indexed or not; ignored, all join fields are
+   *          indexed
+   * @param numThreads the number of searches of the tries that run in parallel, on the threads shared by the fragments
+   *          of the worker. With 1, the search runs on the fragment thread.
+   */
+  public LeapFrogJoin(final Operator[] children, final int[][][] joinFieldMapping, final int[][] outputFieldMapping,
+      final List<String> outputColumnNames, final boolean[] indexOnFirst, final int numThreads) {
+    this(children, joinFieldMapping, outputFieldMapping, outputColumnNames, indexOnFirst, numThreads, false);
+  }
+
+  /**
+   * @param children list of child operators
+   * @param joinFieldMapping mapping of join field to child table field
+   * @param outputFieldMapping mapping of output field to child table field
+   * @param outputColumnNames output column names
+   * @param indexOnFirst whether the first join field of a child is indexed or not; ignored, all join fields are
+   *          indexed
+   * @param numThreads the number of searches of the tries that run in parallel, on the threads shared by the fragments
+   *          of the worker. With 1, the search runs on the fragment thread.
+   * @param pipelined whether to join the complete ranges of the first join variable while the children are still being
+   *          read. Requires the children with the first join variable to be sorted on it, and a single thread.
+   */
+  public LeapFrogJoin(final Operator[] children, final int[][][] joinFieldMapping, final int[][] outputFieldMapping,
+      final List<String> outputColumnNames, final boolean[] indexOnFirst, final int numThreads,
+      final boolean pipelined) {
     super(children);
+    Preconditions.checkArgument(numThreads > 0, "numThreads must be positive");
+    Preconditions.checkArgument(!pipelined || numThreads == 1, "pipelined mode runs on a single thread");
+    this.numThreads = numThreads;
+    this.pipelined = pipelined;
     userJoinFieldMapping = Objects.requireNonNull(joinFieldMapping, "joinFieldMapping");
     Objects.requireNonNull(outputFieldMapping, "outputFieldMapping");
     if (outputColumnNames != null) {
@@ -531,6 +381,9 @@ public class LeapFrogJoin extends NAryOperator {
 
   @Override
   protected TupleBatch fetchNextReady() throws Exception {
+    if (pipelined) {
+      return fetchNextPipelined();
+    }
     /* drain all the children first. */
     Operator[] children = getChildren();
     while (numberOfEOSChild != children.length) {
@@ -547,7 +400,7 @@ public class LeapFrogJoin extends NAryOperator {
             }
             numberOfNoDataChild++;
           } else {
-            storeChildTuple(i, childTB);
+            storeChildTuple(tables[i], childTB);
           }
         } else {
           // if a child is eos, it should be treated as no data child
@@ -559,7 +412,7 @@ public class LeapFrogJoin extends NAryOperator {
       }
     }
     /* Initialization before LeapFrog starts. */
-    if (currentDepth == -1) {
+    if (tries == null) {
       /* handle the case that one of input tables is empty. */
       for (MutableTupleBuffer table : tables) {
         if (table.numTuples() == 0) {
@@ -568,12 +421,21 @@ public class LeapFrogJoin extends NAryOperator {
           return null;
         }
       }
-      /* Initiate table iterators. */
+      /* Build the tries and start the search. */
       initIterators();
+      if (numThreads > 1) {
+        startParallelJoin();
+      } else {
+        search = new LeapFrogSearch(ansTBB);
+      }
+    }
+    if (searches != null) {
+      return fetchParallelResult();
     }
     /* do the join, pop if there is ready tb. */
     if (!joinFinished) {
-      leapfrogJoin();
+      search.join();
+      joinFinished = search.isFinished();
     }
     TupleBatch nexttb = ansTBB.popAny();
 
@@ -583,7 +445,7 @@ public class LeapFrogJoin extends NAryOperator {
 
   @Override
   public void checkEOSAndEOI() {
-    if (numberOfEOSChild == getChildren().length && ansTBB.numTuples() == 0) {
+    if (numberOfEOSChild == getChildren().length && joinFinished && ansTBB.numTuples() == 0) {
       setEOS();
     }
   }
@@ -605,20 +467,263 @@ public class LeapFrogJoin extends NAryOperator {
   }
 
   /**
-   * move to the next iterator.
+   * Build the tries.
    */
-  private void nextIterator() {
-    currentIteratorIndex = (currentIteratorIndex + 1) % joinFieldMapping.get(currentDepth).size();
+  private void initIterators() {
+    tries = new TrieIndex[tables.length];
+    for (int i = 0; i < tables.length; ++i) {
+      tries[i] = buildTrie(i);
+    }
   }
 
   /**
-   * Initiate iterators.
+   * @param table the index of a child table.
+   * @return the trie of the table, on its join fields in local order.
    */
-  private void initIterators() {
-    iterators = new TableIterator[tables.length];
+  private TrieIndex buildTrie(final int table) {
+    List<JoinField> orderedJoinField = localOrderedJoinField.get(table);
+    int[] keyColumns = new int[orderedJoinField.size()];
+    for (int j = 0; j < keyColumns.length; ++j) {
+      keyColumns[j] = orderedJoinField.get(j).column;
+    }
+    return new TrieIndex(tables[table], keyColumns);
+  }
+
+  /**
+   * Join the complete ranges of the first join variable while the children are still being read.
+   * 
+   * @return the next output batch, or null if there is none yet.
+   * @throws DbException if a child is not sorted on the first join variable.
+   */
+  private TupleBatch fetchNextPipelined() throws DbException {
+    while (true) {
+      if (search != null) {
+        search.join();
+        if (search.isFinished()) {
+          endSegment();
+        }
+        TupleBatch tb = ansTBB.popFilled();
+        if (tb != null) {
+          return tb;
+        }
+        continue;
+      }
+      boolean progress = drainPending();
+      if (startSegment()) {
+        continue;
+      }
+      if (!progress) {
+        if (numberOfEOSChild == getChildren().length) {
+          joinFinished = true;
+        }
+        /* return the results found so far rather than holding them back while waiting for input. */
+        return ansTBB.popAny();
+      }
+    }
+  }
+
+  /**
+   * Read at most one batch from every child into its pending tuples.
+   * 
+   * @return whether any child returned a batch or reached EOS.
+   * @throws DbException if a child is not sorted on the first join variable.
+   */
+  private boolean drainPending() throws DbException {
+    boolean progress = false;
+    Operator[] children = getChildren();
+    for (int i = 0; i < children.length; ++i) {
+      Operator child = children[i];
+      if (child.eos()) {
+        continue;
+      }
+      TupleBatch childTB = child.nextReady();
+      if (childTB != null) {
+        if (hasFirstVariable[i]) {
+          checkSorted(i, childTB);
+        }
+        storeChildTuple(pending[i], childTB);
+        progress = true;
+      } else if (child.eos()) {
+        numberOfEOSChild++;
+        progress = true;
+      }
+    }
+    return progress;
+  }
+
+  /**
+   * @param child the index of a child with the first join variable.
+   * @param tb a batch of the child.
+   * @throws DbException if the batch does not continue the pending tuples of the child in sorted order.
+   */
+  private void checkSorted(final int child, final TupleBatch tb) throws DbException {
+    final int column = localOrderedJoinField.get(child).get(0).column;
+    final MutableTupleBuffer buffer = pending[child];
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      int cmp;
+      if (row > 0) {
+        cmp = TupleUtils.cellCompare(tb, column, row - 1, tb, column, row);
+      } else if (buffer.numTuples() > 0) {
+        cmp = TupleUtils.cellCompare(buffer, column, buffer.numTuples() - 1, tb, column, row);
+      } else {
+        cmp = 0;
+      }
+      if (cmp > 0) {
+        throw new DbException(String.format("child %d of pipelined %s is not sorted on its column %d", child,
+            getOpName(), column));
+      }
+    }
+  }
+
+  /**
+   * Start the search over a segment of the complete keys of the first join variable, if there are enough of them. A
+   * segment in which some child has no tuple cannot produce any output, and is dropped without a search.
+   * 
+   * @return whether a segment was started or dropped.
+   */
+  private boolean startSegment() {
+    final Operator[] children = getChildren();
+    /* every key before the smallest last key of an unfinished sorted child is complete. */
+    int boundTable = -1;
+    for (int i = 0; i < children.length; ++i) {
+      if (!hasFirstVariable[i]) {
+        /* the other children are needed in full for every key of the first join variable. */
+        if (!children[i].eos()) {
+          return false;
+        }
+      } else if (!children[i].eos()) {
+        if (pending[i].numTuples() == pendingStart[i]) {
+          return false;
+        }
+        if (boundTable < 0 || compareLastKeys(i, boundTable) < 0) {
+          boundTable = i;
+        }
+      }
+    }
+
+    int[] numComplete = new int[children.length];
+    int totalComplete = 0;
+    for (int i = 0; i < children.length; ++i) {
+      if (hasFirstVariable[i]) {
+        numComplete[i] =
+            (boundTable < 0 ? pending[i].numTuples() : countBelowLastKey(i, boundTable)) - pendingStart[i];
+        totalComplete += numComplete[i];
+      }
+    }
+    if (totalComplete == 0 || (boundTable >= 0 && totalComplete < PIPELINED_SEGMENT_TUPLES)) {
+      return false;
+    }
+
+    boolean empty = false;
+    for (int i = 0; i < children.length; ++i) {
+      if (hasFirstVariable[i] && numComplete[i] == 0) {
+        empty = true;
+      }
+    }
+    if (empty) {
+      for (int i = 0; i < children.length; ++i) {
+        if (hasFirstVariable[i]) {
+          pendingStart[i] += numComplete[i];
+          compactPending(i);
+        }
+      }
+      return true;
+    }
+
+    for (int i = 0; i < children.length; ++i) {
+      if (hasFirstVariable[i]) {
+        final int start = pendingStart[i];
+        tables[i] = copyRows(pending[i], start, start + numComplete[i]);
+        pendingStart[i] = start + numComplete[i];
+        compactPending(i);
+        tries[i] = buildTrie(i);
+      } else if (tries[i] == null) {
+        tables[i] = pending[i];
+        pending[i] = null;
+        tries[i] = buildTrie(i);
+      }
+    }
+    search = new LeapFrogSearch(ansTBB);
+    return true;
+  }
+
+  /**
+   * @param from a table.
+   * @param start the first row to copy.
+   * @param end the row after the last row to copy.
+   * @return a new table with the rows of the given table in [start, end).
+   */
+  private static MutableTupleBuffer copyRows(final MutableTupleBuffer from, final int start, final int end) {
+    MutableTupleBuffer to = new MutableTupleBuffer(from.getSchema());
+    for (int row = start; row < end; ++row) {
+      for (int column = 0; column < to.numColumns(); ++column) {
+        TupleUtils.copyValue(from, column, row, to, column);
+      }
+    }
+    return to;
+  }
+
+  /**
+   * Drop the joined pending tuples of a child once they are at least half of its pending tuples.
+   * 
+   * @param child the index of a child with the first join variable.
+   */
+  private void compactPending(final int child) {
+    final MutableTupleBuffer buffer = pending[child];
+    final int start = pendingStart[child];
+    if (start == buffer.numTuples()) {
+      buffer.clear();
+      pendingStart[child] = 0;
+    } else if (start * 2 >= buffer.numTuples()) {
+      pending[child] = copyRows(buffer, start, buffer.numTuples());
+      pendingStart[child] = 0;
+    }
+  }
+
+  /**
+   * Drop the segment whose search is over.
+   */
+  private void endSegment() {
+    search = null;
     for (int i = 0; i < tables.length; ++i) {
-      iterators[i] = new TableIterator(i);
+      if (hasFirstVariable[i]) {
+        tables[i] = null;
+        tries[i] = null;
+      }
+    }
+  }
+
+  /**
+   * @param i the index of a child with the first join variable and pending tuples.
+   * @param j the index of another such child.
+   * @return the comparison of the first join variable in the last pending tuples of the two children.
+   */
+  private int compareLastKeys(final int i, final int j) {
+    return TupleUtils.cellCompare(pending[i], localOrderedJoinField.get(i).get(0).column, pending[i].numTuples() - 1,
+        pending[j], localOrderedJoinField.get(j).get(0).column, pending[j].numTuples() - 1);
+  }
+
+  /**
+   * @param child the index of a child with the first join variable.
+   * @param boundTable the index of a child with the first join variable and pending tuples.
+   * @return the number of pending tuples of the child whose key is less than the last key of the other child.
+   */
+  private int countBelowLastKey(final int child, final int boundTable) {
+    final MutableTupleBuffer buffer = pending[child];
+    final int column = localOrderedJoinField.get(child).get(0).column;
+    final int boundColumn = localOrderedJoinField.get(boundTable).get(0).column;
+    final int boundRow = pending[boundTable].numTuples() - 1;
+    int low = pendingStart[child];
+    int high = buffer.numTuples();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (TupleUtils.cellCompare(buffer, column, mid, pending[boundTable], boundColumn, boundRow) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
     }
+    return low;
   }
 
   @Override
@@ -708,453 +813,629 @@ public class LeapFrogJoin extends NAryOperator {
       }
     }
 
-    /* Initiate hash tables and indices */
+    /* Initiate tables */
     tables = new MutableTupleBuffer[children.length];
-    firstVarIndices = new TIntArrayList[children.length];
     for (int i = 0; i < children.length; ++i) {
       tables[i] = new MutableTupleBuffer(children[i].getSchema());
-      firstVarIndices[i] = new TIntArrayList();
     }
 
-    currentDepth = -1;
-
     ansTBB = new TupleBatchBuffer(getSchema());
+
+    if (pipelined) {
+      /* the children are read into the pending tuples, and the tables only hold the segment being joined. */
+      pending = tables;
+      pendingStart = new int[children.length];
+      tables = new MutableTupleBuffer[children.length];
+      tries = new TrieIndex[children.length];
+      hasFirstVariable = new boolean[children.length];
+      for (JoinField jf : joinFieldMapping.get(0)) {
+        hasFirstVariable[jf.table] = true;
+      }
+    }
+
+    if (execEnvVars != null) {
+      LocalFragmentResourceManager resourceManager =
+          (LocalFragmentResourceManager) execEnvVars.get(MyriaConstants.EXEC_ENV_VAR_FRAGMENT_RESOURCE_MANAGER);
+      if (resourceManager != null) {
+        fragment = resourceManager.getFragment();
+      }
+    }
   }
 
   @Override
   protected void cleanup() throws DbException {
+    stopped = true;
+    if (searches != null) {
+      /* the running searches finish once they see that they must stop. */
+      for (SearchTask task : searches) {
+        if (task.claim()) {
+          task.finish();
+        }
+      }
+      searches = null;
+    }
+    results = null;
     Operator[] children = getChildren();
     for (int i = 0; i < children.length; ++i) {
       tables[i] = null;
-      firstVarIndices[i] = null;
     }
     tables = null;
-    firstVarIndices = null;
-    /* iterators may not be initialized */
-    if (iterators != null) {
-      for (int i = 0; i < iterators.length; ++i) {
-        iterators[i] = null;
-      }
-      iterators = null;
-    }
+    pending = null;
+    pendingStart = null;
+    hasFirstVariable = null;
+    tries = null;
+    search = null;
     ansTBB = null;
     lastJoinAttrIdx = null;
   }
 
+  @Override
+  public long getEstimatedMemoryBytes() {
+    long bytes = 0;
+    if (tables != null) {
+      for (MutableTupleBuffer table : tables) {
+        if (table != null) {
+          bytes += table.getEstimatedMemoryBytes();
+        }
+      }
+    }
+    if (pending != null) {
+      for (MutableTupleBuffer table : pending) {
+        if (table != null) {
+          bytes += table.getEstimatedMemoryBytes();
+        }
+      }
+    }
+    if (tries != null) {
+      for (TrieIndex trie : tries) {
+        if (trie != null) {
+          bytes += trie.getEstimatedMemoryBytes();
+        }
+      }
+    }
+    if (ansTBB != null) {
+      bytes += ansTBB.getEstimatedMemoryBytes();
+    }
+    return bytes;
+  }
+
   /**
-   * @param childIndex which child to store
+   * @param table the buffer of the child
    * @param tb incoming tuple
    */
-  private void storeChildTuple(final int childIndex, final TupleBatch tb) {
+  private void storeChildTuple(final MutableTupleBuffer table, final TupleBatch tb) {
     List<? extends Column<?>> inputColumns = tb.getDataColumns();
     for (int row = 0; row < tb.numTuples(); ++row) {
       for (int column = 0; column < tb.numColumns(); column++) {
-        tables[childIndex].put(column, inputColumns.get(column), row);
-        /* put value to index table if it first appears */
-        if (isIndexed(new JoinField(childIndex, column))) {
-          int thisRow = tables[childIndex].numTuples();
-          /*
-           * If this is the last column, this tuple is already built in tables[childIndex]. So numTuples() have been
-           * updated already.
-           */
-          if (column == tb.numColumns() - 1) {
-            thisRow--;
-          }
-          int lastRow = thisRow - 1;
-          if (lastRow == -1 || TupleUtils.cellCompare(tables[childIndex], column, lastRow, tb, column, row) != 0) {
-            firstVarIndices[childIndex].add(thisRow);
-          }
-        }
+        table.put(column, inputColumns.get(column), row);
       }
     }
   }
 
   /**
-   * init/restart leap-frog join.
+   * Start {@link #numThreads} searches on the shared threads. The first join variable is split into ranges of the
+   * level-0 nodes of the pivot table, which the searches claim one after the other.
    */
-  private void leapfrogInit() {
-
-    for (JoinField jf : joinFieldMapping.get(currentDepth)) {
-      final int localOrder = getLocalOrder(jf);
-      final TableIterator it = iterators[jf.table];
-      if (localOrder == 0) {
-        /* if the join field is highest ordered, reset the cursor */
-        it.ranges[jf.column].setRange(0, tables[jf.table].numTuples());
-        it.setCurrentField(jf.column);
-        it.setRowOfCurrentField(0);
-        it.rowOnIndex = 0;
-      } else {
-        /* if the join field is not ordered as the first, set the cursor to last level */
-        final int lastJf = localOrderedJoinField.get(jf.table).get(localOrder - 1).column;
-        it.ranges[jf.column].setRange(it.ranges[lastJf]);
-        it.setCurrentField(jf.column);
-        it.setRowOfCurrentField(it.ranges[jf.column].getMinRow());
+  private void startParallelJoin() {
+    /* The table with the most distinct values of the first join variable allows the finest ranges. */
+    pivotTable = -1;
+    for (JoinField jf : joinFieldMapping.get(0)) {
+      if (getLocalOrder(jf) == 0 && (pivotTable < 0 || tries[jf.table].numNodes(0) > tries[pivotTable].numNodes(0))) {
+        pivotTable = jf.table;
       }
     }
-
-    Collections.sort(joinFieldMapping.get(currentDepth), new JoinIteratorCompare());
-    currentIteratorIndex = joinFieldMapping.get(currentDepth).size() - 1;
+    nextPivotNode = new AtomicInteger(0);
+    results = new ArrayBlockingQueue<TupleBatch>(numThreads * BATCHES_PER_THREAD);
+    runningSearches = new AtomicInteger(numThreads);
+    failure = null;
+    stopped = false;
+    searches = new ArrayList<>(numThreads);
+    for (int i = 0; i < numThreads; ++i) {
+      searches.add(new SearchTask());
+    }
+    for (SearchTask task : searches) {
+      task.resume();
+    }
   }
 
   /**
-   * Assuming {@value currentIteratorIndex}th iterator is pointing the max key and (currentIteratorIndex - 1)%k } th
-   * iterator is pointing at the least key.
-   * 
-   * find the next intersection in current join field.
-   * 
-   * @return at end or not.
+   * A search that claims ranges and searches them until there are no more ranges. It runs on the shared threads, and
+   * gives its thread back while there is no room for its outputs.
    */
-  private boolean leapfrogSearch() {
-    boolean atEnd = false;
-    Preconditions.checkElementIndex(currentDepth, joinFieldMapping.size(), "current depth is invalid.");
-    /* get the column to proceed the search. */
-    JoinField columnToProceed = joinFieldMapping.get(currentDepth).get(currentIteratorIndex);
-    CellPointer maxKey =
-        new CellPointer(columnToProceed.table, columnToProceed.column, iterators[columnToProceed.table]
-            .getRowOfCurrentField());
-    /* if this is already the end of a trie range, return atEnd=ture. */
-    final int maxRow = iterators[columnToProceed.table].ranges[columnToProceed.column].getMaxRow();
-    Preconditions.checkState(maxKey.getRow() <= maxRow, "current row: %s, maxRow: %s", maxKey.getRow(), maxRow);
-    if (maxKey.getRow() == maxRow) {
-      return true;
+  private final class SearchTask extends ResumableTask {
+    /** The outputs of the search that are not queued yet. */
+    private final TupleBatchBuffer buffer;
+    /** The search. */
+    private final LeapFrogSearch threadSearch;
+    /** The claimed range. */
+    private final int[] range = new int[2];
+    /** Whether a range is claimed and not fully searched. */
+    private boolean searching = false;
+    /** Whether all the ranges are claimed, so every output of the search may be queued. */
+    private boolean claimedAll = false;
+    /** An output of the search that did not fit into the queue. */
+    private TupleBatch blocked;
+
+    /** Set up a search, on the fragment thread. */
+    private SearchTask() {
+      super(IntraFragmentExecutor.get());
+      buffer = new TupleBatchBuffer(getSchema());
+      threadSearch = new LeapFrogSearch(buffer);
     }
 
-    nextIterator();
+    @Override
+    protected boolean canProgress() {
+      return stopped || failure != null || results.remainingCapacity() > 0;
+    }
 
-    while (true) {
-      JoinField fieldWithLeastKey = joinFieldMapping.get(currentDepth).get(currentIteratorIndex);
-      CellPointer leastKey =
-          new CellPointer(fieldWithLeastKey.table, fieldWithLeastKey.column, iterators[fieldWithLeastKey.table]
-              .getRowOfCurrentField());
-      if (cellCompare(leastKey, maxKey) == 0) { // if the value current
-        break;
-      } else {
-        atEnd = leapfrogSeek(fieldWithLeastKey, maxKey);
-        if (atEnd) {
-          break;
-        } else {
-          // if leapfrog_seek hasn't reach end, update max key, move to the next table
-          maxKey =
-              new CellPointer(fieldWithLeastKey.table, fieldWithLeastKey.column, iterators[fieldWithLeastKey.table]
-                  .getRowOfCurrentField());
-          nextIterator();
+    @Override
+    protected boolean step() {
+      try {
+        while (!stopped && failure == null) {
+          if (!queueOutputs()) {
+            return false;
+          }
+          if (searching) {
+            threadSearch.join();
+            searching = !threadSearch.isFinished();
+          } else if (claimedAll) {
+            break;
+          } else if (claimRange(range)) {
+            threadSearch.restrict(pivotTable, range[0], range[1]);
+            searching = !threadSearch.isFinished();
+          } else {
+            claimedAll = true;
+          }
+        }
+      } catch (Throwable e) {
+        LOGGER.error("Search of {} failed", getOpName(), e);
+        if (failure == null) {
+          failure = e;
         }
       }
+      finish();
+      return true;
     }
-    /* checking the state */
-    for (JoinField jf : joinFieldMapping.get(currentDepth)) {
-      final int maxRowJf = iterators[jf.table].ranges[jf.column].getMaxRow();
-      final int minRowJf = iterators[jf.table].ranges[jf.column].getMinRow();
-      final int curRow = iterators[jf.table].getRow(jf.column);
-      Preconditions.checkState(curRow >= minRowJf, "curRow: %s, minRow: %s", curRow, minRowJf);
-      Preconditions.checkState(curRow < maxRowJf, "curRow: %s, maxRow: %s", curRow, maxRowJf);
+
+    /**
+     * Queue the outputs of the search, full batches only until all the ranges are claimed.
+     * 
+     * @return false if there is no room for some of them.
+     */
+    private boolean queueOutputs() {
+      while (true) {
+        if (blocked == null) {
+          blocked = claimedAll ? buffer.popAny() : buffer.popFilled();
+          if (blocked == null) {
+            return true;
+          }
+        }
+        if (!results.offer(blocked)) {
+          return false;
+        }
+        blocked = null;
+        notifyFragment();
+      }
     }
 
-    return atEnd;
+    /**
+     * Count the search as finished.
+     */
+    private void finish() {
+      runningSearches.decrementAndGet();
+      notifyFragment();
+    }
   }
 
   /**
-   * @param jf JoinField
-   * @throws DbException
+   * Claim the next range of level-0 nodes of the pivot table. The range covers a fixed share of the remaining tuples of
+   * the pivot table (guided self-scheduling), so ranges are large at first and get smaller towards the end, and a
+   * search that drew a range of heavy keys does not hold up the others for long.
+   * 
+   * @param range set to the first node and the node after the last node of the claimed range.
+   * @return false if there are no more ranges.
    */
-  private void refineRange(final JoinField jf) {
-
-    int startRow = iterators[jf.table].getRow(jf.column);
-    int endRow = iterators[jf.table].ranges[jf.column].getMaxRow() - 1;
-    iterators[jf.table].ranges[jf.column].setMinRow(startRow);
-    Preconditions.checkState(startRow <= endRow, "startRow > endRow. (startRow=%s, endRow=%s)", startRow, endRow);
-
-    final CellPointer startCursor = new CellPointer(jf.table, jf.column, startRow);
-
-    /* short cut: if the maxCursor has the same value as current line */
-    CellPointer cursor = new CellPointer(jf.table, jf.column, endRow);
-    if (cellCompare(startCursor, cursor) == 0) {
-      return;
+  private boolean claimRange(final int[] range) {
+    final TrieIndex pivot = tries[pivotTable];
+    final int numNodes = pivot.numNodes(0);
+    final int numTuples = pivot.firstPosition(0, numNodes);
+    while (true) {
+      final int from = nextPivotNode.get();
+      if (from >= numNodes) {
+        return false;
+      }
+      final int firstPosition = pivot.firstPosition(0, from);
+      final int size = Math.max(1, (numTuples - firstPosition) / (RANGES_PER_THREAD * numThreads));
+      final int to = Math.max(from + 1, pivot.firstNode(0, firstPosition + size));
+      if (nextPivotNode.compareAndSet(from, to)) {
+        range[0] = from;
+        range[1] = to;
+        return true;
+      }
     }
+  }
 
-    /* short cut: if the next line has different value */
-    cursor.setRow(++startRow);
-    if (cellCompare(startCursor, cursor) < 0) {
-      iterators[jf.table].ranges[jf.column].setMaxRow(startRow);
-      return;
+  /**
+   * @return the next output batch of the parallel searches, or null if there is none yet.
+   * @throws DbException if a search failed.
+   */
+  private TupleBatch fetchParallelResult() throws DbException {
+    if (failure != null) {
+      throw new DbException(failure);
     }
-
-    /* refine start */
-    int step = 1;
-    while (true) {
-      int compare = cellCompare(startCursor, cursor);
-      Preconditions.checkState(compare <= 0,
-          "startCursor must point to an element that is not greater than element pointed by current cursor");
-      if (compare < 0) {
-        endRow = cursor.getRow();
-        break;
-      } else if (compare == 0) {
-        startRow = cursor.getRow();
-        cursor.setRow(startRow + step);
-        step = step * 2;
-        if (cursor.getRow() + step > endRow) {
-          break;
+    TupleBatch tb = results.poll();
+    if (tb != null) {
+      /* there is room for more outputs. */
+      for (SearchTask task : searches) {
+        task.resume();
+      }
+    } else if (runningSearches.get() == 0) {
+      /* a search may have added its last batch just before it finished. */
+      tb = results.poll();
+      if (tb == null) {
+        if (failure != null) {
+          throw new DbException(failure);
         }
+        joinFinished = true;
       }
     }
+    return tb;
+  }
 
-    /* refine end */
-    while (true) {
-      cursor.setRow((startRow + endRow) / 2);
-      int compare = cellCompare(startCursor, cursor);
-      if (compare == 0) { // if current cursor equals to start cursor
-        startRow = cursor.getRow();
-      } else if (compare < 0) { // if current cursor is greater than start cursor
-        endRow = cursor.getRow();
-      }
-
-      if (endRow == startRow + 1) {
-        iterators[jf.table].ranges[jf.column].setMaxRow(endRow);
-        return;
-      }
+  /**
+   * Wake up the fragment thread, since new outputs are available.
+   */
+  private void notifyFragment() {
+    if (fragment != null) {
+      fragment.notifyNewInput();
     }
+  }
 
+  /**
+   * @param jf JoinField
+   * @return the local order of the JoinField jf, starting from 0.
+   */
+  private int getLocalOrder(final JoinField jf) {
+    return joinFieldLocalOrder.get(jf.table).get(jf.column).getOrder();
   }
 
   /**
-   * move the iterator to the element which is the first key larger than current max.
-   * 
-   * @param jf seek on which field of which table.
-   * @param target the target value of seeking.
-   * @return at end or not.
+   * The state of a leap-frog search over the tries. The tries and tables are only read, so several searches can run at
+   * the same time on different ranges of the first join variable.
    */
-  private boolean leapfrogSeek(final JoinField jf, final CellPointer target) {
-    /* switch to indexed version if possible. */
-    if (isIndexed(jf)) {
-      return leapfrogSeekWithIndex(jf, target);
-    }
+  private final class LeapFrogSearch {
 
-    int startRow = iterators[jf.table].getRow(jf.column);
-    int endRow = iterators[jf.table].ranges[jf.column].getMaxRow() - 1;
-    Preconditions.checkState(startRow <= endRow, "startRow must be no less than endRow");
+    /**
+     * {@code {@link #iterators}[i]} is the list of JoinFields of i-th join variable, sorted by the keys that their
+     * iterators point at whenever the i-th join variable is opened.
+     */
+    private final List<List<JoinField>> iterators;
 
-    final CellPointer startCursor = new CellPointer(jf.table, jf.column, startRow);
-    CellPointer cursor = new CellPointer(startCursor);
+    /**
+     * {@code {@link #nodes}[i][j]} is the node that the iterator on the i-th table points at on level j of its trie.
+     */
+    private final int[][] nodes;
 
-    /* set row number to upper bound */
-    cursor.setRow(endRow);
-    if (cellCompare(cursor, target) < 0) {
-      return true;
-    }
+    /**
+     * {@code {@link #nodeEnds}[i][j]} is the end of the range of nodes that the iterator on the i-th table may visit on
+     * level j of its trie, i.e., the node after the last child of its parent.
+     */
+    private final int[][] nodeEnds;
 
-    /* binary search: find the first row whose value is not less than target */
-    while (true) {
-      cursor.setRow((endRow + startRow) / 2);
-      int compare = cellCompare(cursor, target);
-      if (compare >= 0) { // cursor > target
-        endRow = cursor.getRow();
-      } else if (compare < 0) { // cursor < target
-        startRow = cursor.getRow();
-      }
+    /**
+     * The first level-0 node that the iterator on every table may visit.
+     */
+    private final int[] levelZeroStarts;
 
-      if (startRow == endRow - 1) {
-        cursor.setRow(endRow);
-        iterators[jf.table].setRow(jf.column, endRow);
-        return false;
-      }
-    }
-  }
+    /**
+     * The end of the range of level-0 nodes that the iterator on every table may visit.
+     */
+    private final int[] levelZeroEnds;
 
-  /**
-   * move the iterator to the element which is the first key larger than current max.
-   * 
-   * @param jf seek on which field of which table.
-   * @param target the target value of seeking.
-   * @return at end or not.
-   */
-  private boolean leapfrogSeekWithIndex(final JoinField jf, final CellPointer target) {
-    TIntList index = firstVarIndices[jf.table];
-    int startRowOnIndex = iterators[jf.table].rowOnIndex;
-    int endRowOnIndex = index.size() - 1;
-    Preconditions.checkState(startRowOnIndex <= endRowOnIndex, "startRow must be no less than endRow");
-    Preconditions.checkElementIndex(startRowOnIndex, index.size());
-    Preconditions.checkElementIndex(endRowOnIndex, index.size());
-
-    final CellPointer startCursor = new CellPointer(jf.table, jf.column, index.get(startRowOnIndex));
-    CellPointer cursor = new CellPointer(startCursor);
-
-    /* set row number to upper bound */
-    cursor.setRow(index.get(endRowOnIndex));
-    if (cellCompare(cursor, target) < 0) {
-      return true;
-    }
+    /**
+     * The row of every table that is being output.
+     */
+    private final int[] outputRows;
 
-    /* binary search: find the first row whose value is not less than target */
-    while (true) {
-      int rowOnIndex = (startRowOnIndex + endRowOnIndex) / 2;
-      cursor.setRow(index.get(rowOnIndex));
-      int compare = cellCompare(cursor, target);
-      if (compare >= 0) { // cursor > target
-        endRowOnIndex = rowOnIndex;
-      } else if (compare < 0) { // cursor < target
-        startRowOnIndex = rowOnIndex;
+    /**
+     * answer buffer.
+     */
+    private final TupleBatchBuffer ans;
+
+    /**
+     * current join field (index of {@link #iterators} ), or -1 if the search has not started.
+     */
+    private int currentDepth;
+
+    /**
+     * current iterator index in iterators[currentDepth].
+     */
+    private int currentIteratorIndex;
+
+    /**
+     * Whether the search is over.
+     */
+    private boolean finished;
+
+    /**
+     * @param ans the buffer that the result tuples are added to.
+     */
+    private LeapFrogSearch(final TupleBatchBuffer ans) {
+      this.ans = ans;
+      iterators = new ArrayList<>(joinFieldMapping.size());
+      for (List<JoinField> joinFields : joinFieldMapping) {
+        iterators.add(new ArrayList<>(joinFields));
       }
+      nodes = new int[tables.length][];
+      nodeEnds = new int[tables.length][];
+      levelZeroStarts = new int[tables.length];
+      levelZeroEnds = new int[tables.length];
+      for (int i = 0; i < tables.length; ++i) {
+        nodes[i] = new int[tries[i].numLevels()];
+        nodeEnds[i] = new int[tries[i].numLevels()];
+        levelZeroEnds[i] = tries[i].numNodes(0);
+      }
+      outputRows = new int[tables.length];
+      currentDepth = -1;
+    }
 
-      if (startRowOnIndex == endRowOnIndex - 1) {
-        cursor.setRow(index.get(endRowOnIndex));
-        iterators[jf.table].setRow(jf.column, index.get(endRowOnIndex));
-        iterators[jf.table].rowOnIndex = endRowOnIndex;
-        return false;
+    /**
+     * Restart the search on a range of values of the first join variable.
+     * 
+     * @param pivot a table whose level 0 is the first join variable.
+     * @param from the first level-0 node of the pivot table in the range.
+     * @param to the level-0 node of the pivot table after the last one in the range.
+     */
+    private void restrict(final int pivot, final int from, final int to) {
+      final TrieIndex pivotTrie = tries[pivot];
+      for (JoinField jf : iterators.get(0)) {
+        if (getLocalOrder(jf) != 0) {
+          continue;
+        }
+        final TrieIndex trie = tries[jf.table];
+        final int numNodes = trie.numNodes(0);
+        if (jf.table == pivot) {
+          levelZeroStarts[jf.table] = from;
+          levelZeroEnds[jf.table] = to;
+        } else {
+          levelZeroStarts[jf.table] = trie.seek(0, 0, numNodes, pivotTrie, 0, from);
+          if (to == pivotTrie.numNodes(0)) {
+            levelZeroEnds[jf.table] = numNodes;
+          } else {
+            levelZeroEnds[jf.table] = trie.seek(0, levelZeroStarts[jf.table], numNodes, pivotTrie, 0, to);
+          }
+        }
+      }
+      currentDepth = -1;
+      finished = false;
+      /* a table without keys in the range leaves nothing to join, and could not be compared with the others. */
+      for (JoinField jf : iterators.get(0)) {
+        if (getLocalOrder(jf) == 0 && levelZeroStarts[jf.table] >= levelZeroEnds[jf.table]) {
+          finished = true;
+        }
       }
     }
-  }
 
-  /**
-   * Leapfrog join.
-   */
-  private void leapfrogJoin() {
+    /**
+     * @return whether the search is over.
+     */
+    private boolean isFinished() {
+      return finished;
+    }
 
-    /* initiate the join for the first time */
-    if (currentDepth == -1) {
-      currentDepth = 0;
-      leapfrogInit();
+    /**
+     * move to the next iterator.
+     */
+    private void nextIterator() {
+      currentIteratorIndex = (currentIteratorIndex + 1) % iterators.get(currentDepth).size();
     }
 
-    /* break if a full tuple batch has been formed */
-    while (ansTBB.numTuples() < TupleBatch.BATCH_SIZE) {
-      for (JoinField jf : joinFieldMapping.get(currentDepth)) {
-        Preconditions.checkState(jf.column == iterators[jf.table].currentField,
-            "current field invariant is not correct.");
+    /**
+     * init/restart leap-frog join.
+     */
+    private void leapfrogInit() {
+      for (JoinField jf : iterators.get(currentDepth)) {
+        final int level = getLocalOrder(jf);
+        final TrieIndex trie = tries[jf.table];
+        if (level == 0) {
+          /* if the join field is highest ordered, reset the cursor */
+          nodes[jf.table][0] = levelZeroStarts[jf.table];
+          nodeEnds[jf.table][0] = levelZeroEnds[jf.table];
+        } else {
+          /* if the join field is not ordered as the first, iterate over the children of the node at the last level */
+          final int parent = nodes[jf.table][level - 1];
+          nodes[jf.table][level] = trie.firstChild(level - 1, parent);
+          nodeEnds[jf.table][level] = trie.firstChild(level - 1, parent + 1);
+        }
       }
-      /* do LeapFrog search to find the next output position. */
-      boolean atEnd = leapfrogSearch();
-      if (atEnd && currentDepth == 0) {
-        /* if the first join variable reaches end, then the join finish. */
-        joinFinished = true;
-        break;
-      } else if (atEnd) {
-        /* reach to the end in current depth, go back to last depth */
-        joinUp();
-      } else if (currentDepth == joinFieldMapping.size() - 1) {
-        /* output all the tuples on this position and move to the next value. */
-        /* 1. refine ranges. */
-        for (JoinField jf : joinFieldMapping.get(currentDepth)) {
-          refineRange(jf);
+
+      /* an iterator at its end has no key to compare, and makes the search at this depth end at once. */
+      final List<JoinField> current = iterators.get(currentDepth);
+      for (int i = 0; i < current.size(); ++i) {
+        if (atEnd(current.get(i))) {
+          currentIteratorIndex = i;
+          return;
         }
+      }
+      Collections.sort(current, new JoinIteratorCompare());
+      currentIteratorIndex = current.size() - 1;
+    }
 
-        /* 2. exhaust all output with current join key. */
-        exhaustOutput(0);
+    /**
+     * Assuming {@value currentIteratorIndex}th iterator is pointing the max key and (currentIteratorIndex - 1)%k } th
+     * iterator is pointing at the least key.
+     * 
+     * find the next intersection in current join field.
+     * 
+     * @return at end or not.
+     */
+    private boolean leapfrogSearch() {
+      Preconditions.checkElementIndex(currentDepth, iterators.size(), "current depth is invalid.");
+      /* get the column to proceed the search. */
+      JoinField maxKey = iterators.get(currentDepth).get(currentIteratorIndex);
+      /* if this is already the end of a trie range, return atEnd=ture. */
+      if (atEnd(maxKey)) {
+        return true;
+      }
 
-        /* 3. move to the next value */
-        iterators[joinFieldMapping.get(currentDepth).get(currentIteratorIndex).table].nextValue();
+      nextIterator();
 
-        /* 4. restore ranges */
-        for (JoinField jf : joinFieldMapping.get(currentDepth)) {
-          final int localOrder = getLocalOrder(jf);
-          final TableIterator it = iterators[jf.table];
-          if (localOrder != 0) {
-            final int lastJf = localOrderedJoinField.get(jf.table).get(localOrder - 1).column;
-            it.ranges[jf.column].setRange(it.ranges[lastJf]);
-          } else {
-            it.ranges[jf.column].setMaxRow(tables[jf.table].numTuples());
-          }
+      while (true) {
+        JoinField leastKey = iterators.get(currentDepth).get(currentIteratorIndex);
+        if (keyCompare(leastKey, maxKey) == 0) {
+          return false;
         }
-
-      } else {
-        /* go to the next join variable. */
-        joinOpen();
+        if (leapfrogSeek(leastKey, maxKey)) {
+          return true;
+        }
+        /* if leapfrog_seek hasn't reach end, update max key, move to the next table */
+        maxKey = leastKey;
+        nextIterator();
       }
     }
 
-  }
+    /**
+     * @param jf JoinField
+     * @return true if the iterator of the JoinField has passed the last node of its range.
+     */
+    private boolean atEnd(final JoinField jf) {
+      final int level = getLocalOrder(jf);
+      return nodes[jf.table][level] >= nodeEnds[jf.table][level];
+    }
 
-  /**
-   * advance to the next join variable.
-   */
-  private void joinOpen() {
-    for (JoinField jf : joinFieldMapping.get(currentDepth)) {
-      /* refine the range of join variable at current depth */
-      refineRange(jf);
+    /**
+     * move the iterator to the first key not less than current max.
+     * 
+     * @param jf seek on which field of which table.
+     * @param target the JoinField whose iterator points at the target value of seeking.
+     * @return at end or not.
+     */
+    private boolean leapfrogSeek(final JoinField jf, final JoinField target) {
+      final int level = getLocalOrder(jf);
+      final int targetLevel = getLocalOrder(target);
+      nodes[jf.table][level] =
+          tries[jf.table].seek(level, nodes[jf.table][level], nodeEnds[jf.table][level], tries[target.table],
+              targetLevel, nodes[target.table][targetLevel]);
+      return atEnd(jf);
     }
-    currentDepth++;
-    for (JoinField jf : joinFieldMapping.get(currentDepth)) {
-      iterators[jf.table].setCurrentField(jf.column);
-      iterators[jf.table].setRowOfCurrentField(iterators[jf.table].ranges[jf.column].getMinRow());
+
+    /**
+     * move the iterator of a JoinField to the next value.
+     * 
+     * @param jf JoinField
+     */
+    private void nextValue(final JoinField jf) {
+      nodes[jf.table][getLocalOrder(jf)]++;
     }
-    leapfrogInit();
-  }
 
-  /**
-   * @param jf JoinField
-   * @return the local order of the JoinField jf, starting from 0.
-   */
-  private int getLocalOrder(final JoinField jf) {
-    return joinFieldLocalOrder.get(jf.table).get(jf.column).getOrder();
-  }
+    /**
+     * Leapfrog join. Returns once a full tuple batch has been formed or the search is over.
+     */
+    private void join() {
 
-  /**
-   * backtrack to previous join variable.
-   */
-  private void joinUp() {
+      /* initiate the join for the first time */
+      if (currentDepth == -1) {
+        currentDepth = 0;
+        leapfrogInit();
+      }
 
-    currentDepth--;
+      /* break if a full tuple batch has been formed */
+      while (ans.numTuples() < TupleBatch.BATCH_SIZE) {
+        /* do LeapFrog search to find the next output position. */
+        boolean atEnd = leapfrogSearch();
+        if (atEnd && currentDepth == 0) {
+          /* if the first join variable reaches end, then the join finish. */
+          finished = true;
+          break;
+        } else if (atEnd) {
+          /* reach to the end in current depth, go back to last depth */
+          joinUp();
+        } else if (currentDepth == iterators.size() - 1) {
+          /* output all the tuples on this position and move to the next value. */
+          exhaustOutput(0);
+          nextValue(iterators.get(currentDepth).get(currentIteratorIndex));
+        } else {
+          /* go to the next join variable. */
+          joinOpen();
+        }
+      }
 
-    for (JoinField jf : joinFieldMapping.get(currentDepth)) {
-      iterators[jf.table].setCurrentField(jf.column);
     }
 
-    /* arbitrarily choose one relation, let's say, 0th. */
-    currentIteratorIndex = 0;
-    /* move its cursor to the next value. */
-    iterators[joinFieldMapping.get(currentDepth).get(currentIteratorIndex).table].nextValue();
+    /**
+     * advance to the next join variable.
+     */
+    private void joinOpen() {
+      currentDepth++;
+      leapfrogInit();
+    }
 
-    for (JoinField jf : joinFieldMapping.get(currentDepth)) {
-      final TableIterator it = iterators[jf.table];
-      final int localOrder = getLocalOrder(jf);
-      if (localOrder == 0) {
-        it.ranges[jf.column].setRange(0, tables[jf.table].numTuples());
-      } else {
-        final int lastJf = localOrderedJoinField.get(jf.table).get(localOrder - 1).column;
-        it.ranges[jf.column].setRange(it.ranges[lastJf]);
+    /**
+     * backtrack to previous join variable.
+     */
+    private void joinUp() {
+
+      currentDepth--;
+
+      /* arbitrarily choose one relation, let's say, 0th. */
+      currentIteratorIndex = 0;
+      /* move its cursor to the next value, which makes it the max key. */
+      nextValue(iterators.get(currentDepth).get(currentIteratorIndex));
+    }
+
+    /**
+     * Recursively output all result tuples sharing the same join key(s).
+     * 
+     * @param index the current table index.
+     */
+    private void exhaustOutput(final int index) {
+      final TrieIndex trie = tries[index];
+      final int lastLevel = trie.numLevels() - 1;
+      final int node = nodes[index][lastLevel];
+      final int end = trie.firstPosition(lastLevel, node + 1);
+      for (int position = trie.firstPosition(lastLevel, node); position < end; position++) {
+        outputRows[index] = trie.row(position);
+        if (index == tables.length - 1) {
+          addToAns();
+        } else {
+          exhaustOutput(index + 1);
+        }
       }
     }
-  }
 
-  /**
-   * Recursively output all result tuples sharing the same join key(s).
-   * 
-   * @param index the current table index.
-   */
-  private void exhaustOutput(final int index) {
-    final int tableIdx = index;
-    final int colIdx = lastJoinAttrIdx.get(index);
-    int currentRow = iterators[tableIdx].ranges[colIdx].minRow;
-    for (; currentRow < iterators[tableIdx].ranges[colIdx].maxRow; currentRow++) {
-      iterators[tableIdx].setRowOfCurrentField(currentRow);
-      if (index == tables.length - 1) {
-        addToAns();
-      } else {
-        exhaustOutput(index + 1);
+    /**
+     * add result to answer.
+     */
+    private void addToAns() {
+      for (int i = 0; i < outputFieldMapping.size(); ++i) {
+        MutableTupleBuffer hashTable = tables[outputFieldMapping.get(i).table];
+        int row = outputRows[outputFieldMapping.get(i).table];
+        int rowInTB = hashTable.getTupleIndexInContainingTB(row);
+        ReadableColumn sourceColumn = hashTable.getColumns(row)[outputFieldMapping.get(i).column];
+        ans.put(i, sourceColumn, rowInTB);
       }
     }
-  }
 
-  /**
-   * add result to answer.
-   */
-  private void addToAns() {
-    for (int i = 0; i < outputFieldMapping.size(); ++i) {
-      MutableTupleBuffer hashTable = tables[outputFieldMapping.get(i).table];
-      int row = iterators[outputFieldMapping.get(i).table].getRowOfCurrentField();
-      int rowInTB = hashTable.getTupleIndexInContainingTB(row);
-      ReadableColumn sourceColumn = hashTable.getColumns(row)[outputFieldMapping.get(i).column];
-      ansTBB.put(i, sourceColumn, rowInTB);
+    /**
+     * @param jf1 JoinField 1
+     * @param jf2 JoinField 2
+     * @return result of comparison of the keys that the iterators of the JoinFields point at.
+     */
+    private int keyCompare(final JoinField jf1, final JoinField jf2) {
+      final int level1 = getLocalOrder(jf1);
+      final int level2 = getLocalOrder(jf2);
+      return tries[jf1.table].compare(level1, nodes[jf1.table][level1], tries[jf2.table], level2,
+          nodes[jf2.table][level2]);
     }
-  }
 
-  /**
-   * @param cp1 CellPointer 1
-   * @param cp2 CellPointer 2
-   * @return result of comparison
-   */
-  private int cellCompare(final CellPointer cp1, final CellPointer cp2) {
-    return TupleUtils.cellCompare(tables[cp1.tableIndex], cp1.getFieldIndex(), cp1.getRow(),
-        tables[cp2.getTableIndex()], cp2.getFieldIndex(), cp2.getRow());
+    /**
+     * Comparator class for sorting iterators.
+     */
+    private class JoinIteratorCompare implements Comparator<JoinField> {
+      @Override
+      public int compare(final JoinField o1, final JoinField o2) {
+        return keyCompare(o1, o2);
+      }
+    }
   }
-
 }
@@ -1,22 +1,31 @@
 package edu.washington.escience.myria.operator;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.List;
 import java.util.Objects;
-import java.util.PriorityQueue;
-import java.util.Queue;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
 
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.operator.network.Consumer;
+import edu.washington.escience.myria.storage.ExchangeTupleBatch;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.storage.TupleComparator;
 import edu.washington.escience.myria.storage.TupleUtils;
 
 /**
  * Merges the sorted output of a set of operators.
+ * 
+ * Each input is a sorted stream of tuples. Normally there is one input per child, but if the only child is a
+ * {@link Consumer}, the tuples sent by each of its source workers form a separate sorted input. This is how the sorted
+ * partitions of a distributed sort are merged.
+ * 
+ * The inputs are merged with a loser tree, so picking the next tuple costs log(#inputs) comparisons. While one input
+ * keeps winning, its tuples are copied to the output as a run instead of one at a time.
  * */
 public final class Merge extends NAryOperator {
 
@@ -30,58 +39,68 @@ public final class Merge extends NAryOperator {
   private int[] sortedColumns;
 
   /**
-   * Contains a tuple batch for each child.
-   * 
-   * Contains null if there is no batch.
+   * If the only child is a {@link Consumer}, that consumer. Otherwise <code>null</code>.
    */
-  private transient ArrayList<TupleBatch> childBatches = new ArrayList<TupleBatch>();
+  private transient Consumer consumer;
 
   /**
-   * Index that points to the current location in the tupleBuffer of all children.
-   * 
-   * -1 indicates an invalid pointer.
+   * The number of sorted inputs.
    */
-  private transient ArrayList<Integer> childRowIndexes = new ArrayList<Integer>();
+  private transient int numInputs;
 
   /**
-   * The buffer holding the results.
+   * The current batch of each input, or <code>null</code> if the input has no batch.
    */
-  private transient TupleBatchBuffer ans;
+  private transient TupleBatch[] inputBatches;
 
   /**
-   * Use a heap to find the smallest tuple (actually just the index in {@link #childBatches} to a child, where the
-   * pointer in {@link #childRowIndexes} points to the smallest tuple).
+   * The current row in the batch of each input.
    */
-  private transient Queue<Integer> heap;
+  private transient int[] inputRows;
 
   /**
-   * Comparator for tuples in tuple batch.
+   * True for each input that has no more tuples.
    */
-  class TupleComparator implements Comparator<Integer> {
-    @Override
-    public int compare(final Integer left, final Integer right) {
-      Integer leftPointer = childRowIndexes.get(left);
-      Integer rightPointer = childRowIndexes.get(right);
-      TupleBatch leftTb = childBatches.get(left);
-      TupleBatch rightTb = childBatches.get(right);
-      Preconditions.checkArgument(leftTb.numTuples() > leftPointer);
-      Preconditions.checkArgument(rightTb.numTuples() > rightPointer);
-      for (int columnIndex = 0; columnIndex < sortedColumns.length; columnIndex++) {
-        int compared = TupleUtils.cellCompare(leftTb, columnIndex, leftPointer, rightTb, columnIndex, rightPointer);
-        if (compared != 0) {
-          if (ascending[columnIndex]) {
-            return compared;
-          } else {
-            return -compared;
-          }
-        }
-      }
-      return 0;
-    }
-  }
+  private transient boolean[] inputFinished;
+
+  /**
+   * When the inputs are the source workers of a {@link Consumer}, the batches that have been received from each source
+   * worker but not yet merged.
+   */
+  private transient List<ArrayDeque<TupleBatch>> inputQueues;
+
+  /**
+   * The loser tree. Entry 0 is the input with the smallest current tuple. Entries 1 to {@link #numInputs}-1 are the
+   * inner nodes of the tree, each holding the input that lost the match at that node. The leaf of input i is node
+   * {@link #numInputs}+i.
+   */
+  private transient int[] loserTree;
+
+  /**
+   * True once every input has had a batch or finished, and the loser tree has been built.
+   */
+  private transient boolean loserTreeBuilt;
+
+  /**
+   * The input whose current tuple changed since it last won, or -1. It is replayed in the loser tree once it has a
+   * batch again or is finished.
+   */
+  private transient int pendingInput;
+
+  /**
+   * The buffer holding the results.
+   */
+  private transient TupleBatchBuffer ans;
+
+  /**
+   * Compares the current tuples of the inputs on the sorted columns.
+   */
+  private transient TupleComparator tupleComparator;
 
   /**
-   * @param children the children to be merged.
+   * Constructor with children and sorted columns.
+   * 
+   * @param children the children of this operator
    * @param sortedColumns the indexes of columns that tuples are ordered by in the input
    * @param ascending true for each column that is ordered ascending
    * 
@@ -94,7 +113,27 @@ public final class Merge extends NAryOperator {
 
   @Override
   protected void cleanup() throws DbException {
-    childBatches.clear();
+    inputBatches = null;
+    inputQueues = null;
+    ans = null;
+  }
+
+  @Override
+  public long getEstimatedMemoryBytes() {
+    long bytes = 0;
+    if (ans != null) {
+      bytes += ans.getEstimatedMemoryBytes();
+    }
+    List<ArrayDeque<TupleBatch>> queues = inputQueues;
+    if (queues != null) {
+      int tupleBytes = TupleUtils.estimateTupleBytes(getSchema());
+      for (ArrayDeque<TupleBatch> queue : queues) {
+        for (TupleBatch tb : queue) {
+          bytes += (long) tb.numTuples() * tupleBytes;
+        }
+      }
+    }
+    return bytes;
   }
 
   @Override
@@ -104,84 +143,204 @@ public final class Merge extends NAryOperator {
       return nexttb;
     }
 
-    int numEOS = 0;
-
-    while (nexttb == null) {
-      numEOS = 0;
-
-      // fill the buffers, if possible and necessary
-      boolean notEnoughData = false;
-      for (int childIdx = 0; childIdx < getNumChildren(); childIdx++) {
-        Operator child = getChild(childIdx);
-        if (child.eos()) {
-          numEOS++;
-          continue;
-        }
-        if (childBatches.get(childIdx) == null) {
-          TupleBatch tb = child.nextReady();
-
-          // After fetching from a child, it might be EOS.
-          // If we don't catch this case here but return null,
-          // this method might not be called again.
-          if (child.eos()) {
-            numEOS++;
-            continue;
-          }
-          if (tb != null) {
-            childBatches.set(childIdx, tb);
-            childRowIndexes.set(childIdx, 0);
-
-            // add the index after we refilled the batch or
-            // when the batches are initially loaded
-            heap.add(childIdx);
-          } else {
-            notEnoughData = true;
-            break;
-          }
+    while (true) {
+      if (!fillInputs()) {
+        return null;
+      }
+      if (!loserTreeBuilt) {
+        buildLoserTree();
+        loserTreeBuilt = true;
+      } else if (pendingInput >= 0) {
+        replay(pendingInput);
+      }
+      pendingInput = -1;
+
+      int winner = loserTree[0];
+      if (inputFinished[winner]) {
+        /* The smallest input is finished, so all of them are. */
+        nexttb = ans.popAny();
+        if (nexttb == null) {
+          setEOS();
         }
+        return nexttb;
       }
 
-      if (notEnoughData) {
-        // break if this is EOS to ensure that we don't return
-        // null and have data in buffer which would mean that this
-        // method is never called again.
-        if (numEOS == getNumChildren()) {
-          break;
-        }
-        return null;
+      /* Copy the run of tuples of the winner that still go before the smallest tuple of every other input. */
+      int runnerUp = findRunnerUp(winner);
+      TupleBatch winnerBatch = inputBatches[winner];
+      int start = inputRows[winner];
+      int end = start + 1;
+      while (end < winnerBatch.numTuples()
+          && (runnerUp < 0 || less(winner, winnerBatch, end, runnerUp, inputBatches[runnerUp], inputRows[runnerUp]))) {
+        ++end;
+      }
+      ans.put(winnerBatch, start, end);
+
+      if (end == winnerBatch.numTuples()) {
+        inputBatches[winner] = null;
+        inputRows[winner] = -1;
+      } else {
+        inputRows[winner] = end;
       }
+      pendingInput = winner;
 
-      Integer smallestTb = heap.poll();
-      if (smallestTb != null) {
-        Integer positionInSmallestTb = childRowIndexes.get(smallestTb);
-        ans.put(childBatches.get(smallestTb), positionInSmallestTb);
+      nexttb = ans.popFilled();
+      if (nexttb != null) {
+        return nexttb;
+      }
+    }
+  }
 
-        // reset tb or advance position pointer
-        if (positionInSmallestTb == childBatches.get(smallestTb).numTuples() - 1) {
-          childRowIndexes.set(smallestTb, -1);
-          childBatches.set(smallestTb, null);
+  /**
+   * Make sure that every input that is not finished has a batch.
+   * 
+   * @return true if every input has a batch or is finished, false if some input has no data available yet.
+   * @throws DbException if any error occurs.
+   */
+  private boolean fillInputs() throws DbException {
+    for (int input = 0; input < numInputs; ++input) {
+      while (inputBatches[input] == null && !inputFinished[input]) {
+        TupleBatch tb;
+        if (consumer == null) {
+          Operator child = getChild(input);
+          tb = child.nextReady();
+          if (tb == null) {
+            if (!child.eos()) {
+              return false;
+            }
+            inputFinished[input] = true;
+          }
         } else {
-          childRowIndexes.set(smallestTb, positionInSmallestTb + 1);
-          // We either re-add the index to the child here or when we fetch more data.
-          // We cannot re-add it here because we don't know whether there will be data or not.
-          heap.add(smallestTb);
+          tb = inputQueues.get(input).poll();
+          if (tb == null) {
+            if (consumer.eos() || consumer.isSourceWorkerEOS(input)) {
+              inputFinished[input] = true;
+            } else if (!receiveFromConsumer()) {
+              return false;
+            }
+          }
+        }
+        if (tb != null && tb.numTuples() > 0) {
+          inputBatches[input] = tb;
+          inputRows[input] = 0;
         }
-        nexttb = ans.popFilled();
       }
+    }
+    return true;
+  }
+
+  /**
+   * Receive a batch from the {@link Consumer} child and queue it at the input of its source worker.
+   * 
+   * @return true if any progress was made.
+   * @throws DbException if any error occurs.
+   */
+  private boolean receiveFromConsumer() throws DbException {
+    if (consumer.eoi()) {
+      /* Iterations are not distinguished; keep consuming. */
+      consumer.setEOI(false);
+    }
+    TupleBatch tb = consumer.nextReady();
+    if (tb == null) {
+      return consumer.eos() || consumer.eoi();
+    }
+    int sourceWorkerID = ((ExchangeTupleBatch) tb).getSourceWorkerID();
+    inputQueues.get(consumer.getSourceWorkerIndex(sourceWorkerID)).add(tb);
+    return true;
+  }
+
+  /**
+   * Compare the tuples of two inputs. Finished inputs go after everything else, and ties are broken by input index so
+   * that the merge is stable.
+   * 
+   * @param input1 the first input.
+   * @param tb1 the batch of the tuple of the first input.
+   * @param row1 the row of the tuple of the first input.
+   * @param input2 the second input.
+   * @param tb2 the batch of the tuple of the second input.
+   * @param row2 the row of the tuple of the second input.
+   * @return true if the tuple of the first input goes before the tuple of the second.
+   */
+  private boolean less(final int input1, final TupleBatch tb1, final int row1, final int input2,
+      final TupleBatch tb2, final int row2) {
+    if (inputFinished[input1]) {
+      return false;
+    }
+    if (inputFinished[input2]) {
+      return true;
+    }
+    int compared = tupleComparator.compare(tb1, row1, tb2, row2);
+    if (compared != 0) {
+      return compared < 0;
+    }
+    return input1 < input2;
+  }
+
+  /**
+   * @param input1 the first input.
+   * @param input2 the second input.
+   * @return true if the current tuple of the first input goes before the current tuple of the second.
+   */
+  private boolean less(final int input1, final int input2) {
+    return less(input1, inputBatches[input1], inputRows[input1], input2, inputBatches[input2], inputRows[input2]);
+  }
 
-      if (numEOS == getNumChildren()) {
-        setEOS();
-        Preconditions.checkArgument(heap.size() == 0);
-        Preconditions.checkArgument(nexttb == null);
-        break;
+  /**
+   * Build the loser tree from the current tuples of all inputs.
+   */
+  private void buildLoserTree() {
+    if (numInputs == 1) {
+      loserTree[0] = 0;
+      return;
+    }
+    int[] winners = new int[2 * numInputs];
+    for (int input = 0; input < numInputs; ++input) {
+      winners[numInputs + input] = input;
+    }
+    for (int node = numInputs - 1; node >= 1; --node) {
+      int left = winners[2 * node];
+      int right = winners[2 * node + 1];
+      if (less(right, left)) {
+        winners[node] = right;
+        loserTree[node] = left;
+      } else {
+        winners[node] = left;
+        loserTree[node] = right;
       }
     }
+    loserTree[0] = winners[1];
+  }
 
-    if (nexttb == null && ans.numTuples() > 0) {
-      nexttb = ans.popAny();
+  /**
+   * Replay the matches on the path from the leaf of an input to the root after its current tuple changed.
+   * 
+   * @param input the input.
+   */
+  private void replay(final int input) {
+    int winner = input;
+    for (int node = (numInputs + input) / 2; node >= 1; node /= 2) {
+      if (less(loserTree[node], winner)) {
+        int loser = winner;
+        winner = loserTree[node];
+        loserTree[node] = loser;
+      }
     }
+    loserTree[0] = winner;
+  }
 
-    return nexttb;
+  /**
+   * @param winner the current winner of the loser tree.
+   * @return the input with the smallest current tuple other than the winner, or -1 if there is only one input. That
+   *         input lost to the winner somewhere on the path from the leaf of the winner to the root.
+   */
+  private int findRunnerUp(final int winner) {
+    int runnerUp = -1;
+    for (int node = (numInputs + winner) / 2; node >= 1; node /= 2) {
+      if (runnerUp < 0 || less(loserTree[node], runnerUp)) {
+        runnerUp = loserTree[node];
+      }
+    }
+    return runnerUp;
   }
 
   @Override
@@ -195,13 +354,28 @@ public final class Merge extends NAryOperator {
     for (Operator child : getChildren()) {
       Preconditions.checkNotNull(child);
       Preconditions.checkArgument(getSchema().equals(child.getSchema()));
-
-      childBatches.add(null);
-      childRowIndexes.add(-1);
     }
 
-    Comparator<Integer> comparator = new TupleComparator();
-    heap = new PriorityQueue<Integer>(getNumChildren(), comparator);
+    if (getNumChildren() == 1 && getChild(0) instanceof Consumer) {
+      consumer = (Consumer) getChild(0);
+      numInputs = consumer.getNumSourceWorkers();
+      inputQueues = new ArrayList<>(numInputs);
+      for (int input = 0; input < numInputs; ++input) {
+        inputQueues.add(new ArrayDeque<TupleBatch>());
+      }
+    } else {
+      consumer = null;
+      numInputs = getNumChildren();
+      inputQueues = null;
+    }
+    inputBatches = new TupleBatch[numInputs];
+    inputRows = new int[numInputs];
+    inputFinished = new boolean[numInputs];
+    loserTree = new int[numInputs];
+    loserTreeBuilt = false;
+    pendingInput = -1;
+
+    tupleComparator = new TupleComparator(getSchema(), sortedColumns, ascending);
   }
 
   @Override
@@ -1,7 +1,9 @@
 package edu.washington.escience.myria.operator;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
@@ -15,6 +17,7 @@ import edu.washington.escience.myria.parallel.LocalFragment;
 import edu.washington.escience.myria.parallel.LocalFragmentResourceManager;
 import edu.washington.escience.myria.parallel.LocalSubQuery;
 import edu.washington.escience.myria.parallel.WorkerSubQuery;
+import edu.washington.escience.myria.profiling.OperatorMetrics;
 import edu.washington.escience.myria.profiling.ProfilingLogger;
 import edu.washington.escience.myria.storage.TupleBatch;
 
@@ -91,6 +94,11 @@ public abstract class Operator implements Serializable {
    */
   private Boolean profilingMode;
 
+  /**
+   * The live statistics of this operator, or null if it is not executed as part of a subquery.
+   */
+  private transient OperatorMetrics metrics;
+
   /**
    * @return the profilingLogger
    */
@@ -144,6 +152,13 @@ public abstract class Operator implements Serializable {
     return fragmentId;
   }
 
+  /**
+   * @return whether the fragment id is set. It is not in hand-constructed plans.
+   */
+  public boolean hasFragmentId() {
+    return fragmentId != null;
+  }
+
   /**
    * @param fragmentId fragment Id.
    */
@@ -323,6 +338,7 @@ public abstract class Operator implements Serializable {
       startTime = profilingLogger.getTime(this);
     }
 
+    long fetchStart = System.nanoTime();
     TupleBatch result = null;
     try {
       do {
@@ -334,6 +350,9 @@ public abstract class Operator implements Serializable {
     } catch (Exception e) {
       throw new DbException(e);
     }
+    if (metrics != null) {
+      metrics.record(result, System.nanoTime() - fetchStart);
+    }
     if (isProfilingMode()) {
       int numberOfTupleReturned = -1;
       if (result != null) {
@@ -360,6 +379,36 @@ public abstract class Operator implements Serializable {
    */
   private long numOutputTBs;
 
+  /**
+   * Estimate the memory held by the state of this operator, e.g. its hash tables or its sort buffer, not including the
+   * state of its children. Operators that keep (a part of) their input should override this method. It is called by
+   * the thread executing this operator.
+   * 
+   * @return the estimated number of bytes of state held by this operator.
+   */
+  public long getEstimatedMemoryBytes() {
+    return 0;
+  }
+
+  /**
+   * Estimate the memory held by the state of this operator and all its descendants. It is called by the thread
+   * executing this operator.
+   * 
+   * @return the estimated number of bytes of state held by the operators of the tree rooted at this operator.
+   */
+  public final long getEstimatedTreeMemoryBytes() {
+    long bytes = getEstimatedMemoryBytes();
+    Operator[] children = getChildren();
+    if (children != null) {
+      for (Operator child : children) {
+        if (child != null) {
+          bytes += child.getEstimatedTreeMemoryBytes();
+        }
+      }
+    }
+    return bytes;
+  }
+
   /**
    * open the operator and do initializations.
    * 
@@ -390,6 +439,7 @@ public abstract class Operator implements Serializable {
     eoi = false;
     numOutputTBs = 0;
     numOutputTuples = 0;
+    registerMetrics(children);
     // do my initialization
     try {
       init(this.execEnvVars);
@@ -407,6 +457,39 @@ public abstract class Operator implements Serializable {
     }
   }
 
+  /**
+   * Start tracking the live statistics of this operator in its subquery, if it has an ID and runs in a subquery.
+   * 
+   * @param children the opened children of this operator.
+   */
+  private void registerMetrics(final Operator[] children) {
+    metrics = null;
+    if (opId == null || execEnvVars == null
+        || execEnvVars.get(MyriaConstants.EXEC_ENV_VAR_FRAGMENT_RESOURCE_MANAGER) == null) {
+      return;
+    }
+    LocalSubQuery subQuery = getLocalSubQuery();
+    if (subQuery == null) {
+      return;
+    }
+    List<OperatorMetrics> childMetrics = new ArrayList<>();
+    if (children != null) {
+      for (final Operator child : children) {
+        if (child != null && child.metrics != null) {
+          childMetrics.add(child.metrics);
+        }
+      }
+    }
+    metrics = subQuery.getMetrics().register(this, childMetrics);
+  }
+
+  /**
+   * @return the live statistics of this operator, or null if it is not executed as part of a subquery.
+   */
+  protected final OperatorMetrics getMetrics() {
+    return metrics;
+  }
+
   /**
    * Mark the end of an iteration.
    * 
@@ -0,0 +1,514 @@
+package edu.washington.escience.myria.operator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.lang3.SerializationUtils;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.parallel.LocalFragment;
+import edu.washington.escience.myria.parallel.LocalFragmentResourceManager;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleUtils;
+import edu.washington.escience.myria.util.concurrent.IntraFragmentExecutor;
+import edu.washington.escience.myria.util.concurrent.ResumableTask;
+
+/**
+ * Morsel-driven intra-fragment parallelism. The child (typically a {@link DbQueryScan} or a {@link FileScan}) is
+ * drained by the fragment thread, and its {@link TupleBatch}es are handed out as morsels to a number of copies of a
+ * pipeline of unary operators (e.g. {@link Filter}, {@link Apply}, and optionally a blocking operator such as an
+ * aggregate or an {@link InMemoryOrderBy} at the top). The copies run on the threads of the worker shared by all the
+ * fragments, see {@link IntraFragmentExecutor}. A copy gives its thread back when there are no morsels for it, and is
+ * resumed when the fragment thread hands out more.
+ * 
+ * The outputs of all the pipeline copies are gathered and, if a merge operator is specified, fed through it on the
+ * fragment thread. This is how the thread-local states of blocking operators are combined, e.g. a partial
+ * {@link edu.washington.escience.myria.operator.agg.MultiGroupByAggregate} in the pipeline followed by a merging
+ * aggregate on its output.
+ * 
+ * The pipeline operators must not depend on the arrival order of their input, and iterative (EOI) inputs are not
+ * supported.
+ */
+public final class ParallelPipeline extends UnaryOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** The logger for this class. */
+  private static final org.slf4j.Logger LOGGER = org.slf4j.LoggerFactory.getLogger(ParallelPipeline.class);
+
+  /** The number of morsels that may be queued per pipeline thread. */
+  private static final int MORSELS_PER_THREAD = 2;
+
+  /** The pipeline operators, from the bottom to the top. Never modified, only copied. */
+  private final ImmutableList<Operator> stages;
+
+  /** The operator that merges the outputs of all the pipeline copies. May be null. Never modified, only copied. */
+  private final Operator merge;
+
+  /** The number of pipeline copies, or 0 for the parallelism of the worker that runs this operator. */
+  private final int degreeOfParallelism;
+
+  /** The pipeline, built from copies of {@link #stages} on top of a {@link MorselSource}. Never opened, only copied. */
+  private Operator pipeline;
+
+  /** The leaf of the merging part of this operator, serving the outputs of the pipelines. */
+  private PipelineOutput output;
+
+  /** The root of the merging part of this operator, i.e. a copy of {@link #merge}, or {@link #output}. */
+  private Operator top;
+
+  /** The morsels that wait to be processed. */
+  private transient BlockingQueue<TupleBatch> morsels;
+
+  /** The outputs of the pipelines that wait to be returned. */
+  private transient ConcurrentLinkedQueue<TupleBatch> results;
+
+  /** Whether the child has been fully consumed. */
+  private transient volatile boolean childExhausted;
+
+  /** The number of pipeline copies that have not finished yet. */
+  private transient AtomicInteger runningPipelines;
+
+  /** The first failure thrown by a pipeline copy, if any. */
+  private transient volatile Throwable failure;
+
+  /** Whether this operator is being closed, so the pipeline copies must stop. */
+  private transient volatile boolean stopped;
+
+  /** The pipeline copies. */
+  private transient List<PipelineCopy> copies;
+
+  /**
+   * The estimated memory held by the operators of each pipeline copy, in bytes. Updated by the thread running the copy,
+   * since the operators are only estimated by the thread executing them.
+   */
+  private transient AtomicLongArray copyMemoryBytes;
+
+  /** The fragment to wake up when there is progress. May be null, e.g. in tests. */
+  private transient LocalFragment fragment;
+
+  /**
+   * @param child the operator whose output is split into morsels.
+   * @param stages the pipeline operators, from the bottom to the top. Their children must not be set.
+   * @param merge the operator that merges the outputs of all the pipeline copies. May be null.
+   * @param degreeOfParallelism the number of pipeline copies. At most {@link IntraFragmentExecutor#getParallelism()} of
+   *          them run at the same time.
+   */
+  public ParallelPipeline(final Operator child, final List<? extends Operator> stages, final Operator merge,
+      final int degreeOfParallelism) {
+    this(child, stages, merge, degreeOfParallelism, true);
+  }
+
+  /**
+   * The number of pipeline copies is the parallelism of the worker that runs this operator, see
+   * {@link IntraFragmentExecutor#getParallelism()}.
+   * 
+   * @param child the operator whose output is split into morsels.
+   * @param stages the pipeline operators, from the bottom to the top. Their children must not be set.
+   * @param merge the operator that merges the outputs of all the pipeline copies. May be null.
+   */
+  public ParallelPipeline(final Operator child, final List<? extends Operator> stages, final Operator merge) {
+    this(child, stages, merge, 0, false);
+  }
+
+  /**
+   * @param child the operator whose output is split into morsels.
+   * @param stages the pipeline operators, from the bottom to the top. Their children must not be set.
+   * @param merge the operator that merges the outputs of all the pipeline copies. May be null.
+   * @param degreeOfParallelism the number of pipeline copies, or 0 for the parallelism of the worker.
+   * @param explicit whether the degree of parallelism is given, i.e. must be positive.
+   */
+  private ParallelPipeline(final Operator child, final List<? extends Operator> stages, final Operator merge,
+      final int degreeOfParallelism, final boolean explicit) {
+    super(child);
+    Preconditions.checkArgument(stages != null && stages.size() > 0, "at least one pipeline stage is required");
+    Preconditions.checkArgument(!explicit || degreeOfParallelism > 0, "degree of parallelism must be positive");
+    for (Operator stage : stages) {
+      Preconditions.checkArgument(stage instanceof UnaryOperator, "pipeline stage %s is not a unary operator", stage);
+    }
+    Preconditions.checkArgument(merge == null || merge instanceof UnaryOperator, "merge %s is not a unary operator",
+        merge);
+    this.stages = ImmutableList.copyOf(stages);
+    this.merge = merge;
+    this.degreeOfParallelism = degreeOfParallelism;
+  }
+
+  /**
+   * @return the number of pipeline copies on the worker that runs this operator.
+   */
+  public int getDegreeOfParallelism() {
+    if (degreeOfParallelism > 0) {
+      return degreeOfParallelism;
+    }
+    return IntraFragmentExecutor.getParallelism();
+  }
+
+  @Override
+  public void setFragmentId(final int fragmentId) {
+    super.setFragmentId(fragmentId);
+    for (Operator stage : stages) {
+      stage.setFragmentId(fragmentId);
+    }
+    if (merge != null) {
+      merge.setFragmentId(fragmentId);
+    }
+    if (top != null) {
+      setTreeFragmentId(pipeline, fragmentId);
+      setTreeFragmentId(top, fragmentId);
+    }
+  }
+
+  /**
+   * @param root the root of a tree of unary operators.
+   * @param fragmentId the fragment ID of all the operators of the tree.
+   */
+  private static void setTreeFragmentId(final Operator root, final int fragmentId) {
+    for (Operator current = root; current != null; current = current.getChildren()[0]) {
+      current.setFragmentId(fragmentId);
+      if (current instanceof LeafOperator) {
+        break;
+      }
+    }
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws Exception {
+    final int numCopies = getDegreeOfParallelism();
+    morsels = new ArrayBlockingQueue<TupleBatch>(numCopies * MORSELS_PER_THREAD);
+    results = new ConcurrentLinkedQueue<TupleBatch>();
+    childExhausted = false;
+    failure = null;
+    stopped = false;
+    runningPipelines = new AtomicInteger(numCopies);
+    copyMemoryBytes = new AtomicLongArray(numCopies);
+    LocalFragmentResourceManager resourceManager =
+        (LocalFragmentResourceManager) execEnvVars.get(MyriaConstants.EXEC_ENV_VAR_FRAGMENT_RESOURCE_MANAGER);
+    if (resourceManager != null) {
+      fragment = resourceManager.getFragment();
+    }
+
+    output.owner = this;
+    top.open(execEnvVars);
+
+    /* the copies are started by the fragment thread once it has handed out morsels. */
+    copies = new ArrayList<>(numCopies);
+    for (int i = 0; i < numCopies; ++i) {
+      Operator copy = SerializationUtils.clone(pipeline);
+      findSource(copy).owner = this;
+      copies.add(new PipelineCopy(copy, i, execEnvVars));
+    }
+  }
+
+  /**
+   * @param pipeline a copy of the pipeline template.
+   * @return the {@link MorselSource} at the bottom of the pipeline.
+   */
+  private static MorselSource findSource(final Operator pipeline) {
+    Operator current = pipeline;
+    while (!(current instanceof MorselSource)) {
+      current = current.getChildren()[0];
+    }
+    return (MorselSource) current;
+  }
+
+  /**
+   * A copy of the pipeline, driven by the shared threads while there are morsels for it, until it reaches EOS.
+   */
+  private final class PipelineCopy extends ResumableTask {
+    /** The copy of the pipeline. */
+    private final Operator copy;
+    /** The index of the copy. */
+    private final int copyIndex;
+    /** Execution environment variables. */
+    private final ImmutableMap<String, Object> execEnvVars;
+
+    /**
+     * @param copy the copy of the pipeline.
+     * @param copyIndex the index of the copy.
+     * @param execEnvVars execution environment variables.
+     */
+    private PipelineCopy(final Operator copy, final int copyIndex, final ImmutableMap<String, Object> execEnvVars) {
+      super(IntraFragmentExecutor.get());
+      this.copy = copy;
+      this.copyIndex = copyIndex;
+      this.execEnvVars = execEnvVars;
+    }
+
+    @Override
+    protected boolean canProgress() {
+      return stopped || failure != null || childExhausted || !morsels.isEmpty();
+    }
+
+    @Override
+    protected boolean step() {
+      try {
+        if (!copy.isOpen()) {
+          copy.open(execEnvVars);
+        }
+        long lastMemoryUpdateNanos = System.nanoTime();
+        while (!copy.eos() && !stopped && failure == null) {
+          TupleBatch tb = copy.nextReady();
+          if (tb != null) {
+            results.add(tb);
+            notifyFragment();
+          } else if (!copy.eos() && !childExhausted && morsels.isEmpty()) {
+            /* wait for more morsels without holding the thread. */
+            copyMemoryBytes.set(copyIndex, copy.getEstimatedTreeMemoryBytes());
+            return false;
+          }
+          long now = System.nanoTime();
+          if (now - lastMemoryUpdateNanos >= MyriaConstants.FRAGMENT_MEMORY_SAMPLING_INTERVAL_NANOS) {
+            lastMemoryUpdateNanos = now;
+            copyMemoryBytes.set(copyIndex, copy.getEstimatedTreeMemoryBytes());
+          }
+        }
+      } catch (Throwable e) {
+        LOGGER.error("Pipeline copy of {} failed", getOpName(), e);
+        if (failure == null) {
+          failure = e;
+        }
+      }
+      finish();
+      return true;
+    }
+
+    /**
+     * Close the copy of the pipeline.
+     */
+    private void finish() {
+      try {
+        if (copy.isOpen()) {
+          copy.close();
+        }
+      } catch (Throwable e) {
+        LOGGER.error("Failed to close pipeline copy of {}", getOpName(), e);
+      }
+      copyMemoryBytes.set(copyIndex, 0);
+      runningPipelines.decrementAndGet();
+      notifyFragment();
+    }
+  }
+
+  /**
+   * Wake up the fragment thread, since new outputs are available or more morsels can be queued.
+   */
+  private void notifyFragment() {
+    if (fragment != null) {
+      fragment.notifyNewInput();
+    }
+  }
+
+  /**
+   * Hand out morsels from the child as long as there is room for them.
+   * 
+   * @throws DbException if any error occurs.
+   */
+  private void feedMorsels() throws DbException {
+    Operator child = getChild();
+    boolean fed = false;
+    while (!childExhausted && morsels.remainingCapacity() > 0) {
+      TupleBatch tb = child.nextReady();
+      if (tb != null) {
+        morsels.add(tb);
+      } else if (child.eos()) {
+        childExhausted = true;
+      } else {
+        if (child.eoi()) {
+          throw new DbException(getClass().getSimpleName() + " does not support iterative input");
+        }
+        break;
+      }
+      fed = true;
+    }
+    if (fed) {
+      for (PipelineCopy copy : copies) {
+        copy.resume();
+      }
+    }
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws DbException {
+    if (failure != null) {
+      throw new DbException(failure);
+    }
+    feedMorsels();
+    TupleBatch tb = top.nextReady();
+    if (tb == null && failure != null) {
+      /* a failed pipeline copy also finishes, so it has to be checked again. */
+      throw new DbException(failure);
+    }
+    return tb;
+  }
+
+  @Override
+  protected void checkEOSAndEOI() {
+    if (top.eos()) {
+      setEOS();
+    }
+  }
+
+  @Override
+  protected void cleanup() throws DbException {
+    stopped = true;
+    if (copies != null) {
+      /* the running copies close themselves once they see that they must stop. */
+      for (PipelineCopy copy : copies) {
+        if (copy.claim()) {
+          copy.finish();
+        }
+      }
+      copies = null;
+    }
+    if (top.isOpen()) {
+      top.close();
+    }
+    morsels = null;
+    results = null;
+  }
+
+  @Override
+  public long getEstimatedMemoryBytes() {
+    long bytes = 0;
+    AtomicLongArray copies = copyMemoryBytes;
+    if (copies != null) {
+      for (int i = 0; i < copies.length(); ++i) {
+        bytes += copies.get(i);
+      }
+    }
+    if (results != null) {
+      int tupleBytes = TupleUtils.estimateTupleBytes(output.getSchema());
+      for (TupleBatch tb : results) {
+        bytes += (long) tb.numTuples() * tupleBytes;
+      }
+    }
+    if (morsels != null) {
+      int morselTupleBytes = TupleUtils.estimateTupleBytes(getChild().getSchema());
+      for (TupleBatch tb : morsels) {
+        bytes += (long) tb.numTuples() * morselTupleBytes;
+      }
+    }
+    if (top != null && top.isOpen()) {
+      /* the merging part runs on the fragment thread, but it is not a child of this operator. */
+      bytes += top.getEstimatedTreeMemoryBytes();
+    }
+    return bytes;
+  }
+
+  @Override
+  protected Schema generateSchema() {
+    if (top == null) {
+      Operator child = getChild();
+      if (child == null || child.getSchema() == null) {
+        return null;
+      }
+      /* build the pipeline and the merging part from copies, so that the templates can be reused. */
+      Operator current = new MorselSource(child.getSchema());
+      for (Operator stage : stages) {
+        Operator copy = SerializationUtils.clone(stage);
+        copy.setChildren(new Operator[] { current });
+        current = copy;
+      }
+      pipeline = current;
+      output = new PipelineOutput(current.getSchema());
+      if (merge != null) {
+        top = SerializationUtils.clone(merge);
+        top.setChildren(new Operator[] { output });
+      } else {
+        top = output;
+      }
+    }
+    return top.getSchema();
+  }
+
+  /**
+   * The leaf of each pipeline copy. Serves the morsels handed out by the {@link ParallelPipeline}.
+   */
+  private static final class MorselSource extends LeafOperator {
+    /** Required for Java serialization. */
+    private static final long serialVersionUID = 1L;
+    /** The schema of the morsels. */
+    private final Schema schema;
+    /** The operator that hands out the morsels. */
+    private transient ParallelPipeline owner;
+
+    /**
+     * @param schema the schema of the morsels.
+     */
+    private MorselSource(final Schema schema) {
+      this.schema = schema;
+    }
+
+    @Override
+    protected TupleBatch fetchNextReady() {
+      /* the copy does not wait for morsels here: it gives its thread back, and is resumed when there are more. */
+      TupleBatch tb = owner.morsels.poll();
+      if (tb != null) {
+        owner.notifyFragment();
+      } else if (owner.childExhausted && owner.morsels.isEmpty()) {
+        setEOS();
+      }
+      return tb;
+    }
+
+    @Override
+    protected void checkEOSAndEOI() {
+      // do nothing since already done in fetchNextReady()
+    }
+
+    @Override
+    protected Schema generateSchema() {
+      return schema;
+    }
+  }
+
+  /**
+   * Serves the outputs of all the pipeline copies on the fragment thread.
+   */
+  private static final class PipelineOutput extends LeafOperator {
+    /** Required for Java serialization. */
+    private static final long serialVersionUID = 1L;
+    /** The schema of the pipeline outputs. */
+    private final Schema schema;
+    /** The operator that runs the pipelines. */
+    private transient ParallelPipeline owner;
+
+    /**
+     * @param schema the schema of the pipeline outputs.
+     */
+    private PipelineOutput(final Schema schema) {
+      this.schema = schema;
+    }
+
+    @Override
+    protected TupleBatch fetchNextReady() {
+      TupleBatch tb = owner.results.poll();
+      if (tb == null && owner.runningPipelines.get() == 0 && owner.results.isEmpty()) {
+        setEOS();
+      }
+      return tb;
+    }
+
+    @Override
+    protected void checkEOSAndEOI() {
+      // do nothing since already done in fetchNextReady()
+    }
+
+    @Override
+    protected Schema generateSchema() {
+      return schema;
+    }
+  }
+}
@@ -170,6 +170,20 @@ public class RightHashCountingJoin extends BinaryOperator {
     ans = 0;
   }
 
+  @Override
+  public long getEstimatedMemoryBytes() {
+    long bytes = 0;
+    if (hashTable != null) {
+      bytes +=
+          hashTable.getEstimatedMemoryBytes()
+              + TupleUtils.estimateHashIndexBytes(hashTableIndices, hashTable.numTuples());
+    }
+    if (occurredTimes != null) {
+      bytes += (long) occurredTimes.size() * (Integer.SIZE / Byte.SIZE);
+    }
+    return bytes;
+  }
+
   @Override
   public void checkEOSAndEOI() {
     final Operator left = getLeft();
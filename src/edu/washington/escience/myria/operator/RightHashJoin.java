@@ -271,6 +271,20 @@ public final class RightHashJoin extends BinaryOperator {
     ans = null;
   }
 
+  @Override
+  public long getEstimatedMemoryBytes() {
+    long bytes = 0;
+    if (rightHashTable != null) {
+      bytes +=
+          rightHashTable.getEstimatedMemoryBytes()
+              + TupleUtils.estimateHashIndexBytes(rightHashTableIndices, rightHashTable.numTuples());
+    }
+    if (ans != null) {
+      bytes += ans.getEstimatedMemoryBytes();
+    }
+    return bytes;
+  }
+
   @Override
   public void checkEOSAndEOI() {
     final Operator left = getLeft();
@@ -0,0 +1,93 @@
+package edu.washington.escience.myria.operator;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.parallel.Server;
+import edu.washington.escience.myria.storage.TupleBatch;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+
+/**
+ * Sets a global variable of a query at the master to the sorted, distinct hash codes of its input, e.g. the heavy
+ * hitters found by {@link FindHeavyHitters} on every worker. A later subquery of the same query can then use them in a
+ * {@link edu.washington.escience.myria.operator.network.partition.SkewedHashPartitionFunction}.
+ */
+public class SetHeavyHitters extends RootOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** The {@link Server} on which the queries are run. */
+  private final Server server;
+
+  /** The name of the global variable to be set. */
+  private final String key;
+
+  /** The query that is running. */
+  private Long queryId;
+
+  /** The hash codes seen so far. */
+  private transient TIntSet heavyHitters;
+
+  /**
+   * @param child the source of the hash codes, in a single INT column.
+   * @param key the variable whose value will be set.
+   * @param server the server running the query.
+   */
+  public SetHeavyHitters(final Operator child, @Nonnull final String key, @Nonnull final Server server) {
+    super(child);
+    this.server = Objects.requireNonNull(server, "server");
+    this.key = Objects.requireNonNull(key, "key");
+    queryId = null;
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws Exception {
+    int nodeId =
+        (Integer) Preconditions.checkNotNull(execEnvVars.get(MyriaConstants.EXEC_ENV_VAR_NODE_ID),
+            "node ID in execEnvVars");
+    Preconditions.checkArgument(nodeId == MyriaConstants.MASTER_ID, "%s can only be run on the master",
+        SetHeavyHitters.class);
+    Schema schema = Preconditions.checkNotNull(getSchema(), "schema cannot be null");
+    Preconditions.checkArgument(schema.numColumns() == 1 && schema.getColumnType(0) == Type.INT_TYPE,
+        "the child of %s must have a single INT column, not %s", SetHeavyHitters.class, schema);
+    queryId =
+        (Long) Preconditions.checkNotNull(execEnvVars.get(MyriaConstants.EXEC_ENV_VAR_QUERY_ID),
+            "query ID in execEnvVars");
+    heavyHitters = new TIntHashSet();
+  }
+
+  @Override
+  protected void cleanup() throws Exception {
+    heavyHitters = null;
+  }
+
+  @Override
+  protected void consumeTuples(final TupleBatch tuples) throws DbException {
+    for (int i = 0; i < tuples.numTuples(); ++i) {
+      heavyHitters.add(tuples.getInt(0, i));
+    }
+  }
+
+  @Override
+  protected void childEOI() throws DbException {
+    /* Do nothing. */
+  }
+
+  @Override
+  protected void childEOS() throws DbException {
+    int[] ret = heavyHitters.toArray();
+    Arrays.sort(ret);
+    server.setQueryGlobal(queryId, key, ret);
+  }
+}
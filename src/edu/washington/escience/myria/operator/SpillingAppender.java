@@ -0,0 +1,429 @@
+package edu.washington.escience.myria.operator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.MyriaSystemConfigKeys;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.proto.DataProto.DataMessage;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleUtils;
+import edu.washington.escience.myria.util.IPCUtils;
+
+/**
+ * Keeps all the tuple batches, like {@link SimpleAppender}, but only the most recent ones in memory. Once more than
+ * {@link MyriaSystemConfigKeys#FT_BACKUP_BUFFER_MEMORY_TUPLES} tuples are in memory, they are written to a new segment
+ * file in the working directory as length-delimited {@link DataMessage}s, the format that tuple batches have on the
+ * wire, and dropped from memory. Segment files are written once and never modified.
+ * 
+ * {@link #exportState()} reads the segments back lazily, one batch at a time, so a recovery does not bring the whole
+ * backup into memory. The segments it reads are kept until it is closed, even if the backup drops them or is cleaned
+ * up meanwhile. The state is read by recoveries on other threads than the producer, so it is only accessed while
+ * holding the lock of this object.
+ * 
+ * Only the tuples acknowledged with {@link #checkpoint(long)} may be dropped. The disk used by the backup can be
+ * bounded with {@link MyriaSystemConfigKeys#FT_BACKUP_BUFFER_MAX_SEGMENTS}: once there are more segments, the oldest
+ * one is deleted whether or not its tuples were acknowledged, and a later recovery of the receiver fails rather than
+ * replay only the newer tuples.
+ */
+public final class SpillingAppender extends StreamingState {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** The logger for this class. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(SpillingAppender.class);
+
+  /** The most recent batches, which are kept in memory. */
+  private transient List<TupleBatch> inMemory;
+  /** The number of tuples in {@link #inMemory}. */
+  private transient long numInMemory;
+  /** The older batches, which have been spilled, from the oldest to the newest. */
+  private transient List<Segment> segments;
+  /** The number of tuples that have been dropped, by {@link #checkpoint(long)} or because of the segment limit. */
+  private transient long numDiscarded;
+  /** The number of tuples that no longer need to be replayed, see {@link #checkpoint(long)}. */
+  private transient long numAcknowledged;
+  /** The number of tuples kept in memory before they are spilled. */
+  private transient long memoryTuples;
+  /** The maximum number of segments, or 0 or negative if there is no limit. */
+  private transient int maxSegments;
+  /** The directory of the segment files. */
+  private transient File directory;
+  /** Whether writing a segment failed, in which case all the batches stay in memory. */
+  private transient boolean spillFailed;
+
+  /**
+   * A segment file.
+   */
+  private static final class Segment {
+    /** The file. */
+    private final File file;
+    /** The number of batches in the file. */
+    private final int numBatches;
+    /** The number of tuples in the file. */
+    private final long numTuples;
+    /** The number of holders of the segment, the backup and the replays that read it. Guarded by the backup. */
+    private int numHolders;
+
+    /**
+     * @param file the file.
+     * @param numBatches the number of batches in the file.
+     * @param numTuples the number of tuples in the file.
+     */
+    private Segment(final File file, final int numBatches, final long numTuples) {
+      this.file = file;
+      this.numBatches = numBatches;
+      this.numTuples = numTuples;
+      numHolders = 1;
+    }
+  }
+
+  @Override
+  public void init(final ImmutableMap<String, Object> execEnvVars) {
+    inMemory = new ArrayList<TupleBatch>();
+    numInMemory = 0;
+    segments = new ArrayList<Segment>();
+    numDiscarded = 0;
+    numAcknowledged = 0;
+    spillFailed = false;
+    memoryTuples = MyriaConstants.FT_BACKUP_BUFFER_MEMORY_TUPLES_DEFAULT_VALUE;
+    maxSegments = MyriaConstants.FT_BACKUP_BUFFER_MAX_SEGMENTS_DEFAULT_VALUE;
+    String workingDirectory = null;
+    if (execEnvVars != null) {
+      Object value = execEnvVars.get(MyriaSystemConfigKeys.FT_BACKUP_BUFFER_MEMORY_TUPLES);
+      if (value != null) {
+        memoryTuples = Long.parseLong(value.toString());
+      }
+      value = execEnvVars.get(MyriaSystemConfigKeys.FT_BACKUP_BUFFER_MAX_SEGMENTS);
+      if (value != null) {
+        maxSegments = Integer.parseInt(value.toString());
+      }
+      value = execEnvVars.get(MyriaSystemConfigKeys.WORKING_DIRECTORY);
+      if (value != null) {
+        workingDirectory = value.toString();
+      }
+    }
+    if (workingDirectory == null) {
+      workingDirectory = System.getProperty("java.io.tmpdir");
+    }
+    directory = new File(workingDirectory, MyriaConstants.FT_BACKUP_BUFFER_DIRECTORY);
+  }
+
+  @Override
+  public synchronized void cleanup() {
+    if (segments != null) {
+      for (Segment segment : segments) {
+        release(segment);
+      }
+    }
+    segments = null;
+    inMemory = null;
+  }
+
+  @Override
+  public Schema getSchema() {
+    return getOp().getSchema();
+  }
+
+  @Override
+  public synchronized TupleBatch update(final TupleBatch tb) {
+    if (!tb.isEOI()) {
+      inMemory.add(tb);
+      numInMemory += tb.numTuples();
+      if (numInMemory > memoryTuples && !spillFailed) {
+        spill();
+      }
+    }
+    return tb;
+  }
+
+  /**
+   * Write the batches in memory to a new segment file and drop them from memory.
+   */
+  private void spill() {
+    File file = null;
+    try {
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+        throw new IOException("cannot create directory " + directory);
+      }
+      file = File.createTempFile("backup-", ".seg", directory);
+      try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+        for (TupleBatch tb : inMemory) {
+          tb.toTransportMessage().getDataMessage().writeDelimitedTo(out);
+        }
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Failed to spill the backup buffer of {}, keeping it in memory", getOp().getOpName(), e);
+      spillFailed = true;
+      if (file != null && !file.delete()) {
+        LOGGER.warn("Failed to delete {}", file);
+      }
+      return;
+    }
+    segments.add(new Segment(file, inMemory.size(), numInMemory));
+    inMemory = new ArrayList<TupleBatch>();
+    numInMemory = 0;
+    if (maxSegments > 0 && segments.size() > maxSegments) {
+      if (numDiscarded <= numAcknowledged) {
+        LOGGER.warn("The backup buffer of {} has more than {} segments and drops tuples that were not acknowledged, "
+            + "a recovery of their receiver will fail", getOp().getOpName(), maxSegments);
+      }
+      Segment segment = segments.remove(0);
+      numDiscarded += segment.numTuples;
+      release(segment);
+    }
+  }
+
+  /**
+   * Drop a holder of a segment, and delete its file if it was the last one. Called with the lock of the backup held.
+   * 
+   * @param segment the segment.
+   */
+  private void release(final Segment segment) {
+    segment.numHolders--;
+    if (segment.numHolders == 0 && !segment.file.delete()) {
+      LOGGER.warn("Failed to delete backup segment {}", segment.file);
+    }
+  }
+
+  /**
+   * Drop the tuples that no longer need to be replayed. Tuples are only dropped with the segment, or the in-memory
+   * batch, that holds them, so some of these tuples may be kept and replayed.
+   * 
+   * @param numAcknowledged the number of tuples, counted from the first tuple ever added, that no longer need to be
+   *          replayed.
+   */
+  public synchronized void checkpoint(final long numAcknowledged) {
+    this.numAcknowledged = Math.max(this.numAcknowledged, numAcknowledged);
+    while (!segments.isEmpty() && numDiscarded + segments.get(0).numTuples <= numAcknowledged) {
+      Segment segment = segments.remove(0);
+      numDiscarded += segment.numTuples;
+      release(segment);
+    }
+    if (!segments.isEmpty()) {
+      return;
+    }
+    while (!inMemory.isEmpty() && numDiscarded + inMemory.get(0).numTuples() <= numAcknowledged) {
+      TupleBatch tb = inMemory.remove(0);
+      numDiscarded += tb.numTuples();
+      numInMemory -= tb.numTuples();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * 
+   * The returned list is {@link Closeable}, and must be closed once it has been read. Reading it fails if tuples that
+   * were not acknowledged have been dropped.
+   */
+  @Override
+  public synchronized List<TupleBatch> exportState() {
+    for (Segment segment : segments) {
+      segment.numHolders++;
+    }
+    return new Replay(new ArrayList<Segment>(segments), new ArrayList<TupleBatch>(inMemory), numDiscarded
+        - numAcknowledged);
+  }
+
+  @Override
+  public synchronized int numTuples() {
+    if (segments == null) {
+      return 0;
+    }
+    long sum = numInMemory;
+    for (Segment segment : segments) {
+      sum += segment.numTuples;
+    }
+    return (int) Math.min(sum, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public synchronized long getEstimatedMemoryBytes() {
+    if (inMemory == null) {
+      return 0;
+    }
+    return numInMemory * TupleUtils.estimateTupleBytes(getSchema());
+  }
+
+  /**
+   * @return the number of tuples that have been dropped and will not be replayed.
+   */
+  public synchronized long numDiscarded() {
+    return numDiscarded;
+  }
+
+  /**
+   * @return the number of segment files.
+   */
+  public synchronized int numSegments() {
+    if (segments == null) {
+      return 0;
+    }
+    return segments.size();
+  }
+
+  /**
+   * The batches at the time of {@link #exportState()}. The spilled batches are read when they are requested, and are
+   * expected to be requested in order; requesting an earlier batch than the last one reads its segment again. The
+   * segments are held until the replay is closed.
+   */
+  private final class Replay extends AbstractList<TupleBatch> implements Closeable {
+    /** The spilled batches. */
+    private final List<Segment> spilled;
+    /** The batches in memory. */
+    private final List<TupleBatch> recent;
+    /** The number of spilled batches. */
+    private final int numSpilledBatches;
+    /** The number of tuples that were dropped before they were acknowledged. */
+    private final long numLost;
+    /** The stream of the segment being read, or null. */
+    private InputStream in;
+    /** The index of the segment being read. */
+    private int segmentIndex;
+    /** The index of the first batch after the segment being read. */
+    private int segmentEnd;
+    /** The index of the next batch in the stream. */
+    private int nextIndex;
+    /** The last batch that was read. */
+    private TupleBatch last;
+    /** Whether the replay is closed. */
+    private boolean closed;
+
+    /**
+     * @param spilled the spilled batches, whose segments are held by the replay.
+     * @param recent the batches in memory.
+     * @param numLost the number of tuples that were dropped before they were acknowledged.
+     */
+    private Replay(final List<Segment> spilled, final List<TupleBatch> recent, final long numLost) {
+      this.spilled = spilled;
+      this.recent = recent;
+      this.numLost = numLost;
+      int sum = 0;
+      for (Segment segment : spilled) {
+        sum += segment.numBatches;
+      }
+      numSpilledBatches = sum;
+    }
+
+    @Override
+    public TupleBatch get(final int index) {
+      if (numLost > 0) {
+        throw new IllegalStateException(String.format(
+            "The backup buffer of %s dropped %d tuples that were not acknowledged, they cannot be replayed", getOp()
+                .getOpName(), numLost));
+      }
+      if (closed) {
+        throw new IllegalStateException("The replay of the backup buffer of " + getOp().getOpName() + " is closed");
+      }
+      if (index >= numSpilledBatches) {
+        return recent.get(index - numSpilledBatches);
+      }
+      if (last != null && index == nextIndex - 1) {
+        return last;
+      }
+      try {
+        if (in == null || index < nextIndex) {
+          open(index);
+        }
+        while (nextIndex <= index) {
+          if (nextIndex == segmentEnd) {
+            /* the current segment is exhausted. */
+            closeStream();
+            segmentIndex++;
+            segmentEnd += spilled.get(segmentIndex).numBatches;
+            in = new BufferedInputStream(new FileInputStream(spilled.get(segmentIndex).file));
+          }
+          DataMessage message = DataMessage.parseDelimitedFrom(in);
+          if (message == null) {
+            throw new EOFException("Backup segment " + spilled.get(segmentIndex).file + " is truncated");
+          }
+          last = IPCUtils.tmToTupleBatch(message, getSchema());
+          nextIndex++;
+        }
+        if (nextIndex == numSpilledBatches) {
+          closeStream();
+        }
+        return last;
+      } catch (IOException | RuntimeException e) {
+        closeStream();
+        last = null;
+        throw new RuntimeException("Failed to read the spilled backup buffer of " + getOp().getOpName(), e);
+      }
+    }
+
+    /**
+     * Start reading at the beginning of the segment that holds a batch.
+     * 
+     * @param index the index of the batch.
+     * @throws IOException if the segment cannot be opened.
+     */
+    private void open(final int index) throws IOException {
+      closeStream();
+      segmentIndex = 0;
+      nextIndex = 0;
+      while (nextIndex + spilled.get(segmentIndex).numBatches <= index) {
+        nextIndex += spilled.get(segmentIndex).numBatches;
+        segmentIndex++;
+      }
+      segmentEnd = nextIndex + spilled.get(segmentIndex).numBatches;
+      last = null;
+      in = new BufferedInputStream(new FileInputStream(spilled.get(segmentIndex).file));
+    }
+
+    /**
+     * Close the stream of the segment being read, if any.
+     */
+    private void closeStream() {
+      if (in == null) {
+        return;
+      }
+      try {
+        in.close();
+      } catch (IOException e) {
+        LOGGER.warn("Failed to close backup segment {}", spilled.get(segmentIndex).file, e);
+      }
+      in = null;
+    }
+
+    @Override
+    public int size() {
+      return numSpilledBatches + recent.size();
+    }
+
+    /**
+     * Close the stream being read, and release the segments.
+     */
+    @Override
+    public void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      closeStream();
+      last = null;
+      synchronized (SpillingAppender.this) {
+        for (Segment segment : spilled) {
+          release(segment);
+        }
+      }
+    }
+  }
+}
@@ -8,22 +8,27 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
 
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.Column;
-import edu.washington.escience.myria.column.builder.ColumnBuilder;
 import edu.washington.escience.myria.column.builder.ColumnFactory;
 import edu.washington.escience.myria.expression.Expression;
-import edu.washington.escience.myria.expression.evaluate.ConstantEvaluator;
 import edu.washington.escience.myria.expression.evaluate.ExpressionOperatorParameter;
 import edu.washington.escience.myria.expression.evaluate.GenericEvaluator;
-import edu.washington.escience.myria.storage.Tuple;
+import edu.washington.escience.myria.expression.evaluate.UdaEvalInterface;
+import edu.washington.escience.myria.operator.agg.UserDefinedAggregatorFactory;
+import edu.washington.escience.myria.storage.AppendableTable;
 import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
 
 /**
  * Apply operator that has to be initialized and carries a state while new tuples are generated.
+ * 
+ * The initializers, the updaters and the emit expressions that read the state are compiled into a single class that
+ * keeps the state in primitive fields, like a user-defined aggregate, see {@link UserDefinedAggregatorFactory}.
  */
 public class StatefulApply extends Apply {
   /***/
@@ -39,15 +44,25 @@ public class StatefulApply extends Apply {
    */
   private ImmutableList<Expression> updateExpressions;
 
+  /**
+   * Compiles the state, with the emit expressions that read it.
+   */
+  private transient UserDefinedAggregatorFactory stateFactory;
+
   /**
    * The states that are passed during execution.
    */
-  private Tuple state;
+  private transient UdaEvalInterface state;
+
+  /**
+   * The indices of the emit expressions that read the state.
+   */
+  private transient int[] needState;
 
   /**
-   * Evaluators that update the {@link #state}. One evaluator for each expression in {@link #updateExpressions}.
+   * The schema of the columns of the emit expressions that read the state.
    */
-  private ArrayList<GenericEvaluator> updateEvaluators;
+  private transient Schema needStateSchema;
 
   /**
    * Schema of the state relation.
@@ -102,45 +117,59 @@ public class StatefulApply extends Apply {
     final int numColumns = getSchema().numColumns();
 
     List<Column<?>> output = Lists.newArrayList(new Column<?>[numColumns]);
-    List<Integer> needState = Lists.newLinkedList();
 
     // first, generate columns that do not require state. This can often be optimized.
     for (int columnIdx = 0; columnIdx < numColumns; columnIdx++) {
       final GenericEvaluator evaluator = getEmitEvaluators().get(columnIdx);
       if (!evaluator.needsState() || evaluator.isCopyFromInput()) {
         output.set(columnIdx, evaluator.evaluateColumn(tb));
-      } else {
-        needState.add(columnIdx);
       }
     }
 
-    // second, build and add the columns that require state
-    List<ColumnBuilder<?>> columnBuilders = Lists.newArrayListWithCapacity(needState.size());
-    for (int builderIdx = 0; builderIdx < needState.size(); builderIdx++) {
-      columnBuilders.add(ColumnFactory.allocateColumn(getEmitEvaluators().get(needState.get(builderIdx))
-          .getOutputType()));
+    // second, update the state and build the columns that require state
+    if (needState.length == 0) {
+      updateState(tb, null);
+      return new TupleBatch(getSchema(), output);
     }
-
-    for (int rowIdx = 0; rowIdx < tb.numTuples(); rowIdx++) {
-      // update state
-      Tuple newState = new Tuple(getStateSchema());
-      for (int columnIdx = 0; columnIdx < stateSchema.numColumns(); columnIdx++) {
-        updateEvaluators.get(columnIdx).eval(tb, rowIdx, newState.getColumn(columnIdx), state);
-      }
-      state = newState;
-      // apply expression
-      for (int index = 0; index < needState.size(); index++) {
-        final GenericEvaluator evaluator = getEmitEvaluators().get(needState.get(index));
-        // TODO: optimize the case where the state is copied directly
-        evaluator.eval(tb, rowIdx, columnBuilders.get(index), state);
+    TupleBatchBuffer stateColumns = new TupleBatchBuffer(needStateSchema);
+    updateState(tb, stateColumns);
+    TupleBatch built = stateColumns.popAny();
+    for (int index = 0; index < needState.length; index++) {
+      if (built == null) {
+        output.set(needState[index], ColumnFactory.allocateColumn(needStateSchema.getColumnType(index)).build());
+      } else {
+        output.set(needState[index], built.getDataColumns().get(index));
       }
     }
 
-    for (int builderIdx = 0; builderIdx < needState.size(); builderIdx++) {
-      output.set(needState.get(builderIdx), columnBuilders.get(builderIdx).build());
+    return new TupleBatch(getSchema(), output);
+  }
+
+  /**
+   * Update the state with every row of a batch, in order, and append the values of the emit expressions that read the
+   * state after each row.
+   * 
+   * @param tb the input batch
+   * @param dest the table with one column per emit expression that reads the state, or null if there is none
+   * @throws DbException if there is an error updating the state.
+   */
+  protected void updateState(final TupleBatch tb, final AppendableTable dest) throws DbException {
+    if (dest == null) {
+      state.updateAll(tb);
+      return;
+    }
+    for (int rowIdx = 0; rowIdx < tb.numTuples(); rowIdx++) {
+      state.update(tb, rowIdx);
+      state.emit(tb, rowIdx, dest, 0);
     }
+  }
 
-    return new TupleBatch(getSchema(), output);
+  /**
+   * @return a new state, set by the initializers.
+   * @throws DbException if the state cannot be compiled.
+   */
+  protected UdaEvalInterface newState() throws DbException {
+    return stateFactory.newState(getChild().getSchema(), getNodeID());
   }
 
   @Override
@@ -152,41 +181,45 @@ public class StatefulApply extends Apply {
 
     ArrayList<GenericEvaluator> evaluators = new ArrayList<>();
     evaluators.ensureCapacity(getEmitExpressions().size());
-    for (Expression expr : getEmitExpressions()) {
+    List<Integer> needStateColumns = new ArrayList<>();
+    List<Expression> stateEmitters = new ArrayList<>();
+    for (int columnIdx = 0; columnIdx < getEmitExpressions().size(); columnIdx++) {
+      Expression expr = getEmitExpressions().get(columnIdx);
       GenericEvaluator evaluator =
           new GenericEvaluator(expr, new ExpressionOperatorParameter(inputSchema, getStateSchema(), getNodeID()));
-      if (evaluator.needsCompiling()) {
+      if (evaluator.needsState() && !evaluator.isCopyFromInput()) {
+        /* Evaluated by the compiled state. */
+        needStateColumns.add(columnIdx);
+        stateEmitters.add(expr);
+      } else if (evaluator.needsCompiling()) {
         evaluator.compile();
       }
       evaluators.add(evaluator);
     }
     setEvaluators(evaluators);
-
-    updateEvaluators = new ArrayList<>();
-    updateEvaluators.ensureCapacity(updateExpressions.size());
-
-    state = new Tuple(getStateSchema());
-
-    for (int columnIdx = 0; columnIdx < getStateSchema().numColumns(); columnIdx++) {
-      Expression expr = initExpressions.get(columnIdx);
-      ConstantEvaluator evaluator =
-          new ConstantEvaluator(expr, new ExpressionOperatorParameter(inputSchema, getNodeID()));
-      evaluator.compile();
-      state.set(columnIdx, evaluator.eval());
+    needState = Ints.toArray(needStateColumns);
+    needStateSchema = getSchema().getSubSchema(needState);
+
+    /* The updaters may omit the names of the state variables. */
+    List<Expression> updaters = new ArrayList<>(updateExpressions.size());
+    for (int i = 0; i < updateExpressions.size(); i++) {
+      updaters.add(new Expression(initExpressions.get(i).getOutputName(), updateExpressions.get(i)
+          .getRootExpressionOperator()));
     }
+    stateFactory = UserDefinedAggregatorFactory.forStatefulApply(initExpressions, updaters, stateEmitters);
+    state = newState();
+  }
 
-    for (Expression expr : updateExpressions) {
-      GenericEvaluator evaluator =
-          new GenericEvaluator(expr, new ExpressionOperatorParameter(inputSchema, getStateSchema(), getNodeID()));
-      evaluator.compile();
-      updateEvaluators.add(evaluator);
-    }
+  @Override
+  protected void cleanup() throws DbException {
+    stateFactory = null;
+    state = null;
   }
 
   /**
    * @return The schema of the state relation.
    */
-  private Schema getStateSchema() {
+  protected Schema getStateSchema() {
     if (stateSchema == null) {
       return generateStateSchema();
     }
@@ -7,6 +7,7 @@ import com.google.common.collect.ImmutableMap;
 
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleUtils;
 
 /**
  * */
@@ -68,4 +69,11 @@ public abstract class StreamingState implements Serializable {
    * @return the number of tuples of state.
    */
   public abstract int numTuples();
+
+  /**
+   * @return the estimated number of bytes of state.
+   */
+  public long getEstimatedMemoryBytes() {
+    return (long) numTuples() * TupleUtils.estimateTupleBytes(getSchema());
+  }
 }
@@ -46,6 +46,11 @@ public class StreamingStateWrapper extends UnaryOperator implements StreamingSta
     state.cleanup();
   }
 
+  @Override
+  public long getEstimatedMemoryBytes() {
+    return state.getEstimatedMemoryBytes();
+  }
+
   @Override
   protected TupleBatch fetchNextReady() throws Exception {
     Operator child = getChild();
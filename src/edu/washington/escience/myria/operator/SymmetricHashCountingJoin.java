@@ -182,6 +182,28 @@ public final class SymmetricHashCountingJoin extends BinaryOperator {
     ans = 0;
   }
 
+  @Override
+  public long getEstimatedMemoryBytes() {
+    long bytes = 0;
+    if (leftHashTable != null) {
+      bytes +=
+          leftHashTable.getEstimatedMemoryBytes()
+              + TupleUtils.estimateHashIndexBytes(leftHashTableIndices, leftHashTable.numTuples());
+    }
+    if (rightHashTable != null) {
+      bytes +=
+          rightHashTable.getEstimatedMemoryBytes()
+              + TupleUtils.estimateHashIndexBytes(rightHashTableIndices, rightHashTable.numTuples());
+    }
+    if (occuredTimesOnLeft != null) {
+      bytes += (long) occuredTimesOnLeft.size() * (Integer.SIZE / Byte.SIZE);
+    }
+    if (occuredTimesOnRight != null) {
+      bytes += (long) occuredTimesOnRight.size() * (Integer.SIZE / Byte.SIZE);
+    }
+    return bytes;
+  }
+
   @Override
   public void checkEOSAndEOI() {
     final Operator left = getLeft();
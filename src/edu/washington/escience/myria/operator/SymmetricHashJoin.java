@@ -395,6 +395,25 @@ public final class SymmetricHashJoin extends BinaryOperator {
     ans = null;
   }
 
+  @Override
+  public long getEstimatedMemoryBytes() {
+    long bytes = 0;
+    if (hashTable1 != null) {
+      bytes +=
+          hashTable1.getEstimatedMemoryBytes()
+              + TupleUtils.estimateHashIndexBytes(leftHashTableIndices, hashTable1.numTuples());
+    }
+    if (hashTable2 != null) {
+      bytes +=
+          hashTable2.getEstimatedMemoryBytes()
+              + TupleUtils.estimateHashIndexBytes(rightHashTableIndices, hashTable2.numTuples());
+    }
+    if (ans != null) {
+      bytes += ans.getEstimatedMemoryBytes();
+    }
+    return bytes;
+  }
+
   /**
    * In blocking mode, asynchronous EOI semantic may make system hang. Only synchronous EOI semantic works.
    * 
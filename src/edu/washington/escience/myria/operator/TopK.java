@@ -0,0 +1,218 @@
+package edu.washington.escience.myria.operator;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.storage.MutableTupleBuffer;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.storage.TupleSorter;
+import edu.washington.escience.myria.storage.TupleUtils;
+
+/**
+ * Returns the first k tuples of its input in the order of the sort columns, in that order. Unlike
+ * {@link InMemoryOrderBy}, only k tuples are ever kept: the candidates are stored in a {@link MutableTupleBuffer} and
+ * organized by a heap of row indices whose root is the candidate that would come last. Once k candidates have been
+ * found, an input tuple is dropped after a single comparison with the root unless it comes before it.
+ * 
+ * To compute the top k tuples of a distributed relation, run a TopK on every worker before a CollectProducer, and
+ * another TopK on the tuples of the CollectConsumer. Then every worker sends at most k tuples.
+ */
+public final class TopK extends UnaryOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** Which columns to sort the tuples by. */
+  private final int[] sortColumns;
+  /** True for each column that should be sorted ascending. */
+  private final boolean[] ascending;
+  /** The number of tuples to return. */
+  private final int k;
+
+  /** The candidates for the result. */
+  private transient MutableTupleBuffer candidates;
+  /** A max-heap of the rows of {@link #candidates}: the root is the candidate that would be returned last. */
+  private transient int[] heap;
+  /** Buffers the result until it is returned. */
+  private transient TupleBatchBuffer ans;
+
+  /**
+   * @param child the source of the tuples.
+   * @param sortColumns the columns that should be ordered by
+   * @param ascending true for each column that should be sorted ascending
+   * @param k the number of tuples to return
+   */
+  public TopK(final Operator child, final int[] sortColumns, final boolean[] ascending, final int k) {
+    super(child);
+    this.sortColumns = Objects.requireNonNull(sortColumns, "sortColumns");
+    this.ascending = Objects.requireNonNull(ascending, "ascending");
+    Preconditions.checkArgument(sortColumns.length == ascending.length,
+        "must have the same number of sort columns and ascending flags");
+    Preconditions.checkArgument(k >= 0, "k must be non-negative");
+    this.k = k;
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws Exception {
+    candidates = new MutableTupleBuffer(getSchema());
+    heap = new int[Math.min(k, TupleBatch.BATCH_SIZE)];
+    ans = null;
+  }
+
+  @Override
+  protected void cleanup() throws Exception {
+    candidates = null;
+    heap = null;
+    ans = null;
+  }
+
+  @Override
+  public long getEstimatedMemoryBytes() {
+    long bytes = 0;
+    if (candidates != null) {
+      bytes += candidates.getEstimatedMemoryBytes();
+    }
+    if (heap != null) {
+      bytes += (long) heap.length * (Integer.SIZE / Byte.SIZE);
+    }
+    if (ans != null) {
+      bytes += ans.getEstimatedMemoryBytes();
+    }
+    return bytes;
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws Exception {
+    if (ans != null) {
+      return ans.popAny();
+    }
+
+    final Operator child = getChild();
+    TupleBatch tb = child.nextReady();
+    while (tb != null) {
+      add(tb);
+      tb = child.nextReady();
+    }
+    if (!child.eos()) {
+      return null;
+    }
+
+    int[] indexes = TupleSorter.sort(candidates, sortColumns, ascending);
+    ans = new TupleBatchBuffer(getSchema());
+    TupleSorter.appendInOrder(candidates, indexes, ans);
+    candidates = null;
+    return ans.popAny();
+  }
+
+  /**
+   * Add the tuples of a batch that come before the current candidates.
+   * 
+   * @param tb the batch.
+   */
+  private void add(final TupleBatch tb) {
+    if (k == 0) {
+      return;
+    }
+    final List<? extends Column<?>> inputColumns = tb.getDataColumns();
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      final int size = candidates.numTuples();
+      if (size < k) {
+        for (int column = 0; column < tb.numColumns(); ++column) {
+          candidates.put(column, inputColumns.get(column), row);
+        }
+        if (size == heap.length) {
+          heap = Arrays.copyOf(heap, (int) Math.min(k, 2L * size));
+        }
+        heap[size] = size;
+        siftUp(size);
+        continue;
+      }
+      final int root = heap[0];
+      if (TupleUtils.tupleCompare(tb, sortColumns, row, candidates, sortColumns, root, ascending) >= 0) {
+        continue;
+      }
+      for (int column = 0; column < tb.numColumns(); ++column) {
+        candidates.replace(column, root, inputColumns.get(column), row);
+      }
+      siftDown(0);
+    }
+  }
+
+  /**
+   * @param a a row of {@link #candidates}.
+   * @param b another row of {@link #candidates}.
+   * @return a negative integer, zero, or a positive integer as row a comes before, together with, or after row b.
+   */
+  private int compare(final int a, final int b) {
+    return TupleUtils.tupleCompare(candidates, sortColumns, a, candidates, sortColumns, b, ascending);
+  }
+
+  /**
+   * Restore the heap property after the entry at the specified position has been added.
+   * 
+   * @param position the position in {@link #heap}.
+   */
+  private void siftUp(final int position) {
+    int child = position;
+    while (child > 0) {
+      int parent = (child - 1) / 2;
+      if (compare(heap[parent], heap[child]) >= 0) {
+        return;
+      }
+      swap(parent, child);
+      child = parent;
+    }
+  }
+
+  /**
+   * Restore the heap property after the entry at the specified position has been replaced by a smaller one.
+   * 
+   * @param position the position in {@link #heap}.
+   */
+  private void siftDown(final int position) {
+    final int size = candidates.numTuples();
+    int parent = position;
+    while (true) {
+      int largest = parent;
+      int left = 2 * parent + 1;
+      int right = left + 1;
+      if (left < size && compare(heap[left], heap[largest]) > 0) {
+        largest = left;
+      }
+      if (right < size && compare(heap[right], heap[largest]) > 0) {
+        largest = right;
+      }
+      if (largest == parent) {
+        return;
+      }
+      swap(parent, largest);
+      parent = largest;
+    }
+  }
+
+  /**
+   * @param i a position in {@link #heap}.
+   * @param j another position in {@link #heap}.
+   */
+  private void swap(final int i, final int j) {
+    int tmp = heap[i];
+    heap[i] = heap[j];
+    heap[j] = tmp;
+  }
+
+  @Override
+  protected Schema generateSchema() {
+    Operator child = getChild();
+    if (child == null) {
+      return null;
+    }
+    return child.getSchema();
+  }
+}
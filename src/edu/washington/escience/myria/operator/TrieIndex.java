@@ -0,0 +1,312 @@
+package edu.washington.escience.myria.operator;
+
+import java.util.Arrays;
+
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.ReadableTable;
+import edu.washington.escience.myria.storage.TupleSorter;
+import edu.washington.escience.myria.storage.TupleUtils;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+
+/**
+ * A trie over the key columns of a table, used by {@link LeapFrogJoin}. Level i of the trie holds one node for every
+ * distinct prefix of the first i + 1 key columns, in sorted order. For every node it stores the position of its first
+ * tuple in the sorted table and, except on the last level, the index of its first child on the next level, so the
+ * children of a node and the tuples of a node are contiguous ranges. If the table is not already sorted on the key
+ * columns, the sort order is computed once and positions are mapped to rows through it.
+ * 
+ * The values of INT and LONG key columns are also copied into a long array per level, so that seeks on integer keys
+ * compare primitives instead of going through the table. Seeks use galloping (exponential) search, which costs
+ * O(log d) comparisons to move d nodes forward.
+ */
+final class TrieIndex {
+
+  /** The sorted table. */
+  private final ReadableTable table;
+  /** The key columns, in the order of the levels. */
+  private final int[] keyColumns;
+  /** The row at every position of the sorted table, or null if the table is sorted. */
+  private final int[] order;
+  /** For every level, the first position of every node, followed by the number of rows. */
+  private final int[][] firstRows;
+  /** For every level but the last, the first child of every node, followed by the number of nodes of the next level. */
+  private final int[][] firstChildren;
+  /** For every level with an integer key column, the key of every node; null for other levels. */
+  private final long[][] longKeys;
+
+  /**
+   * Build the trie.
+   * 
+   * @param table the table.
+   * @param keyColumns the key columns, in the order of the levels.
+   */
+  TrieIndex(final ReadableTable table, final int[] keyColumns) {
+    this.table = table;
+    this.keyColumns = keyColumns;
+    if (isSorted()) {
+      order = null;
+    } else {
+      boolean[] ascending = new boolean[keyColumns.length];
+      Arrays.fill(ascending, true);
+      order = TupleSorter.sort(table, keyColumns, ascending);
+    }
+
+    final int numLevels = keyColumns.length;
+    TIntList[] rows = new TIntList[numLevels];
+    TIntList[] children = new TIntList[numLevels];
+    TLongList[] keys = new TLongList[numLevels];
+    for (int level = 0; level < numLevels; ++level) {
+      rows[level] = new TIntArrayList();
+      children[level] = new TIntArrayList();
+      if (isIntegerColumn(keyColumns[level])) {
+        keys[level] = new TLongArrayList();
+      }
+    }
+
+    final int numTuples = table.numTuples();
+    for (int position = 0; position < numTuples; ++position) {
+      /* The first level whose key differs from the previous tuple starts a new node on it and every level below. */
+      final int row = row(position);
+      int level = 0;
+      if (position > 0) {
+        final int previousRow = row(position - 1);
+        while (level < numLevels
+            && TupleUtils.cellCompare(table, keyColumns[level], previousRow, table, keyColumns[level], row) == 0) {
+          ++level;
+        }
+      }
+      for (; level < numLevels; ++level) {
+        rows[level].add(position);
+        if (level + 1 < numLevels) {
+          children[level].add(rows[level + 1].size());
+        }
+        if (keys[level] != null) {
+          keys[level].add(getLong(keyColumns[level], row));
+        }
+      }
+    }
+
+    firstRows = new int[numLevels][];
+    firstChildren = new int[numLevels][];
+    longKeys = new long[numLevels][];
+    for (int level = 0; level < numLevels; ++level) {
+      rows[level].add(numTuples);
+      firstRows[level] = rows[level].toArray();
+      if (level + 1 < numLevels) {
+        children[level].add(rows[level + 1].size());
+        firstChildren[level] = children[level].toArray();
+      }
+      if (keys[level] != null) {
+        longKeys[level] = keys[level].toArray();
+      }
+    }
+  }
+
+  /**
+   * @return true if the table is sorted on the key columns.
+   */
+  private boolean isSorted() {
+    for (int row = 1; row < table.numTuples(); ++row) {
+      for (int column : keyColumns) {
+        int cmp = TupleUtils.cellCompare(table, column, row - 1, table, column, row);
+        if (cmp > 0) {
+          return false;
+        }
+        if (cmp < 0) {
+          break;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param position a position in the sorted table.
+   * @return the row of the table at that position.
+   */
+  int row(final int position) {
+    if (order == null) {
+      return position;
+    }
+    return order[position];
+  }
+
+  /**
+   * @param column a column of the table.
+   * @return true if the column holds integers that are compared as longs.
+   */
+  private boolean isIntegerColumn(final int column) {
+    Type type = table.getSchema().getColumnType(column);
+    return type == Type.INT_TYPE || type == Type.LONG_TYPE;
+  }
+
+  /**
+   * @param column an integer column of the table.
+   * @param row a row of the table.
+   * @return the value in that cell, as a long.
+   */
+  private long getLong(final int column, final int row) {
+    if (table.getSchema().getColumnType(column) == Type.INT_TYPE) {
+      return table.getInt(column, row);
+    }
+    return table.getLong(column, row);
+  }
+
+  /**
+   * @return the number of levels.
+   */
+  int numLevels() {
+    return keyColumns.length;
+  }
+
+  /**
+   * @param level a level.
+   * @return the number of nodes on that level.
+   */
+  int numNodes(final int level) {
+    return firstRows[level].length - 1;
+  }
+
+  /**
+   * @param level a level but the last.
+   * @param node a node on that level, or the number of nodes on that level.
+   * @return the first child of that node, or the number of nodes on the next level.
+   */
+  int firstChild(final int level, final int node) {
+    return firstChildren[level][node];
+  }
+
+  /**
+   * @param level a level.
+   * @param node a node on that level, or the number of nodes on that level.
+   * @return the first position of that node in the sorted table, or the number of rows.
+   */
+  int firstPosition(final int level, final int node) {
+    return firstRows[level][node];
+  }
+
+  /**
+   * @param level a level.
+   * @param position a position in the sorted table, or the number of rows.
+   * @return the first node on that level whose first position is not less than the position, or the number of nodes on
+   *         that level if there is none.
+   */
+  int firstNode(final int level, final int position) {
+    int ret = Arrays.binarySearch(firstRows[level], position);
+    if (ret < 0) {
+      return -ret - 1;
+    }
+    /* Nodes are not empty, so the first positions of a level are distinct. */
+    return ret;
+  }
+
+  /**
+   * @param level a level of this trie.
+   * @param node a node on that level.
+   * @param other another trie.
+   * @param otherLevel a level of the other trie.
+   * @param otherNode a node on that level.
+   * @return a negative integer, zero, or a positive integer as the key of the node is less than, equal to, or greater
+   *         than the key of the other node.
+   */
+  int compare(final int level, final int node, final TrieIndex other, final int otherLevel, final int otherNode) {
+    if (longKeys[level] != null && other.longKeys[otherLevel] != null) {
+      return Long.compare(longKeys[level][node], other.longKeys[otherLevel][otherNode]);
+    }
+    return TupleUtils.cellCompare(table, keyColumns[level], row(firstRows[level][node]), other.table,
+        other.keyColumns[otherLevel], other.row(other.firstRows[otherLevel][otherNode]));
+  }
+
+  /**
+   * Find the first node in a range of a level whose key is not less than the key of a node of another trie.
+   * 
+   * @param level a level of this trie.
+   * @param from the first node of the range.
+   * @param to the node after the last node of the range.
+   * @param other another trie.
+   * @param otherLevel a level of the other trie.
+   * @param otherNode a node on that level, whose key is the target.
+   * @return the first node in the range whose key is not less than the target, or <code>to</code> if there is none.
+   */
+  int seek(final int level, final int from, final int to, final TrieIndex other, final int otherLevel,
+      final int otherNode) {
+    if (longKeys[level] != null && other.longKeys[otherLevel] != null) {
+      return seek(longKeys[level], from, to, other.longKeys[otherLevel][otherNode]);
+    }
+    if (from >= to || compare(level, from, other, otherLevel, otherNode) >= 0) {
+      return from;
+    }
+    /* Gallop: the key of low is less than the target, and so are all keys before high unless high is past the end. */
+    int low = from;
+    int step = 1;
+    int high = from + step;
+    while (high < to && compare(level, high, other, otherLevel, otherNode) < 0) {
+      low = high;
+      step <<= 1;
+      high = low + step;
+    }
+    high = Math.min(high, to);
+    while (high - low > 1) {
+      int mid = (low + high) >>> 1;
+      if (compare(level, mid, other, otherLevel, otherNode) < 0) {
+        low = mid;
+      } else {
+        high = mid;
+      }
+    }
+    return high;
+  }
+
+  /**
+   * Galloping search on sorted longs.
+   * 
+   * @param keys the sorted keys.
+   * @param from the first index of the range.
+   * @param to the index after the last index of the range.
+   * @param target the target.
+   * @return the first index in the range whose key is not less than the target, or <code>to</code> if there is none.
+   */
+  private static int seek(final long[] keys, final int from, final int to, final long target) {
+    if (from >= to || keys[from] >= target) {
+      return from;
+    }
+    int low = from;
+    int step = 1;
+    int high = from + step;
+    while (high < to && keys[high] < target) {
+      low = high;
+      step <<= 1;
+      high = low + step;
+    }
+    high = Math.min(high, to);
+    int ret = Arrays.binarySearch(keys, low + 1, high, target);
+    if (ret < 0) {
+      return -ret - 1;
+    }
+    /* Arrays.binarySearch finds any of several equal keys, but keys are distinct on a level. */
+    return ret;
+  }
+
+  /**
+   * @return the estimated number of bytes used by the index, not counting the table.
+   */
+  long getEstimatedMemoryBytes() {
+    long bytes = 0;
+    if (order != null) {
+      bytes += (long) order.length * (Integer.SIZE / Byte.SIZE);
+    }
+    for (int level = 0; level < keyColumns.length; ++level) {
+      bytes += (long) firstRows[level].length * (Integer.SIZE / Byte.SIZE);
+      if (firstChildren[level] != null) {
+        bytes += (long) firstChildren[level].length * (Integer.SIZE / Byte.SIZE);
+      }
+      if (longKeys[level] != null) {
+        bytes += (long) longKeys[level].length * (Long.SIZE / Byte.SIZE);
+      }
+    }
+    return bytes;
+  }
+}
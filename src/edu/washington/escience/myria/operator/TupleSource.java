@@ -1,5 +1,7 @@
 package edu.washington.escience.myria.operator;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.List;
 import java.util.Objects;
 
@@ -62,27 +64,32 @@ public final class TupleSource extends LeafOperator {
   }
 
   /**
-   * Constructs a TupleSource operator that will serve the tuples in the given List<TupleBatch>.
+   * Constructs a TupleSource operator that will serve the tuples in the given List<TupleBatch>. If the schema is
+   * supplied, the tuples are not read until they are served, so they may be read lazily. If the list is
+   * {@link Closeable}, it is closed with this operator.
    * 
    * @param data the tuples that this operator will serve.
    * @param schema the schema of the tuples.
    */
   public TupleSource(final List<TupleBatch> data, final Schema schema) {
     this.data = Objects.requireNonNull(data);
-    if (data.size() == 0) {
+    if (data.size() == 0 || schema != null) {
       this.schema = Objects.requireNonNull(schema, "either data.get(0) must be non-null, or schema must be supplied");
     } else {
       this.schema = data.get(0).getSchema();
-      if (schema != null) {
-        Preconditions.checkArgument(this.schema.equals(schema),
-            "supplied schema does not match the schema in data.get(0)");
-      }
     }
   }
 
   @Override
   protected void cleanup() throws DbException {
     index = 0;
+    if (data instanceof Closeable) {
+      try {
+        ((Closeable) data).close();
+      } catch (IOException e) {
+        throw new DbException(e);
+      }
+    }
     data = null;
   }
 
@@ -97,6 +104,7 @@ public final class TupleSource extends LeafOperator {
       setEOI(true);
       return null;
     }
+    Preconditions.checkState(ret.getSchema().equals(schema), "supplied schema does not match the schema in data");
     return ret;
   }
 
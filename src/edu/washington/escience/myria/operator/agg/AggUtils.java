@@ -18,6 +18,20 @@ public final class AggUtils {
   private AggUtils() {
   }
 
+  /** Estimated number of bytes of an aggregator, including its running state. */
+  private static final int ESTIMATED_AGGREGATOR_BYTES = 64;
+  /** Estimated number of bytes of the hash map entry of a group, including its key. */
+  private static final int ESTIMATED_GROUP_ENTRY_BYTES = 48;
+
+  /**
+   * @param numGroups the number of groups.
+   * @param numAggregators the number of aggregators of each group.
+   * @return the estimated number of bytes held by the groups and their aggregators.
+   */
+  public static long estimateGroupBytes(final int numGroups, final int numAggregators) {
+    return (long) numGroups * (ESTIMATED_GROUP_ENTRY_BYTES + (long) numAggregators * ESTIMATED_AGGREGATOR_BYTES);
+  }
+
   /** Which aggregation ops require COUNT to be computed. */
   private static final Set<AggregationOp> COUNT_OPS = ImmutableSet.of(AggregationOp.COUNT, AggregationOp.AVG,
       AggregationOp.STDEV);
@@ -91,6 +91,15 @@ public final class MultiGroupByAggregate extends UnaryOperator {
     groupKeyList = null;
   }
 
+  @Override
+  public long getEstimatedMemoryBytes() {
+    if (groupKeys == null) {
+      return 0;
+    }
+    return groupKeys.getEstimatedMemoryBytes() + TupleUtils.estimateHashIndexBytes(groupKeyMap, groupKeys.numTuples())
+        + AggUtils.estimateGroupBytes(groupKeys.numTuples(), factories.length);
+  }
+
   /**
    * Returns the next tuple. If there is a group by field, then the first field is the field by which we are grouping,
    * and the second field is the result of computing the aggregate, If there is no group by field, then the result tuple
@@ -142,6 +142,35 @@ public class SingleGroupByAggregate extends UnaryOperator {
     resultBuffer = null;
   }
 
+  @Override
+  public long getEstimatedMemoryBytes() {
+    int numGroups = 0;
+    if (groupAggsBoolean != null) {
+      for (Aggregator[] groupAgg : groupAggsBoolean) {
+        if (groupAgg != null) {
+          numGroups++;
+        }
+      }
+    } else if (groupAggsInt != null) {
+      numGroups = groupAggsInt.size();
+    } else if (groupAggsLong != null) {
+      numGroups = groupAggsLong.size();
+    } else if (groupAggsFloat != null) {
+      numGroups = groupAggsFloat.size();
+    } else if (groupAggsDouble != null) {
+      numGroups = groupAggsDouble.size();
+    } else if (groupAggsString != null) {
+      numGroups = groupAggsString.size();
+    } else if (groupAggsDatetime != null) {
+      numGroups = groupAggsDatetime.size();
+    }
+    long bytes = AggUtils.estimateGroupBytes(numGroups, factories.length);
+    if (resultBuffer != null) {
+      bytes += resultBuffer.getEstimatedMemoryBytes();
+    }
+    return bytes;
+  }
+
   /**
    * Utility function to fetch or create/initialize the aggregators for the group corresponding to the data in the
    * specified table and row.
@@ -1,11 +1,13 @@
 package edu.washington.escience.myria.operator.agg;
 
-import java.lang.reflect.InvocationTargetException;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Objects;
 
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
-import edu.washington.escience.myria.expression.evaluate.GenericEvaluator;
+import edu.washington.escience.myria.expression.evaluate.UdaEvalInterface;
 import edu.washington.escience.myria.storage.AppendableTable;
 import edu.washington.escience.myria.storage.ReadableTable;
 import edu.washington.escience.myria.storage.Tuple;
@@ -18,78 +20,87 @@ public class UserDefinedAggregator implements Aggregator {
   private static final long serialVersionUID = 1L;
 
   /**
-   * The state of the aggregate variables.
+   * The compiled aggregate, which holds the state of the aggregate variables. The compiled class cannot be serialized,
+   * so the state is serialized as a {@link Tuple} and loaded into a new instance after deserialization.
    */
-  private Tuple state;
+  private transient UdaEvalInterface state;
   /**
-   * The old state of the aggregate variables.
+   * The factory that compiled the aggregate, to compile it again after deserialization.
    */
-  private Tuple oldState;
+  private final UserDefinedAggregatorFactory factory;
   /**
-   * Evaluators that update the {@link #state}. One evaluator for each expression in {@link #updateExpressions}.
+   * The Schema of the input tuples.
    */
-  private final ArrayList<GenericEvaluator> updateEvaluators;
+  private final Schema inputSchema;
   /**
-   * One evaluator for each expression in {@link #emitExpressions}.
+   * The Schema of the state.
    */
-  private final ArrayList<GenericEvaluator> emitEvaluators;
+  private final Schema stateSchema;
   /**
    * The Schema of the tuples produced by this aggregator.
    */
   private final Schema resultSchema;
 
   /**
-   * @param state the initialized state of the tuple
-   * @param updateEvaluators the evaluators that update the state given an input row
-   * @param emitEvaluators the evaluators that finalize the state
+   * @param factory the factory that compiled the aggregate
+   * @param inputSchema the schema of the input tuples
+   * @param state the compiled aggregate, holding the initialized state
+   * @param stateSchema the schema of the state
    * @param resultSchema the schema of the tuples produced by this aggregator
    */
-  public UserDefinedAggregator(final Tuple state, final ArrayList<GenericEvaluator> updateEvaluators,
-      final ArrayList<GenericEvaluator> emitEvaluators, final Schema resultSchema) {
-    this.state = state;
-    oldState = state.clone();
-    this.updateEvaluators = updateEvaluators;
-    this.emitEvaluators = emitEvaluators;
+  public UserDefinedAggregator(final UserDefinedAggregatorFactory factory, final Schema inputSchema,
+      final UdaEvalInterface state, final Schema stateSchema, final Schema resultSchema) {
+    this.factory = Objects.requireNonNull(factory, "factory");
+    this.inputSchema = inputSchema;
+    this.state = Objects.requireNonNull(state, "state");
+    this.stateSchema = stateSchema;
     this.resultSchema = resultSchema;
   }
 
   @Override
   public void add(final ReadableTable from) throws DbException {
-    for (int row = 0; row < from.numTuples(); ++row) {
-      addRow(from, row);
-    }
+    state.updateAll(from);
   }
 
   @Override
   public void addRow(final ReadableTable from, final int row) throws DbException {
-    // set the old state to the current state
-    Tuple tmp = state;
-    state = oldState;
-    oldState = tmp;
-    // update state
-    for (int columnIdx = 0; columnIdx < tmp.getSchema().numColumns(); columnIdx++) {
-      try {
-        updateEvaluators.get(columnIdx).eval(from, row, state.getColumn(columnIdx), oldState);
-      } catch (InvocationTargetException e) {
-        throw new DbException("Error updating state", e);
-      }
-    }
+    state.update(from, row);
   }
 
   @Override
   public void getResult(final AppendableTable dest, final int destColumn) throws DbException {
-    for (int index = 0; index < emitEvaluators.size(); index++) {
-      final GenericEvaluator evaluator = emitEvaluators.get(index);
-      try {
-        evaluator.eval(null, 0, dest.asWritableColumn(destColumn + index), state);
-      } catch (InvocationTargetException e) {
-        throw new DbException("Error finalizing aggregate", e);
-      }
-    }
+    state.emit(dest, destColumn);
   }
 
   @Override
   public Schema getResultSchema() {
     return resultSchema;
   }
+
+  /**
+   * @param out the stream to write this aggregator to.
+   * @throws IOException if the stream cannot be written.
+   */
+  private void writeObject(final ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    Tuple savedState = new Tuple(stateSchema);
+    state.saveState(savedState);
+    out.writeObject(savedState);
+  }
+
+  /**
+   * @param in the stream to read this aggregator from.
+   * @throws IOException if the stream cannot be read or the aggregate cannot be compiled.
+   * @throws ClassNotFoundException if the class of a serialized object cannot be found.
+   */
+  private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    Tuple savedState = (Tuple) in.readObject();
+    try {
+      state = ((UserDefinedAggregator) factory.get(inputSchema)).state;
+    } catch (DbException e) {
+      throw new IOException("Error when compiling user-defined aggregate", e);
+    }
+    state.loadState(savedState, 0);
+  }
 }
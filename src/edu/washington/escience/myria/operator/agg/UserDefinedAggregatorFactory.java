@@ -1,10 +1,14 @@
 package edu.washington.escience.myria.operator.agg;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.Callable;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.codehaus.commons.compiler.CompilerFactoryFactory;
+import org.codehaus.commons.compiler.IClassBodyEvaluator;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -12,21 +16,40 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 
 import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.expression.Expression;
-import edu.washington.escience.myria.expression.evaluate.ConstantEvaluator;
+import edu.washington.escience.myria.expression.StateExpression;
+import edu.washington.escience.myria.expression.VariableExpression;
+import edu.washington.escience.myria.expression.evaluate.CompiledExpressionCache;
 import edu.washington.escience.myria.expression.evaluate.ExpressionOperatorParameter;
-import edu.washington.escience.myria.expression.evaluate.GenericEvaluator;
+import edu.washington.escience.myria.expression.evaluate.UdaEvalInterface;
+import edu.washington.escience.myria.storage.AppendableTable;
+import edu.washington.escience.myria.storage.ReadableTable;
 import edu.washington.escience.myria.storage.Tuple;
 
 /**
  * Apply operator that has to be initialized and carries a state while new tuples are generated.
+ *
+ * The initializers, updaters and emitters are compiled into a single class that keeps the state in primitive fields,
+ * see {@link UdaEvalInterface}. If combiners are given, the aggregate can also be computed in two phases: a partial
+ * aggregate, e.g., before a shuffle, that emits its state, and a final aggregate that combines the partial states.
+ * {@link edu.washington.escience.myria.api.encoding.QueryConstruct} splits the aggregates of plans that way.
  */
 public class UserDefinedAggregatorFactory implements AggregatorFactory {
   /** Required for Java serialization. */
   private static final long serialVersionUID = 1L;
 
+  /** The name of the class of compiled aggregates. */
+  private static final String CLASS_NAME = "CompiledUserDefinedAggregate";
+
+  /** The prefix of the names of the partial state columns, followed by the index of the column. */
+  private static final String PARTIAL_STATE_PREFIX = "_state";
+
+  /** The names of the parameters of the methods of {@link UdaEvalInterface} in the generated code. */
+  private static final String[] PARAMETER_NAMES = new String[] { Expression.TB, Expression.ROW, Expression.STATE };
+
   /** Expressions that initialize the state variables. */
   @JsonProperty
   private final List<Expression> initializers;
@@ -36,19 +59,32 @@ public class UserDefinedAggregatorFactory implements AggregatorFactory {
   /** Expressions that emit the final aggregation result from the state. */
   @JsonProperty
   private final List<Expression> emitters;
-
   /**
-   * The states that are passed during execution.
+   * Expressions that update the state variables as a function of the current state and an input tuple holding another
+   * partial state, or null if partial states cannot be combined.
    */
-  private transient Tuple state;
+  @JsonProperty
+  private final List<Expression> combiners;
   /**
-   * Evaluators that update the {@link #state}. One evaluator for each expression in {@link #updaters}.
+   * The column of the input that the expressions read as column 0. In the final phase of a grouped aggregate, the
+   * partial state does not start at column 0 but after the group columns and the states of the previous aggregates.
    */
-  private transient ArrayList<GenericEvaluator> updateEvaluators;
+  private final int inputOffset;
   /**
-   * One evaluator for each expression in {@link #emitters}.
+   * Whether the emitters may read the input row, as in a {@link edu.washington.escience.myria.operator.StatefulApply}.
+   * Such emitters can only be evaluated by the emit method that is given an input row.
    */
-  private transient ArrayList<GenericEvaluator> emitEvaluators;
+  private final boolean rowEmitters;
+
+  /**
+   * The compiled aggregate holding the initial state. Every aggregator gets a new instance.
+   */
+  private transient UdaEvalInterface prototype;
+
+  /**
+   * The schema of the state.
+   */
+  private transient Schema stateSchema;
 
   /**
    * The schema of the result tuples.
@@ -57,79 +93,289 @@ public class UserDefinedAggregatorFactory implements AggregatorFactory {
 
   /**
    * Construct a new user-defined aggregate. The initializers set the initial state of the aggregate; the updaters
-   * update this state for every new tuple. The emitters produce the final value of the aggregate. Note that there must
-   * be the same number of initializers and updaters, but there may be any number > 0 of emitters.
-   * 
+   * update this state for every new tuple. The emitters produce the final value of the aggregate from the state, and
+   * may not read the input. Note that there must be the same number of initializers and updaters, but there may be any
+   * number > 0 of emitters.
+   *
    * @param initializers Expressions that initialize the state variables.
    * @param updaters Expressions that update the state variables as a function of the input and the current tuple.
    * @param emitters Expressions that emit the final aggregation result from the state.
    */
+  public UserDefinedAggregatorFactory(final List<Expression> initializers, final List<Expression> updaters,
+      final List<Expression> emitters) {
+    this(initializers, updaters, emitters, null);
+  }
+
+  /**
+   * Construct a new user-defined aggregate that can be computed in two phases. The combiners update the state like
+   * the updaters do, but their input tuples hold the partial states emitted by {@link #getPartialFactory()} instead of
+   * the original input tuples. There must be the same number of combiners as initializers.
+   *
+   * @param initializers Expressions that initialize the state variables.
+   * @param updaters Expressions that update the state variables as a function of the input and the current tuple.
+   * @param emitters Expressions that emit the final aggregation result from the state.
+   * @param combiners Expressions that combine a partial state into the state, or null.
+   */
   @JsonCreator
   public UserDefinedAggregatorFactory(
       @JsonProperty(value = "initializers", required = true) final List<Expression> initializers,
       @JsonProperty(value = "updaters", required = true) final List<Expression> updaters,
-      @JsonProperty(value = "emitters", required = true) final List<Expression> emitters) {
+      @JsonProperty(value = "emitters", required = true) final List<Expression> emitters,
+      @JsonProperty(value = "combiners") final List<Expression> combiners) {
+    this(initializers, updaters, emitters, combiners, 0, false);
+  }
+
+  /**
+   * @param initializers Expressions that initialize the state variables.
+   * @param updaters Expressions that update the state variables as a function of the input and the current tuple.
+   * @param emitters Expressions that emit the final aggregation result from the state.
+   * @param combiners Expressions that combine a partial state into the state, or null.
+   * @param inputOffset the column of the input that the expressions read as column 0.
+   * @param rowEmitters whether the emitters may read the input row.
+   */
+  private UserDefinedAggregatorFactory(final List<Expression> initializers, final List<Expression> updaters,
+      final List<Expression> emitters, final List<Expression> combiners, final int inputOffset,
+      final boolean rowEmitters) {
     this.initializers = Objects.requireNonNull(initializers, "initializers");
     this.updaters = Objects.requireNonNull(updaters, "updaters");
     this.emitters = Objects.requireNonNull(emitters, "emitters");
-    state = null;
-    updateEvaluators = null;
-    emitEvaluators = null;
+    this.combiners = combiners;
+    this.inputOffset = inputOffset;
+    this.rowEmitters = rowEmitters;
+    if (!rowEmitters) {
+      for (Expression emitter : emitters) {
+        Preconditions.checkArgument(!emitter.hasOperator(VariableExpression.class),
+            "the emitter %s of an aggregate reads the input, but may only read the state", emitter.getOutputName());
+      }
+    }
+    prototype = null;
+    stateSchema = null;
     resultSchema = null;
   }
 
+  /**
+   * Construct the state of a {@link edu.washington.escience.myria.operator.StatefulApply}, whose emitters may read the
+   * input row as well as the state. It is not an aggregate: its results must be emitted with the emit method of
+   * {@link UdaEvalInterface} that is given an input row.
+   *
+   * @param initializers Expressions that initialize the state variables.
+   * @param updaters Expressions that update the state variables as a function of the input and the current tuple.
+   * @param emitters Expressions that compute the results from the state and the input row.
+   * @return the factory of the state.
+   */
+  public static UserDefinedAggregatorFactory forStatefulApply(final List<Expression> initializers,
+      final List<Expression> updaters, final List<Expression> emitters) {
+    return new UserDefinedAggregatorFactory(initializers, updaters, emitters, null, 0, true);
+  }
+
   @Override
   @Nonnull
   public Aggregator get(final Schema inputSchema) throws DbException {
-    if (state == null) {
+    UdaEvalInterface state = newState(inputSchema, null);
+    return new UserDefinedAggregator(this, inputSchema, state, stateSchema, resultSchema);
+  }
+
+  /**
+   * Compile the aggregate, the first time, and return a new instance of it. Every call must pass the same input schema
+   * and worker ID.
+   *
+   * @param inputSchema the {@link Schema} of the input tuples.
+   * @param workerId the ID of the worker that runs the aggregate, or null if the expressions do not depend on it.
+   * @return a new instance of the compiled aggregate, with the state set by the initializers.
+   * @throws DbException if the aggregate cannot be compiled.
+   */
+  @Nonnull
+  public UdaEvalInterface newState(final Schema inputSchema, @Nullable final Integer workerId) throws DbException {
+    if (prototype == null) {
       Objects.requireNonNull(inputSchema, "inputSchema");
-      Preconditions.checkArgument(initializers.size() == updaters.size(),
-          "must have the same number of aggregate state initializers (%s) and updaters (%s)", initializers.size(),
-          updaters.size());
-      // Verify that initializers and updaters have compatible names
-      for (int i = 0; i < initializers.size(); i++) {
-        Preconditions.checkArgument(Objects
-            .equals(initializers.get(i).getOutputName(), updaters.get(i).getOutputName()),
-            "initializers[i] and updaters[i] have different names (%s) != (%s)", initializers.get(i).getOutputName(),
-            updaters.get(i).getOutputName());
-      }
+      checkStateNames(updaters, "updaters");
 
-      /* Initialize the state. */
-      Schema stateSchema = generateStateSchema(inputSchema);
-      state = new Tuple(stateSchema);
-      for (int columnIdx = 0; columnIdx < stateSchema.numColumns(); columnIdx++) {
-        Expression expr = initializers.get(columnIdx);
-        ConstantEvaluator evaluator = new ConstantEvaluator(expr, new ExpressionOperatorParameter());
-        evaluator.compile();
-        state.set(columnIdx, evaluator.eval());
-      }
+      stateSchema = generateStateSchema(inputSchema);
+      final String classBody = getClassBody(inputSchema, stateSchema, workerId);
+      prototype =
+          CompiledExpressionCache.get(UdaEvalInterface.class, PARAMETER_NAMES, classBody,
+              new Callable<UdaEvalInterface>() {
+                @Override
+                public UdaEvalInterface call() throws DbException {
+                  return compile(classBody);
+                }
+              });
 
-      /* Set up the updaters. */
-      updateEvaluators = new ArrayList<>(updaters.size());
-      for (Expression expr : updaters) {
-        GenericEvaluator evaluator =
-            new GenericEvaluator(expr, new ExpressionOperatorParameter(inputSchema, stateSchema));
-        evaluator.compile();
-        updateEvaluators.add(evaluator);
-      }
+      resultSchema = getResultSchema(inputSchema);
+    }
+    return prototype.newState();
+  }
+
+  /**
+   * @return the schema of the state, once the aggregate is compiled.
+   */
+  public Schema getStateSchema() {
+    return stateSchema;
+  }
 
-      /* Set up the emitters. */
-      emitEvaluators = new ArrayList<>();
-      emitEvaluators.ensureCapacity(emitters.size());
-      for (Expression expr : emitters) {
-        GenericEvaluator evaluator = new GenericEvaluator(expr, new ExpressionOperatorParameter(null, stateSchema));
-        evaluator.compile();
-        emitEvaluators.add(evaluator);
+  /**
+   * Verify that there is one expression for each state variable, with the same name as its initializer.
+   *
+   * @param expressions the expressions, i.e., the updaters or the combiners.
+   * @param kind what the expressions are, for error messages.
+   */
+  private void checkStateNames(final List<Expression> expressions, final String kind) {
+    Preconditions.checkArgument(initializers.size() == expressions.size(),
+        "must have the same number of aggregate state initializers (%s) and %s (%s)", initializers.size(), kind,
+        expressions.size());
+    for (int i = 0; i < initializers.size(); i++) {
+      Preconditions.checkArgument(Objects.equals(initializers.get(i).getOutputName(), expressions.get(i)
+          .getOutputName()), "initializers[i] and %s[i] have different names (%s) != (%s)", kind, initializers.get(i)
+          .getOutputName(), expressions.get(i).getOutputName());
+    }
+  }
+
+  /**
+   * Generate the body of a class that implements {@link UdaEvalInterface} for this aggregate. State variable i is kept
+   * in the field {@link Expression#STATE}i.
+   *
+   * @param inputSchema the {@link Schema} of the input tuples.
+   * @param stateSchema the {@link Schema} of the state.
+   * @param workerId the ID of the worker that runs the aggregate, or null.
+   * @return the class body.
+   */
+  private String getClassBody(final Schema inputSchema, final Schema stateSchema, final Integer workerId) {
+    ExpressionOperatorParameter initParams = makeParameters(inputSchema, null, workerId).withInputOffset(inputOffset);
+    ExpressionOperatorParameter updateParams =
+        makeParameters(inputSchema, stateSchema, workerId).withStateFields().withInputOffset(inputOffset);
+    ExpressionOperatorParameter emitParams = makeParameters(null, stateSchema, workerId).withStateFields();
+    String readableTable = ReadableTable.class.getName();
+
+    StringBuilder body = new StringBuilder();
+    for (int i = 0; i < stateSchema.numColumns(); ++i) {
+      body.append("private ").append(getJavaTypeName(stateSchema.getColumnType(i))).append(' ').append(
+          Expression.STATE).append(i).append(" = ").append(initializers.get(i).getJavaExpression(initParams)).append(
+          ";\n");
+    }
+
+    body.append("public ").append(UdaEvalInterface.class.getName()).append(" newState() {\n");
+    body.append("  return new ").append(CLASS_NAME).append("();\n");
+    body.append("}\n");
+
+    body.append("public void update(final ").append(readableTable).append(' ').append(Expression.TB).append(
+        ", final int ").append(Expression.ROW).append(") {\n");
+    for (int i = 0; i < stateSchema.numColumns(); ++i) {
+      body.append("  final ").append(getJavaTypeName(stateSchema.getColumnType(i))).append(" new").append(
+          Expression.STATE).append(i).append(" = ").append(updaters.get(i).getJavaExpression(updateParams)).append(
+          ";\n");
+    }
+    for (int i = 0; i < stateSchema.numColumns(); ++i) {
+      body.append("  ").append(Expression.STATE).append(i).append(" = new").append(Expression.STATE).append(i).append(
+          ";\n");
+    }
+    body.append("}\n");
+
+    body.append("public void updateAll(final ").append(readableTable).append(' ').append(Expression.TB).append(
+        ") {\n");
+    body.append("  final int numTuples = ").append(Expression.TB).append(".numTuples();\n");
+    body.append("  for (int ").append(Expression.ROW).append(" = 0; ").append(Expression.ROW).append(
+        " < numTuples; ++").append(Expression.ROW).append(") {\n");
+    body.append("    update(").append(Expression.TB).append(", ").append(Expression.ROW).append(");\n");
+    body.append("  }\n");
+    body.append("}\n");
+
+    body.append("public void emit(final ").append(AppendableTable.class.getName()).append(
+        " dest, final int destColumn) {\n");
+    if (rowEmitters) {
+      /* Not an aggregate: only the emit method that is given an input row can evaluate the emitters. */
+      body.append("  throw new UnsupportedOperationException(\"the emitters need an input row\");\n");
+    }
+    for (int i = 0; i < emitters.size() && !rowEmitters; ++i) {
+      body.append("  {\n");
+      body.append("    final ").append(
+          edu.washington.escience.myria.column.builder.WritableColumn.class.getName()).append(' ').append(
+          Expression.RESULT).append(" = dest.asWritableColumn(destColumn + ").append(i).append(");\n");
+      body.append("    ").append(emitters.get(i).getJavaExpressionWithAppend(emitParams)).append(";\n");
+      body.append("  }\n");
+    }
+    body.append("}\n");
+
+    body.append("public void emit(final ").append(readableTable).append(' ').append(Expression.TB).append(
+        ", final int ").append(Expression.ROW).append(", final ").append(AppendableTable.class.getName()).append(
+        " dest, final int destColumn) {\n");
+    for (int i = 0; i < emitters.size(); ++i) {
+      body.append("  {\n");
+      body.append("    final ").append(
+          edu.washington.escience.myria.column.builder.WritableColumn.class.getName()).append(' ').append(
+          Expression.RESULT).append(" = dest.asWritableColumn(destColumn + ").append(i).append(");\n");
+      body.append("    ").append(emitters.get(i).getJavaExpressionWithAppend(updateParams)).append(";\n");
+      body.append("  }\n");
+    }
+    body.append("}\n");
+
+    body.append("public void saveState(final ").append(Tuple.class.getName()).append(" dest) {\n");
+    for (int i = 0; i < stateSchema.numColumns(); ++i) {
+      Type type = stateSchema.getColumnType(i);
+      body.append("  dest.set(").append(i).append(", ");
+      if (type.toJavaType().isPrimitive()) {
+        body.append(type.toJavaObjectType().getName()).append(".valueOf(").append(Expression.STATE).append(i).append(
+            ')');
+      } else {
+        body.append(Expression.STATE).append(i);
       }
+      body.append(");\n");
+    }
+    body.append("}\n");
 
-      resultSchema = getResultSchema(inputSchema);
+    body.append("public void loadState(final ").append(readableTable).append(" src, final int row) {\n");
+    for (int i = 0; i < stateSchema.numColumns(); ++i) {
+      body.append("  ").append(Expression.STATE).append(i).append(" = src.get").append(
+          stateSchema.getColumnType(i).getName()).append('(').append(i).append(", row);\n");
+    }
+    body.append("}\n");
+    return body.toString();
+  }
+
+  /**
+   * @param inputSchema the {@link Schema} of the input tuples, or null.
+   * @param stateSchema the {@link Schema} of the state, or null.
+   * @param workerId the ID of the worker that runs the aggregate, or null.
+   * @return the parameters for generating the code of expressions.
+   */
+  private static ExpressionOperatorParameter makeParameters(final Schema inputSchema, final Schema stateSchema,
+      final Integer workerId) {
+    if (workerId == null) {
+      return new ExpressionOperatorParameter(inputSchema, stateSchema);
+    }
+    return new ExpressionOperatorParameter(inputSchema, stateSchema, workerId);
+  }
+
+  /**
+   * @param type a type.
+   * @return the name of the Java type that holds values of that type.
+   */
+  private static String getJavaTypeName(final Type type) {
+    return type.toJavaType().getName();
+  }
+
+  /**
+   * Compile a class body with Janino and instantiate the class.
+   *
+   * @param classBody the class body.
+   * @return an instance of the compiled class.
+   * @throws DbException compilation failed
+   */
+  private static UdaEvalInterface compile(final String classBody) throws DbException {
+    try {
+      IClassBodyEvaluator cbe = CompilerFactoryFactory.getDefaultCompilerFactory().newClassBodyEvaluator();
+      cbe.setClassName(CLASS_NAME);
+      cbe.setImplementedInterfaces(new Class<?>[] { UdaEvalInterface.class });
+      cbe.setDefaultImports(MyriaConstants.DEFAULT_JANINO_IMPORTS);
+      cbe.cook(classBody);
+      return (UdaEvalInterface) cbe.getClazz().newInstance();
+    } catch (Exception e) {
+      throw new DbException("Error when compiling user-defined aggregate " + classBody, e);
     }
-    return new UserDefinedAggregator(state.clone(), updateEvaluators, emitEvaluators, resultSchema);
   }
 
   /**
    * Generate the schema of the state.
-   * 
+   *
    * @param inputSchema the {@link Schema} of the input tuples.
    * @return the {@link Schema} of the state assuming the specified input types.
    */
@@ -137,8 +383,9 @@ public class UserDefinedAggregatorFactory implements AggregatorFactory {
     ImmutableList.Builder<Type> typesBuilder = ImmutableList.builder();
     ImmutableList.Builder<String> namesBuilder = ImmutableList.builder();
 
+    ExpressionOperatorParameter initParams = new ExpressionOperatorParameter(inputSchema).withInputOffset(inputOffset);
     for (Expression expr : initializers) {
-      typesBuilder.add(expr.getOutputType(new ExpressionOperatorParameter(inputSchema)));
+      typesBuilder.add(expr.getOutputType(initParams));
       namesBuilder.add(expr.getOutputName());
     }
     return new Schema(typesBuilder.build(), namesBuilder.build());
@@ -148,13 +395,14 @@ public class UserDefinedAggregatorFactory implements AggregatorFactory {
   @Nonnull
   public Schema getResultSchema(final Schema inputSchema) {
     ImmutableList.Builder<Type> stateTypes = ImmutableList.builder();
-    ExpressionOperatorParameter initParams = new ExpressionOperatorParameter(inputSchema);
+    ExpressionOperatorParameter initParams = new ExpressionOperatorParameter(inputSchema).withInputOffset(inputOffset);
     for (Expression e : initializers) {
       stateTypes.add(e.getOutputType(initParams));
     }
     Schema stateSchema = new Schema(stateTypes.build());
 
-    ExpressionOperatorParameter emitParams = new ExpressionOperatorParameter(null, stateSchema);
+    ExpressionOperatorParameter emitParams =
+        new ExpressionOperatorParameter(inputSchema, stateSchema).withInputOffset(inputOffset);
     ImmutableList.Builder<Type> types = ImmutableList.builder();
     ImmutableList.Builder<String> names = ImmutableList.builder();
     for (Expression e : emitters) {
@@ -163,4 +411,65 @@ public class UserDefinedAggregatorFactory implements AggregatorFactory {
     }
     return new Schema(types, names);
   }
+
+  /**
+   * @return true if this aggregate can be computed in two phases, see {@link #getPartialFactory()} and
+   *         {@link #getFinalFactory()}.
+   */
+  public boolean isCombinable() {
+    return combiners != null;
+  }
+
+  /**
+   * @return the number of state variables, i.e., the number of columns emitted by the partial aggregate.
+   */
+  public int getNumStates() {
+    return initializers.size();
+  }
+
+  /**
+   * @return the aggregate of the first phase, which emits its state variables as they are, named like them.
+   */
+  public UserDefinedAggregatorFactory getPartialFactory() {
+    return getPartialFactory(-1);
+  }
+
+  /**
+   * @param firstStateColumn the column of the output of the partial aggregate that its first state variable goes to,
+   *          or -1 to name the state columns like the state variables.
+   * @return the aggregate of the first phase, which emits its state variables as they are. The name of state column
+   *         <code>c</code> is unique within the output: {@value #PARTIAL_STATE_PREFIX}<code>c</code>.
+   */
+  public UserDefinedAggregatorFactory getPartialFactory(final int firstStateColumn) {
+    Preconditions.checkState(isCombinable(), "this aggregate has no combiners");
+    ImmutableList.Builder<Expression> stateEmitters = ImmutableList.builder();
+    for (int i = 0; i < initializers.size(); ++i) {
+      String name = initializers.get(i).getOutputName();
+      if (firstStateColumn >= 0) {
+        name = PARTIAL_STATE_PREFIX + (firstStateColumn + i);
+      }
+      stateEmitters.add(new Expression(name, new StateExpression(i)));
+    }
+    return new UserDefinedAggregatorFactory(initializers, updaters, stateEmitters.build(), null, inputOffset, false);
+  }
+
+  /**
+   * @return the aggregate of the second phase, which combines the partial states emitted by the first phase and emits
+   *         the final result.
+   */
+  public UserDefinedAggregatorFactory getFinalFactory() {
+    return getFinalFactory(0);
+  }
+
+  /**
+   * @param firstStateColumn the column of the input of the final aggregate that holds the first partial state
+   *          variable, e.g., the number of group columns.
+   * @return the aggregate of the second phase, which combines the partial states emitted by the first phase and emits
+   *         the final result.
+   */
+  public UserDefinedAggregatorFactory getFinalFactory(final int firstStateColumn) {
+    Preconditions.checkState(isCombinable(), "this aggregate has no combiners");
+    checkStateNames(combiners, "combiners");
+    return new UserDefinedAggregatorFactory(initializers, combiners, emitters, null, firstStateColumn, false);
+  }
 }
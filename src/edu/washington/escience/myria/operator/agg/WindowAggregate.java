@@ -0,0 +1,581 @@
+package edu.washington.escience.myria.operator.agg;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Objects;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.operator.Operator;
+import edu.washington.escience.myria.operator.UnaryOperator;
+import edu.washington.escience.myria.operator.agg.WindowFunction.WindowOp;
+import edu.washington.escience.myria.storage.AppendableTable;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.storage.TupleUtils;
+import gnu.trove.list.array.TLongArrayList;
+
+/**
+ * Computes window functions, e.g., row numbers, LAG and LEAD, running sums and moving averages, over partitions of its
+ * input. Every input tuple is returned with one additional column per {@link WindowFunction}.
+ * 
+ * The input must arrive grouped by the partition columns and sorted by the order columns within each partition, e.g.,
+ * after a hash shuffle on the partition columns followed by an
+ * {@link edu.washington.escience.myria.operator.InMemoryOrderBy} on the partition and order columns. The tuples are
+ * processed in a single streaming pass: only the rows that some frame still needs are kept, a tuple is returned as soon
+ * as the last row of its frames has arrived, and the frames are updated incrementally as they slide, with running sums
+ * and counts and monotonic deques for MIN and MAX. Computing a frame therefore costs amortized O(1) instead of O(frame
+ * size).
+ */
+public final class WindowAggregate extends UnaryOperator {
+
+  /** Java requires this. **/
+  private static final long serialVersionUID = 1L;
+
+  /** The columns that identify a partition. */
+  private final int[] partitionColumns;
+  /** The columns that the input is sorted by within a partition. */
+  private final int[] orderColumns;
+  /** True for each order column that is sorted ascending. */
+  private final boolean[] ascending;
+  /** The functions to compute. */
+  private final WindowFunction[] functions;
+
+  /** The input batches that still hold rows needed by a frame or not yet returned. */
+  private transient LinkedList<TupleBatch> buffered;
+  /** The position in the input of the first row of the first batch in {@link #buffered}. */
+  private transient long bufferStart;
+  /** The position in the input after the last row of the last batch in {@link #buffered}. */
+  private transient long bufferEnd;
+  /** The position of the next row to be returned. */
+  private transient long nextEmit;
+  /** The starts of the partition of {@link #nextEmit} and of all later partitions seen so far. */
+  private transient TLongArrayList partitionStarts;
+  /** The start of the partition that the frames currently cover, or -1. */
+  private transient long framesPartition;
+  /** The incremental state of each function. */
+  private transient Frame[] frames;
+  /** The number of rows after a row that must arrive before the row can be returned. */
+  private transient int rowsAhead;
+  /** The number of rows before the next row to be returned that must be kept. */
+  private transient int rowsBehind;
+  /** Buffers the results. */
+  private transient TupleBatchBuffer ans;
+  /** The batch found by the last call to {@link #locate(long)}. */
+  private transient TupleBatch foundBatch;
+  /** The row in {@link #foundBatch} found by the last call to {@link #locate(long)}. */
+  private transient int foundRow;
+
+  /**
+   * @param child the source of the tuples, grouped by the partition columns and sorted by the order columns.
+   * @param partitionColumns the columns that identify a partition.
+   * @param orderColumns the columns that the input is sorted by within a partition.
+   * @param ascending true for each order column that is sorted ascending.
+   * @param functions the window functions to compute.
+   */
+  public WindowAggregate(@Nullable final Operator child, final int[] partitionColumns, final int[] orderColumns,
+      final boolean[] ascending, final WindowFunction... functions) {
+    super(child);
+    this.partitionColumns = Objects.requireNonNull(partitionColumns, "partitionColumns");
+    this.orderColumns = Objects.requireNonNull(orderColumns, "orderColumns");
+    this.ascending = Objects.requireNonNull(ascending, "ascending");
+    this.functions = Objects.requireNonNull(functions, "functions");
+    Preconditions.checkArgument(orderColumns.length == ascending.length,
+        "must have the same number of order columns and ascending flags");
+    Preconditions.checkArgument(functions.length > 0, "to use WindowAggregate, must specify some window functions");
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    Schema inputSchema = getChild().getSchema();
+    buffered = new LinkedList<>();
+    bufferStart = 0;
+    bufferEnd = 0;
+    nextEmit = 0;
+    partitionStarts = new TLongArrayList();
+    framesPartition = -1;
+    rowsAhead = 0;
+    rowsBehind = 0;
+    frames = new Frame[functions.length];
+    for (int i = 0; i < functions.length; ++i) {
+      frames[i] = new Frame(functions[i], inputSchema);
+      rowsAhead = Math.max(rowsAhead, functions[i].getRowsAhead());
+      rowsBehind = Math.max(rowsBehind, functions[i].getRowsBehind());
+    }
+    ans = new TupleBatchBuffer(getSchema());
+  }
+
+  @Override
+  protected void cleanup() throws DbException {
+    buffered = null;
+    partitionStarts = null;
+    frames = null;
+    ans = null;
+    foundBatch = null;
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws DbException {
+    final Operator child = getChild();
+
+    TupleBatch tb = child.nextReady();
+    while (tb != null) {
+      addBatch(tb);
+      emitReady(false);
+      TupleBatch result = ans.popFilled();
+      if (result != null) {
+        return result;
+      }
+      tb = child.nextReady();
+    }
+
+    if (child.eos()) {
+      emitReady(true);
+      return ans.popAny();
+    }
+    return null;
+  }
+
+  /**
+   * Buffer an input batch and find the partitions that start in it.
+   * 
+   * @param tb the input batch.
+   * @throws DbException if the input is not sorted on the order columns.
+   */
+  private void addBatch(final TupleBatch tb) throws DbException {
+    if (tb.numTuples() == 0) {
+      return;
+    }
+    buffered.add(tb);
+    long pos = bufferEnd;
+    bufferEnd += tb.numTuples();
+    for (int row = 0; row < tb.numTuples(); ++row, ++pos) {
+      if (pos == 0) {
+        partitionStarts.add(pos);
+        continue;
+      }
+      locate(pos - 1);
+      if (!TupleUtils.tupleEquals(tb, partitionColumns, row, foundBatch, partitionColumns, foundRow)) {
+        partitionStarts.add(pos);
+      } else if (TupleUtils.tupleCompare(foundBatch, orderColumns, foundRow, tb, orderColumns, row, ascending) > 0) {
+        throw new DbException("the input of WindowAggregate is not sorted by the order columns at row " + pos);
+      }
+    }
+  }
+
+  /**
+   * Append every row whose frames are complete to {@link #ans}, and drop the batches that are no longer needed.
+   * 
+   * @param eos true if the input has ended.
+   */
+  private void emitReady(final boolean eos) {
+    final int numInputColumns = getChild().getSchema().numColumns();
+    while (nextEmit < bufferEnd) {
+      while (partitionStarts.size() > 1 && partitionStarts.get(1) <= nextEmit) {
+        partitionStarts.removeAt(0);
+      }
+      final long partitionStart = partitionStarts.get(0);
+      long partitionEnd = Long.MAX_VALUE;
+      if (partitionStarts.size() > 1) {
+        partitionEnd = partitionStarts.get(1);
+      } else if (eos) {
+        partitionEnd = bufferEnd;
+      } else if (nextEmit + rowsAhead >= bufferEnd) {
+        /* The frames of this row are not complete yet. */
+        break;
+      }
+      if (framesPartition != partitionStart) {
+        for (Frame frame : frames) {
+          frame.reset(partitionStart);
+        }
+        framesPartition = partitionStart;
+      }
+
+      locate(nextEmit);
+      for (int column = 0; column < numInputColumns; ++column) {
+        TupleUtils.copyValue(foundBatch, column, foundRow, ans, column);
+      }
+      for (int i = 0; i < frames.length; ++i) {
+        frames[i].emit(nextEmit, partitionEnd, ans, numInputColumns + i);
+      }
+      ++nextEmit;
+    }
+
+    final long keepFrom = Math.min(nextEmit - rowsBehind, bufferEnd - 1);
+    while (!buffered.isEmpty() && bufferStart + buffered.getFirst().numTuples() <= keepFrom) {
+      bufferStart += buffered.removeFirst().numTuples();
+    }
+  }
+
+  /**
+   * Find a buffered row and store it in {@link #foundBatch} and {@link #foundRow}.
+   * 
+   * @param pos the position of the row in the input.
+   */
+  private void locate(final long pos) {
+    Preconditions.checkElementIndex((int) (pos - bufferStart), (int) (bufferEnd - bufferStart));
+    if (pos - bufferStart < bufferEnd - pos) {
+      long start = bufferStart;
+      for (TupleBatch tb : buffered) {
+        if (pos < start + tb.numTuples()) {
+          foundBatch = tb;
+          foundRow = (int) (pos - start);
+          return;
+        }
+        start += tb.numTuples();
+      }
+    } else {
+      long end = bufferEnd;
+      Iterator<TupleBatch> it = buffered.descendingIterator();
+      while (it.hasNext()) {
+        TupleBatch tb = it.next();
+        if (pos >= end - tb.numTuples()) {
+          foundBatch = tb;
+          foundRow = (int) (pos - end + tb.numTuples());
+          return;
+        }
+        end -= tb.numTuples();
+      }
+    }
+    throw new IllegalStateException("row " + pos + " is not buffered");
+  }
+
+  @Override
+  public Schema generateSchema() {
+    final Operator child = getChild();
+    if (child == null) {
+      return null;
+    }
+    final Schema inputSchema = child.getSchema();
+    if (inputSchema == null) {
+      return null;
+    }
+
+    final ImmutableList.Builder<Type> types = ImmutableList.builder();
+    final ImmutableList.Builder<String> names = ImmutableList.builder();
+    types.addAll(inputSchema.getColumnTypes());
+    names.addAll(inputSchema.getColumnNames());
+    for (WindowFunction f : functions) {
+      types.add(f.getResultType(inputSchema));
+      names.add(f.getName());
+    }
+    return new Schema(types, names);
+  }
+
+  /**
+   * The incremental state of one window function within the current partition.
+   */
+  private final class Frame {
+    /** The function. */
+    private final WindowFunction function;
+    /** The type of the input column, or null if the function reads no column. */
+    private final Type type;
+    /** True if the input column holds integers, whose values are kept as longs rather than double bits. */
+    private final boolean integral;
+
+    /** The start of the current partition. */
+    private long partitionStart;
+    /** The last row that entered the frame. */
+    private long entered;
+    /** The last row that left the frame. */
+    private long removed;
+    /** The number of rows in the frame. */
+    private long count;
+    /** The sum of the rows in the frame if {@link #integral}. */
+    private long longSum;
+    /** The sum of the rows in the frame if not {@link #integral}. */
+    private double doubleSum;
+
+    /** The positions of the rows in the monotonic deque of MIN and MAX. */
+    private long[] dequePositions;
+    /** The values of the rows in the monotonic deque, as longs or double bits. */
+    private long[] dequeValues;
+    /** The index of the first entry of the deque. */
+    private int dequeHead;
+    /** The number of entries of the deque. */
+    private int dequeSize;
+
+    /**
+     * @param function the function.
+     * @param inputSchema the schema of the input.
+     */
+    Frame(final WindowFunction function, final Schema inputSchema) {
+      this.function = function;
+      if (function.getColumn() >= 0) {
+        type = inputSchema.getColumnType(function.getColumn());
+      } else {
+        type = null;
+      }
+      integral = type == Type.INT_TYPE || type == Type.LONG_TYPE;
+      if (function.getOp() == WindowOp.MIN || function.getOp() == WindowOp.MAX) {
+        dequePositions = new long[16];
+        dequeValues = new long[16];
+      }
+    }
+
+    /**
+     * Start a new partition.
+     * 
+     * @param start the position of the first row of the partition.
+     */
+    void reset(final long start) {
+      partitionStart = start;
+      entered = start - 1;
+      removed = start - 1;
+      count = 0;
+      longSum = 0;
+      doubleSum = 0;
+      dequeHead = 0;
+      dequeSize = 0;
+    }
+
+    /**
+     * Append the value of the function for a row.
+     * 
+     * @param pos the position of the row.
+     * @param partitionEnd the position after the last row of the partition, or {@link Long#MAX_VALUE} if the
+     *          partition has not ended yet.
+     * @param dest where to append the value.
+     * @param destColumn the column of <code>dest</code>.
+     */
+    void emit(final long pos, final long partitionEnd, final AppendableTable dest, final int destColumn) {
+      switch (function.getOp()) {
+        case ROW_NUMBER:
+          dest.putLong(destColumn, pos - partitionStart + 1);
+          return;
+        case LAG:
+          copyOrDefault(pos - function.getOffset(), partitionEnd, dest, destColumn);
+          return;
+        case LEAD:
+          copyOrDefault(pos + function.getOffset(), partitionEnd, dest, destColumn);
+          return;
+        default:
+          break;
+      }
+
+      slide(pos, partitionEnd);
+      switch (function.getOp()) {
+        case COUNT:
+          dest.putLong(destColumn, count);
+          break;
+        case SUM:
+          if (integral) {
+            dest.putLong(destColumn, longSum);
+          } else {
+            dest.putDouble(destColumn, doubleSum);
+          }
+          break;
+        case AVG:
+          if (integral) {
+            dest.putDouble(destColumn, (double) longSum / count);
+          } else {
+            dest.putDouble(destColumn, doubleSum / count);
+          }
+          break;
+        default:
+          putValue(dequeValues[dequeHead], dest, destColumn);
+          break;
+      }
+    }
+
+    /**
+     * Move the frame so that it is the frame of the specified row.
+     * 
+     * @param pos the position of the row.
+     * @param partitionEnd the position after the last row of the partition.
+     */
+    private void slide(final long pos, final long partitionEnd) {
+      final long last = Math.min(pos + function.getFollowing(), partitionEnd - 1);
+      while (entered < last) {
+        ++entered;
+        enter(entered);
+      }
+      if (function.getPreceding() >= 0) {
+        final long first = pos - function.getPreceding();
+        while (removed < first - 1) {
+          ++removed;
+          leave(removed);
+        }
+      }
+    }
+
+    /**
+     * Add a row to the frame.
+     * 
+     * @param pos the position of the row.
+     */
+    private void enter(final long pos) {
+      ++count;
+      if (function.getOp() == WindowOp.COUNT) {
+        return;
+      }
+      final long value = readValue(pos);
+      if (function.getOp() == WindowOp.SUM || function.getOp() == WindowOp.AVG) {
+        if (integral) {
+          longSum += value;
+        } else {
+          doubleSum += Double.longBitsToDouble(value);
+        }
+        return;
+      }
+      /* Rows that are dominated by the new row can never be the extreme of any later frame. */
+      final int sign = function.getOp() == WindowOp.MIN ? 1 : -1;
+      while (dequeSize > 0 && sign * compare(dequeValues[dequeIndex(dequeSize - 1)], value) >= 0) {
+        --dequeSize;
+      }
+      if (dequeSize == dequePositions.length) {
+        growDeque();
+      }
+      dequePositions[dequeIndex(dequeSize)] = pos;
+      dequeValues[dequeIndex(dequeSize)] = value;
+      ++dequeSize;
+    }
+
+    /**
+     * Remove a row from the frame.
+     * 
+     * @param pos the position of the row.
+     */
+    private void leave(final long pos) {
+      --count;
+      if (function.getOp() == WindowOp.SUM || function.getOp() == WindowOp.AVG) {
+        final long value = readValue(pos);
+        if (integral) {
+          longSum -= value;
+        } else {
+          doubleSum -= Double.longBitsToDouble(value);
+        }
+      } else if (function.getOp() == WindowOp.MIN || function.getOp() == WindowOp.MAX) {
+        while (dequeSize > 0 && dequePositions[dequeHead] <= pos) {
+          dequeHead = dequeIndex(1);
+          --dequeSize;
+        }
+      }
+    }
+
+    /**
+     * @param i an index relative to the head of the deque.
+     * @return the index in the deque arrays.
+     */
+    private int dequeIndex(final int i) {
+      return (dequeHead + i) % dequePositions.length;
+    }
+
+    /** Double the capacity of the deque. */
+    private void growDeque() {
+      long[] positions = new long[dequePositions.length * 2];
+      long[] values = new long[dequePositions.length * 2];
+      for (int i = 0; i < dequeSize; ++i) {
+        positions[i] = dequePositions[dequeIndex(i)];
+        values[i] = dequeValues[dequeIndex(i)];
+      }
+      dequePositions = positions;
+      dequeValues = values;
+      dequeHead = 0;
+    }
+
+    /**
+     * @param a a value, as a long or double bits.
+     * @param b another value, as a long or double bits.
+     * @return the comparison of the values.
+     */
+    private int compare(final long a, final long b) {
+      if (integral) {
+        return Long.compare(a, b);
+      }
+      return Double.compare(Double.longBitsToDouble(a), Double.longBitsToDouble(b));
+    }
+
+    /**
+     * @param pos the position of a buffered row.
+     * @return the value of the input column in that row, as a long or double bits.
+     */
+    private long readValue(final long pos) {
+      locate(pos);
+      final int column = function.getColumn();
+      switch (type) {
+        case INT_TYPE:
+          return foundBatch.getInt(column, foundRow);
+        case LONG_TYPE:
+          return foundBatch.getLong(column, foundRow);
+        case FLOAT_TYPE:
+          return Double.doubleToRawLongBits(foundBatch.getFloat(column, foundRow));
+        default:
+          return Double.doubleToRawLongBits(foundBatch.getDouble(column, foundRow));
+      }
+    }
+
+    /**
+     * @param value a value as a long or double bits.
+     * @param dest where to append the value, in the type of the input column.
+     * @param destColumn the column of <code>dest</code>.
+     */
+    private void putValue(final long value, final AppendableTable dest, final int destColumn) {
+      switch (type) {
+        case INT_TYPE:
+          dest.putInt(destColumn, (int) value);
+          break;
+        case LONG_TYPE:
+          dest.putLong(destColumn, value);
+          break;
+        case FLOAT_TYPE:
+          dest.putFloat(destColumn, (float) Double.longBitsToDouble(value));
+          break;
+        default:
+          dest.putDouble(destColumn, Double.longBitsToDouble(value));
+          break;
+      }
+    }
+
+    /**
+     * Append the value of the input column in a row of the partition, or the default value of its type if the row is
+     * outside the partition.
+     * 
+     * @param pos the position of the row.
+     * @param partitionEnd the position after the last row of the partition.
+     * @param dest where to append the value.
+     * @param destColumn the column of <code>dest</code>.
+     */
+    private void copyOrDefault(final long pos, final long partitionEnd, final AppendableTable dest,
+        final int destColumn) {
+      if (pos >= partitionStart && pos < partitionEnd) {
+        locate(pos);
+        TupleUtils.copyValue(foundBatch, function.getColumn(), foundRow, dest, destColumn);
+        return;
+      }
+      switch (type) {
+        case BOOLEAN_TYPE:
+          dest.putBoolean(destColumn, false);
+          break;
+        case DATETIME_TYPE:
+          dest.putDateTime(destColumn, new DateTime(0L, DateTimeZone.UTC));
+          break;
+        case DOUBLE_TYPE:
+          dest.putDouble(destColumn, 0);
+          break;
+        case FLOAT_TYPE:
+          dest.putFloat(destColumn, 0);
+          break;
+        case INT_TYPE:
+          dest.putInt(destColumn, 0);
+          break;
+        case LONG_TYPE:
+          dest.putLong(destColumn, 0);
+          break;
+        case STRING_TYPE:
+          dest.putString(destColumn, "");
+          break;
+      }
+    }
+  }
+}
@@ -0,0 +1,203 @@
+package edu.washington.escience.myria.operator.agg;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+
+/**
+ * A function computed by {@link WindowAggregate} for every input tuple, over the tuples of the same partition that fall
+ * into its frame.
+ * 
+ * Frames are specified in rows, as in SQL's <code>ROWS BETWEEN p PRECEDING AND f FOLLOWING</code>, and always contain
+ * the current row. A <code>null</code> number of preceding rows means <code>UNBOUNDED PRECEDING</code>.
+ */
+public final class WindowFunction implements Serializable {
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** The supported window functions. */
+  public enum WindowOp {
+    /** The position of the row in its partition, starting at 1. */
+    ROW_NUMBER,
+    /** The value of the column <code>offset</code> rows before the current row, or the default value of its type. */
+    LAG,
+    /** The value of the column <code>offset</code> rows after the current row, or the default value of its type. */
+    LEAD,
+    /** The number of rows in the frame. */
+    COUNT,
+    /** The sum of the column over the frame. */
+    SUM,
+    /** The average of the column over the frame. */
+    AVG,
+    /** The minimum of the column over the frame. */
+    MIN,
+    /** The maximum of the column over the frame. */
+    MAX;
+  }
+
+  /** The function. */
+  @JsonProperty
+  private final WindowOp op;
+  /** The input column that the function reads; ignored by ROW_NUMBER and COUNT. */
+  @JsonProperty
+  private final int column;
+  /** The number of rows before the current row in the frame, or null if the frame starts at the partition start. */
+  @JsonProperty
+  private final Integer preceding;
+  /** The number of rows after the current row in the frame. */
+  @JsonProperty
+  private final int following;
+  /** The distance to the row read by LAG and LEAD. */
+  @JsonProperty
+  private final int offset;
+  /** The name of the output column. */
+  @JsonProperty
+  private final String name;
+
+  /**
+   * @param name the name of the output column.
+   * @param op the function.
+   * @param column the input column that the function reads; ignored by ROW_NUMBER and COUNT.
+   * @param preceding the number of rows before the current row in the frame, or null if the frame starts at the
+   *          partition start.
+   * @param following the number of rows after the current row in the frame; 0 if null.
+   * @param offset the distance to the row read by LAG and LEAD; 1 if null.
+   */
+  @JsonCreator
+  public WindowFunction(@JsonProperty(value = "name", required = true) final String name,
+      @JsonProperty(value = "op", required = true) final WindowOp op,
+      @JsonProperty(value = "column") final Integer column,
+      @JsonProperty(value = "preceding") final Integer preceding,
+      @JsonProperty(value = "following") final Integer following,
+      @JsonProperty(value = "offset") final Integer offset) {
+    this.name = Objects.requireNonNull(name, "name");
+    this.op = Objects.requireNonNull(op, "op");
+    if (op == WindowOp.ROW_NUMBER || op == WindowOp.COUNT) {
+      this.column = -1;
+    } else {
+      this.column = Objects.requireNonNull(column, "column").intValue();
+    }
+    this.preceding = preceding;
+    this.following = following == null ? 0 : following.intValue();
+    this.offset = offset == null ? 1 : offset.intValue();
+    Preconditions.checkArgument(preceding == null || preceding >= 0, "preceding must be non-negative");
+    Preconditions.checkArgument(this.following >= 0, "following must be non-negative");
+    Preconditions.checkArgument(this.offset >= 0, "offset must be non-negative");
+  }
+
+  /**
+   * @return the function.
+   */
+  public WindowOp getOp() {
+    return op;
+  }
+
+  /**
+   * @return the input column that the function reads.
+   */
+  public int getColumn() {
+    return column;
+  }
+
+  /**
+   * @return the number of rows before the current row in the frame, or -1 if the frame starts at the partition start.
+   */
+  public int getPreceding() {
+    if (preceding == null) {
+      return -1;
+    }
+    return preceding;
+  }
+
+  /**
+   * @return the number of rows after the current row in the frame.
+   */
+  public int getFollowing() {
+    return following;
+  }
+
+  /**
+   * @return the distance to the row read by LAG and LEAD.
+   */
+  public int getOffset() {
+    return offset;
+  }
+
+  /**
+   * @return the name of the output column.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return true if the function aggregates over a frame.
+   */
+  boolean isFrameAggregate() {
+    return op != WindowOp.ROW_NUMBER && op != WindowOp.LAG && op != WindowOp.LEAD;
+  }
+
+  /**
+   * @return how many rows before the current row must still be available when computing the function.
+   */
+  int getRowsBehind() {
+    if (op == WindowOp.LAG) {
+      return offset;
+    }
+    if (isFrameAggregate() && preceding != null) {
+      /* The row that just left the frame is needed to subtract it from the sum. */
+      return preceding + 1;
+    }
+    return 0;
+  }
+
+  /**
+   * @return how many rows after the current row must have arrived before the function can be computed.
+   */
+  int getRowsAhead() {
+    if (op == WindowOp.LEAD) {
+      return offset;
+    }
+    if (isFrameAggregate()) {
+      return following;
+    }
+    return 0;
+  }
+
+  /**
+   * @param inputSchema the schema of the input tuples.
+   * @return the type of the result of the function.
+   */
+  public Type getResultType(final Schema inputSchema) {
+    switch (op) {
+      case ROW_NUMBER:
+      case COUNT:
+        return Type.LONG_TYPE;
+      case LAG:
+      case LEAD:
+        return inputSchema.getColumnType(column);
+      default:
+        break;
+    }
+    Type type = inputSchema.getColumnType(column);
+    Preconditions.checkArgument(type == Type.INT_TYPE || type == Type.LONG_TYPE || type == Type.FLOAT_TYPE
+        || type == Type.DOUBLE_TYPE, "%s over column %s requires a numeric type, not %s", op, column, type);
+    switch (op) {
+      case SUM:
+        if (type == Type.INT_TYPE || type == Type.LONG_TYPE) {
+          return Type.LONG_TYPE;
+        }
+        return Type.DOUBLE_TYPE;
+      case AVG:
+        return Type.DOUBLE_TYPE;
+      default:
+        return type;
+    }
+  }
+}
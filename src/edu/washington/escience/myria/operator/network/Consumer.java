@@ -24,6 +24,8 @@ import edu.washington.escience.myria.parallel.ipc.IPCConnectionPool;
 import edu.washington.escience.myria.parallel.ipc.IPCMessage;
 import edu.washington.escience.myria.parallel.ipc.StreamIOChannelID;
 import edu.washington.escience.myria.parallel.ipc.StreamInputBuffer;
+import edu.washington.escience.myria.profiling.Direction;
+import edu.washington.escience.myria.profiling.OperatorMetrics;
 import edu.washington.escience.myria.storage.ExchangeTupleBatch;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.util.MyriaArrayUtils;
@@ -156,6 +158,9 @@ public class Consumer extends LeafOperator {
         (QueryExecutionMode) execEnvVars.get(MyriaConstants.EXEC_ENV_VAR_EXECUTION_MODE) == QueryExecutionMode.NON_BLOCKING;
 
     inputBuffer = taskResourceManager.getInputBuffer(this);
+    if (getMetrics() != null) {
+      getMetrics().setInputBuffer(inputBuffer);
+    }
   }
 
   /**
@@ -199,6 +204,10 @@ public class Consumer extends LeafOperator {
           break;
         }
       } else {
+        OperatorMetrics metrics = getMetrics();
+        if (metrics != null) {
+          metrics.getChannel(tb.getRemoteID(), Direction.RECEIVE).record(ttbb);
+        }
         result = ttbb;
         break;
       }
@@ -257,6 +266,29 @@ public class Consumer extends LeafOperator {
     return result;
   }
 
+  /**
+   * @return the number of source workers.
+   * */
+  public final int getNumSourceWorkers() {
+    return sourceWorkers.size();
+  }
+
+  /**
+   * @param sourceWorkerID the source worker ID carried by an {@link ExchangeTupleBatch} returned by this consumer.
+   * @return the index of the source worker, between 0 and {@link #getNumSourceWorkers()}-1.
+   * */
+  public final int getSourceWorkerIndex(final int sourceWorkerID) {
+    return workerIdToIndex.get(sourceWorkerID);
+  }
+
+  /**
+   * @param sourceWorkerIndex the index of a source worker, see {@link #getSourceWorkerIndex(int)}.
+   * @return true if the source worker has sent EOS.
+   * */
+  public final boolean isSourceWorkerEOS(final int sourceWorkerIndex) {
+    return workerEOS.get(sourceWorkerIndex);
+  }
+
   /**
    * @return my input buffer.
    * */
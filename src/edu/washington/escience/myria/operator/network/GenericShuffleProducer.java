@@ -1,10 +1,16 @@
 package edu.washington.escience.myria.operator.network;
 
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.google.common.base.Preconditions;
 
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.operator.Operator;
 import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
+import edu.washington.escience.myria.operator.network.partition.SkewedHashPartitionFunction;
 import edu.washington.escience.myria.parallel.ExchangePairID;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.util.MyriaArrayUtils;
@@ -18,6 +24,12 @@ public class GenericShuffleProducer extends Producer {
   /** Required for Java serialization. */
   private static final long serialVersionUID = 1L;
 
+  /** The logger for this class. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(GenericShuffleProducer.class);
+
+  /** A key is reported as a heavy hitter if it makes up at least this fraction of the tuples. */
+  private static final double HEAVY_HITTER_FRACTION = 0.05;
+
   /**
    * the partition function.
    * */
@@ -28,6 +40,9 @@ public class GenericShuffleProducer extends Producer {
    */
   private final int[][] partitionToChannel;
 
+  /** The number of tuples sent to each channel. */
+  private transient long[] numTuplesSent;
+
   /**
    * Shuffle to the same operator ID on multiple workers. (The old "ShuffleProducer")
    * 
@@ -92,11 +107,15 @@ public class GenericShuffleProducer extends Producer {
   protected final void consumeTuples(final TupleBatch tup) throws DbException {
     final TupleBatch[] partitions = getTupleBatchPartitions(tup);
 
-    if (isProfilingMode()) {
-      for (int partitionIdx = 0; partitionIdx < partitions.length; partitionIdx++) {
-        if (partitions[partitionIdx] != null) {
-          final int numTuples = partitions[partitionIdx].numTuples();
-          for (int channelId : partitionToChannel[partitionIdx]) {
+    if (numTuplesSent == null) {
+      numTuplesSent = new long[numChannels()];
+    }
+    for (int partitionIdx = 0; partitionIdx < partitions.length; partitionIdx++) {
+      if (partitions[partitionIdx] != null) {
+        final int numTuples = partitions[partitionIdx].numTuples();
+        for (int channelId : partitionToChannel[partitionIdx]) {
+          numTuplesSent[channelId] += numTuples;
+          if (isProfilingMode()) {
             final int destWorkerId = getOutputIDs()[channelId].getRemoteID();
             getProfilingLogger().recordSent(this, numTuples, destWorkerId);
           }
@@ -117,8 +136,47 @@ public class GenericShuffleProducer extends Producer {
     return tb.partition(partitionFunction);
   }
 
+  /**
+   * @return the number of tuples sent to each destination so far, in the order of the output channels.
+   */
+  public final long[] getNumTuplesSent() {
+    if (numTuplesSent == null) {
+      return new long[numChannels()];
+    }
+    return numTuplesSent.clone();
+  }
+
+  /**
+   * Log the number of tuples sent to each destination, and the heavy hitters if the partition function looks for them,
+   * so that skew is visible.
+   */
+  private void logNumTuplesSent() {
+    if (!LOGGER.isDebugEnabled()) {
+      return;
+    }
+    StringBuilder sb = new StringBuilder();
+    sb.append(getOpName()).append(" sent tuples to workers {");
+    long[] sent = getNumTuplesSent();
+    for (int i = 0; i < sent.length; ++i) {
+      if (i > 0) {
+        sb.append(", ");
+      }
+      sb.append(getOutputIDs()[i].getRemoteID()).append('=').append(sent[i]);
+    }
+    sb.append('}');
+    if (partitionFunction instanceof SkewedHashPartitionFunction) {
+      SkewedHashPartitionFunction pf = (SkewedHashPartitionFunction) partitionFunction;
+      if (pf.getSketch() != null) {
+        sb.append(", heavy hitter hash codes ").append(
+            Arrays.toString(pf.getSketch().getHeavyHitters(HEAVY_HITTER_FRACTION)));
+      }
+    }
+    LOGGER.debug(sb.toString());
+  }
+
   @Override
   protected void childEOS() throws DbException {
+    logNumTuplesSent();
     writePartitionsIntoChannels(false, partitionToChannel, null);
     for (int p = 0; p < numChannels(); p++) {
       super.channelEnds(p);
@@ -17,7 +17,7 @@ import edu.washington.escience.myria.operator.KeepAndSortOnMinValue;
 import edu.washington.escience.myria.operator.KeepMinValue;
 import edu.washington.escience.myria.operator.Operator;
 import edu.washington.escience.myria.operator.RootOperator;
-import edu.washington.escience.myria.operator.SimpleAppender;
+import edu.washington.escience.myria.operator.SpillingAppender;
 import edu.washington.escience.myria.operator.StreamingState;
 import edu.washington.escience.myria.parallel.ExchangePairID;
 import edu.washington.escience.myria.parallel.QueryExecutionMode;
@@ -27,6 +27,9 @@ import edu.washington.escience.myria.parallel.ipc.IPCEvent;
 import edu.washington.escience.myria.parallel.ipc.IPCEventListener;
 import edu.washington.escience.myria.parallel.ipc.StreamIOChannelID;
 import edu.washington.escience.myria.parallel.ipc.StreamOutputChannel;
+import edu.washington.escience.myria.profiling.ChannelMetrics;
+import edu.washington.escience.myria.profiling.Direction;
+import edu.washington.escience.myria.profiling.OperatorMetrics;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.storage.TupleBatchBuffer;
 import edu.washington.escience.myria.util.MyriaArrayUtils;
@@ -74,6 +77,11 @@ public abstract class Producer extends RootOperator {
    * */
   private transient StreamIOChannelID[] localizedOutputIDs;
 
+  /**
+   * live statistics of each output channel, null if the statistics of this producer are not tracked.
+   * */
+  private transient ChannelMetrics[] channelMetrics;
+
   /**
    * if current query execution is in non-blocking mode.
    * */
@@ -216,6 +224,14 @@ public abstract class Producer extends RootOperator {
     }
     nonBlockingExecution =
         (execEnvVars.get(MyriaConstants.EXEC_ENV_VAR_EXECUTION_MODE) == QueryExecutionMode.NON_BLOCKING);
+    OperatorMetrics metrics = getMetrics();
+    channelMetrics = null;
+    if (metrics != null) {
+      channelMetrics = new ChannelMetrics[localizedOutputIDs.length];
+      for (int i = 0; i < localizedOutputIDs.length; i++) {
+        channelMetrics[i] = metrics.getChannel(localizedOutputIDs[i].getRemoteID(), Direction.SEND);
+      }
+    }
   }
 
   /**
@@ -278,15 +294,27 @@ public abstract class Producer extends RootOperator {
     }
   }
 
-  /** set backup buffers as SimpleAppender. */
+  /** set backup buffers as SpillingAppender. */
   public void setBackupBufferAsAppender() {
     triedToSendTuples = new ArrayList<StreamingState>();
     for (int i = 0; i < outputIDs.length; i++) {
-      triedToSendTuples.add(i, new SimpleAppender());
+      triedToSendTuples.add(i, new SpillingAppender());
       triedToSendTuples.get(i).setAttachedOperator(this);
     }
   }
 
+  /**
+   * Update the live statistics of a channel with a message about to be written.
+   * 
+   * @param chIdx the channel to write
+   * @param msg the message.
+   * */
+  private void recordSent(final int chIdx, final TupleBatch msg) {
+    if (channelMetrics != null) {
+      channelMetrics[chIdx].record(msg);
+    }
+  }
+
   /**
    * @param chIdx the channel to write
    * @param msg the message.
@@ -295,12 +323,14 @@ public abstract class Producer extends RootOperator {
   protected final ChannelFuture writeMessage(final int chIdx, final TupleBatch msg) {
     StreamOutputChannel<TupleBatch> ch = ioChannels[chIdx];
     if (nonBlockingExecution) {
+      recordSent(chIdx, msg);
       return ch.write(msg);
     } else {
       int sleepTime = 1;
       int maxSleepTime = MyriaConstants.SHORT_WAITING_INTERVAL_MS;
       while (true) {
         if (ch.isWritable()) {
+          recordSent(chIdx, msg);
           return ch.write(msg);
         } else {
           int toSleep = sleepTime - 1;
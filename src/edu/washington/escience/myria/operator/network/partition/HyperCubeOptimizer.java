@@ -0,0 +1,166 @@
+package edu.washington.escience.myria.operator.network.partition;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Chooses the shares of a HyperCube shuffle, see Afrati and Ullman, "Optimizing Joins in a Map-Reduce Environment", and
+ * Beame, Koutris and Suciu, "Communication Steps for Parallel Query Processing".
+ * 
+ * Every join variable is a dimension of the hypercube, and its share is the size of that dimension. A relation is
+ * hashed on the dimensions of its join variables and replicated along all the other dimensions, so a worker receives
+ * |R| / (the product of the shares of the variables of R) tuples of every relation R in expectation. The optimizer
+ * enumerates all integer shares whose product does not exceed the number of workers and picks the ones with the
+ * smallest expected load per worker.
+ */
+public final class HyperCubeOptimizer {
+
+  /** Utility classes have no constructors. */
+  private HyperCubeOptimizer() {
+  }
+
+  /**
+   * @param numDimensions the number of join variables.
+   * @param relationDimensions for each relation, the dimensions of its join variables.
+   * @param cardinalities for each relation, its number of tuples.
+   * @param numWorkers the number of workers.
+   * @return the share of every dimension that minimizes the expected load per worker. Among equally good shares, the
+   *         ones that use the fewest cells are returned.
+   */
+  public static int[] optimalShares(final int numDimensions, final int[][] relationDimensions,
+      final long[] cardinalities, final int numWorkers) {
+    Preconditions.checkArgument(numDimensions > 0, "must have at least one dimension");
+    Preconditions.checkArgument(numWorkers > 0, "must have at least one worker");
+    Preconditions.checkArgument(relationDimensions.length == cardinalities.length,
+        "must have one cardinality per relation");
+    for (int[] dimensions : relationDimensions) {
+      for (int d : dimensions) {
+        Preconditions.checkElementIndex(d, numDimensions);
+      }
+    }
+
+    int[] current = new int[numDimensions];
+    int[] best = new int[numDimensions];
+    double[] bestLoad = new double[] { Double.POSITIVE_INFINITY };
+    int[] bestCells = new int[] { Integer.MAX_VALUE };
+    enumerate(0, 1, current, best, bestLoad, bestCells, relationDimensions, cardinalities, numWorkers);
+    return best;
+  }
+
+  /**
+   * Try all shares of the dimensions from <code>dimension</code> on.
+   * 
+   * @param dimension the next dimension to choose a share for.
+   * @param numCells the product of the shares chosen so far.
+   * @param current the shares chosen so far.
+   * @param best the best shares found so far.
+   * @param bestLoad the load of the best shares.
+   * @param bestCells the number of cells of the best shares.
+   * @param relationDimensions for each relation, the dimensions of its join variables.
+   * @param cardinalities for each relation, its number of tuples.
+   * @param numWorkers the number of workers.
+   */
+  private static void enumerate(final int dimension, final int numCells, final int[] current, final int[] best,
+      final double[] bestLoad, final int[] bestCells, final int[][] relationDimensions, final long[] cardinalities,
+      final int numWorkers) {
+    if (dimension == current.length) {
+      double load = expectedLoad(current, relationDimensions, cardinalities);
+      if (load < bestLoad[0] || (load == bestLoad[0] && numCells < bestCells[0])) {
+        bestLoad[0] = load;
+        bestCells[0] = numCells;
+        System.arraycopy(current, 0, best, 0, current.length);
+      }
+      return;
+    }
+    for (int share = 1; numCells * share <= numWorkers; ++share) {
+      current[dimension] = share;
+      enumerate(dimension + 1, numCells * share, current, best, bestLoad, bestCells, relationDimensions,
+          cardinalities, numWorkers);
+    }
+  }
+
+  /**
+   * @param shares the share of every dimension.
+   * @param relationDimensions for each relation, the dimensions of its join variables.
+   * @param cardinalities for each relation, its number of tuples.
+   * @return the expected number of tuples that a worker receives.
+   */
+  public static double expectedLoad(final int[] shares, final int[][] relationDimensions, final long[] cardinalities) {
+    double load = 0;
+    for (int r = 0; r < relationDimensions.length; ++r) {
+      boolean[] seen = new boolean[shares.length];
+      long divisor = 1;
+      for (int d : relationDimensions[r]) {
+        if (!seen[d]) {
+          seen[d] = true;
+          divisor *= shares[d];
+        }
+      }
+      load += (double) cardinalities[r] / divisor;
+    }
+    return load;
+  }
+
+  /**
+   * @param shares the share of every dimension.
+   * @return the number of cells of the hypercube.
+   */
+  public static int numCells(final int[] shares) {
+    int numCells = 1;
+    for (int share : shares) {
+      numCells *= share;
+    }
+    return numCells;
+  }
+
+  /**
+   * Compute the cells that each partition of a {@link MFMDHashPartitionFunction} must be sent to. Cells are numbered in
+   * row-major order of their coordinates, and partitions in row-major order of the hashed dimensions, as in
+   * {@link MFMDHashPartitionFunction#partition}.
+   * 
+   * @param shares the share of every dimension.
+   * @param mappedDimensions the dimensions that the relation is hashed on, in the order of its hashed columns.
+   * @return the cells of every partition.
+   */
+  public static int[][] cellPartition(final int[] shares, final int[] mappedDimensions) {
+    int numPartitions = 1;
+    for (int d : mappedDimensions) {
+      numPartitions *= shares[d];
+    }
+    List<List<Integer>> cells = new ArrayList<List<Integer>>(numPartitions);
+    for (int p = 0; p < numPartitions; ++p) {
+      cells.add(new ArrayList<Integer>());
+    }
+
+    final int numCells = numCells(shares);
+    int[] coordinates = new int[shares.length];
+    for (int cell = 0; cell < numCells; ++cell) {
+      int rest = cell;
+      for (int d = shares.length - 1; d >= 0; --d) {
+        coordinates[d] = rest % shares[d];
+        rest /= shares[d];
+      }
+      /*
+       * If the same dimension is hashed twice, only the partitions whose digits for it agree receive tuples, and those
+       * are exactly the ones computed here.
+       */
+      int partition = 0;
+      for (int d : mappedDimensions) {
+        partition = partition * shares[d] + coordinates[d];
+      }
+      cells.get(partition).add(cell);
+    }
+
+    int[][] ret = new int[numPartitions][];
+    for (int p = 0; p < numPartitions; ++p) {
+      List<Integer> partitionCells = cells.get(p);
+      ret[p] = new int[partitionCells.size()];
+      for (int i = 0; i < ret[p].length; ++i) {
+        ret[p][i] = partitionCells.get(i);
+      }
+    }
+    return ret;
+  }
+}
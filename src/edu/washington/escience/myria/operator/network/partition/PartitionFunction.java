@@ -23,6 +23,7 @@ import edu.washington.escience.myria.storage.TupleBatch;
     @Type(value = RoundRobinPartitionFunction.class, name = "RoundRobin"),
     @Type(value = SingleFieldHashPartitionFunction.class, name = "SingleFieldHash"),
     @Type(value = MultiFieldHashPartitionFunction.class, name = "MultiFieldHash"),
+    @Type(value = SkewedHashPartitionFunction.class, name = "SkewedHash"),
     @Type(value = WholeTupleHashPartitionFunction.class, name = "WholeTupleHash") })
 public abstract class PartitionFunction implements Serializable {
 
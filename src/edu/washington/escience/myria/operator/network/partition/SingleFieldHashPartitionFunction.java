@@ -62,6 +62,13 @@ public final class SingleFieldHashPartitionFunction extends PartitionFunction {
     return index;
   }
 
+  /**
+   * @return the index of the chosen hash seed
+   */
+  public int getSeedIndex() {
+    return seedIndex;
+  }
+
   /**
    * @param tb data.
    * @return partitions.
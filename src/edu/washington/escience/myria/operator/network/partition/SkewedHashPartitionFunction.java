@@ -0,0 +1,180 @@
+package edu.washington.escience.myria.operator.network.partition;
+
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.HashUtils;
+import edu.washington.escience.myria.util.HeavyHitterSketch;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+
+/**
+ * Hash partitioning for joins on skewed keys. Tuples are hash partitioned on the key columns as by
+ * {@link MultiFieldHashPartitionFunction}, except for the tuples whose key hash code is one of the heavy hitters.
+ * 
+ * The two sides of a join use the same heavy hitters. On the skewed side ({@code replicate == false}) the tuples of
+ * heavy hitters are spread round robin over all partitions. On the other side ({@code replicate == true}) they go to an
+ * extra partition, the last one, that the producer must send to every worker; see
+ * {@link #replicatingCellPartition(int)}. Every tuple of a heavy hitter on the skewed side then still meets every
+ * matching tuple of the other side.
+ * 
+ * The heavy hitters can be chosen automatically by a sampling subquery, see
+ * {@link edu.washington.escience.myria.api.encoding.QueryConstruct#findHeavyHitters}, which stores them in a global
+ * variable of the query; the producers then read them when they are instantiated, see
+ * {@link edu.washington.escience.myria.api.encoding.ShuffleProducerEncoding#argHeavyHittersGlobal}. The hash codes of
+ * the keys are also counted in a {@link HeavyHitterSketch}, so that the skew that a shuffle saw can be logged.
+ */
+public final class SkewedHashPartitionFunction extends PartitionFunction {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** The number of counters of the sketch of the key frequencies. */
+  private static final int SKETCH_COUNTERS = 128;
+
+  /** The indices used for partitioning. */
+  @JsonProperty
+  private final int[] indexes;
+  /** The hash codes of the heavy hitter keys. Null if they are read from a global variable of the query. */
+  @JsonProperty
+  private final int[] heavyHitters;
+  /** True if the tuples of heavy hitters are replicated to all workers rather than spread over them. */
+  @JsonProperty
+  private final boolean replicate;
+
+  /** The heavy hitters, for lookups. */
+  private transient TIntSet heavyHitterSet;
+  /** The next partition of a tuple of a heavy hitter on the skewed side. */
+  private transient int nextPartition;
+  /** The key frequencies seen so far. */
+  private transient HeavyHitterSketch sketch;
+
+  /**
+   * @param numPartitions number of partitions. When replicating, this includes the partition sent to every worker.
+   * @param indexes the indices used for partitioning.
+   * @param heavyHitters the hash codes, in {@link HashUtils#hashSubRow}, of the heavy hitter keys. Null if they are
+   *          set later by {@link #withHeavyHitters(int[])}.
+   * @param replicate true on the side of the join whose tuples of heavy hitters are sent to all workers.
+   */
+  @JsonCreator
+  public SkewedHashPartitionFunction(@Nullable @JsonProperty("numPartitions") final Integer numPartitions,
+      @JsonProperty(value = "indexes", required = true) final int[] indexes,
+      @Nullable @JsonProperty("heavyHitters") final int[] heavyHitters,
+      @JsonProperty(value = "replicate", required = true) final boolean replicate) {
+    super(numPartitions);
+    this.indexes = Objects.requireNonNull(indexes, "indexes");
+    Preconditions.checkArgument(indexes.length > 0, "SkewedHash requires at least 1 field to hash");
+    for (int i = 0; i < indexes.length; ++i) {
+      Preconditions.checkArgument(indexes[i] >= 0, "SkewedHash field index %s cannot take negative value %s", i,
+          indexes[i]);
+    }
+    this.heavyHitters = heavyHitters;
+    this.replicate = replicate;
+  }
+
+  /**
+   * @param heavyHitters the hash codes, in {@link HashUtils#hashSubRow}, of the heavy hitter keys.
+   * @return a copy of this function with the specified heavy hitters, whose number of partitions is not set.
+   */
+  public SkewedHashPartitionFunction withHeavyHitters(final int[] heavyHitters) {
+    return new SkewedHashPartitionFunction(null, indexes, Objects.requireNonNull(heavyHitters, "heavyHitters"),
+        replicate);
+  }
+
+  /**
+   * @return the field indexes on which tuples will be hash partitioned.
+   */
+  public int[] getIndexes() {
+    return indexes;
+  }
+
+  /**
+   * @return the hash codes of the heavy hitter keys, or null if they have not been set.
+   */
+  public int[] getHeavyHitters() {
+    return heavyHitters;
+  }
+
+  /**
+   * @return true if the tuples of heavy hitters are replicated to all workers rather than spread over them.
+   */
+  public boolean isReplicate() {
+    return replicate;
+  }
+
+  /**
+   * @return the key frequencies seen so far, or null if nothing has been partitioned.
+   */
+  public HeavyHitterSketch getSketch() {
+    return sketch;
+  }
+
+  /**
+   * @param numWorkers the number of workers.
+   * @return the number of partitions of this function when shuffling to that many workers.
+   */
+  public int getNumPartitions(final int numWorkers) {
+    if (replicate) {
+      return numWorkers + 1;
+    }
+    return numWorkers;
+  }
+
+  /**
+   * @param numWorkers the number of workers.
+   * @return the mapping from partitions to workers on the replicating side: partition i goes to worker i, and the last
+   *         partition goes to all workers.
+   */
+  public static int[][] replicatingCellPartition(final int numWorkers) {
+    int[][] ret = new int[numWorkers + 1][];
+    int[] all = new int[numWorkers];
+    for (int i = 0; i < numWorkers; ++i) {
+      ret[i] = new int[] { i };
+      all[i] = i;
+    }
+    ret[numWorkers] = all;
+    return ret;
+  }
+
+  @Override
+  public int[] partition(@Nonnull final TupleBatch tb) {
+    if (heavyHitterSet == null) {
+      Preconditions.checkState(heavyHitters != null, "the heavy hitters have not been set");
+      heavyHitterSet = new TIntHashSet(heavyHitters);
+      sketch = new HeavyHitterSketch(SKETCH_COUNTERS);
+    }
+    final int numHashPartitions;
+    if (replicate) {
+      numHashPartitions = numPartition() - 1;
+    } else {
+      numHashPartitions = numPartition();
+    }
+    final int[] result = new int[tb.numTuples()];
+    for (int i = 0; i < result.length; i++) {
+      final int hash = HashUtils.hashSubRow(tb, indexes, i);
+      sketch.add(hash);
+      if (heavyHitterSet.contains(hash)) {
+        if (replicate) {
+          result[i] = numHashPartitions;
+        } else {
+          result[i] = nextPartition;
+          nextPartition = (nextPartition + 1) % numHashPartitions;
+        }
+        continue;
+      }
+      int p = hash % numHashPartitions;
+      if (p < 0) {
+        p = p + numHashPartitions;
+      }
+      result[i] = p;
+    }
+    return result;
+  }
+}
@@ -0,0 +1,587 @@
+package edu.washington.escience.myria.parallel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.api.encoding.AbstractConsumerEncoding;
+import edu.washington.escience.myria.api.encoding.AbstractProducerEncoding;
+import edu.washington.escience.myria.api.encoding.AdmissionStatusEncoding;
+import edu.washington.escience.myria.api.encoding.AggregateEncoding;
+import edu.washington.escience.myria.api.encoding.BinaryOperatorEncoding;
+import edu.washington.escience.myria.api.encoding.BroadcastConsumerEncoding;
+import edu.washington.escience.myria.api.encoding.DatasetStatus;
+import edu.washington.escience.myria.api.encoding.DifferenceEncoding;
+import edu.washington.escience.myria.api.encoding.DupElimEncoding;
+import edu.washington.escience.myria.api.encoding.IDBControllerEncoding;
+import edu.washington.escience.myria.api.encoding.InMemoryOrderByEncoding;
+import edu.washington.escience.myria.api.encoding.LeapFrogJoinEncoding;
+import edu.washington.escience.myria.api.encoding.MultiGroupByAggregateEncoding;
+import edu.washington.escience.myria.api.encoding.NaryOperatorEncoding;
+import edu.washington.escience.myria.api.encoding.OperatorEncoding;
+import edu.washington.escience.myria.api.encoding.ParallelPipelineEncoding;
+import edu.washington.escience.myria.api.encoding.PlanFragmentEncoding;
+import edu.washington.escience.myria.api.encoding.QueryEncoding;
+import edu.washington.escience.myria.api.encoding.RightHashCountingJoinEncoding;
+import edu.washington.escience.myria.api.encoding.RightHashJoinEncoding;
+import edu.washington.escience.myria.api.encoding.SingleGroupByAggregateEncoding;
+import edu.washington.escience.myria.api.encoding.StatefulApplyEncoding;
+import edu.washington.escience.myria.api.encoding.SymmetricHashCountingJoinEncoding;
+import edu.washington.escience.myria.api.encoding.SymmetricHashJoinEncoding;
+import edu.washington.escience.myria.api.encoding.TableScanEncoding;
+import edu.washington.escience.myria.api.encoding.TopKEncoding;
+import edu.washington.escience.myria.api.encoding.UnaryOperatorEncoding;
+import edu.washington.escience.myria.api.encoding.WindowAggregateEncoding;
+import edu.washington.escience.myria.coordinator.catalog.CatalogException;
+import edu.washington.escience.myria.operator.Operator;
+import edu.washington.escience.myria.storage.TupleUtils;
+
+/**
+ * Master-side admission control. Each submitted query is queued with a priority and an estimate of the memory it needs
+ * on each of its workers. A query is admitted once fewer than the maximum number of queries are running and its
+ * estimate fits in the per-worker budget next to the memory in use on each of its workers: the larger of the estimates
+ * of the admitted queries and of the operator memory the worker last reported in its heartbeat. Queries of equal
+ * priority are considered in FIFO order. A query that does not fit does not hold up the smaller queries behind it,
+ * unless it has already been overtaken {@link #MAX_OVERTAKES} times: then nothing behind it is admitted before it, so
+ * it cannot starve. Queries that are not estimated to hold any operator state (e.g. catalog lookups, dataset
+ * downloads) go through the same queue with an estimate of 0 bytes, so they count towards the maximum number of running
+ * queries and wait while their workers are over budget.
+ */
+public final class AdmissionController {
+  /** The logger for this class. */
+  private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(AdmissionController.class);
+
+  /** How many bytes a hash table or a sort buffer needs per byte of raw tuple data. */
+  private static final int STATE_OVERHEAD_FACTOR = 3;
+
+  /** How many times a query that does not fit may be overtaken by queries behind it. */
+  private static final int MAX_OVERTAKES = 8;
+
+  /**
+   * The encodings of the operators that hold (a part of) their input in memory. A {@link StatefulApplyEncoding} only
+   * does if it is keyed.
+   */
+  private static final ImmutableSet<Class<?>> STATEFUL_OPERATORS = ImmutableSet.<Class<?>> of(AggregateEncoding.class,
+      DifferenceEncoding.class, DupElimEncoding.class, InMemoryOrderByEncoding.class, LeapFrogJoinEncoding.class,
+      MultiGroupByAggregateEncoding.class, RightHashCountingJoinEncoding.class, RightHashJoinEncoding.class,
+      SingleGroupByAggregateEncoding.class, SymmetricHashCountingJoinEncoding.class, SymmetricHashJoinEncoding.class,
+      TopKEncoding.class, WindowAggregateEncoding.class);
+
+  /** A query waiting to be admitted. */
+  private static final class PendingQuery implements Comparable<PendingQuery> {
+    /** The id of the query. */
+    private final long queryId;
+    /** The priority of the query, higher goes first. */
+    private final int priority;
+    /** The arrival order of the query, used to break ties. */
+    private final long sequence;
+    /** The estimated memory needed on each worker, in bytes. */
+    private final long bytesPerWorker;
+    /** The workers the query runs on. */
+    private final Set<Integer> workers;
+    /** How many queries behind this one have been admitted while it did not fit. */
+    private int numOvertaken;
+
+    /**
+     * @param queryId the id of the query.
+     * @param priority the priority of the query, higher goes first.
+     * @param sequence the arrival order of the query.
+     * @param bytesPerWorker the estimated memory needed on each worker, in bytes.
+     * @param workers the workers the query runs on.
+     */
+    private PendingQuery(final long queryId, final int priority, final long sequence, final long bytesPerWorker,
+        final Set<Integer> workers) {
+      this.queryId = queryId;
+      this.priority = priority;
+      this.sequence = sequence;
+      this.bytesPerWorker = bytesPerWorker;
+      this.workers = workers;
+    }
+
+    @Override
+    public int compareTo(final PendingQuery o) {
+      if (priority != o.priority) {
+        return Integer.compare(o.priority, priority);
+      }
+      return Long.compare(sequence, o.sequence);
+    }
+  }
+
+  /** The memory available for query state on each worker, in bytes. */
+  private final long workerMemoryBudget;
+  /** The maximum number of admitted queries. */
+  private final int maxActiveQueries;
+  /** The maximum number of queued queries. */
+  private final int maxQueuedQueries;
+  /** The queries waiting to be admitted. */
+  @GuardedBy("this")
+  private final PriorityQueue<PendingQuery> queue;
+  /** The admitted queries, by query id. */
+  @GuardedBy("this")
+  private final Map<Long, PendingQuery> admitted;
+  /** The memory reserved on each worker, in bytes. */
+  @GuardedBy("this")
+  private final Map<Integer, Long> workerReservations;
+  /** The operator memory each worker reported in its last heartbeat, in bytes. */
+  @GuardedBy("this")
+  private final Map<Integer, Long> workerUsage;
+  /** The arrival counter. */
+  @GuardedBy("this")
+  private long nextSequence;
+
+  /**
+   * @param workerMemoryBudget the memory available for query state on each worker, in bytes.
+   * @param maxActiveQueries the maximum number of admitted queries.
+   * @param maxQueuedQueries the maximum number of queued queries.
+   */
+  public AdmissionController(final long workerMemoryBudget, final int maxActiveQueries, final int maxQueuedQueries) {
+    Preconditions.checkArgument(workerMemoryBudget > 0, "workerMemoryBudget must be positive");
+    Preconditions.checkArgument(maxActiveQueries > 0, "maxActiveQueries must be positive");
+    this.workerMemoryBudget = workerMemoryBudget;
+    this.maxActiveQueries = maxActiveQueries;
+    this.maxQueuedQueries = maxQueuedQueries;
+    queue = new PriorityQueue<>();
+    admitted = new HashMap<>();
+    workerReservations = new HashMap<>();
+    workerUsage = new HashMap<>();
+    nextSequence = 0;
+  }
+
+  /**
+   * @return whether a new query can be queued.
+   */
+  public synchronized boolean canAccept() {
+    return queue.size() < maxQueuedQueries;
+  }
+
+  /**
+   * Queue a query, and admit every queued query that fits.
+   * 
+   * @param queryId the id of the query.
+   * @param priority the priority of the query, higher goes first.
+   * @param bytesPerWorker the estimated memory needed on each worker, in bytes.
+   * @param workers the workers the query runs on.
+   * @return the ids of the queries that are admitted now, in admission order.
+   */
+  public synchronized List<Long> submit(final long queryId, final int priority, final long bytesPerWorker,
+      final Set<Integer> workers) {
+    Preconditions.checkArgument(bytesPerWorker >= 0, "bytesPerWorker must be non-negative");
+    queue.add(new PendingQuery(queryId, priority, nextSequence++, bytesPerWorker, ImmutableSet.copyOf(workers)));
+    return admit();
+  }
+
+  /**
+   * Release the reservations of a finished query, and admit every queued query that fits.
+   * 
+   * @param queryId the id of the finished query.
+   * @return the ids of the queries that are admitted now, in admission order.
+   */
+  public synchronized List<Long> release(final long queryId) {
+    PendingQuery q = admitted.remove(queryId);
+    if (q == null) {
+      return ImmutableList.of();
+    }
+    for (Integer worker : q.workers) {
+      long remaining = workerReservations.get(worker) - q.bytesPerWorker;
+      if (remaining == 0) {
+        workerReservations.remove(worker);
+      } else {
+        workerReservations.put(worker, remaining);
+      }
+    }
+    return admit();
+  }
+
+  /**
+   * Record the operator memory a worker reported in its heartbeat, and admit every queued query that fits.
+   * 
+   * @param workerId the id of the worker.
+   * @param bytes the estimated memory held by the operators of the worker, in bytes.
+   * @return the ids of the queries that are admitted now, in admission order.
+   */
+  public synchronized List<Long> updateWorkerUsage(final int workerId, final long bytes) {
+    Long previous = workerUsage.put(workerId, bytes);
+    if (previous != null && previous <= bytes) {
+      /* Nothing that was waiting can fit now. */
+      return ImmutableList.of();
+    }
+    return admit();
+  }
+
+  /**
+   * Forget the operator memory reported by a worker, e.g. because it died.
+   * 
+   * @param workerId the id of the worker.
+   * @return the ids of the queries that are admitted now, in admission order.
+   */
+  public synchronized List<Long> removeWorker(final int workerId) {
+    if (workerUsage.remove(workerId) == null) {
+      return ImmutableList.of();
+    }
+    return admit();
+  }
+
+  /**
+   * Remove a query from the queue, e.g. because it was killed before it was admitted.
+   * 
+   * @param queryId the id of the query.
+   * @return <code>true</code> if the query was queued.
+   */
+  public synchronized boolean remove(final long queryId) {
+    Iterator<PendingQuery> it = queue.iterator();
+    while (it.hasNext()) {
+      if (it.next().queryId == queryId) {
+        it.remove();
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the ids of the queries that can be admitted now. Their reservations are made.
+   */
+  @GuardedBy("this")
+  private List<Long> admit() {
+    List<Long> ret = new ArrayList<>();
+    List<PendingQuery> pending = new ArrayList<>(queue);
+    Collections.sort(pending);
+    /* The queries that do not fit and have been overtaken by the ones admitted so far. */
+    List<PendingQuery> blocked = new ArrayList<>();
+    for (PendingQuery q : pending) {
+      if (!fits(q)) {
+        if (q.numOvertaken >= MAX_OVERTAKES) {
+          /* It has waited long enough: the queries behind it wait for it. */
+          break;
+        }
+        blocked.add(q);
+        continue;
+      }
+      queue.remove(q);
+      admitted.put(q.queryId, q);
+      for (Integer worker : q.workers) {
+        Long reserved = workerReservations.get(worker);
+        workerReservations.put(worker, (reserved == null ? 0 : reserved) + q.bytesPerWorker);
+      }
+      ret.add(q.queryId);
+      for (PendingQuery b : blocked) {
+        b.numOvertaken++;
+      }
+    }
+    if (!queue.isEmpty()) {
+      LOGGER.info("{} queries waiting for admission, head of the queue is query #{}", queue.size(),
+          queue.peek().queryId);
+    }
+    return ret;
+  }
+
+  /**
+   * @param q a queued query.
+   * @return whether the query fits in the current reservations.
+   */
+  @GuardedBy("this")
+  private boolean fits(final PendingQuery q) {
+    if (admitted.isEmpty()) {
+      /* Always let one query run, even if it is estimated to exceed the budget. */
+      return true;
+    }
+    if (admitted.size() >= maxActiveQueries) {
+      return false;
+    }
+    for (Integer worker : q.workers) {
+      if (getWorkerMemoryInUse(worker) + q.bytesPerWorker > workerMemoryBudget) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param worker the id of a worker.
+   * @return the memory in use on the worker: the larger of the estimates of the admitted queries and of the operator
+   *         memory it last reported, in bytes.
+   */
+  @GuardedBy("this")
+  private long getWorkerMemoryInUse(final Integer worker) {
+    Long reserved = workerReservations.get(worker);
+    Long used = workerUsage.get(worker);
+    return Math.max(reserved == null ? 0 : reserved, used == null ? 0 : used);
+  }
+
+  /**
+   * @return the current state of the admission queue and of the reservations.
+   */
+  public synchronized AdmissionStatusEncoding getStatus() {
+    AdmissionStatusEncoding ret = new AdmissionStatusEncoding();
+    ret.workerMemoryBudgetBytes = workerMemoryBudget;
+    ret.maxActiveQueries = maxActiveQueries;
+    ret.admittedQueries = new ArrayList<>(admitted.keySet());
+    Collections.sort(ret.admittedQueries);
+    ret.workerReservedBytes = new HashMap<>(workerReservations);
+    ret.workerUsedBytes = new HashMap<>(workerUsage);
+    List<PendingQuery> pending = new ArrayList<>(queue);
+    Collections.sort(pending);
+    ret.queuedQueries = new ArrayList<>(pending.size());
+    for (PendingQuery q : pending) {
+      ret.queuedQueries.add(new AdmissionStatusEncoding.QueuedQuery(q.queryId, q.priority, q.bytesPerWorker));
+    }
+    return ret;
+  }
+
+  /** The catalog lookups needed to estimate the memory of a query. */
+  interface RelationCatalog {
+    /**
+     * @param relationKey the key of a relation.
+     * @return the status of the relation, or <code>null</code> if it does not exist.
+     * @throws DbException if there is an error looking up the catalog.
+     */
+    DatasetStatus getDatasetStatus(RelationKey relationKey) throws DbException;
+
+    /**
+     * @param relationKey the key of a relation.
+     * @param storedRelationId the id of the stored copy of the relation, or <code>null</code> for the latest one.
+     * @return the workers storing the relation.
+     * @throws CatalogException if there is an error looking up the catalog.
+     */
+    Set<Integer> getWorkersForRelation(RelationKey relationKey, Integer storedRelationId) throws CatalogException;
+  }
+
+  /**
+   * Estimate the memory needed on each worker by a query. Every operator that keeps (a part of) its input in memory is
+   * charged with the data that reaches it on a worker: the tuples that the query scans below it, using the tuple counts
+   * from the catalog, carried through the operators and exchanges of the plan.
+   * 
+   * @param query the query.
+   * @param server the server, to look up the catalog.
+   * @return the estimated memory, in bytes. 0 if the query holds no operator state.
+   * @throws DbException if there is an error looking up the catalog.
+   */
+  public static long estimateMemoryPerWorker(final QueryEncoding query, final Server server) throws DbException {
+    return estimateMemoryPerWorker(query, new RelationCatalog() {
+      @Override
+      public DatasetStatus getDatasetStatus(final RelationKey relationKey) throws DbException {
+        return server.getDatasetStatus(relationKey);
+      }
+
+      @Override
+      public Set<Integer> getWorkersForRelation(final RelationKey relationKey, final Integer storedRelationId)
+          throws CatalogException {
+        return server.getWorkersForRelation(relationKey, storedRelationId);
+      }
+    });
+  }
+
+  /**
+   * @param query the query.
+   * @param catalog looks up the relations scanned by the query.
+   * @return the estimated memory needed on each worker by the query, in bytes. 0 if it holds no operator state.
+   * @throws DbException if there is an error looking up the catalog.
+   * @see #estimateMemoryPerWorker(QueryEncoding, Server)
+   */
+  static long estimateMemoryPerWorker(final QueryEncoding query, final RelationCatalog catalog) throws DbException {
+    if (query.plan == null) {
+      return 0;
+    }
+    PlanSizes sizes = new PlanSizes(query.plan.collectFragments(), catalog);
+    long stateBytes = 0;
+    for (OperatorEncoding<? extends Operator> op : sizes.operators.values()) {
+      stateBytes += sizes.getStateBytes(op);
+    }
+    return stateBytes * STATE_OVERHEAD_FACTOR;
+  }
+
+  /**
+   * The estimated sizes of the data that flows through a plan, per worker.
+   */
+  private static final class PlanSizes {
+    /** Looks up the relations scanned by the plan. */
+    private final RelationCatalog catalog;
+    /** The operators of the plan, by id. The stages of parallel pipelines are part of the pipelines. */
+    private final Map<Integer, OperatorEncoding<? extends Operator>> operators = new HashMap<>();
+    /** The producers of the plan, by id. */
+    private final Map<Integer, AbstractProducerEncoding<?>> producers = new HashMap<>();
+    /** The number of workers of the fragment of each producer, or 0 if it is not known. */
+    private final Map<Integer, Integer> producerWorkers = new HashMap<>();
+    /** The estimated output of each operator on a worker, in bytes. */
+    private final Map<Integer, Long> outputBytes = new HashMap<>();
+
+    /**
+     * @param fragments the fragments of the plan.
+     * @param catalog looks up the relations scanned by the plan.
+     */
+    private PlanSizes(final List<PlanFragmentEncoding> fragments, final RelationCatalog catalog) {
+      this.catalog = catalog;
+      for (PlanFragmentEncoding fragment : fragments) {
+        for (OperatorEncoding<? extends Operator> op : fragment.operators) {
+          operators.put(op.opId, op);
+          if (op instanceof AbstractProducerEncoding) {
+            producers.put(op.opId, (AbstractProducerEncoding<?>) op);
+            producerWorkers.put(op.opId, fragment.workers == null ? 0 : fragment.workers.size());
+          }
+        }
+      }
+    }
+
+    /**
+     * @param op an operator of the plan.
+     * @return the estimated bytes of its input that the operator keeps in memory on a worker.
+     * @throws DbException if there is an error looking up the catalog.
+     */
+    private long getStateBytes(final OperatorEncoding<? extends Operator> op) throws DbException {
+      if (op instanceof ParallelPipelineEncoding) {
+        /* The stages and the merge are charged with the input of the pipeline, an upper bound of their own input. */
+        ParallelPipelineEncoding pipeline = (ParallelPipelineEncoding) op;
+        long input = getOutputBytes(pipeline.argChild);
+        long ret = 0;
+        for (UnaryOperatorEncoding<?> stage : pipeline.argStages) {
+          ret += isStateful(stage) ? input : 0;
+        }
+        if (pipeline.argMerge != null && isStateful(pipeline.argMerge)) {
+          ret += input;
+        }
+        return ret;
+      }
+      if (!isStateful(op)) {
+        return 0;
+      }
+      if (op instanceof RightHashJoinEncoding || op instanceof RightHashCountingJoinEncoding) {
+        /* Only the right child is kept in a hash table. */
+        return getOutputBytes(((BinaryOperatorEncoding<?>) op).argChild2);
+      }
+      return getInputBytes(op);
+    }
+
+    /**
+     * @param op an operator of the plan.
+     * @return the estimated bytes of the input of the operator on a worker, from all its children.
+     * @throws DbException if there is an error looking up the catalog.
+     */
+    private long getInputBytes(final OperatorEncoding<? extends Operator> op) throws DbException {
+      if (op instanceof UnaryOperatorEncoding) {
+        return getOutputBytes(((UnaryOperatorEncoding<?>) op).argChild);
+      }
+      if (op instanceof BinaryOperatorEncoding) {
+        BinaryOperatorEncoding<?> binary = (BinaryOperatorEncoding<?>) op;
+        return getOutputBytes(binary.argChild1) + getOutputBytes(binary.argChild2);
+      }
+      if (op instanceof NaryOperatorEncoding) {
+        long ret = 0;
+        Integer[] children = ((NaryOperatorEncoding<?>) op).argChildren;
+        if (children != null) {
+          for (Integer child : children) {
+            ret += getOutputBytes(child);
+          }
+        }
+        return ret;
+      }
+      if (op instanceof IDBControllerEncoding) {
+        IDBControllerEncoding controller = (IDBControllerEncoding) op;
+        return getOutputBytes(controller.argInitialInput) + getOutputBytes(controller.argIterationInput);
+      }
+      return 0;
+    }
+
+    /**
+     * @param opId the id of an operator of the plan, or null.
+     * @return the estimated bytes of the output of the operator on a worker, at most the bytes of its input.
+     * @throws DbException if there is an error looking up the catalog.
+     */
+    private long getOutputBytes(final Integer opId) throws DbException {
+      if (opId == null || !operators.containsKey(opId)) {
+        return 0;
+      }
+      Long known = outputBytes.get(opId);
+      if (known != null) {
+        return known;
+      }
+      /* Iterative plans loop back to their controller; the loop adds nothing to its input. */
+      outputBytes.put(opId, 0L);
+      OperatorEncoding<? extends Operator> op = operators.get(opId);
+      long ret;
+      if (op instanceof TableScanEncoding) {
+        ret = getScanBytes((TableScanEncoding) op);
+      } else if (op instanceof AbstractConsumerEncoding) {
+        Integer producerId = ((AbstractConsumerEncoding<?>) op).argOperatorId;
+        AbstractProducerEncoding<?> producer = producers.get(producerId);
+        ret = producer == null ? 0 : getOutputBytes(producer.argChild);
+        if (op instanceof BroadcastConsumerEncoding) {
+          /* Every worker receives the tuples of all the producing workers. */
+          ret *= Math.max(1, producerWorkers.get(producerId));
+        }
+      } else {
+        ret = getInputBytes(op);
+      }
+      outputBytes.put(opId, ret);
+      return ret;
+    }
+
+    /**
+     * @param scan a scan.
+     * @return the estimated bytes of the relation on a worker, or 0 if its size is unknown.
+     * @throws DbException if there is an error looking up the catalog.
+     */
+    private long getScanBytes(final TableScanEncoding scan) throws DbException {
+      DatasetStatus status = catalog.getDatasetStatus(scan.relationKey);
+      /* Imported relations are recorded with an unknown (negative) number of tuples. */
+      if (status == null || status.getNumTuples() < 0) {
+        return 0;
+      }
+      int numWorkers = 1;
+      try {
+        Set<Integer> workers = catalog.getWorkersForRelation(scan.relationKey, scan.storedRelationId);
+        if (workers != null && workers.size() > 0) {
+          numWorkers = workers.size();
+        }
+      } catch (CatalogException e) {
+        LOGGER.warn("Unable to find the workers storing {}", scan.relationKey, e);
+      }
+      return status.getNumTuples() * TupleUtils.estimateTupleBytes(status.getSchema()) / numWorkers;
+    }
+  }
+
+  /**
+   * @param op an operator encoding.
+   * @return whether the operator keeps (a part of) its input in memory.
+   */
+  private static boolean isStateful(final OperatorEncoding<? extends Operator> op) {
+    if (op instanceof StatefulApplyEncoding) {
+      return ((StatefulApplyEncoding) op).keyColumns != null;
+    }
+    return STATEFUL_OPERATORS.contains(op.getClass());
+  }
+
+  /**
+   * @param query the query.
+   * @param aliveWorkers the workers that are currently alive.
+   * @return the workers the query runs on. If a fragment does not specify its workers, it may run on all alive ones.
+   */
+  public static Set<Integer> getQueryWorkers(final QueryEncoding query, final Set<Integer> aliveWorkers) {
+    if (query.plan == null) {
+      return aliveWorkers;
+    }
+    Set<Integer> ret = new HashSet<>();
+    for (PlanFragmentEncoding fragment : query.plan.collectFragments()) {
+      if (fragment.workers == null || fragment.workers.isEmpty()) {
+        return aliveWorkers;
+      }
+      ret.addAll(fragment.workers);
+    }
+    return ret;
+  }
+}
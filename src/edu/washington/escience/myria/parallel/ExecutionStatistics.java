@@ -32,6 +32,9 @@ public class ExecutionStatistics {
   /** End time, in ISO8601 datetime format. */
   private transient volatile String endTime;
 
+  /** Peak estimated memory held by operator state, in bytes. */
+  private transient volatile long peakMemoryBytes = 0;
+
   /**
    * Set the start time to now.
    */
@@ -64,12 +67,30 @@ public class ExecutionStatistics {
     return endAtInNano - startAtInNano;
   }
 
+  /**
+   * Record the estimated memory currently held by operator state, keeping the peak value.
+   * 
+   * @param bytes the estimated memory, in bytes.
+   */
+  public final synchronized void updatePeakMemoryBytes(final long bytes) {
+    if (bytes > peakMemoryBytes) {
+      peakMemoryBytes = bytes;
+    }
+  }
+
+  /**
+   * @return the peak estimated memory held by operator state, in bytes.
+   */
+  public final long getPeakMemoryBytes() {
+    return peakMemoryBytes;
+  }
+
   /**
    * @return the protobuf message representation of this class.
    */
   public final QueryProto.ExecutionStatistics toProtobuf() {
     Long elapsed = Objects.firstNonNull(getQueryExecutionElapse(), MISSING_TIME);
-    return QueryProto.ExecutionStatistics.newBuilder().setElapse(elapsed).build();
+    return QueryProto.ExecutionStatistics.newBuilder().setElapse(elapsed).setPeakMemoryBytes(peakMemoryBytes).build();
   }
 
   /**
@@ -94,5 +115,6 @@ public class ExecutionStatistics {
     endAtInNano = MISSING_TIME;
     startTime = null;
     endTime = null;
+    peakMemoryBytes = 0;
   }
 }
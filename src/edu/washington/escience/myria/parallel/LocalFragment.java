@@ -14,7 +14,9 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.common.collect.ImmutableMap;
 
+import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.MyriaSystemConfigKeys;
 import edu.washington.escience.myria.operator.IDBController;
 import edu.washington.escience.myria.operator.Operator;
 import edu.washington.escience.myria.operator.RootOperator;
@@ -22,6 +24,7 @@ import edu.washington.escience.myria.operator.network.Consumer;
 import edu.washington.escience.myria.operator.network.Producer;
 import edu.washington.escience.myria.parallel.ipc.IPCConnectionPool;
 import edu.washington.escience.myria.parallel.ipc.StreamIOChannelID;
+import edu.washington.escience.myria.profiling.CpuSampler;
 import edu.washington.escience.myria.profiling.ProfilingLogger;
 import edu.washington.escience.myria.util.AtomicUtils;
 import edu.washington.escience.myria.util.concurrent.ReentrantSpinLock;
@@ -122,6 +125,38 @@ public final class LocalFragment {
    */
   private volatile long beginMilliseconds = 0;
 
+  /**
+   * The estimated memory held by the operators of this fragment, in bytes. Updated by the execution thread.
+   */
+  private volatile long estimatedMemoryBytes = 0;
+
+  /**
+   * The peak of {@link #estimatedMemoryBytes}.
+   */
+  private volatile long peakMemoryBytes = 0;
+
+  /**
+   * The soft memory limit shared by the fragments running in this process. If the operators of this fragment hold more
+   * than its share, log the memory held by each of them. Non-positive means no limit.
+   */
+  private long memorySoftLimitBytes;
+
+  /**
+   * The hard memory limit shared by the fragments running in this process. If the operators of this fragment hold more
+   * than its share, fail the fragment. Non-positive means no limit.
+   */
+  private long memoryHardLimitBytes;
+
+  /**
+   * Whether the soft memory limit has been reported.
+   */
+  private boolean memorySoftLimitReported = false;
+
+  /**
+   * When the memory held by the operators was last estimated, from {@link System#nanoTime()}.
+   */
+  private long lastMemoryUpdateNanos;
+
   /**
    * @return the fragment execution future.
    */
@@ -165,6 +200,10 @@ public final class LocalFragment {
       public Void call() throws Exception {
         // synchronized to keep memory consistency
         LOGGER.trace("Start fragment execution: {}", LocalFragment.this);
+        CpuSampler sampler = getCpuSampler();
+        if (sampler != null) {
+          sampler.enter(LocalFragment.this);
+        }
         try {
           synchronized (executionLock) {
             LocalFragment.this.executeActually();
@@ -173,6 +212,9 @@ public final class LocalFragment {
           LOGGER.error("Unexpected Error: ", ee);
           throw ee;
         } finally {
+          if (sampler != null) {
+            sampler.exit();
+          }
           executionHandle = null;
         }
         LOGGER.trace("End execution: {}", LocalFragment.this);
@@ -205,6 +247,17 @@ public final class LocalFragment {
     };
   }
 
+  /**
+   * @return the CPU sampler of the worker executing this fragment, or null if the sampler is disabled or this fragment
+   *         executes on the master.
+   */
+  private CpuSampler getCpuSampler() {
+    if (localSubQuery instanceof WorkerSubQuery) {
+      return ((WorkerSubQuery) localSubQuery).getWorker().getCpuSampler();
+    }
+    return null;
+  }
+
   /**
    * @return all output channels belonging to this {@link LocalFragment}.
    */
@@ -431,6 +484,11 @@ public final class LocalFragment {
                   hasData = true;
                 }
               }
+              long sinceMemoryUpdate = System.nanoTime() - lastMemoryUpdateNanos;
+              if (!hasData || breakByOutputUnavailable
+                  || sinceMemoryUpdate >= MyriaConstants.FRAGMENT_MEMORY_SAMPLING_INTERVAL_NANOS) {
+                updateMemoryUsage();
+              }
               if (Thread.interrupted()) {
                 Thread.currentThread().interrupt();
                 break;
@@ -591,6 +649,7 @@ public final class LocalFragment {
           fragmentExecutionFuture.setFailure(ee);
         }
       } finally {
+        estimatedMemoryBytes = 0;
         if (resourceManager != null) {
           resourceManager.cleanup();
         }
@@ -668,9 +727,105 @@ public final class LocalFragment {
     b.put(MyriaConstants.EXEC_ENV_VAR_FRAGMENT_RESOURCE_MANAGER, resourceManager);
     b.putAll(execEnvVars);
     root.open(b.build());
+    long maxHeap = Runtime.getRuntime().maxMemory();
+    memorySoftLimitBytes =
+        getMemoryLimit(MyriaSystemConfigKeys.FRAGMENT_MEMORY_SOFT_LIMIT_BYTES,
+            (long) (maxHeap * MyriaConstants.FRAGMENT_MEMORY_SOFT_LIMIT_DEFAULT_HEAP_FRACTION));
+    memoryHardLimitBytes =
+        getMemoryLimit(MyriaSystemConfigKeys.FRAGMENT_MEMORY_HARD_LIMIT_BYTES,
+            (long) (maxHeap * MyriaConstants.FRAGMENT_MEMORY_HARD_LIMIT_DEFAULT_HEAP_FRACTION));
     AtomicUtils.setBitByValue(executionCondition, STATE_INITIALIZED);
   }
 
+  /**
+   * @param configKey the configuration key of the limit.
+   * @param defaultValue the limit to use if it is not configured.
+   * @return the memory limit, in bytes.
+   */
+  private long getMemoryLimit(final String configKey, final long defaultValue) {
+    Object value = execEnvVars.get(configKey);
+    if (value == null) {
+      return defaultValue;
+    }
+    return Long.parseLong(value.toString());
+  }
+
+  /**
+   * Estimate the memory held by the operators of this fragment and enforce its share of the memory limits, i.e. the
+   * limits divided by the number of fragments running in this process. Walking the operator tree after every batch
+   * would cost as much as small batches themselves, so this is done at most every
+   * {@link MyriaConstants#FRAGMENT_MEMORY_SAMPLING_INTERVAL_NANOS} while there is data, and whenever the fragment stops
+   * executing because it has no more input or its output is full.
+   * 
+   * @throws DbException if the operators hold more memory than the share of the hard limit.
+   */
+  private void updateMemoryUsage() throws DbException {
+    lastMemoryUpdateNanos = System.nanoTime();
+    long bytes = root.getEstimatedTreeMemoryBytes();
+    estimatedMemoryBytes = bytes;
+    if (bytes > peakMemoryBytes) {
+      peakMemoryBytes = bytes;
+      localSubQuery.memoryUsageIncreased();
+    }
+    int numFragments = Math.max(1, localSubQuery.getNumRunningFragments());
+    long hardLimit = memoryHardLimitBytes / numFragments;
+    if (hardLimit > 0 && bytes > hardLimit) {
+      throw new DbException("Fragment exceeded its share of the hard memory limit, " + hardLimit + " bytes out of "
+          + memoryHardLimitBytes + " for " + numFragments + " fragments. Estimated memory held by each operator: "
+          + describeMemoryUsage());
+    }
+    long softLimit = memorySoftLimitBytes / numFragments;
+    if (!memorySoftLimitReported && softLimit > 0 && bytes > softLimit) {
+      memorySoftLimitReported = true;
+      LOGGER.warn("Fragment of subquery #{} exceeded its share of the soft memory limit, {} bytes out of {} for {} "
+          + "fragments. Estimated memory held by each operator: {}", localSubQuery.getSubQueryId(), softLimit,
+          memorySoftLimitBytes, numFragments, describeMemoryUsage());
+    }
+  }
+
+  /**
+   * @return a description of the estimated memory held by each operator of this fragment that holds any.
+   */
+  private String describeMemoryUsage() {
+    StringBuilder sb = new StringBuilder("{");
+    describeMemoryUsage(root, sb);
+    return sb.append(" }").toString();
+  }
+
+  /**
+   * @param op the root of an operator tree.
+   * @param sb the description of the estimated memory held by each operator in the tree is appended to this builder.
+   */
+  private static void describeMemoryUsage(final Operator op, final StringBuilder sb) {
+    long bytes = op.getEstimatedMemoryBytes();
+    if (bytes > 0) {
+      sb.append(' ').append(op.getOpName()).append('(').append(op.getClass().getSimpleName()).append(")=").append(
+          bytes);
+    }
+    Operator[] children = op.getChildren();
+    if (children != null) {
+      for (Operator child : children) {
+        if (child != null) {
+          describeMemoryUsage(child, sb);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the estimated memory currently held by the operators of this fragment, in bytes.
+   */
+  public long getEstimatedMemoryBytes() {
+    return estimatedMemoryBytes;
+  }
+
+  /**
+   * @return the peak estimated memory held by the operators of this fragment, in bytes.
+   */
+  public long getPeakMemoryBytes() {
+    return peakMemoryBytes;
+  }
+
   /**
    * Return the {@link LocalSubQuery} of which this {@link LocalFragment} is a part.
    * 
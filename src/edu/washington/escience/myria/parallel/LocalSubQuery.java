@@ -3,6 +3,7 @@ package edu.washington.escience.myria.parallel;
 import java.util.Set;
 
 import edu.washington.escience.myria.MyriaConstants.FTMODE;
+import edu.washington.escience.myria.profiling.SubQueryMetrics;
 
 /**
  * A {@link LocalSubQuery} is the instantiation of the part of a distributed subquery that executes at one node. It
@@ -40,6 +41,11 @@ public abstract class LocalSubQuery implements Comparable<LocalSubQuery> {
    */
   private final SubQueryId subQueryId;
 
+  /**
+   * The live statistics of the operators of this subquery.
+   */
+  private final SubQueryMetrics metrics;
+
   /**
    * Instantiate a new {@link LocalSubQuery} with the specified fault tolerance and profiling modes.
    * 
@@ -51,6 +57,7 @@ public abstract class LocalSubQuery implements Comparable<LocalSubQuery> {
     this.subQueryId = subQueryId;
     this.ftMode = ftMode;
     this.profilingMode = profilingMode;
+    metrics = new SubQueryMetrics(subQueryId);
   }
 
   /**
@@ -67,6 +74,13 @@ public abstract class LocalSubQuery implements Comparable<LocalSubQuery> {
     return subQueryId;
   }
 
+  /**
+   * @return the live statistics of the operators of this subquery.
+   */
+  public final SubQueryMetrics getMetrics() {
+    return metrics;
+  }
+
   /**
    * @return the priority of this subquery.
    */
@@ -145,6 +159,30 @@ public abstract class LocalSubQuery implements Comparable<LocalSubQuery> {
     return getPriority() - o.getPriority();
   }
 
+  /**
+   * @return the estimated memory currently held by the operators of this subquery, in bytes.
+   */
+  public final long getEstimatedMemoryBytes() {
+    long bytes = 0;
+    for (LocalFragment fragment : getFragments()) {
+      bytes += fragment.getEstimatedMemoryBytes();
+    }
+    return bytes;
+  }
+
+  /**
+   * Called by a fragment of this subquery when the memory held by its operators grows.
+   */
+  final void memoryUsageIncreased() {
+    queryStatistics.updatePeakMemoryBytes(getEstimatedMemoryBytes());
+  }
+
+  /**
+   * @return the number of fragments running in the process that runs this subquery, including its own. They share the
+   *         memory limits of the process.
+   */
+  abstract int getNumRunningFragments();
+
   /**
    * Returns the local fragments of this subquery.
    * 
@@ -68,7 +68,7 @@ public class MasterSubQuery extends LocalSubQuery {
             Throwable cause = future.getCause();
             if (!(cause instanceof QueryKilledException)) {
               // Only record non-killed exceptions
-              if (getFTMode().equals(FTMODE.none)) {
+              if (getFTMode().equals(FTMODE.none) || getFTMode().equals(FTMODE.lineage)) {
                 failedWorkerLocalSubQueries.put(workerID, cause);
                 // if any worker fails because of some exception, kill the query.
                 kill();
@@ -156,6 +156,11 @@ public class MasterSubQuery extends LocalSubQuery {
    */
   private final ConcurrentHashMap<Integer, WorkerExecutionInfo> workerExecutionInfo;
 
+  /**
+   * The peak estimated memory held by operator state at each worker that has reported it, in bytes.
+   */
+  private final ConcurrentHashMap<Integer, Long> workerPeakMemoryBytes = new ConcurrentHashMap<>();
+
   /**
    * the number of workers currently received the query.
    */
@@ -181,6 +186,16 @@ public class MasterSubQuery extends LocalSubQuery {
    */
   private final Set<Integer> missingWorkers;
 
+  /**
+   * The data dependencies between the plans, in {@link FTMODE#lineage}.
+   */
+  private final SubQueryLineage lineage;
+
+  /**
+   * Whether a worker has been lost while running the query in {@link FTMODE#lineage}.
+   */
+  private volatile boolean workerLost = false;
+
   /**
    * record all failed {@link LocalSubQuery}s.
    */
@@ -218,7 +233,8 @@ public class MasterSubQuery extends LocalSubQuery {
           /* the new worker doesn't need to start recovery tasks */
           continue;
         }
-        if (!e.getValue().workerCompleteQuery.isDone() && e.getKey() != MyriaConstants.MASTER_ID) {
+        if (getFTMode().equals(FTMODE.rejoin) && !e.getValue().workerCompleteQuery.isDone()
+            && e.getKey() != MyriaConstants.MASTER_ID) {
           master.getIPCConnectionPool()
           .sendShortMessage(e.getKey(), IPCUtils.recoverQueryTM(getSubQueryId(), workerID));
         }
@@ -314,6 +330,22 @@ public class MasterSubQuery extends LocalSubQuery {
       /* for rejoin, don't set it to be completed since this worker is expected to be launched again. */
       return;
     }
+    if (getFTMode().equals(FTMODE.lineage) && cause instanceof LostHeartbeatException) {
+      if (wei.workerCompleteQuery.isDone()) {
+        /* the worker had already finished, and its results are persisted. */
+        return;
+      }
+      workerLost = true;
+      if (lineage.canRerunAlone(workerID)) {
+        /* nothing else depends on the lost worker, so only its plan runs again once it is launched again. */
+        LOGGER.info("Query #{} will run the plan of lost worker {} again", getSubQueryId(), workerID);
+        missingWorkers.add(workerID);
+        return;
+      }
+      /* the other plans cannot be restarted while they run, so the whole subquery fails, and may run again. */
+      LOGGER.info("Query #{} lost worker {}, the plans of {} depend on it, failing the subquery", getSubQueryId(),
+          workerID, lineage.getAffected(workerID));
+    }
     wei.workerCompleteQuery.setFailure(cause);
   }
 
@@ -338,6 +370,11 @@ public class MasterSubQuery extends LocalSubQuery {
     workerExecutionInfo.put(MyriaConstants.MASTER_ID, masterPart);
 
     missingWorkers = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+    if (getFTMode().equals(FTMODE.lineage)) {
+      lineage = new SubQueryLineage(masterPlan, workerPlans);
+    } else {
+      lineage = null;
+    }
 
     fragment = new LocalFragment(this.master.getIPCConnectionPool(), this, root, master.getQueryExecutor());
     fragment.getExecutionFuture().addListener(fragmentExecutionListener);
@@ -406,6 +443,14 @@ public class MasterSubQuery extends LocalSubQuery {
     return missingWorkers;
   }
 
+  /**
+   * @return true if the query has failed because it lost a worker in {@link FTMODE#lineage}, and can run again once
+   *         the worker is back.
+   */
+  final boolean canRetryAfterLostWorker() {
+    return workerLost && lineage.isReplayable();
+  }
+
   /**
    * @return the message describing the cause of the query's death. Nullable.
    */
@@ -417,4 +462,31 @@ public class MasterSubQuery extends LocalSubQuery {
   public Set<LocalFragment> getFragments() {
     return ImmutableSet.of(fragment);
   }
+
+  @Override
+  int getNumRunningFragments() {
+    return master.getNumRunningFragments();
+  }
+
+  /**
+   * Record the peak estimated memory reported by a worker when it finishes executing this subquery.
+   * 
+   * @param workerID the worker.
+   * @param bytes the peak estimated memory held by operator state at the worker, in bytes.
+   */
+  public void recordWorkerPeakMemoryBytes(final int workerID, final long bytes) {
+    workerPeakMemoryBytes.put(workerID, bytes);
+  }
+
+  /**
+   * @return the sum of the peak estimated memory held by operator state at the master and at each worker that has
+   *         reported it, in bytes.
+   */
+  public long getPeakMemoryBytes() {
+    long bytes = getExecutionStatistics().getPeakMemoryBytes();
+    for (long workerBytes : workerPeakMemoryBytes.values()) {
+      bytes += workerBytes;
+    }
+    return bytes;
+  }
 }
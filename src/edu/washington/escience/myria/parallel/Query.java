@@ -70,6 +70,12 @@ public final class Query {
   private final ConcurrentHashMap<String, Object> globals;
   /** Temporary relations created during the execution of this query. */
   private final ConcurrentHashMap<RelationKey, RelationWriteMetadata> tempRelations;
+  /** The number of times a subquery of this query has been run again after losing a worker. */
+  @GuardedBy("this")
+  private int numRetries;
+  /** The subquery that is queued to run again, whose derived subqueries are already queued. */
+  @GuardedBy("this")
+  private SubQuery retriedSubQuery;
 
   /**
    * Construct a new {@link Query} object for this query.
@@ -167,7 +173,10 @@ public final class Query {
     if (!subQueryQ.isEmpty()) {
       currentSubQuery = subQueryQ.removeFirst();
       currentSubQuery.setSubQueryId(new SubQueryId(queryId, subqueryId));
-      addDerivedSubQueries(currentSubQuery);
+      if (currentSubQuery != retriedSubQuery) {
+        addDerivedSubQueries(currentSubQuery);
+      }
+      retriedSubQuery = null;
       /*
        * TODO - revisit when we support profiling with sequences.
        * 
@@ -190,6 +199,24 @@ public final class Query {
     return nextSubQuery();
   }
 
+  /**
+   * Queue a {@link SubQuery} that failed because it lost a worker to run again, in {@link FTMODE#lineage}. The
+   * subqueries before it do not run again: their results are persisted, and it reads them again.
+   * 
+   * @param subQuery the subquery that failed, which must have been finished.
+   * @return false if the query has run its subqueries again too many times, or is being killed.
+   */
+  public synchronized boolean retrySubQuery(final SubQuery subQuery) {
+    Preconditions.checkState(currentSubQuery == null, "must call finishSubQuery before calling retrySubQuery");
+    if (status == Status.KILLING || numRetries >= MyriaConstants.LINEAGE_MAX_SUBQUERY_RETRIES) {
+      return false;
+    }
+    ++numRetries;
+    retriedSubQuery = new SubQuery(subQuery.getMasterPlan(), subQuery.getWorkerPlans());
+    subQueryQ.addFirst(retriedSubQuery);
+    return true;
+  }
+
   /**
    * Mark the current {@link SubQuery} as finished.
    */
@@ -270,6 +297,24 @@ public final class Query {
     return executionStats.getQueryExecutionElapse();
   }
 
+  /**
+   * Record the peak estimated memory held by operator state during one subquery of this query.
+   * 
+   * @param bytes the peak estimated memory held by operator state during the subquery, in bytes
+   */
+  public synchronized void updatePeakMemoryBytes(final long bytes) {
+    executionStats.updatePeakMemoryBytes(bytes);
+  }
+
+  /**
+   * Returns the largest peak estimated memory held by operator state during any subquery of this query.
+   * 
+   * @return the peak estimated memory held by operator state, in bytes
+   */
+  public synchronized long getPeakMemoryBytes() {
+    return executionStats.getPeakMemoryBytes();
+  }
+
   /**
    * Return a message explaining why a query failed, or <code>null</code> if the query did not fail.
    * 
@@ -15,6 +15,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
@@ -40,6 +41,7 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Joiner;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
 import com.google.common.base.Verify;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -55,10 +57,14 @@ import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.TupleWriter;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.accessmethod.AccessMethod.IndexRef;
+import edu.washington.escience.myria.api.MyriaJsonMapperProvider;
+import edu.washington.escience.myria.api.encoding.AdmissionStatusEncoding;
 import edu.washington.escience.myria.api.encoding.DatasetStatus;
+import edu.washington.escience.myria.api.encoding.NodeMetricsEncoding;
 import edu.washington.escience.myria.api.encoding.QueryConstruct;
 import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
 import edu.washington.escience.myria.api.encoding.QueryEncoding;
+import edu.washington.escience.myria.api.encoding.QueryMetricsEncoding;
 import edu.washington.escience.myria.api.encoding.QueryStatusEncoding;
 import edu.washington.escience.myria.coordinator.catalog.CatalogException;
 import edu.washington.escience.myria.coordinator.catalog.CatalogMaker;
@@ -67,6 +73,7 @@ import edu.washington.escience.myria.expression.Expression;
 import edu.washington.escience.myria.expression.VariableExpression;
 import edu.washington.escience.myria.expression.WorkerIdExpression;
 import edu.washington.escience.myria.operator.Apply;
+import edu.washington.escience.myria.operator.CpuProfileScan;
 import edu.washington.escience.myria.operator.DataOutput;
 import edu.washington.escience.myria.operator.DbInsert;
 import edu.washington.escience.myria.operator.DbQueryScan;
@@ -89,6 +96,7 @@ import edu.washington.escience.myria.parallel.ipc.IPCConnectionPool;
 import edu.washington.escience.myria.parallel.ipc.IPCMessage;
 import edu.washington.escience.myria.parallel.ipc.InJVMLoopbackChannelSink;
 import edu.washington.escience.myria.parallel.ipc.QueueBasedShortMessageProcessor;
+import edu.washington.escience.myria.profiling.MetricsRegistry;
 import edu.washington.escience.myria.proto.ControlProto.ControlMessage;
 import edu.washington.escience.myria.proto.QueryProto.QueryMessage;
 import edu.washington.escience.myria.proto.QueryProto.QueryReport;
@@ -140,6 +148,14 @@ public final class Server {
                 case WORKER_HEARTBEAT:
                   LOGGER.trace("getting heartbeat from worker {}", senderID);
                   updateHeartbeat(senderID);
+                  if (controlM.hasMetrics()) {
+                    updateWorkerMetrics(senderID, controlM.getMetrics().toByteArray());
+                  }
+                  if (controlM.hasOperatorMemoryBytes()) {
+                    for (Long id : admissionController.updateWorkerUsage(senderID, controlM.getOperatorMemoryBytes())) {
+                      startAdmittedQuery(id);
+                    }
+                  }
                   break;
                 case REMOVE_WORKER_ACK:
                   int workerID = controlM.getWorkerId();
@@ -149,7 +165,8 @@ public final class Server {
                   workerID = controlM.getWorkerId();
                   addWorkerAckReceived.get(workerID).add(senderID);
                   for (MasterSubQuery mqp : executingSubQueries.values()) {
-                    if (mqp.getFTMode().equals(FTMODE.rejoin) && mqp.getMissingWorkers().contains(workerID)
+                    if ((mqp.getFTMode().equals(FTMODE.rejoin) || mqp.getFTMode().equals(FTMODE.lineage))
+                        && mqp.getMissingWorkers().contains(workerID)
                         && addWorkerAckReceived.get(workerID).containsAll(mqp.getWorkerAssigned())) {
                       /* so a following ADD_WORKER_ACK won't cause queryMessage to be sent again */
                       mqp.getMissingWorkers().remove(workerID);
@@ -176,6 +193,7 @@ public final class Server {
                   break;
                 case QUERY_COMPLETE:
                   QueryReport qr = qm.getQueryReport();
+                  mqp.recordWorkerPeakMemoryBytes(senderID, qr.getExecutionStatistics().getPeakMemoryBytes());
                   if (qr.getSuccess()) {
                     if (LOGGER.isInfoEnabled()) {
                       LOGGER.info("Query #{} in Worker #{} succeeded.", subQueryId, senderID);
@@ -233,6 +251,11 @@ public final class Server {
    */
   private final ConcurrentHashMap<Long, Query> activeQueries;
 
+  /**
+   * Decides when the active queries may start executing.
+   */
+  private final AdmissionController admissionController;
+
   /**
    * Subqueries currently in execution.
    */
@@ -243,6 +266,16 @@ public final class Server {
    */
   private final ConcurrentHashMap<Integer, Long> aliveWorkers;
 
+  /**
+   * The live metrics of the subqueries executed by the master.
+   */
+  private final MetricsRegistry metricsRegistry;
+
+  /**
+   * The latest metrics reported by each alive worker in its heartbeats.
+   */
+  private final ConcurrentHashMap<Integer, NodeMetricsEncoding> workerMetrics;
+
   /**
    * Scheduled new workers, when a scheduled worker sends the first heartbeat, it'll be removed from this set.
    */
@@ -296,6 +329,13 @@ public final class Server {
     return serverQueryExecutor;
   }
 
+  /**
+   * @return the number of fragments of the subqueries executing at the master. Each of them has one fragment.
+   */
+  int getNumRunningFragments() {
+    return executingSubQueries.size();
+  }
+
   /**
    * max number of seconds for elegant cleanup.
    */
@@ -445,6 +485,16 @@ public final class Server {
     int inputBufferRecoverTrigger =
         Integer.valueOf(catalog.getConfigurationValue(MyriaSystemConfigKeys.OPERATOR_INPUT_BUFFER_RECOVER_TRIGGER));
 
+    long workerMemoryBudget = MyriaConstants.ADMISSION_WORKER_MEMORY_BUDGET_BYTES_DEFAULT_VALUE;
+    String workerMemoryBudgetConf =
+        catalog.getConfigurationValue(MyriaSystemConfigKeys.ADMISSION_WORKER_MEMORY_BUDGET_BYTES);
+    if (workerMemoryBudgetConf != null) {
+      workerMemoryBudget = Long.valueOf(workerMemoryBudgetConf);
+    }
+    admissionController =
+        new AdmissionController(workerMemoryBudget, MyriaConstants.MAX_ACTIVE_QUERIES,
+            MyriaConstants.MAX_QUEUED_QUERIES);
+
     execEnvVars = new ConcurrentHashMap<>();
     for (Entry<String, String> cE : allConfigurations.entrySet()) {
       execEnvVars.put(cE.getKey(), cE.getValue());
@@ -453,6 +503,7 @@ public final class Server {
     execEnvVars.put(MyriaConstants.EXEC_ENV_VAR_EXECUTION_MODE, getExecutionMode());
 
     aliveWorkers = new ConcurrentHashMap<>();
+    workerMetrics = new ConcurrentHashMap<>();
     scheduledWorkers = new ConcurrentHashMap<>();
     scheduledWorkersTime = new ConcurrentHashMap<>();
 
@@ -463,6 +514,12 @@ public final class Server {
     executingSubQueries = new ConcurrentHashMap<>();
 
     messageQueue = new LinkedBlockingQueue<>();
+    metricsRegistry = new MetricsRegistry(MyriaConstants.MASTER_ID, new Supplier<Map<String, Integer>>() {
+      @Override
+      public Map<String, Integer> get() {
+        return ImmutableMap.of("messages", messageQueue.size());
+      }
+    });
 
     final Map<Integer, SocketInfo> computingUnits = new HashMap<>(workers);
     computingUnits.put(MyriaConstants.MASTER_ID, masterSocketInfo);
@@ -565,6 +622,18 @@ public final class Server {
     aliveWorkers.put(workerID, System.currentTimeMillis());
   }
 
+  /**
+   * @param workerID the worker that sent a heartbeat.
+   * @param metrics the serialized metrics carried by the heartbeat.
+   */
+  private void updateWorkerMetrics(final int workerID, final byte[] metrics) {
+    try {
+      workerMetrics.put(workerID, MyriaJsonMapperProvider.getMapper().readValue(metrics, NodeMetricsEncoding.class));
+    } catch (IOException e) {
+      LOGGER.warn("Unable to parse the metrics of worker {}", workerID, e);
+    }
+  }
+
   /**
    * Check worker livenesses periodically. If a worker is detected as dead, its queries will be notified, it will be
    * removed from connection pools, and a new worker will be scheduled.
@@ -584,6 +653,10 @@ public final class Server {
 
           LOGGER.info("worker {} doesn't have heartbeats, treat it as dead.", workerId);
           aliveWorkers.remove(workerId);
+          workerMetrics.remove(workerId);
+          for (Long id : admissionController.removeWorker(workerId)) {
+            startAdmittedQuery(id);
+          }
 
           for (MasterSubQuery mqp : executingSubQueries.values()) {
             /* for each alive query that the failed worker is assigned to, tell the query that the worker failed. */
@@ -656,6 +729,60 @@ public final class Server {
     }
   }
 
+  /**
+   * Waits until the workers of a subquery that lost a worker in {@link FTMODE#lineage} are all alive and known to each
+   * other, and then runs the subquery again.
+   */
+  private class SubQueryRetrier extends ErrorLoggingTimerTask {
+    /** The query whose subquery runs again. */
+    private final Query queryState;
+    /** The workers of the subquery. */
+    private final Set<Integer> workers;
+    /** When to give up, in milliseconds. */
+    private final long deadline;
+
+    /**
+     * @param queryState the query whose subquery runs again.
+     * @param workers the workers of the subquery.
+     */
+    SubQueryRetrier(final Query queryState, final Set<Integer> workers) {
+      this.queryState = queryState;
+      this.workers = workers;
+      deadline =
+          System.currentTimeMillis() + MyriaConstants.WORKER_IS_DEAD_INTERVAL
+              + MyriaConstants.SCHEDULED_WORKER_UNABLE_TO_START;
+    }
+
+    /**
+     * @return true if all the workers are alive and have been added back by the others.
+     */
+    private boolean workersReady() {
+      for (int workerId : workers) {
+        if (!aliveWorkers.containsKey(workerId) || scheduledWorkers.containsKey(workerId)) {
+          return false;
+        }
+        Set<Integer> acks = addWorkerAckReceived.get(workerId);
+        if (acks != null && !acks.containsAll(workers)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public void runInner() throws DbException {
+      if (workersReady()) {
+        advanceQuery(queryState);
+      } else if (System.currentTimeMillis() > deadline) {
+        queryState.markFailed(new DbException("Query #" + queryState.getQueryId()
+            + " lost workers that did not come back: " + workers));
+        finishQuery(queryState);
+      } else {
+        scheduledTaskExecutor.schedule(this, MyriaConstants.SHORT_WAITING_INTERVAL_100_MS, TimeUnit.MILLISECONDS);
+      }
+    }
+  }
+
   /** The reader. */
   private static final MyriaConfigurationReader READER = new MyriaConfigurationReader();
 
@@ -741,6 +868,7 @@ public final class Server {
     if (scheduledTaskExecutor != null && !scheduledTaskExecutor.isShutdown()) {
       scheduledTaskExecutor.shutdownNow();
     }
+    metricsRegistry.unregisterMBean();
 
     /*
      * Close the catalog before shutting down the IPC because there may be Catalog jobs pending that were triggered by
@@ -887,6 +1015,7 @@ public final class Server {
         masterInJVMPipelineFactory, new InJVMLoopbackChannelSink());
 
     messageProcessingExecutor.submit(new MessageProcessor());
+    metricsRegistry.registerMBean();
     LOGGER.info("Server started on {}", masterSocketInfo);
 
     if (getSchema(MyriaConstants.PROFILING_RELATION) == null
@@ -910,7 +1039,16 @@ public final class Server {
    * @param queryID the queryID.
    */
   public void killQuery(final long queryID) {
-    getQuery(queryID).kill();
+    Query queryState = getQuery(queryID);
+    queryState.kill();
+    if (admissionController.remove(queryID)) {
+      /* The query was never admitted, so finish it here. */
+      try {
+        advanceQuery(queryState);
+      } catch (DbException e) {
+        LOGGER.error("Error finishing killed query #{}", queryID, e);
+      }
+    }
   }
 
   /**
@@ -1020,10 +1158,42 @@ public final class Server {
       throws DbException, CatalogException {
     final Query queryState = new Query(queryId, query, plan, this);
     activeQueries.put(queryId, queryState);
-    advanceQuery(queryState);
+    long bytesPerWorker = 0;
+    try {
+      bytesPerWorker = AdmissionController.estimateMemoryPerWorker(query, this);
+    } catch (DbException e) {
+      LOGGER.warn("Unable to estimate the memory needed by query #{}, admitting it as a light query", queryId, e);
+    }
+    List<Long> admitted =
+        admissionController.submit(queryId, query.priority, bytesPerWorker, AdmissionController.getQueryWorkers(query,
+            getAliveWorkers()));
+    for (Long id : admitted) {
+      if (id == queryId) {
+        advanceQuery(queryState);
+      } else {
+        startAdmittedQuery(id);
+      }
+    }
     return queryState.getFuture();
   }
 
+  /**
+   * Start executing a query that was waiting for admission.
+   *
+   * @param queryId the id of the admitted query.
+   */
+  private void startAdmittedQuery(final long queryId) {
+    Query queryState = activeQueries.get(queryId);
+    if (queryState == null) {
+      return;
+    }
+    try {
+      advanceQuery(queryState);
+    } catch (DbException e) {
+      LOGGER.error("Error starting admitted query #{}", queryId, e);
+    }
+  }
+
   /**
    * Advance the given query to the next {@link SubQuery}. If there is no next {@link SubQuery}, mark the entire query
    * as having succeeded.
@@ -1068,6 +1238,9 @@ public final class Server {
       throw new DbException("Error finishing query " + queryState.getQueryId(), e);
     } finally {
       activeQueries.remove(queryState.getQueryId());
+      for (Long id : admissionController.release(queryState.getQueryId())) {
+        startAdmittedQuery(id);
+      }
     }
   }
 
@@ -1085,6 +1258,7 @@ public final class Server {
     try {
       final MasterSubQuery mqp = new MasterSubQuery(subQuery, this);
       executingSubQueries.put(subQueryId, mqp);
+      metricsRegistry.subQueryStarted(mqp.getMetrics());
 
       final LocalSubQueryFuture queryExecutionFuture = mqp.getExecutionFuture();
 
@@ -1096,6 +1270,7 @@ public final class Server {
         public void operationComplete(final LocalSubQueryFuture future) throws Exception {
 
           finishSubQuery(subQueryId);
+          queryState.updatePeakMemoryBytes(mqp.getPeakMemoryBytes());
 
           final Long elapsedNanos = mqp.getExecutionStatistics().getQueryExecutionElapse();
           if (future.isSuccess()) {
@@ -1109,6 +1284,12 @@ public final class Server {
                 .nanoElapseToHumanReadable(elapsedNanos), cause);
             if (cause instanceof QueryKilledException) {
               queryState.markKilled();
+            } else if (mqp.getFTMode().equals(FTMODE.lineage) && mqp.canRetryAfterLostWorker()
+                && queryState.retrySubQuery(subQuery)) {
+              LOGGER.info("Subquery #{} will run again once its workers are back.", subQueryId);
+              scheduledTaskExecutor.schedule(new SubQueryRetrier(queryState, mqp.getWorkerAssigned()),
+                  MyriaConstants.SHORT_WAITING_INTERVAL_100_MS, TimeUnit.MILLISECONDS);
+              return;
             } else {
               queryState.markFailed(cause);
             }
@@ -1145,7 +1326,10 @@ public final class Server {
    */
   private void finishSubQuery(final SubQueryId subQueryId) {
     long queryId = subQueryId.getQueryId();
-    executingSubQueries.remove(subQueryId);
+    MasterSubQuery mqp = executingSubQueries.remove(subQueryId);
+    if (mqp != null) {
+      metricsRegistry.subQueryFinished(mqp.getMetrics());
+    }
     getQuery(queryId).finishSubQuery();
   }
 
@@ -1249,7 +1433,49 @@ public final class Server {
    * @return whether this master can handle more queries or not.
    */
   public boolean canSubmitQuery() {
-    return (activeQueries.size() < MyriaConstants.MAX_ACTIVE_QUERIES);
+    return admissionController.canAccept();
+  }
+
+  /**
+   * @return the state of the admission queue and of the per-worker memory reservations.
+   */
+  public AdmissionStatusEncoding getAdmissionStatus() {
+    return admissionController.getStatus();
+  }
+
+  /**
+   * @return the live metrics of the subqueries executed by the master.
+   */
+  public MetricsRegistry getMetricsRegistry() {
+    return metricsRegistry;
+  }
+
+  /**
+   * Collects the live metrics of the requested query: those of the master, and the latest ones reported by the
+   * workers in their heartbeats, which lag by up to {@link MyriaConstants#HEARTBEAT_INTERVAL} milliseconds.
+   *
+   * @param queryId the identifier of the query.
+   * @throws CatalogException if there is an error in the catalog.
+   * @return the metrics of the query, or null if the query does not exist.
+   */
+  public QueryMetricsEncoding getQueryMetrics(final long queryId) throws CatalogException {
+    if (catalog.getQuery(queryId) == null) {
+      return null;
+    }
+    QueryMetricsEncoding ret = new QueryMetricsEncoding();
+    ret.queryId = queryId;
+    ret.nodes = new ArrayList<>();
+    NodeMetricsEncoding master = metricsRegistry.snapshot(queryId);
+    if (master != null) {
+      ret.nodes.add(master);
+    }
+    for (NodeMetricsEncoding worker : new TreeMap<>(workerMetrics).values()) {
+      NodeMetricsEncoding metrics = MetricsRegistry.forQuery(worker, queryId);
+      if (metrics != null) {
+        ret.nodes.add(metrics);
+      }
+    }
+    return ret;
   }
 
   /**
@@ -1367,6 +1593,15 @@ public final class Server {
     queryStatus.finishTime = state.getEndTime();
     queryStatus.elapsedNanos = state.getElapsedTime();
     queryStatus.status = state.getStatus();
+    long peakMemoryBytes = state.getPeakMemoryBytes();
+    SubQuery subQuery = state.getCurrentSubQuery();
+    if (subQuery != null) {
+      MasterSubQuery mqp = executingSubQueries.get(subQuery.getSubQueryId());
+      if (mqp != null) {
+        peakMemoryBytes = Math.max(peakMemoryBytes, mqp.getPeakMemoryBytes());
+      }
+    }
+    queryStatus.peakMemoryBytes = peakMemoryBytes;
     return queryStatus;
   }
 
@@ -1973,6 +2208,64 @@ public final class Server {
     }
   }
 
+  /**
+   * Stream the CPU profile of a query, sampled on the workers while it runs: the number of samples of each fragment and
+   * folded stack, summed across the workers. The query does not have to be finished, nor run in profiling mode, but
+   * the workers only sample if {@link MyriaSystemConfigKeys#CPU_PROFILER_SAMPLING_INTERVAL_MILLIS} is set.
+   *
+   * @param queryId query id.
+   * @param fragmentId the fragment id to return data for. All fragments, if < 0.
+   * @param writer writer to get data.
+   * @return the CPU profile of the query.
+   * @throws DbException if there is an error when accessing the catalog.
+   */
+  public QueryFuture startCpuProfileStream(final long queryId, final long fragmentId, final TupleWriter writer)
+      throws DbException {
+    try {
+      Preconditions.checkArgument(catalog.getQuery(queryId) != null, "query %s not found", queryId);
+    } catch (CatalogException e) {
+      throw new DbException(e);
+    }
+
+    Set<Integer> actualWorkers = getAliveWorkers();
+
+    final ExchangePairID operatorId = ExchangePairID.newID();
+    CpuProfileScan scan = new CpuProfileScan(queryId, fragmentId);
+    CollectProducer producer = new CollectProducer(scan, operatorId, MyriaConstants.MASTER_ID);
+
+    SubQueryPlan workerPlan = new SubQueryPlan(producer);
+    Map<Integer, SubQueryPlan> workerPlans = new HashMap<>(actualWorkers.size());
+    for (Integer worker : actualWorkers) {
+      workerPlans.put(worker, workerPlan);
+    }
+
+    /* Sum the samples of each stack across the workers. */
+    final CollectConsumer consumer =
+        new CollectConsumer(CpuProfileScan.SCHEMA, operatorId, ImmutableSet.copyOf(actualWorkers));
+    final MultiGroupByAggregate aggregate =
+        new MultiGroupByAggregate(consumer, new int[] { 0, 1 }, new SingleColumnAggregatorFactory(2,
+            AggregationOp.SUM));
+
+    // rename columns
+    ImmutableList.Builder<Expression> renameExpressions = ImmutableList.builder();
+    renameExpressions.add(new Expression("fragmentId", new VariableExpression(0)));
+    renameExpressions.add(new Expression("stack", new VariableExpression(1)));
+    renameExpressions.add(new Expression("numSamples", new VariableExpression(2)));
+    final Apply rename = new Apply(aggregate, renameExpressions.build());
+
+    DataOutput output = new DataOutput(rename, writer);
+    final SubQueryPlan masterPlan = new SubQueryPlan(output);
+
+    /* Submit the plan for the download. */
+    String planString =
+        Joiner.on("").join("download CPU profile (query=", queryId, ", fragment=", fragmentId, ")");
+    try {
+      return submitQuery(planString, planString, planString, masterPlan, workerPlans, false);
+    } catch (CatalogException e) {
+      throw new DbException(e);
+    }
+  }
+
   /**
    * Get the query status and check whether the query ran successfully with profiling enabled.
    *
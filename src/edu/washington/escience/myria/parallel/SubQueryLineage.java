@@ -0,0 +1,160 @@
+package edu.washington.escience.myria.parallel;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Sets;
+
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.MyriaConstants.FTMODE;
+import edu.washington.escience.myria.operator.DataOutput;
+import edu.washington.escience.myria.operator.Operator;
+import edu.washington.escience.myria.operator.RootOperator;
+import edu.washington.escience.myria.operator.network.Consumer;
+import edu.washington.escience.myria.operator.network.Producer;
+import edu.washington.escience.myria.parallel.ipc.StreamIOChannelID;
+
+/**
+ * The data dependencies between the plans of a {@link SubQuery}, which {@link FTMODE#lineage} uses to decide how much
+ * work to redo when a worker is lost.
+ * 
+ * Two workers, or a worker and the master, depend on each other if a plan of one has a producer that sends to the other
+ * or a consumer that receives from it. When a worker is lost, the plans that depend on it directly or transitively are
+ * affected: their inputs are incomplete, or the outputs they already sent went to a plan that is incomplete. If no
+ * other plan depends on the lost worker, only its plan runs again. Otherwise the whole subquery fails and, if all its
+ * plans can, runs again, because the affected plans cannot be stopped and restarted while the others go on. A plan can
+ * run again only if it overwrites every relation it writes and does not stream results out, because a partial first
+ * run is then invisible.
+ */
+final class SubQueryLineage {
+
+  /** For every worker, and the master, the workers and master it exchanges data with. */
+  private final Map<Integer, Set<Integer>> neighbors;
+  /** The workers, and the master, whose plans can run again. */
+  private final Set<Integer> replayable;
+
+  /**
+   * @param masterPlan the plan of the master.
+   * @param workerPlans the plan of every worker.
+   */
+  SubQueryLineage(final SubQueryPlan masterPlan, final Map<Integer, SubQueryPlan> workerPlans) {
+    neighbors = new HashMap<>();
+    replayable = new HashSet<>();
+    addPlan(MyriaConstants.MASTER_ID, masterPlan);
+    for (Map.Entry<Integer, SubQueryPlan> e : workerPlans.entrySet()) {
+      addPlan(e.getKey(), e.getValue());
+    }
+  }
+
+  /**
+   * @param nodeId the worker, or the master, that runs the plan.
+   * @param plan the plan.
+   */
+  private void addPlan(final int nodeId, final SubQueryPlan plan) {
+    getNeighbors(nodeId);
+    boolean canReplay = true;
+    for (RelationWriteMetadata meta : plan.writeSet().values()) {
+      canReplay &= meta.isOverwrite();
+    }
+    Set<Object> visited = Sets.newIdentityHashSet();
+    for (RootOperator root : plan.getRootOps()) {
+      canReplay &= addOperator(nodeId, root, visited);
+    }
+    if (canReplay) {
+      replayable.add(nodeId);
+    }
+  }
+
+  /**
+   * Record the exchanges of an operator and its descendants.
+   * 
+   * @param nodeId the worker, or the master, that runs the operator.
+   * @param op the operator.
+   * @param visited the operators that have already been visited.
+   * @return false if the operator or a descendant streams results out of the system.
+   */
+  private boolean addOperator(final int nodeId, final Operator op, final Set<Object> visited) {
+    if (!visited.add(op)) {
+      return true;
+    }
+    boolean canReplay = !(op instanceof DataOutput);
+    if (op instanceof Producer) {
+      for (StreamIOChannelID channel : ((Producer) op).getOutputChannelIDs(nodeId)) {
+        addEdge(nodeId, channel.getRemoteID());
+      }
+    } else if (op instanceof Consumer) {
+      for (int source : ((Consumer) op).getSourceWorkers(nodeId)) {
+        addEdge(nodeId, source);
+      }
+    }
+    for (Operator child : op.getChildren()) {
+      if (child != null) {
+        canReplay &= addOperator(nodeId, child, visited);
+      }
+    }
+    return canReplay;
+  }
+
+  /**
+   * @param nodeId a worker or the master.
+   * @return the workers and master it exchanges data with.
+   */
+  private Set<Integer> getNeighbors(final int nodeId) {
+    Set<Integer> ret = neighbors.get(nodeId);
+    if (ret == null) {
+      ret = new HashSet<>();
+      neighbors.put(nodeId, ret);
+    }
+    return ret;
+  }
+
+  /**
+   * @param a a worker or the master.
+   * @param b another worker or the master.
+   */
+  private void addEdge(final int a, final int b) {
+    if (a != b) {
+      getNeighbors(a).add(b);
+      getNeighbors(b).add(a);
+    }
+  }
+
+  /**
+   * @param lostWorker the worker that has been lost.
+   * @return the workers, and possibly the master, whose plans depend on the lost worker, including the lost worker.
+   */
+  Set<Integer> getAffected(final int lostWorker) {
+    Set<Integer> affected = new HashSet<>();
+    Deque<Integer> toVisit = new ArrayDeque<>();
+    affected.add(lostWorker);
+    toVisit.add(lostWorker);
+    while (!toVisit.isEmpty()) {
+      for (int neighbor : getNeighbors(toVisit.poll())) {
+        if (affected.add(neighbor)) {
+          toVisit.add(neighbor);
+        }
+      }
+    }
+    return affected;
+  }
+
+  /**
+   * @param lostWorker the worker that has been lost.
+   * @return true if the plan of the lost worker can run again on its replacement while the other plans go on, because
+   *         no other plan depends on it.
+   */
+  boolean canRerunAlone(final int lostWorker) {
+    return replayable.contains(lostWorker) && getNeighbors(lostWorker).isEmpty();
+  }
+
+  /**
+   * @return true if the whole subquery can run again.
+   */
+  boolean isReplayable() {
+    return replayable.containsAll(neighbors.keySet());
+  }
+}
@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.channels.FileLock;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.BlockingQueue;
@@ -14,6 +15,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
@@ -28,15 +30,21 @@ import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
 import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
 import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.base.Supplier;
+
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.MyriaConstants.FTMODE;
 import edu.washington.escience.myria.MyriaSystemConfigKeys;
 import edu.washington.escience.myria.accessmethod.ConnectionInfo;
+import edu.washington.escience.myria.api.MyriaJsonMapperProvider;
 import edu.washington.escience.myria.coordinator.catalog.CatalogException;
 import edu.washington.escience.myria.coordinator.catalog.WorkerCatalog;
 import edu.washington.escience.myria.parallel.ipc.IPCConnectionPool;
 import edu.washington.escience.myria.parallel.ipc.InJVMLoopbackChannelSink;
+import edu.washington.escience.myria.profiling.CpuSampler;
+import edu.washington.escience.myria.profiling.MetricsRegistry;
 import edu.washington.escience.myria.profiling.ProfilingLogger;
 import edu.washington.escience.myria.proto.ControlProto.ControlMessage;
 import edu.washington.escience.myria.proto.QueryProto.QueryMessage;
@@ -222,7 +230,13 @@ public final class Worker {
     @Override
     public synchronized void runInner() {
       LOGGER.trace("sending heartbeat to server");
-      sendMessageToMaster(IPCUtils.CONTROL_WORKER_HEARTBEAT).awaitUninterruptibly();
+      byte[] metrics = null;
+      try {
+        metrics = MyriaJsonMapperProvider.getMapper().writeValueAsBytes(metricsRegistry.snapshot());
+      } catch (JsonProcessingException e) {
+        LOGGER.warn("Unable to serialize the metrics of worker {}", myID, e);
+      }
+      sendMessageToMaster(IPCUtils.workerHeartbeatTM(getEstimatedMemoryBytes(), metrics)).awaitUninterruptibly();
     }
   }
 
@@ -327,6 +341,16 @@ public final class Worker {
    */
   private final LinkedBlockingQueue<QueryCommand> queryQueue;
 
+  /**
+   * The live metrics of the subqueries executed by this worker.
+   */
+  private final MetricsRegistry metricsRegistry;
+
+  /**
+   * Samples the stacks of the query execution threads, or null if disabled.
+   */
+  private volatile CpuSampler cpuSampler;
+
   /**
    * My catalog.
    */
@@ -579,6 +603,61 @@ public final class Worker {
     return executingSubQueries;
   }
 
+  /**
+   * @return the number of fragments of the active queries.
+   */
+  int getNumRunningFragments() {
+    int ret = 0;
+    for (WorkerSubQuery subQuery : executingSubQueries.values()) {
+      ret += subQuery.getFragments().size();
+    }
+    return ret;
+  }
+
+  /**
+   * @return the estimated memory currently held by operator state of all the active queries, in bytes.
+   */
+  public long getEstimatedMemoryBytes() {
+    long bytes = 0;
+    for (WorkerSubQuery subQuery : executingSubQueries.values()) {
+      bytes += subQuery.getEstimatedMemoryBytes();
+    }
+    return bytes;
+  }
+
+  /**
+   * @return the live metrics of the subqueries executed by this worker.
+   */
+  public MetricsRegistry getMetricsRegistry() {
+    return metricsRegistry;
+  }
+
+  /**
+   * @return the CPU sampler of this worker, or null if it is disabled.
+   */
+  public CpuSampler getCpuSampler() {
+    return cpuSampler;
+  }
+
+  /**
+   * @return the number of tasks waiting in each query execution thread and message queue of this worker.
+   */
+  private Map<String, Integer> getQueueDepths() {
+    Map<String, Integer> ret = new LinkedHashMap<>();
+    ret.put("controlMessages", controlMessageQueue.size());
+    ret.put("queryMessages", queryQueue.size());
+    ExecutorService executor = queryExecutor;
+    if (executor instanceof ThreadAffinityFixedRoundRobinExecutionPool) {
+      int[] sizes = ((ThreadAffinityFixedRoundRobinExecutionPool) executor).getQueueSizes();
+      for (int i = 0; i < sizes.length; i++) {
+        ret.put("queryExecutor-" + i, sizes[i]);
+      }
+    } else if (executor instanceof ThreadPoolExecutor) {
+      ret.put("queryExecutor", ((ThreadPoolExecutor) executor).getQueue().size());
+    }
+    return ret;
+  }
+
   /**
    * @return query execution mode.
    */
@@ -602,6 +681,12 @@ public final class Worker {
 
     controlMessageQueue = new LinkedBlockingQueue<ControlMessage>();
     queryQueue = new LinkedBlockingQueue<QueryCommand>();
+    metricsRegistry = new MetricsRegistry(myID, new Supplier<Map<String, Integer>>() {
+      @Override
+      public Map<String, Integer> get() {
+        return getQueueDepths();
+      }
+    });
 
     masterSocketInfo = catalog.getMasters().get(0);
 
@@ -653,11 +738,13 @@ public final class Worker {
 
     activeQueries.put(subQueryId.getQueryId(), subQueryId);
     executingSubQueries.put(subQueryId, subQuery);
+    metricsRegistry.subQueryStarted(subQuery.getMetrics());
     subQuery.getExecutionFuture().addListener(new LocalSubQueryFutureListener() {
 
       @Override
       public void operationComplete(final LocalSubQueryFuture future) {
         finishTask(subQueryId);
+        metricsRegistry.subQueryFinished(subQuery.getMetrics());
 
         if (future.isSuccess()) {
 
@@ -753,6 +840,10 @@ public final class Worker {
     messageProcessingExecutor.shutdownNow();
     queryExecutor.shutdown();
     scheduledTaskExecutor.shutdown();
+    metricsRegistry.unregisterMBean();
+    if (cpuSampler != null) {
+      cpuSampler.shutdown();
+    }
     if (LOGGER.isInfoEnabled()) {
       LOGGER.info("Worker #" + myID + " shutdown completed");
     }
@@ -813,6 +904,23 @@ public final class Worker {
         MyriaConstants.WORKER_SHUTDOWN_CHECKER_INTERVAL, TimeUnit.MILLISECONDS);
     scheduledTaskExecutor.scheduleAtFixedRate(new HeartbeatReporter(), 0, MyriaConstants.HEARTBEAT_INTERVAL,
         TimeUnit.MILLISECONDS);
+    metricsRegistry.registerMBean();
+
+    String samplingInterval = getConfiguration(MyriaSystemConfigKeys.CPU_PROFILER_SAMPLING_INTERVAL_MILLIS);
+    if (samplingInterval != null) {
+      long intervalMillis = 0;
+      try {
+        intervalMillis = Long.parseLong(samplingInterval.trim());
+      } catch (NumberFormatException e) {
+        LOGGER.warn("Invalid {}: {}, the CPU sampler is disabled",
+            MyriaSystemConfigKeys.CPU_PROFILER_SAMPLING_INTERVAL_MILLIS, samplingInterval);
+      }
+      if (intervalMillis > 0) {
+        cpuSampler = new CpuSampler(intervalMillis);
+        cpuSampler.start();
+        LOGGER.info("Sampling query execution stacks every {} ms", intervalMillis);
+      }
+    }
   }
 
   /**
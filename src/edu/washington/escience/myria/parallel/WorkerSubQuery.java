@@ -101,9 +101,11 @@ public class WorkerSubQuery extends LocalSubQuery {
 
       if (currentNumFinished >= fragments.size()) {
         getExecutionStatistics().markEnd();
+        cleanupBackupBuffers();
         if (LOGGER.isInfoEnabled()) {
-          LOGGER.info("Query #{} executed for {}", getSubQueryId(), DateTimeUtils
-              .nanoElapseToHumanReadable(getExecutionStatistics().getQueryExecutionElapse()));
+          LOGGER.info("Query #{} executed for {}, peak estimated operator memory {} bytes", getSubQueryId(),
+              DateTimeUtils.nanoElapseToHumanReadable(getExecutionStatistics().getQueryExecutionElapse()),
+              getExecutionStatistics().getPeakMemoryBytes());
         }
         if (isProfilingMode()) {
           try {
@@ -217,6 +219,28 @@ public class WorkerSubQuery extends LocalSubQuery {
     return missingWorkers;
   }
 
+  /**
+   * Release the backup buffers of the producers, and delete the files they have spilled to once no recovery reads
+   * them. No recovery can start once all the fragments are done.
+   */
+  private void cleanupBackupBuffers() {
+    for (LocalFragment fragment : fragments) {
+      if (fragment.getRootOp() instanceof Producer) {
+        List<StreamingState> buffers = ((Producer) fragment.getRootOp()).getTriedToSendTuples();
+        if (buffers == null) {
+          continue;
+        }
+        for (StreamingState buffer : buffers) {
+          try {
+            buffer.cleanup();
+          } catch (RuntimeException e) {
+            LOGGER.warn("Failed to clean up a backup buffer of {}", fragment.getRootOp().getOpName(), e);
+          }
+        }
+      }
+    }
+  }
+
   /**
    * add a recovery task for the failed worker.
    * 
@@ -293,4 +317,9 @@ public class WorkerSubQuery extends LocalSubQuery {
   public Set<LocalFragment> getFragments() {
     return fragments;
   }
+
+  @Override
+  int getNumRunningFragments() {
+    return worker.getNumRunningFragments();
+  }
 }
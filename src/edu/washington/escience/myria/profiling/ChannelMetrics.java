@@ -0,0 +1,98 @@
+package edu.washington.escience.myria.profiling;
+
+import edu.washington.escience.myria.api.encoding.NodeMetricsEncoding;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleUtils;
+import edu.washington.escience.myria.util.concurrent.StripedLongCounter;
+
+/**
+ * The live statistics of one channel between a producer or consumer and a remote node.
+ */
+public final class ChannelMetrics {
+
+  /** The node at the other end of the channel. */
+  private final int remoteId;
+  /** Whether the operator sends or receives on this channel. */
+  private final Direction direction;
+  /** The number of tuples transferred. */
+  private final StripedLongCounter tuples = new StripedLongCounter();
+  /** The number of batches transferred. */
+  private final StripedLongCounter batches = new StripedLongCounter();
+  /** The estimated size of the tuples transferred, in bytes. */
+  private final StripedLongCounter bytes = new StripedLongCounter();
+  /** When the first batch was transferred, from {@link System#nanoTime()}, or 0. */
+  private volatile long firstNanos = 0;
+  /** When the last batch was transferred, from {@link System#nanoTime()}, or 0. */
+  private volatile long lastNanos = 0;
+
+  /**
+   * @param remoteId the node at the other end of the channel.
+   * @param direction whether the operator sends or receives on this channel.
+   */
+  ChannelMetrics(final int remoteId, final Direction direction) {
+    this.remoteId = remoteId;
+    this.direction = direction;
+  }
+
+  /**
+   * Record a batch sent or received on this channel.
+   * 
+   * @param tb the batch.
+   */
+  public void record(final TupleBatch tb) {
+    long now = System.nanoTime();
+    if (firstNanos == 0) {
+      firstNanos = now;
+    }
+    lastNanos = now;
+    int numTuples = tb.numTuples();
+    tuples.add(numTuples);
+    batches.increment();
+    bytes.add((long) numTuples * TupleUtils.estimateTupleBytes(tb.getSchema()));
+  }
+
+  /**
+   * @return the estimated size of the tuples transferred, in bytes.
+   */
+  public long getBytes() {
+    return bytes.get();
+  }
+
+  /**
+   * @return the number of tuples transferred.
+   */
+  public long getTuples() {
+    return tuples.get();
+  }
+
+  /**
+   * @return the direction of this channel.
+   */
+  public Direction getDirection() {
+    return direction;
+  }
+
+  /**
+   * @param queryId the ID of the query.
+   * @param subQueryId the ID of the subquery.
+   * @param opId the ID of the producer or consumer.
+   * @return the current statistics of this channel.
+   */
+  NodeMetricsEncoding.ChannelStatistics toEncoding(final long queryId, final long subQueryId, final int opId) {
+    NodeMetricsEncoding.ChannelStatistics ret = new NodeMetricsEncoding.ChannelStatistics();
+    ret.queryId = queryId;
+    ret.subQueryId = subQueryId;
+    ret.opId = opId;
+    ret.remoteId = remoteId;
+    ret.direction = direction;
+    ret.tuples = tuples.get();
+    ret.batches = batches.get();
+    ret.bytes = bytes.get();
+    ret.nanos = Math.max(0, lastNanos - firstNanos);
+    if (ret.nanos > 0) {
+      ret.tuplesPerSecond = ret.tuples * 1e9 / ret.nanos;
+      ret.bytesPerSecond = ret.bytes * 1e9 / ret.nanos;
+    }
+    return ret;
+  }
+}
@@ -0,0 +1,243 @@
+package edu.washington.escience.myria.profiling;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.operator.RootOperator;
+import edu.washington.escience.myria.parallel.LocalFragment;
+import edu.washington.escience.myria.parallel.SubQueryId;
+import edu.washington.escience.myria.util.concurrent.ErrorLoggingTimerTask;
+import edu.washington.escience.myria.util.concurrent.RenamingThreadFactory;
+
+/**
+ * An in-process sampling CPU profiler. While a {@link LocalFragment} executes, its thread is registered with
+ * {@link #enter(LocalFragment)}. Periodically, the stacks of the registered threads that are running are captured and
+ * counted per query, per fragment, and per folded stack: the frames from the subquery and the root operator of the
+ * fragment down to the sampled method, separated by <code>;</code>, as used to draw flame graphs.
+ * 
+ * Threads that are blocked or waiting are not counted, so the profiles show where the CPU time of the queries goes.
+ */
+public final class CpuSampler extends ErrorLoggingTimerTask {
+
+  /** The class of the frame that starts the execution of a fragment, above which frames belong to the executor. */
+  private static final String FRAGMENT_ENTRY_CLASS = LocalFragment.class.getName();
+  /** The method of the frame that starts the execution of a fragment. */
+  private static final String FRAGMENT_ENTRY_METHOD = "executeActually";
+
+  /** The stack under which the samples of a query are counted once its profile has too many distinct stacks. */
+  public static final String TRUNCATED_STACK = "[truncated]";
+
+  /** The sampling interval, in milliseconds. */
+  private final long intervalMillis;
+  /** Captures the stacks of threads. */
+  private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+  /** The fragment currently executed by each thread. */
+  private final ConcurrentMap<Thread, LocalFragment> executing = new ConcurrentHashMap<>();
+  /** The profiles of the last queries, oldest first. Guarded by itself. */
+  private final LinkedHashMap<Long, QueryProfile> profiles = new LinkedHashMap<>();
+  /** Runs the sampling, or null if the sampler is not started. */
+  private ScheduledExecutorService timer;
+
+  /** The samples of one query. */
+  private static final class QueryProfile {
+    /** Fragment ID, or -1 if unknown -> folded stack -> number of samples. */
+    private final Map<Integer, Map<String, Long>> samples = new HashMap<>();
+    /** The number of distinct stacks across the fragments. */
+    private int numStacks = 0;
+
+    /**
+     * @param fragmentId the fragment ID, or -1 if unknown.
+     * @param stack the folded stack.
+     */
+    void add(final int fragmentId, final String stack) {
+      Map<String, Long> fragment = samples.get(fragmentId);
+      if (fragment == null) {
+        fragment = new HashMap<>();
+        samples.put(fragmentId, fragment);
+      }
+      String key = stack;
+      Long count = fragment.get(key);
+      if (count == null) {
+        if (numStacks >= MyriaConstants.CPU_PROFILER_MAX_STACKS_PER_QUERY) {
+          key = TRUNCATED_STACK;
+          count = fragment.get(key);
+        } else {
+          numStacks++;
+        }
+      }
+      fragment.put(key, count == null ? 1 : count + 1);
+    }
+  }
+
+  /**
+   * @param intervalMillis the sampling interval, in milliseconds.
+   */
+  public CpuSampler(final long intervalMillis) {
+    Preconditions.checkArgument(intervalMillis > 0, "the sampling interval must be positive");
+    this.intervalMillis = intervalMillis;
+  }
+
+  /**
+   * Start sampling in a dedicated thread.
+   */
+  public synchronized void start() {
+    Preconditions.checkState(timer == null, "the sampler is already started");
+    timer = Executors.newSingleThreadScheduledExecutor(new RenamingThreadFactory("CPU sampler"));
+    timer.scheduleAtFixedRate(this, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stop sampling.
+   */
+  public synchronized void shutdown() {
+    if (timer != null) {
+      timer.shutdownNow();
+      timer = null;
+    }
+  }
+
+  /**
+   * Start attributing the samples of the current thread to a fragment.
+   * 
+   * @param fragment the fragment that the current thread starts executing.
+   */
+  public void enter(final LocalFragment fragment) {
+    executing.put(Thread.currentThread(), fragment);
+  }
+
+  /**
+   * Stop attributing the samples of the current thread to its fragment.
+   */
+  public void exit() {
+    executing.remove(Thread.currentThread());
+  }
+
+  @Override
+  protected void runInner() {
+    sample();
+  }
+
+  /**
+   * Capture and count the stacks of the threads that are executing fragments.
+   */
+  void sample() {
+    List<Thread> threads = new ArrayList<>(executing.keySet());
+    if (threads.isEmpty()) {
+      return;
+    }
+    long[] ids = new long[threads.size()];
+    for (int i = 0; i < ids.length; ++i) {
+      ids[i] = threads.get(i).getId();
+    }
+    List<LocalFragment> fragments = new ArrayList<>(threads.size());
+    for (Thread thread : threads) {
+      fragments.add(executing.get(thread));
+    }
+    ThreadInfo[] infos = threadMXBean.getThreadInfo(ids, MyriaConstants.CPU_PROFILER_MAX_STACK_DEPTH);
+
+    for (int i = 0; i < infos.length; ++i) {
+      ThreadInfo info = infos[i];
+      LocalFragment fragment = fragments.get(i);
+      /* Drop the sample if the thread has moved on to another fragment, or is not using the CPU. */
+      if (info == null || fragment == null || executing.get(threads.get(i)) != fragment
+          || info.getThreadState() != Thread.State.RUNNABLE) {
+        continue;
+      }
+      RootOperator root = fragment.getRootOp();
+      int fragmentId = -1;
+      if (root.hasFragmentId()) {
+        fragmentId = root.getFragmentId();
+      }
+      SubQueryId subQueryId = fragment.getLocalSubQuery().getSubQueryId();
+      record(subQueryId.getQueryId(), fragmentId, foldStack(subQueryId, root, info.getStackTrace()));
+    }
+  }
+
+  /**
+   * Count a sample. Once there are profiles of more than {@link MyriaConstants#CPU_PROFILER_MAX_QUERIES} queries, the
+   * oldest one is dropped.
+   * 
+   * @param queryId the query.
+   * @param fragmentId the fragment ID, or -1 if unknown.
+   * @param stack the folded stack.
+   */
+  void record(final long queryId, final int fragmentId, final String stack) {
+    synchronized (profiles) {
+      QueryProfile profile = profiles.get(queryId);
+      if (profile == null) {
+        profile = new QueryProfile();
+        profiles.put(queryId, profile);
+        if (profiles.size() > MyriaConstants.CPU_PROFILER_MAX_QUERIES) {
+          profiles.remove(profiles.keySet().iterator().next());
+        }
+      }
+      profile.add(fragmentId, stack);
+    }
+  }
+
+  /**
+   * @param subQueryId the subquery of the fragment.
+   * @param root the root operator of the fragment.
+   * @param frames the stack of the thread, innermost frame first.
+   * @return the folded stack, outermost frame first.
+   */
+  static String foldStack(final SubQueryId subQueryId, final RootOperator root, final StackTraceElement[] frames) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("subquery ").append(subQueryId.getSubqueryId()).append(';');
+    sb.append(root.getClass().getSimpleName());
+    if (root.getOpName() != null && !root.getOpName().isEmpty()) {
+      sb.append(' ').append(root.getOpName().replace(';', ','));
+    }
+
+    /* Skip the frames of the executor, above the fragment. If the stack is too deep to see them, mark it. */
+    int outermost = -1;
+    for (int i = frames.length - 1; i >= 0; --i) {
+      if (FRAGMENT_ENTRY_METHOD.equals(frames[i].getMethodName())
+          && FRAGMENT_ENTRY_CLASS.equals(frames[i].getClassName())) {
+        outermost = i;
+        break;
+      }
+    }
+    if (outermost < 0) {
+      sb.append(";[deep]");
+      outermost = frames.length - 1;
+    }
+    for (int i = outermost; i >= 0; --i) {
+      sb.append(';').append(frames[i].getClassName()).append('.').append(frames[i].getMethodName());
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @param queryId the query.
+   * @return the number of samples of the query, by fragment ID (-1 if unknown) and folded stack.
+   */
+  public Map<Integer, Map<String, Long>> getProfile(final long queryId) {
+    Map<Integer, Map<String, Long>> ret = new HashMap<>();
+    synchronized (profiles) {
+      QueryProfile profile = profiles.get(queryId);
+      if (profile == null) {
+        return ret;
+      }
+      for (Entry<Integer, Map<String, Long>> fragment : profile.samples.entrySet()) {
+        ret.put(fragment.getKey(), new HashMap<>(fragment.getValue()));
+      }
+    }
+    return ret;
+  }
+}
@@ -0,0 +1,11 @@
+package edu.washington.escience.myria.profiling;
+
+/**
+ * The direction of a channel, as seen from the node.
+ */
+public enum Direction {
+  /** A channel written by a producer. */
+  SEND,
+  /** A channel read by a consumer. */
+  RECEIVE
+}
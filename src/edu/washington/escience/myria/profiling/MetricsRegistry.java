@@ -0,0 +1,306 @@
+package edu.washington.escience.myria.profiling;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Supplier;
+import com.google.common.cache.CacheStats;
+
+import edu.washington.escience.myria.api.encoding.NodeMetricsEncoding;
+import edu.washington.escience.myria.api.encoding.NodeMetricsEncoding.CacheStatistics;
+import edu.washington.escience.myria.api.encoding.NodeMetricsEncoding.ChannelStatistics;
+import edu.washington.escience.myria.api.encoding.NodeMetricsEncoding.OperatorStatistics;
+import edu.washington.escience.myria.expression.evaluate.CompiledExpressionCache;
+import edu.washington.escience.myria.parallel.SubQueryId;
+
+/**
+ * The always-on metrics of one node: the statistics of the operators and channels of its running subqueries, kept in
+ * striped counters that the executing threads update once per batch, the depths of its executor queues, and the
+ * statistics of its cache of compiled expressions. The last
+ * {@link #MAX_FINISHED_SUBQUERIES} finished subqueries are kept so that their final statistics can still be read.
+ * 
+ * Unlike profiling mode, nothing is written anywhere: the metrics are read on demand, through {@link #snapshot()}, the
+ * worker heartbeats, and JMX.
+ */
+public final class MetricsRegistry implements MetricsRegistryMXBean {
+
+  /** The logger for this class. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(MetricsRegistry.class);
+
+  /** The number of finished subqueries whose statistics are kept. */
+  public static final int MAX_FINISHED_SUBQUERIES = 32;
+
+  /** The JMX domain of the registries. */
+  private static final String JMX_DOMAIN = "edu.washington.escience.myria";
+
+  /** The ID of the node. */
+  private final int nodeId;
+  /** Computes the depths of the executor and message queues of the node. */
+  private final Supplier<Map<String, Integer>> queueDepths;
+  /** The statistics of the running subqueries. */
+  private final ConcurrentMap<SubQueryId, SubQueryMetrics> running = new ConcurrentHashMap<>();
+  /** The statistics of the last finished subqueries, oldest first. Guarded by itself. */
+  private final Deque<SubQueryMetrics> finished = new ArrayDeque<>();
+  /** The name this registry is registered under in JMX, or null. */
+  private volatile ObjectName objectName;
+
+  /**
+   * @param nodeId the ID of the node.
+   * @param queueDepths computes the depths of the executor and message queues of the node.
+   */
+  public MetricsRegistry(final int nodeId, final Supplier<Map<String, Integer>> queueDepths) {
+    this.nodeId = nodeId;
+    this.queueDepths = queueDepths;
+  }
+
+  /**
+   * @param metrics the statistics of a subquery that starts running on this node.
+   */
+  public void subQueryStarted(final SubQueryMetrics metrics) {
+    running.put(metrics.getSubQueryId(), metrics);
+  }
+
+  /**
+   * @param metrics the statistics of a subquery that finished on this node.
+   */
+  public void subQueryFinished(final SubQueryMetrics metrics) {
+    if (!running.remove(metrics.getSubQueryId(), metrics)) {
+      return;
+    }
+    metrics.release();
+    synchronized (finished) {
+      finished.addLast(metrics);
+      while (finished.size() > MAX_FINISHED_SUBQUERIES) {
+        finished.removeFirst();
+      }
+    }
+  }
+
+  /**
+   * @return the statistics of the running and the last finished subqueries.
+   */
+  private List<SubQueryMetrics> getSubQueries() {
+    List<SubQueryMetrics> ret;
+    synchronized (finished) {
+      ret = new ArrayList<>(finished);
+    }
+    ret.addAll(running.values());
+    return ret;
+  }
+
+  /**
+   * @return the current metrics of this node.
+   */
+  public NodeMetricsEncoding snapshot() {
+    NodeMetricsEncoding ret = new NodeMetricsEncoding();
+    ret.nodeId = nodeId;
+    ret.timestamp = System.currentTimeMillis();
+    ret.queueDepths = queueDepths.get();
+    ret.compiledExpressionCache = getCompiledExpressionCacheStatistics();
+    for (SubQueryMetrics subQuery : getSubQueries()) {
+      subQuery.appendTo(ret);
+    }
+    return ret;
+  }
+
+  /**
+   * @return the statistics of the cache of compiled expressions of this node.
+   */
+  private static CacheStatistics getCompiledExpressionCacheStatistics() {
+    CacheStats stats = CompiledExpressionCache.getStats();
+    CacheStatistics ret = new CacheStatistics();
+    ret.hits = stats.hitCount();
+    ret.misses = stats.missCount();
+    ret.evictions = stats.evictionCount();
+    ret.size = CompiledExpressionCache.size();
+    return ret;
+  }
+
+  /**
+   * @param queryId the ID of a query.
+   * @return the current metrics of this node, restricted to the query.
+   */
+  public NodeMetricsEncoding snapshot(final long queryId) {
+    return forQuery(snapshot(), queryId);
+  }
+
+  /**
+   * @param metrics the metrics of a node.
+   * @param queryId the ID of a query.
+   * @return a copy of the metrics restricted to the query, or <code>null</code> if the node has no statistics about it.
+   */
+  public static NodeMetricsEncoding forQuery(final NodeMetricsEncoding metrics, final long queryId) {
+    NodeMetricsEncoding ret = new NodeMetricsEncoding();
+    ret.nodeId = metrics.nodeId;
+    ret.timestamp = metrics.timestamp;
+    ret.queueDepths = metrics.queueDepths;
+    ret.compiledExpressionCache = metrics.compiledExpressionCache;
+    for (OperatorStatistics op : metrics.operators) {
+      if (op.queryId == queryId) {
+        ret.operators.add(op);
+      }
+    }
+    for (ChannelStatistics channel : metrics.channels) {
+      if (channel.queryId == queryId) {
+        ret.channels.add(channel);
+      }
+    }
+    if (ret.operators.isEmpty() && ret.channels.isEmpty()) {
+      return null;
+    }
+    return ret;
+  }
+
+  /**
+   * Export this registry through the platform MBean server, replacing any registry of a previous node with the same
+   * ID in this JVM.
+   */
+  public void registerMBean() {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      ObjectName name = new ObjectName(JMX_DOMAIN + ":type=Metrics,node=" + nodeId);
+      if (server.isRegistered(name)) {
+        server.unregisterMBean(name);
+      }
+      server.registerMBean(this, name);
+      objectName = name;
+    } catch (JMException e) {
+      LOGGER.warn("Unable to export the metrics of node {} through JMX", nodeId, e);
+    }
+  }
+
+  /**
+   * Stop exporting this registry through JMX.
+   */
+  public void unregisterMBean() {
+    ObjectName name = objectName;
+    if (name == null) {
+      return;
+    }
+    objectName = null;
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    } catch (JMException e) {
+      LOGGER.debug("Unable to unregister the metrics of node {} from JMX", nodeId, e);
+    }
+  }
+
+  @Override
+  public int getNodeId() {
+    return nodeId;
+  }
+
+  @Override
+  public int getRunningSubQueries() {
+    return running.size();
+  }
+
+  @Override
+  public Map<String, Integer> getQueueDepths() {
+    return queueDepths.get();
+  }
+
+  @Override
+  public long getCompiledExpressionCacheHits() {
+    return CompiledExpressionCache.getStats().hitCount();
+  }
+
+  @Override
+  public long getCompiledExpressionCacheMisses() {
+    return CompiledExpressionCache.getStats().missCount();
+  }
+
+  @Override
+  public long getCompiledExpressionCacheSize() {
+    return CompiledExpressionCache.size();
+  }
+
+  @Override
+  public long getInputBufferOccupancy() {
+    long ret = 0;
+    NodeMetricsEncoding metrics = snapshot();
+    for (OperatorStatistics op : metrics.operators) {
+      if (op.inputBufferSize != null) {
+        ret += op.inputBufferSize;
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * @param direction the direction of the channels.
+   * @return the estimated number of bytes transferred in that direction.
+   */
+  private long getChannelBytes(final Direction direction) {
+    long ret = 0;
+    for (SubQueryMetrics subQuery : getSubQueries()) {
+      for (OperatorMetrics op : subQuery.getOperators()) {
+        for (ChannelMetrics channel : op.getChannels()) {
+          if (channel.getDirection() == direction) {
+            ret += channel.getBytes();
+          }
+        }
+      }
+    }
+    return ret;
+  }
+
+  @Override
+  public long getBytesSent() {
+    return getChannelBytes(Direction.SEND);
+  }
+
+  @Override
+  public long getBytesReceived() {
+    return getChannelBytes(Direction.RECEIVE);
+  }
+
+  /**
+   * @param op the statistics of an operator.
+   * @return the key of the operator in the per-operator maps.
+   */
+  private static String key(final OperatorStatistics op) {
+    return "query-" + op.queryId + "." + op.subQueryId + " op " + op.opId + " " + op.opName;
+  }
+
+  @Override
+  public Map<String, Long> getOperatorTuplesOut() {
+    Map<String, Long> ret = new TreeMap<>();
+    for (OperatorStatistics op : snapshot().operators) {
+      ret.put(key(op), op.tuplesOut);
+    }
+    return ret;
+  }
+
+  @Override
+  public Map<String, Long> getOperatorBytesOut() {
+    Map<String, Long> ret = new TreeMap<>();
+    for (OperatorStatistics op : snapshot().operators) {
+      ret.put(key(op), op.bytesOut);
+    }
+    return ret;
+  }
+
+  @Override
+  public Map<String, Long> getOperatorSelfNanos() {
+    Map<String, Long> ret = new TreeMap<>();
+    for (OperatorStatistics op : snapshot().operators) {
+      ret.put(key(op), op.selfNanos);
+    }
+    return ret;
+  }
+}
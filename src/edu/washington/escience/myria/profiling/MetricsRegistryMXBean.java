@@ -0,0 +1,70 @@
+package edu.washington.escience.myria.profiling;
+
+import java.util.Map;
+
+/**
+ * The JMX view of the {@link MetricsRegistry} of a node. Totals cover the running and recently finished subqueries;
+ * per-operator maps are keyed by <code>query-Q.S op N name</code>.
+ */
+public interface MetricsRegistryMXBean {
+
+  /**
+   * @return the ID of the node.
+   */
+  int getNodeId();
+
+  /**
+   * @return the number of running subqueries.
+   */
+  int getRunningSubQueries();
+
+  /**
+   * @return the number of tasks waiting in each executor or message queue of the node.
+   */
+  Map<String, Integer> getQueueDepths();
+
+  /**
+   * @return the number of lookups in the cache of compiled expressions that found an evaluator.
+   */
+  long getCompiledExpressionCacheHits();
+
+  /**
+   * @return the number of lookups in the cache of compiled expressions that compiled an evaluator.
+   */
+  long getCompiledExpressionCacheMisses();
+
+  /**
+   * @return the number of evaluators in the cache of compiled expressions.
+   */
+  long getCompiledExpressionCacheSize();
+
+  /**
+   * @return the number of messages waiting in the input buffers of all the consumers of running subqueries.
+   */
+  long getInputBufferOccupancy();
+
+  /**
+   * @return the estimated number of bytes sent by producers.
+   */
+  long getBytesSent();
+
+  /**
+   * @return the estimated number of bytes received by consumers.
+   */
+  long getBytesReceived();
+
+  /**
+   * @return the number of tuples produced by each operator.
+   */
+  Map<String, Long> getOperatorTuplesOut();
+
+  /**
+   * @return the estimated number of bytes produced by each operator.
+   */
+  Map<String, Long> getOperatorBytesOut();
+
+  /**
+   * @return the time spent in fetchNextReady by each operator, excluding its children, in nanoseconds.
+   */
+  Map<String, Long> getOperatorSelfNanos();
+}
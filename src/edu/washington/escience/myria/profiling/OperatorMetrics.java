@@ -0,0 +1,180 @@
+package edu.washington.escience.myria.profiling;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.api.encoding.NodeMetricsEncoding;
+import edu.washington.escience.myria.operator.Operator;
+import edu.washington.escience.myria.parallel.ipc.FlowControlBagInputBuffer;
+import edu.washington.escience.myria.parallel.ipc.StreamInputBuffer;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleUtils;
+import edu.washington.escience.myria.util.concurrent.StripedLongCounter;
+
+/**
+ * The live statistics of one operator of a subquery. Every instance of the operator in the subquery, e.g., the copies
+ * made by a {@link edu.washington.escience.myria.operator.ParallelPipeline}, adds to the same counters.
+ */
+public final class OperatorMetrics {
+
+  /** The ID of the operator in the plan. */
+  private final int opId;
+  /** The name of the operator in the plan. */
+  private final String opName;
+  /** The class of the operator. */
+  private final String opType;
+  /** The statistics of the children of the operator that are tracked. */
+  private final List<OperatorMetrics> children;
+  /** The number of tuples produced. */
+  private final StripedLongCounter tuplesOut = new StripedLongCounter();
+  /** The number of non-empty batches produced. */
+  private final StripedLongCounter batchesOut = new StripedLongCounter();
+  /** The estimated size of the tuples produced, in bytes. */
+  private final StripedLongCounter bytesOut = new StripedLongCounter();
+  /** The time spent in fetchNextReady, in nanoseconds. */
+  private final StripedLongCounter nanos = new StripedLongCounter();
+  /** The estimated size of an output tuple, in bytes, or -1 before the first batch. */
+  private volatile int tupleBytes = -1;
+  /** The channels of a producer or consumer, by remote node. */
+  private final ConcurrentMap<Integer, ChannelMetrics> channels = new ConcurrentHashMap<>();
+  /** The input buffer of a consumer, released when the subquery finishes. */
+  private volatile StreamInputBuffer<?> inputBuffer;
+
+  /**
+   * @param op the operator.
+   * @param children the statistics of the children of the operator that are tracked.
+   */
+  OperatorMetrics(final Operator op, final List<OperatorMetrics> children) {
+    opId = op.getOpId();
+    opName = op.getOpName();
+    opType = op.getClass().getSimpleName();
+    this.children = ImmutableList.copyOf(children);
+  }
+
+  /**
+   * Record one call to fetchNextReady.
+   * 
+   * @param tb the batch returned, may be <code>null</code>.
+   * @param elapsedNanos the time spent in the call, in nanoseconds.
+   */
+  public void record(final TupleBatch tb, final long elapsedNanos) {
+    nanos.add(elapsedNanos);
+    if (tb == null) {
+      return;
+    }
+    if (tupleBytes < 0) {
+      tupleBytes = TupleUtils.estimateTupleBytes(tb.getSchema());
+    }
+    tuplesOut.add(tb.numTuples());
+    batchesOut.increment();
+    bytesOut.add((long) tb.numTuples() * tupleBytes);
+  }
+
+  /**
+   * @param remoteId the node at the other end of the channel.
+   * @param direction whether this operator sends or receives on the channel.
+   * @return the statistics of the channel, created if needed.
+   */
+  public ChannelMetrics getChannel(final int remoteId, final Direction direction) {
+    ChannelMetrics ret = channels.get(remoteId);
+    if (ret == null) {
+      ChannelMetrics created = new ChannelMetrics(remoteId, direction);
+      ret = channels.putIfAbsent(remoteId, created);
+      if (ret == null) {
+        ret = created;
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * @param inputBuffer the input buffer of a consumer, whose occupancy is reported until the subquery finishes.
+   */
+  public void setInputBuffer(final StreamInputBuffer<?> inputBuffer) {
+    this.inputBuffer = inputBuffer;
+  }
+
+  /**
+   * Drop the references to the resources of the running subquery.
+   */
+  void release() {
+    inputBuffer = null;
+  }
+
+  /**
+   * @return the ID of the operator in the plan.
+   */
+  public int getOpId() {
+    return opId;
+  }
+
+  /**
+   * @return the number of tuples produced.
+   */
+  public long getTuplesOut() {
+    return tuplesOut.get();
+  }
+
+  /**
+   * @return the estimated size of the tuples produced, in bytes.
+   */
+  public long getBytesOut() {
+    return bytesOut.get();
+  }
+
+  /**
+   * @return the time spent in fetchNextReady, including the time of the children, in nanoseconds.
+   */
+  public long getNanos() {
+    return nanos.get();
+  }
+
+  /**
+   * @return the statistics of the channels of a producer or consumer.
+   */
+  public Iterable<ChannelMetrics> getChannels() {
+    return channels.values();
+  }
+
+  /**
+   * @param queryId the ID of the query.
+   * @param subQueryId the ID of the subquery.
+   * @return the current statistics of this operator.
+   */
+  NodeMetricsEncoding.OperatorStatistics toEncoding(final long queryId, final long subQueryId) {
+    NodeMetricsEncoding.OperatorStatistics ret = new NodeMetricsEncoding.OperatorStatistics();
+    ret.queryId = queryId;
+    ret.subQueryId = subQueryId;
+    ret.opId = opId;
+    ret.opName = opName;
+    ret.opType = opType;
+    ret.tuplesOut = tuplesOut.get();
+    ret.batchesOut = batchesOut.get();
+    ret.bytesOut = bytesOut.get();
+    ret.nanos = nanos.get();
+    long childNanos = 0;
+    for (OperatorMetrics child : children) {
+      ret.tuplesIn += child.tuplesOut.get();
+      ret.bytesIn += child.bytesOut.get();
+      childNanos += child.nanos.get();
+    }
+    for (ChannelMetrics channel : channels.values()) {
+      if (channel.getDirection() == Direction.RECEIVE) {
+        ret.tuplesIn += channel.getTuples();
+        ret.bytesIn += channel.getBytes();
+      }
+    }
+    ret.selfNanos = Math.max(0, ret.nanos - childNanos);
+    StreamInputBuffer<?> buffer = inputBuffer;
+    if (buffer != null) {
+      ret.inputBufferSize = buffer.size();
+      if (buffer instanceof FlowControlBagInputBuffer) {
+        ret.inputBufferCapacity = ((FlowControlBagInputBuffer<?>) buffer).getCapacity();
+      }
+    }
+    return ret;
+  }
+}
@@ -0,0 +1,87 @@
+package edu.washington.escience.myria.profiling;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import edu.washington.escience.myria.api.encoding.NodeMetricsEncoding;
+import edu.washington.escience.myria.operator.Operator;
+import edu.washington.escience.myria.parallel.SubQueryId;
+
+/**
+ * The live statistics of the operators of a subquery on one node. Operators register themselves when they are opened.
+ */
+public final class SubQueryMetrics {
+
+  /** The ID of the subquery. */
+  private final SubQueryId subQueryId;
+  /** The statistics of the operators, by operator ID. */
+  private final ConcurrentMap<Integer, OperatorMetrics> operators = new ConcurrentHashMap<>();
+
+  /**
+   * @param subQueryId the ID of the subquery.
+   */
+  public SubQueryMetrics(final SubQueryId subQueryId) {
+    this.subQueryId = subQueryId;
+  }
+
+  /**
+   * @return the ID of the subquery.
+   */
+  public SubQueryId getSubQueryId() {
+    return subQueryId;
+  }
+
+  /**
+   * Start tracking an operator. An operator that is opened again, or opened in several copies, shares the statistics
+   * of the first registration.
+   * 
+   * @param op the operator, which must have an ID.
+   * @param children the statistics of the children of the operator that are tracked.
+   * @return the statistics of the operator.
+   */
+  public OperatorMetrics register(final Operator op, final List<OperatorMetrics> children) {
+    OperatorMetrics ret = operators.get(op.getOpId());
+    if (ret == null) {
+      OperatorMetrics created = new OperatorMetrics(op, children);
+      ret = operators.putIfAbsent(op.getOpId(), created);
+      if (ret == null) {
+        ret = created;
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * @return the statistics of the operators.
+   */
+  public Collection<OperatorMetrics> getOperators() {
+    return operators.values();
+  }
+
+  /**
+   * Drop the references to the resources of the subquery once it has finished.
+   */
+  void release() {
+    for (OperatorMetrics op : operators.values()) {
+      op.release();
+    }
+  }
+
+  /**
+   * Append the current statistics of the operators and channels of this subquery.
+   * 
+   * @param out the metrics of the node.
+   */
+  void appendTo(final NodeMetricsEncoding out) {
+    long queryId = subQueryId.getQueryId();
+    long subId = subQueryId.getSubqueryId();
+    for (OperatorMetrics op : operators.values()) {
+      out.operators.add(op.toEncoding(queryId, subId));
+      for (ChannelMetrics channel : op.getChannels()) {
+        out.channels.add(channel.toEncoding(queryId, subId, op.getOpId()));
+      }
+    }
+  }
+}
@@ -90,6 +90,13 @@ public class MutableTupleBuffer implements ReadableTable, AppendableTable, Clone
     return readyTuples.size() * TupleBatch.BATCH_SIZE + currentInProgressTuples;
   }
 
+  /**
+   * @return the estimated number of bytes of the tuples stored in this buffer.
+   */
+  public final long getEstimatedMemoryBytes() {
+    return (long) numTuples() * TupleUtils.estimateTupleBytes(schema);
+  }
+
   @Override
   @Deprecated
   public final Object getObject(final int colIndex, final int rowIndex) throws IndexOutOfBoundsException {
@@ -151,6 +151,31 @@ public class TupleBatch implements ReadableTable, Serializable {
     return new TupleBatch(schema, newColumns.build(), newNumTuples, isEOI);
   }
 
+  /**
+   * Return a new TupleBatch that contains only the selected rows of the current dataset, e.g. the selection vector of a
+   * predicate. Unlike {@link #filter(BitSet)}, the rows are copied once and shared by all the columns.
+   * 
+   * @param rows the rows to be retained, in increasing order, in the first <code>numRows</code> entries.
+   * @param numRows the number of rows to be retained.
+   * @return a TupleBatch that contains only the selected rows of the current dataset.
+   */
+  public final TupleBatch filter(final int[] rows, final int numRows) {
+    Preconditions.checkArgument(numRows <= rows.length && (numRows == 0 || rows[numRows - 1] < numTuples()),
+        "Error: trying to filter a TupleBatch of length %s with %s rows", numTuples(), numRows);
+
+    /* Shortcut: all current tuples are retained. Just return this. */
+    if (numRows == numTuples) {
+      return this;
+    }
+
+    final int[] selected = Arrays.copyOf(rows, numRows);
+    ImmutableList.Builder<Column<?>> newColumns = ImmutableList.builder();
+    for (Column<?> column : columns) {
+      newColumns.add(column.filter(selected));
+    }
+    return new TupleBatch(schema, newColumns.build(), numRows, isEOI);
+  }
+
   @Override
   public final boolean getBoolean(final int column, final int row) {
     return columns.get(column).getBoolean(row);
@@ -254,6 +254,13 @@ public class TupleBatchBuffer implements AppendableTable {
     return readyTuplesNum + currentInProgressTuples;
   }
 
+  /**
+   * @return the estimated number of bytes of the tuples stored in this buffer.
+   */
+  public final long getEstimatedMemoryBytes() {
+    return (long) numTuples() * TupleUtils.estimateTupleBytes(schema);
+  }
+
   /**
    * @return pop filled and non-filled TupleBatch
    */
@@ -380,6 +387,31 @@ public class TupleBatchBuffer implements AppendableTable {
     }
   }
 
+  /**
+   * Append a range of rows from the source {@link TupleBatch} to this {@link TupleBatchBuffer}. The rows are copied one
+   * column at a time.
+   * 
+   * @param sourceBatch the {@link TupleBatch} from which data will be retrieved.
+   * @param fromRow the first row to append, inclusive.
+   * @param toRow the last row to append, exclusive.
+   */
+  public final void put(final TupleBatch sourceBatch, final int fromRow, final int toRow) {
+    Preconditions.checkState(numColumnsReady == 0, "Cannot append rows after a partially-completed tuple");
+    List<? extends Column<?>> sourceColumns = sourceBatch.getDataColumns();
+    int row = fromRow;
+    while (row < toRow) {
+      int numRows = Math.min(toRow - row, TupleBatch.BATCH_SIZE - currentInProgressTuples);
+      for (int col = 0; col < numColumns; ++col) {
+        TupleUtils.copyValues(sourceColumns.get(col), row, row + numRows, currentBuildingColumns.get(col));
+      }
+      row += numRows;
+      currentInProgressTuples += numRows;
+      if (currentInProgressTuples == TupleBatch.BATCH_SIZE) {
+        finishBatch();
+      }
+    }
+  }
+
   @Override
   public final void putBoolean(final int column, final boolean value) {
     checkPutIndex(column);
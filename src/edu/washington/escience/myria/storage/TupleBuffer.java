@@ -102,6 +102,13 @@ public class TupleBuffer implements ReadableTable, AppendableTable {
     return numTuples;
   }
 
+  /**
+   * @return the estimated number of bytes of the tuples stored in this buffer.
+   */
+  public final long getEstimatedMemoryBytes() {
+    return (long) numTuples() * TupleUtils.estimateTupleBytes(schema);
+  }
+
   @Override
   @Deprecated
   public final Object getObject(final int column, final int row) {
@@ -0,0 +1,145 @@
+package edu.washington.escience.myria.storage;
+
+import java.util.Objects;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+
+/**
+ * Compares tuples of tables that share a schema by a set of key columns. The type of each key column is resolved once,
+ * when the comparator is created, instead of on every comparison.
+ */
+public final class TupleComparator {
+
+  /** The key columns, in order of significance. */
+  private final int[] columns;
+
+  /** The comparator of each key column. */
+  private final CellComparator[] comparators;
+
+  /** True for each key column that is ordered ascending. */
+  private final boolean[] ascending;
+
+  /**
+   * @param schema the schema of the compared tables.
+   * @param columns the key columns, in order of significance.
+   * @param ascending true for each key column that is ordered ascending.
+   */
+  public TupleComparator(final Schema schema, final int[] columns, final boolean[] ascending) {
+    Objects.requireNonNull(schema, "schema");
+    Objects.requireNonNull(columns, "columns");
+    Objects.requireNonNull(ascending, "ascending");
+    Preconditions.checkArgument(columns.length == ascending.length,
+        "the number of key columns and sort directions must match");
+    this.columns = columns.clone();
+    this.ascending = ascending.clone();
+    comparators = new CellComparator[columns.length];
+    for (int i = 0; i < columns.length; ++i) {
+      comparators[i] = getCellComparator(schema.getColumnType(columns[i]));
+    }
+  }
+
+  /**
+   * @param table1 the table of the first tuple.
+   * @param row1 the row of the first tuple.
+   * @param table2 the table of the second tuple.
+   * @param row2 the row of the second tuple.
+   * @return a negative integer, zero, or a positive integer as the first tuple is ordered before, with, or after the
+   *         second.
+   */
+  public int compare(final ReadableTable table1, final int row1, final ReadableTable table2, final int row2) {
+    for (int i = 0; i < columns.length; ++i) {
+      int compared = comparators[i].compare(table1, row1, table2, row2, columns[i]);
+      if (compared != 0) {
+        if (ascending[i]) {
+          return compared;
+        }
+        return -compared;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Compares the cells of a column of one type.
+   */
+  private interface CellComparator {
+    /**
+     * @param table1 the table of the first cell.
+     * @param row1 the row of the first cell.
+     * @param table2 the table of the second cell.
+     * @param row2 the row of the second cell.
+     * @param column the column of both cells.
+     * @return the comparison of the two cells.
+     */
+    int compare(ReadableTable table1, int row1, ReadableTable table2, int row2, int column);
+  }
+
+  /**
+   * @param type the type of a column.
+   * @return the comparator of cells of that type.
+   */
+  private static CellComparator getCellComparator(final Type type) {
+    switch (type) {
+      case BOOLEAN_TYPE:
+        return new CellComparator() {
+          @Override
+          public int compare(final ReadableTable table1, final int row1, final ReadableTable table2, final int row2,
+              final int column) {
+            return Type.compareRaw(table1.getBoolean(column, row1), table2.getBoolean(column, row2));
+          }
+        };
+      case DOUBLE_TYPE:
+        return new CellComparator() {
+          @Override
+          public int compare(final ReadableTable table1, final int row1, final ReadableTable table2, final int row2,
+              final int column) {
+            return Type.compareRaw(table1.getDouble(column, row1), table2.getDouble(column, row2));
+          }
+        };
+      case FLOAT_TYPE:
+        return new CellComparator() {
+          @Override
+          public int compare(final ReadableTable table1, final int row1, final ReadableTable table2, final int row2,
+              final int column) {
+            return Type.compareRaw(table1.getFloat(column, row1), table2.getFloat(column, row2));
+          }
+        };
+      case INT_TYPE:
+        return new CellComparator() {
+          @Override
+          public int compare(final ReadableTable table1, final int row1, final ReadableTable table2, final int row2,
+              final int column) {
+            return Type.compareRaw(table1.getInt(column, row1), table2.getInt(column, row2));
+          }
+        };
+      case LONG_TYPE:
+        return new CellComparator() {
+          @Override
+          public int compare(final ReadableTable table1, final int row1, final ReadableTable table2, final int row2,
+              final int column) {
+            return Type.compareRaw(table1.getLong(column, row1), table2.getLong(column, row2));
+          }
+        };
+      case STRING_TYPE:
+        return new CellComparator() {
+          @Override
+          public int compare(final ReadableTable table1, final int row1, final ReadableTable table2, final int row2,
+              final int column) {
+            return Type.compareRaw(table1.getString(column, row1), table2.getString(column, row2));
+          }
+        };
+      case DATETIME_TYPE:
+        return new CellComparator() {
+          @Override
+          public int compare(final ReadableTable table1, final int row1, final ReadableTable table2, final int row2,
+              final int column) {
+            return Type.compareRaw(table1.getDateTime(column, row1), table2.getDateTime(column, row2));
+          }
+        };
+    }
+    throw new IllegalStateException("Invalid type " + type);
+  }
+}
@@ -0,0 +1,338 @@
+package edu.washington.escience.myria.storage;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.Type;
+
+/**
+ * Sorts the rows of a table by a set of key columns.
+ * 
+ * The result of a sort is a permutation of the row indices, so the table itself is never modified. The key columns are
+ * first extracted into primitive arrays. Every type except strings is normalized to a <code>long</code> that compares
+ * the same way as the original values, so keys without strings are sorted with a stable LSD radix sort that only
+ * visits the bytes in which the keys actually differ. Keys with strings are sorted with a stable merge sort that
+ * compares the extracted arrays directly, without boxing or switching on types.
+ */
+public final class TupleSorter {
+  /** Utility class cannot be instantiated. */
+  private TupleSorter() {
+  }
+
+  /** Number of bits in a radix digit. */
+  private static final int RADIX_BITS = 8;
+
+  /** Number of buckets of a radix digit. */
+  private static final int RADIX = 1 << RADIX_BITS;
+
+  /** Mask of a radix digit. */
+  private static final int RADIX_MASK = RADIX - 1;
+
+  /** Runs shorter than this are sorted with insertion sort by the merge sort. */
+  private static final int INSERTION_SORT_THRESHOLD = 16;
+
+  /**
+   * Sort the rows of a table.
+   * 
+   * @param table the table.
+   * @param columns the key columns, in order of significance.
+   * @param ascending true for each key column that should be sorted ascending.
+   * @return the row indices of the table in sorted order. Rows with equal keys keep their original order.
+   */
+  public static int[] sort(final ReadableTable table, final int[] columns, final boolean[] ascending) {
+    Objects.requireNonNull(table, "table");
+    Objects.requireNonNull(columns, "columns");
+    Objects.requireNonNull(ascending, "ascending");
+    Preconditions.checkArgument(columns.length == ascending.length,
+        "the number of key columns and sort directions must match");
+
+    final int numTuples = table.numTuples();
+    int[] order = new int[numTuples];
+    for (int i = 0; i < numTuples; ++i) {
+      order[i] = i;
+    }
+    if (numTuples < 2 || columns.length == 0) {
+      return order;
+    }
+
+    boolean hasString = false;
+    for (int column : columns) {
+      hasString |= table.getSchema().getColumnType(column) == Type.STRING_TYPE;
+    }
+
+    if (!hasString) {
+      /* LSD order: sort by the least significant column first, relying on stability for the others. */
+      long[] keys = new long[numTuples];
+      for (int i = columns.length - 1; i >= 0; --i) {
+        for (int j = 0; j < numTuples; ++j) {
+          keys[j] = normalizedKey(table, columns[i], order[j], ascending[i]);
+        }
+        order = radixSort(keys, order);
+      }
+      return order;
+    }
+
+    SortKey[] keys = new SortKey[columns.length];
+    for (int i = 0; i < columns.length; ++i) {
+      keys[i] = extractKey(table, columns[i], ascending[i]);
+    }
+    mergeSort(order, new int[numTuples], 0, numTuples, keys);
+    return order;
+  }
+
+  /**
+   * Append the rows of a buffer to another buffer in the specified order.
+   * 
+   * @param source the buffer holding the rows.
+   * @param order the indices of the rows to append, in order, e.g., as returned by
+   *          {@link #sort(ReadableTable, int[], boolean[])}.
+   * @param dest the buffer to append to.
+   */
+  public static void appendInOrder(final MutableTupleBuffer source, final int[] order, final TupleBatchBuffer dest) {
+    final int numColumns = source.numColumns();
+    for (int sourceRow : order) {
+      ReadableColumn[] columns = source.getColumns(sourceRow);
+      int tupleIdx = source.getTupleIndexInContainingTB(sourceRow);
+      for (int column = 0; column < numColumns; ++column) {
+        dest.put(column, columns[column], tupleIdx);
+      }
+    }
+  }
+
+  /**
+   * Normalize a value to a <code>long</code> whose signed order is the sort order of the value.
+   * 
+   * @param table the table.
+   * @param column the column of the value.
+   * @param row the row of the value.
+   * @param ascending true if the values should be sorted ascending.
+   * @return the normalized value.
+   */
+  private static long normalizedKey(final ReadableTable table, final int column, final int row,
+      final boolean ascending) {
+    long key;
+    switch (table.getSchema().getColumnType(column)) {
+      case BOOLEAN_TYPE:
+        key = table.getBoolean(column, row) ? 1 : 0;
+        break;
+      case INT_TYPE:
+        key = table.getInt(column, row);
+        break;
+      case LONG_TYPE:
+        key = table.getLong(column, row);
+        break;
+      case DATETIME_TYPE:
+        key = table.getDateTime(column, row).getMillis();
+        break;
+      case FLOAT_TYPE:
+        int floatBits = Float.floatToIntBits(table.getFloat(column, row));
+        key = floatBits ^ ((floatBits >> (Integer.SIZE - 1)) & Integer.MAX_VALUE);
+        break;
+      case DOUBLE_TYPE:
+        long doubleBits = Double.doubleToLongBits(table.getDouble(column, row));
+        key = doubleBits ^ ((doubleBits >> (Long.SIZE - 1)) & Long.MAX_VALUE);
+        break;
+      default:
+        throw new IllegalStateException("Type " + table.getSchema().getColumnType(column) + " has no numeric key.");
+    }
+    if (ascending) {
+      return key;
+    }
+    return ~key;
+  }
+
+  /**
+   * Stable LSD radix sort on signed keys. Only the digits needed to represent the range of the keys are sorted.
+   * 
+   * @param keys the key of each entry of <code>order</code>. Clobbered.
+   * @param order the row indices.
+   * @return the row indices sorted by key. May be <code>order</code> itself.
+   */
+  private static int[] radixSort(final long[] keys, final int[] order) {
+    final int n = keys.length;
+    long min = keys[0];
+    long max = keys[0];
+    for (long key : keys) {
+      min = Math.min(min, key);
+      max = Math.max(max, key);
+    }
+    /* Keys are sorted by their unsigned offset from the minimum, which always fits in 64 bits. */
+    int numBits = Long.SIZE - Long.numberOfLeadingZeros(max - min);
+    if (numBits == 0) {
+      return order;
+    }
+    for (int i = 0; i < n; ++i) {
+      keys[i] -= min;
+    }
+
+    long[] srcKeys = keys;
+    int[] srcOrder = order;
+    long[] dstKeys = new long[n];
+    int[] dstOrder = new int[n];
+    int[] counts = new int[RADIX];
+    for (int shift = 0; shift < numBits; shift += RADIX_BITS) {
+      Arrays.fill(counts, 0);
+      for (int i = 0; i < n; ++i) {
+        ++counts[(int) (srcKeys[i] >>> shift) & RADIX_MASK];
+      }
+      int offset = 0;
+      for (int digit = 0; digit < RADIX; ++digit) {
+        int count = counts[digit];
+        counts[digit] = offset;
+        offset += count;
+      }
+      for (int i = 0; i < n; ++i) {
+        int pos = counts[(int) (srcKeys[i] >>> shift) & RADIX_MASK]++;
+        dstKeys[pos] = srcKeys[i];
+        dstOrder[pos] = srcOrder[i];
+      }
+      long[] tmpKeys = srcKeys;
+      srcKeys = dstKeys;
+      dstKeys = tmpKeys;
+      int[] tmpOrder = srcOrder;
+      srcOrder = dstOrder;
+      dstOrder = tmpOrder;
+    }
+    return srcOrder;
+  }
+
+  /**
+   * Stable merge sort of row indices.
+   * 
+   * @param order the row indices. The range [from, to) is sorted in place.
+   * @param tmp scratch space of at least the same length as <code>order</code>.
+   * @param from the first index of the range, inclusive.
+   * @param to the last index of the range, exclusive.
+   * @param keys the key columns.
+   */
+  private static void mergeSort(final int[] order, final int[] tmp, final int from, final int to,
+      final SortKey[] keys) {
+    if (to - from <= INSERTION_SORT_THRESHOLD) {
+      for (int i = from + 1; i < to; ++i) {
+        int row = order[i];
+        int j = i - 1;
+        while (j >= from && compare(keys, order[j], row) > 0) {
+          order[j + 1] = order[j];
+          --j;
+        }
+        order[j + 1] = row;
+      }
+      return;
+    }
+    int mid = (from + to) >>> 1;
+    mergeSort(order, tmp, from, mid, keys);
+    mergeSort(order, tmp, mid, to, keys);
+    if (compare(keys, order[mid - 1], order[mid]) <= 0) {
+      return;
+    }
+    System.arraycopy(order, from, tmp, from, to - from);
+    int left = from;
+    int right = mid;
+    for (int i = from; i < to; ++i) {
+      if (right >= to || left < mid && compare(keys, tmp[left], tmp[right]) <= 0) {
+        order[i] = tmp[left++];
+      } else {
+        order[i] = tmp[right++];
+      }
+    }
+  }
+
+  /**
+   * @param keys the key columns.
+   * @param row1 a row.
+   * @param row2 another row.
+   * @return the comparison of the keys of the two rows.
+   */
+  private static int compare(final SortKey[] keys, final int row1, final int row2) {
+    for (SortKey key : keys) {
+      int compared = key.compare(row1, row2);
+      if (compared != 0) {
+        return compared;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * @param table the table.
+   * @param column the key column.
+   * @param ascending true if the column should be sorted ascending.
+   * @return the extracted key column.
+   */
+  private static SortKey extractKey(final ReadableTable table, final int column, final boolean ascending) {
+    final int numTuples = table.numTuples();
+    if (table.getSchema().getColumnType(column) == Type.STRING_TYPE) {
+      String[] values = new String[numTuples];
+      for (int row = 0; row < numTuples; ++row) {
+        values[row] = table.getString(column, row);
+      }
+      return new StringSortKey(values, ascending);
+    }
+    long[] values = new long[numTuples];
+    for (int row = 0; row < numTuples; ++row) {
+      values[row] = normalizedKey(table, column, row, ascending);
+    }
+    return new LongSortKey(values);
+  }
+
+  /**
+   * A key column extracted from a table.
+   */
+  private interface SortKey {
+    /**
+     * @param row1 a row.
+     * @param row2 another row.
+     * @return the comparison of the key of the two rows in sort order.
+     */
+    int compare(final int row1, final int row2);
+  }
+
+  /**
+   * A key column normalized to <code>long</code>s, see {@link TupleSorter#normalizedKey}.
+   */
+  private static final class LongSortKey implements SortKey {
+    /** The normalized values, indexed by row. */
+    private final long[] values;
+
+    /**
+     * @param values the normalized values, indexed by row.
+     */
+    LongSortKey(final long[] values) {
+      this.values = values;
+    }
+
+    @Override
+    public int compare(final int row1, final int row2) {
+      return Long.compare(values[row1], values[row2]);
+    }
+  }
+
+  /**
+   * A string key column.
+   */
+  private static final class StringSortKey implements SortKey {
+    /** The values, indexed by row. */
+    private final String[] values;
+    /** True if the values should be sorted ascending. */
+    private final boolean ascending;
+
+    /**
+     * @param values the values, indexed by row.
+     * @param ascending true if the values should be sorted ascending.
+     */
+    StringSortKey(final String[] values, final boolean ascending) {
+      this.values = values;
+      this.ascending = ascending;
+    }
+
+    @Override
+    public int compare(final int row1, final int row2) {
+      if (ascending) {
+        return values[row1].compareTo(values[row2]);
+      }
+      return values[row2].compareTo(values[row1]);
+    }
+  }
+}
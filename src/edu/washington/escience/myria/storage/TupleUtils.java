@@ -2,8 +2,11 @@ package edu.washington.escience.myria.storage;
 
 import com.google.common.base.Preconditions;
 
+import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.builder.ColumnBuilder;
+import gnu.trove.list.TIntList;
+import gnu.trove.map.TIntObjectMap;
 
 /**
  * Utility functions for dealing with tuples.
@@ -13,6 +16,106 @@ public final class TupleUtils {
   private TupleUtils() {
   }
 
+  /** Estimated number of bytes of a string value. */
+  private static final int ESTIMATED_STRING_BYTES = 32;
+
+  /** Estimated number of bytes per key of a hash index: the map entry and a small list of row indices. */
+  private static final int ESTIMATED_HASH_INDEX_BYTES_PER_KEY = 64;
+
+  /**
+   * @param schema a schema.
+   * @return the estimated number of bytes of a tuple with this schema.
+   */
+  public static int estimateTupleBytes(final Schema schema) {
+    if (schema == null) {
+      return 0;
+    }
+    int bytes = 0;
+    for (Type type : schema.getColumnTypes()) {
+      switch (type) {
+        case BOOLEAN_TYPE:
+          bytes += 1;
+          break;
+        case INT_TYPE:
+        case FLOAT_TYPE:
+          bytes += Integer.SIZE / Byte.SIZE;
+          break;
+        case LONG_TYPE:
+        case DOUBLE_TYPE:
+        case DATETIME_TYPE:
+          bytes += Long.SIZE / Byte.SIZE;
+          break;
+        case STRING_TYPE:
+          bytes += ESTIMATED_STRING_BYTES;
+          break;
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Estimate the memory held by a hash index from hash codes to the rows of a table.
+   * 
+   * @param index the hash index, may be <code>null</code>.
+   * @param numRows the number of rows that are indexed.
+   * @return the estimated number of bytes held by the index.
+   */
+  public static long estimateHashIndexBytes(final TIntObjectMap<TIntList> index, final int numRows) {
+    if (index == null) {
+      return 0;
+    }
+    return (long) index.size() * ESTIMATED_HASH_INDEX_BYTES_PER_KEY + (long) numRows * (Integer.SIZE / Byte.SIZE);
+  }
+
+  /**
+   * Copy a range of values from a {@link ReadableColumn} to a {@link ColumnBuilder}.
+   * 
+   * @param from the source of the values
+   * @param fromRow the first row of the values, inclusive
+   * @param toRow the last row of the values, exclusive
+   * @param to the destination of the values
+   */
+  public static void copyValues(final ReadableColumn from, final int fromRow, final int toRow,
+      final ColumnBuilder<?> to) {
+    switch (from.getType()) {
+      case BOOLEAN_TYPE:
+        for (int row = fromRow; row < toRow; ++row) {
+          to.appendBoolean(from.getBoolean(row));
+        }
+        break;
+      case DATETIME_TYPE:
+        for (int row = fromRow; row < toRow; ++row) {
+          to.appendDateTime(from.getDateTime(row));
+        }
+        break;
+      case DOUBLE_TYPE:
+        for (int row = fromRow; row < toRow; ++row) {
+          to.appendDouble(from.getDouble(row));
+        }
+        break;
+      case FLOAT_TYPE:
+        for (int row = fromRow; row < toRow; ++row) {
+          to.appendFloat(from.getFloat(row));
+        }
+        break;
+      case INT_TYPE:
+        for (int row = fromRow; row < toRow; ++row) {
+          to.appendInt(from.getInt(row));
+        }
+        break;
+      case LONG_TYPE:
+        for (int row = fromRow; row < toRow; ++row) {
+          to.appendLong(from.getLong(row));
+        }
+        break;
+      case STRING_TYPE:
+        for (int row = fromRow; row < toRow; ++row) {
+          to.appendString(from.getString(row));
+        }
+        break;
+    }
+  }
+
   /**
    * Copy the specified from a {@link ReadableColumn} to a {@link AppendableTable}.
    * 
@@ -0,0 +1,133 @@
+package edu.washington.escience.myria.util;
+
+import java.io.Serializable;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.storage.ReadableTable;
+
+/**
+ * A Bloom filter over the values of some columns of tuples. The bits are kept in an array of longs, so that filters with
+ * the same size and number of hash functions that were built on different workers can be merged by OR-ing their words.
+ * 
+ * The bit positions of a key are derived from two hash codes of {@link HashUtils} as in Kirsch and Mitzenmacher,
+ * "Less Hashing, Same Performance: Building a Better Bloom Filter".
+ */
+public final class BloomFilter implements Serializable {
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** The bits. */
+  private final long[] words;
+  /** The number of bits set for each key. */
+  private final int numHashFunctions;
+
+  /**
+   * @param numWords the number of 64-bit words of the filter.
+   * @param numHashFunctions the number of bits set for each key.
+   */
+  public BloomFilter(final int numWords, final int numHashFunctions) {
+    Preconditions.checkArgument(numWords > 0, "numWords must be positive");
+    Preconditions.checkArgument(numHashFunctions > 0, "numHashFunctions must be positive");
+    words = new long[numWords];
+    this.numHashFunctions = numHashFunctions;
+  }
+
+  /**
+   * @param expectedKeys the expected number of distinct keys.
+   * @param falsePositiveRate the desired false positive rate.
+   * @return the number of 64-bit words of a filter that achieves the false positive rate for that many keys.
+   */
+  public static int optimalNumWords(final long expectedKeys, final double falsePositiveRate) {
+    Preconditions.checkArgument(falsePositiveRate > 0 && falsePositiveRate < 1, "falsePositiveRate must be in (0, 1)");
+    double numBits = -Math.max(expectedKeys, 1) * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+    return (int) Math.max(1, Math.min(Integer.MAX_VALUE / Long.SIZE, Math.ceil(numBits / Long.SIZE)));
+  }
+
+  /**
+   * @param expectedKeys the expected number of distinct keys.
+   * @param numWords the number of 64-bit words of the filter.
+   * @return the number of hash functions that minimizes the false positive rate.
+   */
+  public static int optimalNumHashFunctions(final long expectedKeys, final int numWords) {
+    long numBits = (long) numWords * Long.SIZE;
+    int k = (int) Math.round((double) numBits / Math.max(expectedKeys, 1) * Math.log(2));
+    return Math.max(1, Math.min(k, 16));
+  }
+
+  /**
+   * Add the key in the specified columns of a row.
+   * 
+   * @param table the table containing the key.
+   * @param keyColumns the columns of the key.
+   * @param row the row containing the key.
+   */
+  public void add(final ReadableTable table, final int[] keyColumns, final int row) {
+    final long numBits = (long) words.length * Long.SIZE;
+    final int hash1 = HashUtils.hashSubRow(table, keyColumns, row, 0);
+    final int hash2 = HashUtils.hashSubRow(table, keyColumns, row, 1);
+    for (int i = 0; i < numHashFunctions; ++i) {
+      long bit = bitIndex(hash1, hash2, i, numBits);
+      words[(int) (bit >>> 6)] |= 1L << bit;
+    }
+  }
+
+  /**
+   * @param table the table containing the key.
+   * @param keyColumns the columns of the key.
+   * @param row the row containing the key.
+   * @return false if the key in the specified columns of a row has definitely not been added.
+   */
+  public boolean mightContain(final ReadableTable table, final int[] keyColumns, final int row) {
+    final long numBits = (long) words.length * Long.SIZE;
+    final int hash1 = HashUtils.hashSubRow(table, keyColumns, row, 0);
+    final int hash2 = HashUtils.hashSubRow(table, keyColumns, row, 1);
+    for (int i = 0; i < numHashFunctions; ++i) {
+      long bit = bitIndex(hash1, hash2, i, numBits);
+      if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param hash1 the first hash code of the key.
+   * @param hash2 the second hash code of the key.
+   * @param i which of the bits of the key.
+   * @param numBits the number of bits of the filter.
+   * @return the index of the i-th bit of the key.
+   */
+  private static long bitIndex(final int hash1, final int hash2, final int i, final long numBits) {
+    int combined = hash1 + i * hash2;
+    if (combined < 0) {
+      combined = ~combined;
+    }
+    return combined % numBits;
+  }
+
+  /**
+   * @return the number of 64-bit words of the filter.
+   */
+  public int numWords() {
+    return words.length;
+  }
+
+  /**
+   * @param index the index of a word.
+   * @return the bits of that word.
+   */
+  public long getWord(final int index) {
+    return words[index];
+  }
+
+  /**
+   * Merge the bits of a word of another filter of the same size into this filter.
+   * 
+   * @param index the index of the word.
+   * @param bits the bits of the word in the other filter.
+   */
+  public void mergeWord(final int index, final long bits) {
+    words[index] |= bits;
+  }
+}
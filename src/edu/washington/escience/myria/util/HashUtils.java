@@ -96,6 +96,26 @@ public final class HashUtils {
     return hasher.hash().asInt();
   }
 
+  /**
+   * Compute the hash code of the specified columns in the specified row of the given table with specific hashcode.
+   * 
+   * @param table the table containing the values to be hashed
+   * @param hashColumns the columns to be hashed. Order matters
+   * @param row the row containing the values to be hashed
+   * @param seedIndex the index of the chosen hashcode
+   * @return the hash code of the specified columns in the specified row of the given table
+   */
+  public static int hashSubRow(final ReadableTable table, final int[] hashColumns, final int row, final int seedIndex) {
+    Objects.requireNonNull(table, "table");
+    Objects.requireNonNull(hashColumns, "hashColumns");
+    Preconditions.checkElementIndex(seedIndex, NUM_OF_HASHFUNCTIONS);
+    Hasher hasher = HASH_FUNCTIONS[seedIndex].newHasher();
+    for (int column : hashColumns) {
+      addValue(hasher, table, column, row);
+    }
+    return hasher.hash().asInt();
+  }
+
   /**
    * Add the value at the specified row and column to the specified hasher.
    * 
@@ -0,0 +1,150 @@
+package edu.washington.escience.myria.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.storage.ReadableTable;
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.iterator.TIntLongIterator;
+import gnu.trove.map.TIntLongMap;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TIntLongHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+
+/**
+ * Finds the frequent keys of a stream with the algorithm of Misra and Gries, "Finding repeated elements". Keys are
+ * identified by their hash code in {@link HashUtils#hashSubRow(ReadableTable, int[], int)}, which is also what the hash
+ * partition functions use, so a heavy hitter is exactly a hash code that would overload one worker.
+ * 
+ * With k counters, the count of every key is underestimated by at most n / (k + 1) after n keys have been added.
+ * 
+ * Rather than decrementing every counter when a new key does not fit, the counters are stored with an offset, the
+ * number of such decrements, and are grouped by stored value: a decrement increments the offset and drops the group of
+ * counters that reach 0. Adding a key therefore takes constant expected time.
+ */
+public final class HeavyHitterSketch implements Serializable {
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** The maximum number of counters. */
+  private final int maxCounters;
+  /** The counters, from hash code to count plus {@link #offset}. */
+  private final TIntLongMap counters;
+  /** The hash codes of the counters, by their value in {@link #counters}. */
+  private final TLongObjectMap<TIntSet> groups;
+  /** The number of times every counter has been decremented. */
+  private long offset;
+  /** The number of keys added. */
+  private long numAdded;
+
+  /**
+   * @param maxCounters the maximum number of counters. Every key whose frequency is above 1 / (maxCounters + 1) is
+   *          found.
+   */
+  public HeavyHitterSketch(final int maxCounters) {
+    Preconditions.checkArgument(maxCounters > 0, "maxCounters must be positive");
+    this.maxCounters = maxCounters;
+    counters = new TIntLongHashMap(maxCounters + 1);
+    groups = new TLongObjectHashMap<TIntSet>();
+  }
+
+  /**
+   * Add the key in the specified columns of a row.
+   * 
+   * @param table the table containing the key.
+   * @param keyColumns the columns of the key.
+   * @param row the row containing the key.
+   */
+  public void add(final ReadableTable table, final int[] keyColumns, final int row) {
+    add(HashUtils.hashSubRow(table, keyColumns, row));
+  }
+
+  /**
+   * Add a key.
+   * 
+   * @param hashCode the hash code of the key.
+   */
+  public void add(final int hashCode) {
+    ++numAdded;
+    if (counters.containsKey(hashCode)) {
+      long value = counters.get(hashCode);
+      removeFromGroup(value, hashCode);
+      addToGroup(value + 1, hashCode);
+      counters.put(hashCode, value + 1);
+      return;
+    }
+    if (counters.size() < maxCounters) {
+      addToGroup(offset + 1, hashCode);
+      counters.put(hashCode, offset + 1);
+      return;
+    }
+    /* Decrement every counter, which also accounts for the new key. */
+    ++offset;
+    TIntSet dropped = groups.remove(offset);
+    if (dropped != null) {
+      TIntIterator it = dropped.iterator();
+      while (it.hasNext()) {
+        counters.remove(it.next());
+      }
+    }
+  }
+
+  /**
+   * @param value a value in {@link #counters}.
+   * @param hashCode a hash code to add to the group of that value.
+   */
+  private void addToGroup(final long value, final int hashCode) {
+    TIntSet group = groups.get(value);
+    if (group == null) {
+      group = new TIntHashSet();
+      groups.put(value, group);
+    }
+    group.add(hashCode);
+  }
+
+  /**
+   * @param value a value in {@link #counters}.
+   * @param hashCode a hash code to remove from the group of that value.
+   */
+  private void removeFromGroup(final long value, final int hashCode) {
+    TIntSet group = groups.get(value);
+    group.remove(hashCode);
+    if (group.isEmpty()) {
+      groups.remove(value);
+    }
+  }
+
+  /**
+   * @return the number of keys added.
+   */
+  public long getNumAdded() {
+    return numAdded;
+  }
+
+  /**
+   * @param minFraction the minimum fraction of all keys.
+   * @return the sorted hash codes of the keys that might make up at least <code>minFraction</code> of all keys added.
+   *         Every such key is returned, but some less frequent keys might be returned too.
+   */
+  public int[] getHeavyHitters(final double minFraction) {
+    Preconditions.checkArgument(minFraction > 0 && minFraction <= 1, "minFraction must be in (0, 1]");
+    final double maxError = (double) numAdded / (maxCounters + 1);
+    final double threshold = minFraction * numAdded;
+    int[] ret = new int[counters.size()];
+    int numHeavyHitters = 0;
+    TIntLongIterator it = counters.iterator();
+    while (it.hasNext()) {
+      it.advance();
+      if (it.value() - offset + maxError >= threshold) {
+        ret[numHeavyHitters++] = it.key();
+      }
+    }
+    ret = Arrays.copyOf(ret, numHeavyHitters);
+    Arrays.sort(ret);
+    return ret;
+  }
+}
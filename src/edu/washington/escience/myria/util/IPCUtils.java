@@ -117,6 +117,21 @@ public final class IPCUtils {
       TransportMessage.Type.CONTROL).setControlMessage(
           ControlMessage.newBuilder().setType(ControlMessage.Type.WORKER_HEARTBEAT)).build();
 
+  /**
+   * @param operatorMemoryBytes the estimated memory held by the operators of the worker, in bytes.
+   * @param metrics the serialized metrics of the worker, or null if they are not available.
+   * @return a heartbeat message carrying the current memory usage and metrics of the worker.
+   * */
+  public static TransportMessage workerHeartbeatTM(final long operatorMemoryBytes, final byte[] metrics) {
+    ControlMessage.Builder heartbeat =
+        ControlMessage.newBuilder().setType(ControlMessage.Type.WORKER_HEARTBEAT).setOperatorMemoryBytes(
+            operatorMemoryBytes);
+    if (metrics != null) {
+      heartbeat.setMetrics(ByteString.copyFrom(metrics));
+    }
+    return TransportMessage.newBuilder().setType(TransportMessage.Type.CONTROL).setControlMessage(heartbeat).build();
+  }
+
   /**
    * @param workerId the id of the worker to be removed.
    * @return the remove worker TM.
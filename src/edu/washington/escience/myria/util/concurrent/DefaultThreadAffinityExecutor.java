@@ -42,6 +42,17 @@ class DefaultThreadAffinityExecutor implements ThreadAffinityExecutor {
     return r;
   }
 
+  /**
+   * @return the number of tasks waiting for the execution thread, 0 after shutdown.
+   * */
+  int getQueueSize() {
+    ThreadPoolExecutor executor = backendThread;
+    if (executor == null) {
+      return 0;
+    }
+    return executor.getQueue().size();
+  }
+
   /**
    * Normal shutdown, wait until the current running task finishes.
    * */
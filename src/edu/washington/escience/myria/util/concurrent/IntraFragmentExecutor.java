@@ -0,0 +1,65 @@
+package edu.washington.escience.myria.util.concurrent;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import edu.washington.escience.myria.MyriaConstants;
+
+/**
+ * The threads shared by all the operators of a worker that split their work over several threads, e.g. the pipeline
+ * copies of a {@link edu.washington.escience.myria.operator.ParallelPipeline}. Since a worker runs in its own JVM, the
+ * pool is per JVM, and it has one thread per processor, so that the fragments of a worker together do not use more
+ * threads than there are processors, however many of them run in parallel.
+ * 
+ * The pool is bounded, so a task must not wait for another fragment to make progress while holding a thread: it must
+ * return instead, and be resumed once it can progress, see {@link ResumableTask}. The threads are daemon threads, so
+ * the pool never keeps the JVM alive.
+ */
+public final class IntraFragmentExecutor {
+
+  /** The number of threads of the pool, i.e. the degree of parallelism of the operators of a worker. */
+  private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+  /** The pool. */
+  private static final ExecutorService EXECUTOR;
+
+  static {
+    final ThreadFactory daemonFactory = new ThreadFactory() {
+      /** Names the threads. */
+      private final ThreadFactory renaming = new RenamingThreadFactory("Intra-fragment executor");
+
+      @Override
+      public Thread newThread(final Runnable r) {
+        Thread t = renaming.newThread(r);
+        t.setDaemon(true);
+        return t;
+      }
+    };
+    ThreadPoolExecutor pool =
+        new ThreadPoolExecutor(PARALLELISM, PARALLELISM, MyriaConstants.THREAD_POOL_KEEP_ALIVE_TIME_IN_MS,
+            TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), daemonFactory);
+    pool.allowCoreThreadTimeOut(true);
+    EXECUTOR = pool;
+  }
+
+  /** Utility class. */
+  private IntraFragmentExecutor() {
+  }
+
+  /**
+   * @return the shared pool.
+   */
+  public static ExecutorService get() {
+    return EXECUTOR;
+  }
+
+  /**
+   * @return the number of threads of the shared pool, i.e. the default degree of parallelism of an operator.
+   */
+  public static int getParallelism() {
+    return PARALLELISM;
+  }
+}
@@ -0,0 +1,69 @@
+package edu.washington.escience.myria.util.concurrent;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A task that runs on a bounded pool, e.g. the {@link IntraFragmentExecutor}, in several steps. A step returns, giving
+ * the thread back, whenever the task cannot progress, and the task is submitted again by {@link #resume()} once it can.
+ * At most one step of a task runs at a time, so the state of a task is only accessed by one thread at a time.
+ * 
+ * Whoever makes progress possible, e.g. by handing the task more input or by consuming its output, must call
+ * {@link #resume()} afterwards; a step that is about to return checks {@link #canProgress()} again, so no resumption is
+ * lost.
+ */
+public abstract class ResumableTask implements Runnable {
+
+  /** The pool that runs the steps. */
+  private final Executor executor;
+
+  /** Whether a step is submitted or running, or the task is over. */
+  private final AtomicBoolean claimed = new AtomicBoolean(false);
+
+  /**
+   * @param executor the pool that runs the steps.
+   */
+  protected ResumableTask(final Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Run the task until it cannot progress or is over.
+   * 
+   * @return true if the task is over. It is then never run again.
+   */
+  protected abstract boolean step();
+
+  /**
+   * @return true if a step would progress.
+   */
+  protected abstract boolean canProgress();
+
+  /**
+   * Submit a step if none is submitted or running and the task is not over.
+   */
+  public final void resume() {
+    if (claimed.compareAndSet(false, true)) {
+      executor.execute(this);
+    }
+  }
+
+  /**
+   * Prevent any further step, e.g. to release the resources of the task from another thread.
+   * 
+   * @return true if no step is submitted or running, and the task was not over. The caller then owns the task.
+   */
+  public final boolean claim() {
+    return claimed.compareAndSet(false, true);
+  }
+
+  @Override
+  public final void run() {
+    while (!step()) {
+      claimed.set(false);
+      if (!canProgress() || !claimed.compareAndSet(false, true)) {
+        return;
+      }
+    }
+  }
+}
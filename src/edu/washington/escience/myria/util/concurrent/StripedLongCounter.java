@@ -0,0 +1,70 @@
+package edu.washington.escience.myria.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A long counter that many threads can add to without contending on a single cache line. Each thread adds to one of a
+ * fixed number of stripes, chosen by its id, and readers sum the stripes. A read that races with writers sees a value
+ * that every stripe has reached at some point, which is fine for statistics.
+ * */
+public final class StripedLongCounter {
+
+  /**
+   * Each stripe is padded to this many longs, i.e., 64 bytes, so that no two stripes share a cache line.
+   * */
+  private static final int PADDING = 8;
+
+  /**
+   * The largest number of stripes.
+   * */
+  private static final int MAX_STRIPES = 16;
+
+  /**
+   * The number of stripes, a power of 2 that is at least the number of processors, up to {@link #MAX_STRIPES}.
+   * */
+  private static final int NUM_STRIPES = Math.min(MAX_STRIPES, Integer.highestOneBit(Math.max(1, Runtime
+      .getRuntime().availableProcessors() - 1)) << 1);
+
+  /**
+   * The stripes, {@link #PADDING} longs apart.
+   * */
+  private final AtomicLongArray stripes = new AtomicLongArray(NUM_STRIPES * PADDING);
+
+  /**
+   * @return the index in {@link #stripes} of the stripe of the current thread.
+   * */
+  private static int stripeIndex() {
+    long id = Thread.currentThread().getId();
+    return (int) ((id ^ (id >>> 16)) & (NUM_STRIPES - 1)) * PADDING;
+  }
+
+  /**
+   * @param delta the value to add.
+   * */
+  public void add(final long delta) {
+    stripes.addAndGet(stripeIndex(), delta);
+  }
+
+  /**
+   * Add one.
+   * */
+  public void increment() {
+    add(1);
+  }
+
+  /**
+   * @return the sum of all the values added so far.
+   * */
+  public long get() {
+    long sum = 0;
+    for (int i = 0; i < stripes.length(); i += PADDING) {
+      sum += stripes.get(i);
+    }
+    return sum;
+  }
+
+  @Override
+  public String toString() {
+    return Long.toString(get());
+  }
+}
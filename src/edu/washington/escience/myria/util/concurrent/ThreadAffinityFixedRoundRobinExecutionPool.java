@@ -174,6 +174,17 @@ public class ThreadAffinityFixedRoundRobinExecutionPool extends AbstractExecutor
     return executors[i];
   }
 
+  /**
+   * @return the number of tasks waiting for each execution thread of this pool.
+   * */
+  public final int[] getQueueSizes() {
+    int[] ret = new int[executors.length];
+    for (int i = 0; i < executors.length; i++) {
+      ret[i] = executors[i].getQueueSize();
+    }
+    return ret;
+  }
+
   @Override
   public ThreadAffinityExecutor getExecutor(final Runnable task) {
     return getExecutor0(task);
@@ -0,0 +1,89 @@
+package edu.washington.escience.myria.systemtest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.MyriaConstants.FTMODE;
+import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.api.encoding.QueryEncoding;
+import edu.washington.escience.myria.api.encoding.QueryStatusEncoding.Status;
+import edu.washington.escience.myria.operator.DbInsert;
+import edu.washington.escience.myria.operator.EOSSource;
+import edu.washington.escience.myria.operator.RootOperator;
+import edu.washington.escience.myria.operator.SinkRoot;
+import edu.washington.escience.myria.operator.TupleSource;
+import edu.washington.escience.myria.operator.failures.DelayInjector;
+import edu.washington.escience.myria.operator.network.GenericShuffleConsumer;
+import edu.washington.escience.myria.operator.network.GenericShuffleProducer;
+import edu.washington.escience.myria.operator.network.partition.SingleFieldHashPartitionFunction;
+import edu.washington.escience.myria.parallel.ExchangePairID;
+import edu.washington.escience.myria.parallel.Query;
+import edu.washington.escience.myria.parallel.QueryFuture;
+import edu.washington.escience.myria.parallel.SubQuery;
+import edu.washington.escience.myria.parallel.SubQueryPlan;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+public class LineageRetryTest extends SystemTestBase {
+
+  @Test
+  public void rerunSubQueryAfterLostWorkerTest() throws Exception {
+    final Schema schema = Schema.ofFields("id", Type.LONG_TYPE);
+    final int numBatches = 20;
+    final int batchSize = 100;
+    final List<TupleBatch> batches = new ArrayList<>();
+    for (int i = 0; i < numBatches; ++i) {
+      TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+      for (int j = 0; j < batchSize; ++j) {
+        tbb.putLong(0, i * batchSize + j);
+      }
+      batches.add(tbb.popAny());
+    }
+
+    /* Every worker shuffles its tuples, slowly, to all the workers, so all the plans depend on each other. */
+    final ExchangePairID shuffleId = ExchangePairID.newID();
+    final GenericShuffleProducer shuffle =
+        new GenericShuffleProducer(new DelayInjector(200, TimeUnit.MILLISECONDS, new TupleSource(batches)),
+            shuffleId, workerIDs, new SingleFieldHashPartitionFunction(workerIDs.length, 0));
+    final GenericShuffleConsumer gather = new GenericShuffleConsumer(schema, shuffleId, workerIDs);
+    final RelationKey outputKey = RelationKey.of("test", "test", "lineage_output");
+    final DbInsert insert = new DbInsert(gather, outputKey, true);
+
+    final HashMap<Integer, SubQueryPlan> workerPlans = new HashMap<>();
+    for (int workerId : workerIDs) {
+      workerPlans.put(workerId, new SubQueryPlan(new RootOperator[] { shuffle, insert }));
+    }
+    final SubQueryPlan serverPlan = new SubQueryPlan(new SinkRoot(new EOSSource()));
+
+    QueryEncoding query = new QueryEncoding();
+    query.rawQuery = "lineage retry";
+    query.logicalRa = "lineage retry";
+    query.fragments = ImmutableList.of();
+    query.ftMode = FTMODE.lineage;
+    QueryFuture qf = server.submitQuery(query, new SubQuery(serverPlan, workerPlans));
+
+    Thread.sleep(1000);
+    LOGGER.info("killing worker " + workerIDs[1]);
+    workerProcess[1].destroy();
+    while (server.getAliveWorkers().contains(workerIDs[1])) {
+      Thread.sleep(100);
+    }
+    /* The master launches lost workers over ssh, so launch it here, as the same worker, once it is known lost. */
+    startWorker(1);
+
+    /* The subquery fails because both plans depend on the lost worker, and runs again as a whole. */
+    Query qs = qf.get();
+    assertEquals(qs.getMessage(), Status.SUCCESS, qs.getStatus());
+    assertEquals(numBatches * batchSize * workerIDs.length, server.getDatasetStatus(outputKey).getNumTuples());
+  }
+}
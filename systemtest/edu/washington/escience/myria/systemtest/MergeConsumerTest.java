@@ -0,0 +1,90 @@
+package edu.washington.escience.myria.systemtest;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.operator.DbQueryScan;
+import edu.washington.escience.myria.operator.InMemoryOrderBy;
+import edu.washington.escience.myria.operator.Merge;
+import edu.washington.escience.myria.operator.Operator;
+import edu.washington.escience.myria.operator.RootOperator;
+import edu.washington.escience.myria.operator.SinkRoot;
+import edu.washington.escience.myria.operator.TBQueueExporter;
+import edu.washington.escience.myria.operator.network.CollectConsumer;
+import edu.washington.escience.myria.operator.network.CollectProducer;
+import edu.washington.escience.myria.parallel.ExchangePairID;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.TestUtils;
+import edu.washington.escience.myria.util.Tuple;
+
+/**
+ * Sorts a relation on every worker and merges the sorted partitions on the master. The only child of the
+ * {@link Merge} is a {@link CollectConsumer}, so the tuples of each source worker form a separate sorted input.
+ */
+public class MergeConsumerTest extends SystemTestBase {
+
+  @Test
+  public void mergeSortedPartitionsTest() throws Exception {
+    final RelationKey testtableKey = RelationKey.of("test", "test", "testtable");
+    final Schema schema =
+        new Schema(ImmutableList.of(Type.LONG_TYPE, Type.STRING_TYPE), ImmutableList.of("id", "name"));
+    final int numTuples = 3 * TupleBatch.BATCH_SIZE;
+
+    final TupleBatchBuffer expected = new TupleBatchBuffer(schema);
+    for (int worker = 0; worker < workerIDs.length; ++worker) {
+      createTable(workerIDs[worker], testtableKey, "id long, name varchar(20)");
+      final String[] names = TestUtils.randomFixedLengthNumericString(1000, 1005, numTuples, 20);
+      final long[] ids = TestUtils.randomLong(0, 10 * numTuples, names.length);
+      final TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+      for (int i = 0; i < names.length; i++) {
+        tbb.putLong(0, ids[i]);
+        tbb.putString(1, names[i]);
+      }
+      expected.unionAll(tbb);
+      TupleBatch tb = null;
+      while ((tb = tbb.popAny()) != null) {
+        insert(workerIDs[worker], testtableKey, schema, tb);
+      }
+    }
+    final HashMap<Tuple, Integer> expectedResults = TestUtils.tupleBatchToTupleBag(expected);
+
+    final ExchangePairID serverReceiveID = ExchangePairID.newID();
+    final InMemoryOrderBy sort =
+        new InMemoryOrderBy(new DbQueryScan(testtableKey, schema), new int[] { 0 }, new boolean[] { true });
+    final CollectProducer cp = new CollectProducer(sort, serverReceiveID, MASTER_ID);
+    final HashMap<Integer, RootOperator[]> workerPlans = new HashMap<Integer, RootOperator[]>();
+    for (int workerID : workerIDs) {
+      workerPlans.put(workerID, new RootOperator[] { cp });
+    }
+
+    final CollectConsumer serverCollect = new CollectConsumer(schema, serverReceiveID, workerIDs);
+    final Merge merge = new Merge(new Operator[] { serverCollect }, new int[] { 0 }, new boolean[] { true });
+    final LinkedBlockingQueue<TupleBatch> receivedTupleBatches = new LinkedBlockingQueue<TupleBatch>();
+    final TBQueueExporter queueStore = new TBQueueExporter(receivedTupleBatches, merge);
+    SinkRoot serverPlan = new SinkRoot(queueStore);
+
+    server.submitQueryPlan(serverPlan, workerPlans).get();
+
+    TupleBatchBuffer actualResult = new TupleBatchBuffer(queueStore.getSchema());
+    long last = Long.MIN_VALUE;
+    TupleBatch tb = null;
+    while ((tb = receivedTupleBatches.poll()) != null) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        assertTrue(last <= tb.getLong(0, row));
+        last = tb.getLong(0, row);
+      }
+      tb.compactInto(actualResult);
+    }
+    TestUtils.assertTupleBagEqual(expectedResults, TestUtils.tupleBatchToTupleBag(actualResult));
+  }
+}
@@ -511,106 +511,112 @@ public class SystemTestBase {
    * Start workers in separate processes.
    * */
   void startWorkers() throws IOException {
-    int workerCount = 0;
-
     LOGGER.info("Workers for test [" + name.getMethodName() + "] are " + ArrayUtils.toString(workerIDs));
     for (int i = 0; i < workerIDs.length; i++) {
-      final int workerID = workerIDs[i];
-      final String workingDir = getWorkerFolder(workerID);
-
-      String cp = System.getProperty("java.class.path");
-      String lp = System.getProperty("java.library.path");
-
-      /* Construct the arguments to start the new Java process. First, set up the JVM options. */
-      ImmutableList.Builder<String> args = ImmutableList.builder();
-      args.add("java") // run java
-          .add("-ea") // enable assertions
-          .add("-Djava.library.path=" + lp).add("-classpath").add(cp) // paths
-          .add("-Xmx" + MEMORY) // memory limit to MEMORY
-          .add("-XX:+HeapDumpOnOutOfMemoryError") //
-          .add("-XX:HeapDumpPath=/tmp/worker_" + workerID + ".bin");
-
-      /* If this test was run with a Java agent, then add it. */
-      List<String> inputArgs = ManagementFactory.getRuntimeMXBean().getInputArguments();
-      for (String s : inputArgs) {
-        if (s.startsWith("-javaagent")) {
-          String currentDirectory = new File(".").getCanonicalPath();
-          String javaAgent = s.replaceAll("build/", currentDirectory + File.separator + "build/");
-          args.add(javaAgent);
-          System.err.println("Enabled java agent: " + javaAgent);
-        }
-      }
+      startWorker(i);
+    }
+  }
 
-      /* Second, set up the JVM debug options. */
-      if (DEBUG) {
-        args.add("-Dorg.jboss.netty.debug").add("-Xdebug")
-        // Now eclipse is able to debug remotely the worker processes
-        // following the steps:
-        // 1. Set a breakpoint at the beginning of a JUnit test method.
-        // 2. start debug the JUnit test method. The test method should stop
-        // at the preset breakpoint.
-        // But now, the worker processes are already started.
-        // 3. Create an Eclipse remote debugger and set to attach to localhost
-        // 10001 for worker1 and localhost
-        // 10002 for worker2
-        // 4. Now, you are able to debug the worker processes. All the Java
-        // debugging methods are supported such
-        // as breakpoints.
-            .add("-Xrunjdwp:transport=dt_socket,address=" + (workerPorts[i] + 1000) + ",server=y,suspend=n");
+  /**
+   * Start a worker in a separate process, e.g., again after its process has been destroyed.
+   * 
+   * @param i the index of the worker in {@link #workerIDs}.
+   * @throws IOException if the working directory of the worker cannot be resolved.
+   */
+  void startWorker(final int i) throws IOException {
+    final int workerID = workerIDs[i];
+    final String workingDir = getWorkerFolder(workerID);
+
+    String cp = System.getProperty("java.class.path");
+    String lp = System.getProperty("java.library.path");
+
+    /* Construct the arguments to start the new Java process. First, set up the JVM options. */
+    ImmutableList.Builder<String> args = ImmutableList.builder();
+    args.add("java") // run java
+        .add("-ea") // enable assertions
+        .add("-Djava.library.path=" + lp).add("-classpath").add(cp) // paths
+        .add("-Xmx" + MEMORY) // memory limit to MEMORY
+        .add("-XX:+HeapDumpOnOutOfMemoryError") //
+        .add("-XX:HeapDumpPath=/tmp/worker_" + workerID + ".bin");
+
+    /* If this test was run with a Java agent, then add it. */
+    List<String> inputArgs = ManagementFactory.getRuntimeMXBean().getInputArguments();
+    for (String s : inputArgs) {
+      if (s.startsWith("-javaagent")) {
+        String currentDirectory = new File(".").getCanonicalPath();
+        String javaAgent = s.replaceAll("build/", currentDirectory + File.separator + "build/");
+        args.add(javaAgent);
+        System.err.println("Enabled java agent: " + javaAgent);
       }
+    }
 
-      /* Finally, set up the class to be run (Worker) and its command-line options. */
-      args.add(Worker.class.getCanonicalName(), "--workingDir", workingDir, "--testMethod", name.getMethodName());
+    /* Second, set up the JVM debug options. */
+    if (DEBUG) {
+      args.add("-Dorg.jboss.netty.debug").add("-Xdebug")
+      // Now eclipse is able to debug remotely the worker processes
+      // following the steps:
+      // 1. Set a breakpoint at the beginning of a JUnit test method.
+      // 2. start debug the JUnit test method. The test method should stop
+      // at the preset breakpoint.
+      // But now, the worker processes are already started.
+      // 3. Create an Eclipse remote debugger and set to attach to localhost
+      // 10001 for worker1 and localhost
+      // 10002 for worker2
+      // 4. Now, you are able to debug the worker processes. All the Java
+      // debugging methods are supported such
+      // as breakpoints.
+          .add("-Xrunjdwp:transport=dt_socket,address=" + (workerPorts[i] + 1000) + ",server=y,suspend=n");
+    }
 
-      final ProcessBuilder pb = new ProcessBuilder(args.build());
+    /* Finally, set up the class to be run (Worker) and its command-line options. */
+    args.add(Worker.class.getCanonicalName(), "--workingDir", workingDir, "--testMethod", name.getMethodName());
 
-      pb.directory(new File(workingDir));
-      pb.redirectErrorStream(true);
-      pb.redirectOutput(Redirect.PIPE);
+    final ProcessBuilder pb = new ProcessBuilder(args.build());
 
-      final int wc = workerCount;
+    pb.directory(new File(workingDir));
+    pb.redirectErrorStream(true);
+    pb.redirectOutput(Redirect.PIPE);
 
-      workerStdoutReader[wc] = new Thread("Worker stdout reader#" + wc) {
+    final int wc = i;
 
-        int myWorkerIdx;
+    workerStdoutReader[wc] = new Thread("Worker stdout reader#" + wc) {
 
-        @Override
-        public void run() {
-          myWorkerIdx = wc;
-          try {
-            workerProcess[wc] = pb.start();
-            writeProcessOutput(workerProcess[wc]);
-          } catch (final Exception e) {
-            e.printStackTrace();
-            throw new RuntimeException(e);
-          }
-        }
+      int myWorkerIdx;
 
-        void writeProcessOutput(final Process process) throws Exception {
+      @Override
+      public void run() {
+        myWorkerIdx = wc;
+        try {
+          workerProcess[wc] = pb.start();
+          writeProcessOutput(workerProcess[wc]);
+        } catch (final Exception e) {
+          e.printStackTrace();
+          throw new RuntimeException(e);
+        }
+      }
 
-          final InputStreamReader tempReader = new InputStreamReader(new BufferedInputStream(process.getInputStream()));
-          final BufferedReader reader = new BufferedReader(tempReader);
-          try {
-            while (true) {
-              final String line = reader.readLine();
-              if (line == null) {
-                break;
-              }
+      void writeProcessOutput(final Process process) throws Exception {
 
-              LOGGER.info("[" + name.getMethodName() + "]" + "#" + workerIDs[myWorkerIdx] + "@localhost:"
-                  + workerPorts[myWorkerIdx] + "$ " + line);
+        final InputStreamReader tempReader = new InputStreamReader(new BufferedInputStream(process.getInputStream()));
+        final BufferedReader reader = new BufferedReader(tempReader);
+        try {
+          while (true) {
+            final String line = reader.readLine();
+            if (line == null) {
+              break;
             }
-          } catch (final IOException e) {
-            // remote has shutdown. Not an exception.
+
+            LOGGER.info("[" + name.getMethodName() + "]" + "#" + workerIDs[myWorkerIdx] + "@localhost:"
+                + workerPorts[myWorkerIdx] + "$ " + line);
           }
+        } catch (final IOException e) {
+          // remote has shutdown. Not an exception.
         }
-      };
-
-      workerStdoutReader[wc].setName("WorkerStdoutReader-" + workerIDs[wc]);
-      workerStdoutReader[wc].start();
+      }
+    };
 
-      ++workerCount;
-    }
+    workerStdoutReader[wc].setName("WorkerStdoutReader-" + workerIDs[wc]);
+    workerStdoutReader[wc].start();
   }
 
   public static QueryStatusEncoding getQueryStatus(HttpURLConnection conn) throws IOException {
@@ -2,6 +2,8 @@ package edu.washington.escience.myria.api;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -13,6 +15,7 @@ import edu.washington.escience.myria.operator.network.partition.MultiFieldHashPa
 import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
 import edu.washington.escience.myria.operator.network.partition.RoundRobinPartitionFunction;
 import edu.washington.escience.myria.operator.network.partition.SingleFieldHashPartitionFunction;
+import edu.washington.escience.myria.operator.network.partition.SkewedHashPartitionFunction;
 import edu.washington.escience.myria.operator.network.partition.WholeTupleHashPartitionFunction;
 
 public class SerializationTests {
@@ -51,6 +54,22 @@ public class SerializationTests {
     MultiFieldHashPartitionFunction pfMFH = (MultiFieldHashPartitionFunction) deserialized;
     assertArrayEquals(multiFieldIndex, pfMFH.getIndexes());
 
+    /* Skewed hash */
+    pf = new SkewedHashPartitionFunction(5, new int[] { 1 }, new int[] { 42, -7 }, true);
+    serialized = mapper.writeValueAsString(pf);
+    deserialized = reader.readValue(serialized);
+    assertEquals(pf.getClass(), deserialized.getClass());
+    assertEquals(5, deserialized.numPartition());
+    SkewedHashPartitionFunction pfSH = (SkewedHashPartitionFunction) deserialized;
+    assertArrayEquals(new int[] { 1 }, pfSH.getIndexes());
+    assertArrayEquals(new int[] { 42, -7 }, pfSH.getHeavyHitters());
+    assertTrue(pfSH.isReplicate());
+    /* Heavy hitters read from a global variable of the query. */
+    deserialized = reader.readValue("{\"type\":\"SkewedHash\",\"indexes\":[1],\"replicate\":false}");
+    pfSH = (SkewedHashPartitionFunction) deserialized;
+    assertNull(pfSH.getHeavyHitters());
+    assertArrayEquals(new int[] { 3 }, pfSH.withHeavyHitters(new int[] { 3 }).getHeavyHitters());
+
     /* Whole tuple hash */
     pf = new WholeTupleHashPartitionFunction(5);
     serialized = mapper.writeValueAsString(pf);
@@ -0,0 +1,281 @@
+package edu.washington.escience.myria.api.encoding;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.expression.ConstantExpression;
+import edu.washington.escience.myria.expression.Expression;
+import edu.washington.escience.myria.expression.PlusExpression;
+import edu.washington.escience.myria.expression.StateExpression;
+import edu.washington.escience.myria.expression.VariableExpression;
+import edu.washington.escience.myria.operator.Operator;
+import edu.washington.escience.myria.operator.TupleSource;
+import edu.washington.escience.myria.operator.agg.AggregatorFactory;
+import edu.washington.escience.myria.operator.agg.UserDefinedAggregatorFactory;
+import edu.washington.escience.myria.operator.network.partition.MultiFieldHashPartitionFunction;
+import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
+import edu.washington.escience.myria.operator.network.partition.SingleFieldHashPartitionFunction;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.TestEnvVars;
+
+/**
+ * Splits user-defined aggregates with combiners into a partial aggregate before the shuffle and a final aggregate.
+ */
+public class CombinableAggregateSplitTest {
+
+  /** The schema of the input of the aggregates. */
+  private static final Schema SCHEMA = Schema.ofFields("value", Type.LONG_TYPE, "key", Type.LONG_TYPE, "subkey",
+      Type.LONG_TYPE);
+  /** The number of distinct keys. */
+  private static final int NUM_KEYS = 7;
+  /** The number of distinct subkeys. */
+  private static final int NUM_SUBKEYS = 3;
+  /** The number of input tuples on each producing worker. */
+  private static final int NUM_TUPLES = 1000;
+
+  /**
+   * @param name the prefix of the names of the results.
+   * @param withCombiners whether the aggregate has combiners.
+   * @return a user-defined aggregate that computes the sum and the count of column 0.
+   */
+  private UserDefinedAggregatorFactory makeSumCount(final String name, final boolean withCombiners) {
+    List<Expression> initializers =
+        ImmutableList.of(new Expression("sum", new ConstantExpression(0L)), new Expression("count",
+            new ConstantExpression(0L)));
+    List<Expression> updaters =
+        ImmutableList.of(new Expression("sum", new PlusExpression(new StateExpression(0), new VariableExpression(0))),
+            new Expression("count", new PlusExpression(new StateExpression(1), new ConstantExpression(1L))));
+    List<Expression> emitters =
+        ImmutableList.of(new Expression(name + "_sum", new StateExpression(0)), new Expression(name + "_count",
+            new StateExpression(1)));
+    List<Expression> combiners = null;
+    if (withCombiners) {
+      combiners =
+          ImmutableList.of(
+              new Expression("sum", new PlusExpression(new StateExpression(0), new VariableExpression(0))),
+              new Expression("count", new PlusExpression(new StateExpression(1), new VariableExpression(1))));
+    }
+    return new UserDefinedAggregatorFactory(initializers, updaters, emitters, combiners);
+  }
+
+  /**
+   * @param producer the producer of the first fragment.
+   * @param aggregate the aggregate of the second fragment.
+   * @return the fragments: a scan that sends its tuples to the aggregate.
+   */
+  private List<PlanFragmentEncoding> makeFragments(final AbstractProducerEncoding<?> producer,
+      final UnaryOperatorEncoding<?> aggregate) {
+    TableScanEncoding scan = new TableScanEncoding();
+    scan.opId = 1;
+    scan.relationKey = RelationKey.of("test", "test", "input");
+    producer.opId = 2;
+    producer.argChild = 1;
+    AbstractConsumerEncoding<?> consumer;
+    if (producer instanceof CollectProducerEncoding) {
+      consumer = new CollectConsumerEncoding();
+    } else {
+      consumer = new ShuffleConsumerEncoding();
+    }
+    consumer.opId = 3;
+    consumer.argOperatorId = 2;
+    aggregate.opId = 4;
+    aggregate.argChild = 3;
+    SinkRootEncoding sink = new SinkRootEncoding();
+    sink.opId = 5;
+    sink.argChild = 4;
+    return ImmutableList.of(PlanFragmentEncoding.of(scan, producer), PlanFragmentEncoding.of(consumer, aggregate,
+        sink));
+  }
+
+  /**
+   * @param pf the partition function of the shuffle.
+   * @return a shuffle producer.
+   */
+  private ShuffleProducerEncoding makeShuffle(final PartitionFunction pf) {
+    ShuffleProducerEncoding ret = new ShuffleProducerEncoding();
+    ret.argPf = pf;
+    return ret;
+  }
+
+  /**
+   * @param worker the index of a producing worker.
+   * @return the input of the aggregate on that worker.
+   */
+  private TupleBatchBuffer makeInput(final int worker) {
+    TupleBatchBuffer ret = new TupleBatchBuffer(SCHEMA);
+    for (int i = 0; i < NUM_TUPLES; ++i) {
+      ret.putLong(0, worker * NUM_TUPLES + i);
+      ret.putLong(1, i % NUM_KEYS);
+      ret.putLong(2, i % NUM_SUBKEYS);
+    }
+    return ret;
+  }
+
+  /**
+   * @param encoding the encoding of an aggregate.
+   * @param input the input of the aggregate.
+   * @return the output of the aggregate.
+   * @throws Exception if the aggregate fails.
+   */
+  private TupleBatchBuffer run(final UnaryOperatorEncoding<?> encoding, final TupleBatchBuffer input)
+      throws Exception {
+    Operator op = encoding.construct(null);
+    op.setChildren(new Operator[] { new TupleSource(input) });
+    op.open(TestEnvVars.get());
+    TupleBatchBuffer ret = new TupleBatchBuffer(op.getSchema());
+    while (!op.eos()) {
+      TupleBatch tb = op.nextReady();
+      if (tb != null) {
+        ret.appendTB(tb);
+      }
+    }
+    op.close();
+    return ret;
+  }
+
+  /**
+   * Run a split aggregate as if there were two producing workers and one consuming worker.
+   * 
+   * @param fragments the fragments, after the split.
+   * @return the output of the final aggregate.
+   * @throws Exception if the aggregates fail.
+   */
+  private TupleBatchBuffer runSplit(final List<PlanFragmentEncoding> fragments) throws Exception {
+    UnaryOperatorEncoding<?> partial = getPartial(fragments);
+    TupleBatchBuffer partialStates = null;
+    for (int worker = 0; worker < 2; ++worker) {
+      TupleBatchBuffer states = run(partial, makeInput(worker));
+      if (partialStates == null) {
+        partialStates = new TupleBatchBuffer(states.getSchema());
+      }
+      for (TupleBatch tb : states.getAll()) {
+        partialStates.appendTB(tb);
+      }
+    }
+    return run((UnaryOperatorEncoding<?>) fragments.get(1).operators.get(1), partialStates);
+  }
+
+  /**
+   * @param fragments the fragments, after the split.
+   * @return the partial aggregate.
+   */
+  private UnaryOperatorEncoding<?> getPartial(final List<PlanFragmentEncoding> fragments) {
+    assertEquals(3, fragments.get(0).operators.size());
+    UnaryOperatorEncoding<?> partial = (UnaryOperatorEncoding<?>) fragments.get(0).operators.get(2);
+    assertEquals(Integer.valueOf(6), partial.opId);
+    assertEquals(Integer.valueOf(1), partial.argChild);
+    assertEquals(Integer.valueOf(6), ((UnaryOperatorEncoding<?>) fragments.get(0).operators.get(1)).argChild);
+    return partial;
+  }
+
+  @Test
+  public void testGroupedAggregateBeforeShuffle() throws Exception {
+    MultiGroupByAggregateEncoding aggregate = new MultiGroupByAggregateEncoding();
+    aggregate.argGroupFields = new int[] { 2, 1 };
+    aggregate.aggregators = new AggregatorFactory[] { makeSumCount("a", true), makeSumCount("b", true) };
+    List<PlanFragmentEncoding> fragments =
+        makeFragments(makeShuffle(new MultiFieldHashPartitionFunction(null, new int[] { 1, 2 })), aggregate);
+    QueryConstruct.splitCombinableAggregates(fragments);
+
+    MultiGroupByAggregateEncoding partial = (MultiGroupByAggregateEncoding) getPartial(fragments);
+    assertArrayEquals(new int[] { 2, 1 }, partial.argGroupFields);
+    assertArrayEquals(new int[] { 0, 1 }, aggregate.argGroupFields);
+    MultiFieldHashPartitionFunction pf =
+        (MultiFieldHashPartitionFunction) ((ShuffleProducerEncoding) fragments.get(0).operators.get(1)).argPf;
+    assertArrayEquals(new int[] { 1, 0 }, pf.getIndexes());
+
+    TupleBatchBuffer result = runSplit(fragments);
+    assertEquals(Schema.ofFields("subkey", Type.LONG_TYPE, "key", Type.LONG_TYPE, "a_sum", Type.LONG_TYPE,
+        "a_count", Type.LONG_TYPE, "b_sum", Type.LONG_TYPE, "b_count", Type.LONG_TYPE), result.getSchema());
+    Map<List<Long>, long[]> expected = new HashMap<>();
+    for (int worker = 0; worker < 2; ++worker) {
+      for (TupleBatch tb : makeInput(worker).getAll()) {
+        for (int row = 0; row < tb.numTuples(); ++row) {
+          List<Long> group = ImmutableList.of(tb.getLong(2, row), tb.getLong(1, row));
+          long[] sumCount = expected.get(group);
+          if (sumCount == null) {
+            sumCount = new long[2];
+            expected.put(group, sumCount);
+          }
+          sumCount[0] += tb.getLong(0, row);
+          sumCount[1]++;
+        }
+      }
+    }
+    assertEquals(expected.size(), result.numTuples());
+    for (TupleBatch tb : result.getAll()) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        long[] sumCount = expected.get(ImmutableList.of(tb.getLong(0, row), tb.getLong(1, row)));
+        for (int column = 2; column < 6; column += 2) {
+          assertEquals(sumCount[0], tb.getLong(column, row));
+          assertEquals(sumCount[1], tb.getLong(column + 1, row));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testAggregateBeforeCollect() throws Exception {
+    AggregateEncoding aggregate = new AggregateEncoding();
+    aggregate.aggregators = new AggregatorFactory[] { makeSumCount("a", true) };
+    List<PlanFragmentEncoding> fragments = makeFragments(new CollectProducerEncoding(), aggregate);
+    QueryConstruct.splitCombinableAggregates(fragments);
+
+    assertTrue(getPartial(fragments) instanceof AggregateEncoding);
+    TupleBatchBuffer result = runSplit(fragments);
+    assertEquals(1, result.numTuples());
+    long n = 2 * NUM_TUPLES;
+    assertEquals(n * (n - 1) / 2, result.getAll().get(0).getLong(0, 0));
+    assertEquals(n, result.getAll().get(0).getLong(1, 0));
+  }
+
+  @Test
+  public void testNotSplit() {
+    /* Without combiners. */
+    SingleGroupByAggregateEncoding aggregate = new SingleGroupByAggregateEncoding();
+    aggregate.argGroupField = 1;
+    aggregate.aggregators = new AggregatorFactory[] { makeSumCount("a", false) };
+    assertNotSplit(makeFragments(makeShuffle(new SingleFieldHashPartitionFunction(null, 1)), aggregate));
+
+    /* Shuffled on a column that is not grouped. */
+    aggregate.aggregators = new AggregatorFactory[] { makeSumCount("a", true) };
+    assertNotSplit(makeFragments(makeShuffle(new MultiFieldHashPartitionFunction(null, new int[] { 1, 0 })),
+        aggregate));
+
+    /* A global aggregate after a shuffle is computed on every worker: the partial states would be hashed. */
+    AggregateEncoding global = new AggregateEncoding();
+    global.aggregators = new AggregatorFactory[] { makeSumCount("a", true) };
+    assertNotSplit(makeFragments(makeShuffle(new SingleFieldHashPartitionFunction(null, 1)), global));
+  }
+
+  /**
+   * @param fragments fragments that must not change.
+   */
+  private void assertNotSplit(final List<PlanFragmentEncoding> fragments) {
+    List<OperatorEncoding<?>> before = new ArrayList<>();
+    for (PlanFragmentEncoding fragment : fragments) {
+      before.addAll(fragment.operators);
+    }
+    QueryConstruct.splitCombinableAggregates(fragments);
+    List<OperatorEncoding<?>> after = new ArrayList<>();
+    for (PlanFragmentEncoding fragment : fragments) {
+      after.addAll(fragment.operators);
+    }
+    assertEquals(before, after);
+    assertEquals(Integer.valueOf(1), ((UnaryOperatorEncoding<?>) fragments.get(0).operators.get(1)).argChild);
+  }
+}
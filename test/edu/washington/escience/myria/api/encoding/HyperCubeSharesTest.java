@@ -0,0 +1,141 @@
+package edu.washington.escience.myria.api.encoding;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.api.MyriaApiException;
+import edu.washington.escience.myria.operator.network.partition.HyperCubeOptimizer;
+
+/**
+ * Chooses the shares of the triangle query R(x,y), S(y,z), T(z,x) from the sizes of the relations.
+ */
+public class HyperCubeSharesTest {
+
+  /** The joined relations. */
+  private static final List<RelationKey> RELATIONS = ImmutableList.of(RelationKey.of("test", "test", "R"), RelationKey
+      .of("test", "test", "S"), RelationKey.of("test", "test", "T"));
+  /** The dimensions of the relations. */
+  private static final int[][] DIMENSIONS = new int[][] { { 0, 1 }, { 1, 2 }, { 2, 0 } };
+  /** The operator ID of the first producer, the others follow. */
+  private static final int FIRST_PRODUCER = 10;
+
+  /**
+   * @param numWorkers the number of workers of the join.
+   * @return the fragments of the query: one per relation, then the join.
+   */
+  private List<PlanFragmentEncoding> makeFragments(final int numWorkers) {
+    ImmutableList.Builder<PlanFragmentEncoding> fragments = ImmutableList.builder();
+    OperatorEncoding<?>[] consumers = new OperatorEncoding<?>[RELATIONS.size() + 1];
+    for (int i = 0; i < RELATIONS.size(); ++i) {
+      TableScanEncoding scan = new TableScanEncoding();
+      scan.opId = i;
+      scan.relationKey = RELATIONS.get(i);
+      HyperShuffleProducerEncoding producer = new HyperShuffleProducerEncoding();
+      producer.opId = FIRST_PRODUCER + i;
+      producer.argChild = i;
+      producer.hashedColumns = new int[] { 0, 1 };
+      producer.mappedHCDimensions = DIMENSIONS[i];
+      fragments.add(PlanFragmentEncoding.of(scan, producer));
+
+      HyperShuffleConsumerEncoding consumer = new HyperShuffleConsumerEncoding();
+      consumer.opId = 20 + i;
+      consumer.argOperatorId = producer.opId;
+      consumers[i] = consumer;
+    }
+    SinkRootEncoding sink = new SinkRootEncoding();
+    sink.opId = 30;
+    sink.argChild = 20;
+    consumers[RELATIONS.size()] = sink;
+    PlanFragmentEncoding join = PlanFragmentEncoding.of(consumers);
+    join.workers = new ArrayList<Integer>();
+    for (int w = 1; w <= numWorkers; ++w) {
+      join.workers.add(w);
+    }
+    fragments.add(join);
+    return fragments.build();
+  }
+
+  /**
+   * @param fragments the fragments of the query.
+   * @param i the index of a relation.
+   * @return the producer of that relation.
+   */
+  private HyperShuffleProducerEncoding getProducer(final List<PlanFragmentEncoding> fragments, final int i) {
+    return (HyperShuffleProducerEncoding) fragments.get(i).operators.get(1);
+  }
+
+  /**
+   * @param sizes the sizes of R, S and T.
+   * @return the sizes of the relations by key.
+   */
+  private Map<RelationKey, Long> sizes(final long... sizes) {
+    ImmutableMap.Builder<RelationKey, Long> ret = ImmutableMap.builder();
+    for (int i = 0; i < sizes.length; ++i) {
+      ret.put(RELATIONS.get(i), sizes[i]);
+    }
+    return ret.build();
+  }
+
+  /**
+   * @param fragments the fragments of the query, after optimization.
+   * @param shares the expected shares.
+   */
+  private void assertShares(final List<PlanFragmentEncoding> fragments, final int[] shares) {
+    for (int i = 0; i < RELATIONS.size(); ++i) {
+      HyperShuffleProducerEncoding producer = getProducer(fragments, i);
+      assertArrayEquals(shares, producer.hyperCubeDimensions);
+      assertEquals(Arrays.deepToString(HyperCubeOptimizer.cellPartition(shares, DIMENSIONS[i])), Arrays
+          .deepToString(producer.cellPartition));
+    }
+  }
+
+  @Test
+  public void testSharesFromCatalog() {
+    List<PlanFragmentEncoding> fragments = makeFragments(16);
+    QueryConstruct.optimizeHyperCubeShares(fragments, sizes(1000000, 1000000, 10));
+    assertShares(fragments, new int[] { 1, 16, 1 });
+  }
+
+  @Test
+  public void testEstimateOverridesCatalog() {
+    List<PlanFragmentEncoding> fragments = makeFragments(8);
+    getProducer(fragments, 2).estimatedNumTuples = 1000000L;
+    QueryConstruct.optimizeHyperCubeShares(fragments, sizes(1000000, 1000000, 10));
+    assertShares(fragments, new int[] { 2, 2, 2 });
+  }
+
+  @Test
+  public void testUnknownSizeFallsBackToEqualShares() {
+    /* T was imported, so the catalog does not know its size. */
+    List<PlanFragmentEncoding> fragments = makeFragments(8);
+    QueryConstruct.optimizeHyperCubeShares(fragments, sizes(1000000, 10, -1));
+    assertShares(fragments, new int[] { 2, 2, 2 });
+  }
+
+  @Test
+  public void testGivenSharesAreKept() {
+    List<PlanFragmentEncoding> fragments = makeFragments(8);
+    for (int i = 0; i < RELATIONS.size(); ++i) {
+      getProducer(fragments, i).hyperCubeDimensions = new int[] { 8, 1, 1 };
+      getProducer(fragments, i).cellPartition = HyperCubeOptimizer.cellPartition(new int[] { 8, 1, 1 }, DIMENSIONS[i]);
+    }
+    QueryConstruct.optimizeHyperCubeShares(fragments, sizes(1000000, 1000000, 10));
+    assertShares(fragments, new int[] { 8, 1, 1 });
+  }
+
+  @Test(expected = MyriaApiException.class)
+  public void testMissingRelation() {
+    QueryConstruct.optimizeHyperCubeShares(makeFragments(8), sizes(1000000, 1000000));
+  }
+}
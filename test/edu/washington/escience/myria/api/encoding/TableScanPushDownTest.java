@@ -0,0 +1,203 @@
+package edu.washington.escience.myria.api.encoding;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.accessmethod.SQLiteInfo;
+import edu.washington.escience.myria.expression.AndExpression;
+import edu.washington.escience.myria.expression.ConstantExpression;
+import edu.washington.escience.myria.expression.EqualsExpression;
+import edu.washington.escience.myria.expression.Expression;
+import edu.washington.escience.myria.expression.GreaterThanExpression;
+import edu.washington.escience.myria.expression.GreaterThanOrEqualsExpression;
+import edu.washington.escience.myria.expression.TimesExpression;
+import edu.washington.escience.myria.expression.VariableExpression;
+import edu.washington.escience.myria.operator.DbInsert;
+import edu.washington.escience.myria.operator.DbQueryScan;
+import edu.washington.escience.myria.operator.Operator;
+import edu.washington.escience.myria.operator.TupleSource;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.FSUtils;
+
+/**
+ * Pushes Filters and Applies down into the scan of a SQLite relation whose column names are SQL keywords, and runs the
+ * resulting SQL.
+ */
+public class TableScanPushDownTest {
+
+  /** The number of tuples in the relation. */
+  private static final int NUM_TUPLES = 100;
+  /** The scanned relation. */
+  private static final RelationKey RELATION = RelationKey.of("test", "test", "keywords");
+  /** The schema of the scanned relation. */
+  private static final Schema SCHEMA = Schema.ofFields("group", Type.LONG_TYPE, "order", Type.INT_TYPE, "from",
+      Type.STRING_TYPE);
+
+  /** The directory of the database. */
+  private static Path tempDir;
+  /** The database. */
+  private static File tempFile;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    Logger.getLogger("com.almworks.sqlite4java").setLevel(Level.SEVERE);
+    tempDir = Files.createTempDirectory(MyriaConstants.SYSTEM_NAME + "_TableScanPushDownTest");
+    tempFile = new File(tempDir.toString(), "TableScanPushDownTest.db");
+
+    TupleBatchBuffer data = new TupleBatchBuffer(SCHEMA);
+    for (int i = 0; i < NUM_TUPLES; ++i) {
+      data.putLong(0, i);
+      data.putInt(1, i % 7);
+      data.putString(2, i % 2 == 0 ? "even" : "odd");
+    }
+    DbInsert insert = new DbInsert(new TupleSource(data), RELATION, SQLiteInfo.of(tempFile.getAbsolutePath()));
+    insert.open(null);
+    while (!insert.eos()) {
+      insert.nextReady();
+    }
+    insert.close();
+  }
+
+  @AfterClass
+  public static void cleanUp() throws Exception {
+    FSUtils.blockingDeleteDirectory(tempDir.toString());
+  }
+
+  /**
+   * @return a scan of the relation.
+   */
+  private TableScanEncoding makeScan() {
+    TableScanEncoding scan = new TableScanEncoding();
+    scan.opId = 1;
+    scan.relationKey = RELATION;
+    return scan;
+  }
+
+  /**
+   * @param opId the id of the Filter.
+   * @param child the id of the child of the Filter.
+   * @param predicate the predicate of the Filter.
+   * @return the Filter.
+   */
+  private FilterEncoding makeFilter(final int opId, final int child, final Expression predicate) {
+    FilterEncoding filter = new FilterEncoding();
+    filter.opId = opId;
+    filter.argChild = child;
+    filter.argPredicate = predicate;
+    return filter;
+  }
+
+  /**
+   * @param fragment a fragment.
+   * @return the scan of the fragment, after the push down.
+   */
+  private TableScanEncoding pushDown(final PlanFragmentEncoding fragment) {
+    QueryConstruct.pushDownIntoTableScans(ImmutableList.of(fragment), ImmutableMap.of(RELATION, SCHEMA),
+        MyriaConstants.STORAGE_SYSTEM_SQLITE);
+    for (OperatorEncoding<? extends Operator> operator : fragment.operators) {
+      if (operator instanceof TableScanEncoding) {
+        return (TableScanEncoding) operator;
+      }
+    }
+    throw new AssertionError("the fragment has no scan");
+  }
+
+  /**
+   * @param scan a scan.
+   * @return the tuples returned by the scan.
+   * @throws Exception if the scan fails.
+   */
+  private List<TupleBatch> run(final DbQueryScan scan) throws Exception {
+    Map<String, Object> execEnvVars =
+        ImmutableMap.<String, Object> of(MyriaConstants.EXEC_ENV_VAR_DATABASE_SYSTEM,
+            MyriaConstants.STORAGE_SYSTEM_SQLITE, MyriaConstants.EXEC_ENV_VAR_DATABASE_CONN_INFO, SQLiteInfo
+                .of(tempFile.getAbsolutePath()));
+    List<TupleBatch> ret = new ArrayList<>();
+    scan.open(execEnvVars);
+    while (!scan.eos()) {
+      TupleBatch tb = scan.nextReady();
+      if (tb != null) {
+        ret.add(tb);
+      }
+    }
+    scan.close();
+    return ret;
+  }
+
+  @Test
+  public void testFilterAndApplyOverKeywordColumns() throws Exception {
+    FilterEncoding filter =
+        makeFilter(2, 1, new Expression(new AndExpression(new GreaterThanOrEqualsExpression(new VariableExpression(0),
+            new ConstantExpression(90L)), new EqualsExpression(new VariableExpression(2), new ConstantExpression(
+            "even")))));
+    ApplyEncoding apply = new ApplyEncoding();
+    apply.opId = 3;
+    apply.argChild = 2;
+    apply.emitExpressions =
+        ImmutableList.of(new Expression("twice", new TimesExpression(new VariableExpression(0), new ConstantExpression(
+            2L))), new Expression("order", new VariableExpression(1)));
+    SinkRootEncoding sink = new SinkRootEncoding();
+    sink.opId = 4;
+    sink.argChild = 3;
+    PlanFragmentEncoding fragment = PlanFragmentEncoding.of(makeScan(), filter, apply, sink);
+
+    TableScanEncoding scan = pushDown(fragment);
+    assertEquals(2, fragment.operators.size());
+    assertEquals(Integer.valueOf(3), scan.opId);
+
+    DbQueryScan dbScan = scan.construct(SCHEMA);
+    assertEquals(Schema.ofFields("twice", Type.LONG_TYPE, "order", Type.INT_TYPE), dbScan.getSchema());
+    List<TupleBatch> result = run(dbScan);
+    List<Long> twice = new ArrayList<>();
+    for (TupleBatch tb : result) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        twice.add(tb.getLong(0, row));
+        assertEquals(tb.getLong(0, row) / 2 % 7, tb.getInt(1, row));
+      }
+    }
+    assertEquals(ImmutableList.of(180L, 184L, 188L, 192L, 196L), twice);
+  }
+
+  @Test
+  public void testIntArithmeticIsNotPushedDown() throws Exception {
+    /* order * 1000000000 overflows 32 bits in Java, so it must be evaluated by a Filter. */
+    FilterEncoding filter =
+        makeFilter(2, 1, new Expression(new GreaterThanExpression(new TimesExpression(new VariableExpression(1),
+            new ConstantExpression(1000000000)), new ConstantExpression(0))));
+    SinkRootEncoding sink = new SinkRootEncoding();
+    sink.opId = 3;
+    sink.argChild = 2;
+    PlanFragmentEncoding fragment = PlanFragmentEncoding.of(makeScan(), filter, sink);
+
+    TableScanEncoding scan = pushDown(fragment);
+    assertEquals(3, fragment.operators.size());
+    assertEquals(Integer.valueOf(1), scan.opId);
+    int numTuples = 0;
+    for (TupleBatch tb : run(scan.construct(SCHEMA))) {
+      numTuples += tb.numTuples();
+    }
+    assertEquals(NUM_TUPLES, numTuples);
+    assertTrue(fragment.operators.contains(filter));
+  }
+}
@@ -0,0 +1,161 @@
+package edu.washington.escience.myria.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.api.encoding.BloomFilterBuildEncoding;
+import edu.washington.escience.myria.api.encoding.BloomFilterProbeEncoding;
+import edu.washington.escience.myria.api.encoding.BroadcastConsumerEncoding;
+import edu.washington.escience.myria.api.encoding.LocalMultiwayConsumerEncoding;
+import edu.washington.escience.myria.api.encoding.LocalMultiwayProducerEncoding;
+import edu.washington.escience.myria.api.encoding.OperatorEncoding;
+import edu.washington.escience.myria.api.encoding.PlanFragmentEncoding;
+import edu.washington.escience.myria.api.encoding.QueryEncoding;
+import edu.washington.escience.myria.api.encoding.SymmetricHashJoinEncoding;
+import edu.washington.escience.myria.api.encoding.TableScanEncoding;
+import edu.washington.escience.myria.api.encoding.plan.SubQueryEncoding;
+import edu.washington.escience.myria.coordinator.catalog.CatalogException;
+import edu.washington.escience.myria.coordinator.catalog.MasterCatalog;
+import edu.washington.escience.myria.operator.Operator;
+
+public class JsonQueryBaseBuilderTest {
+
+  /** The large side of the join. */
+  private static final RelationKey FACT = RelationKey.of("test", "test", "fact");
+  /** The small side of the join. */
+  private static final RelationKey DIMENSION = RelationKey.of("test", "test", "dimension");
+
+  /**
+   * @param dimensionTuples the number of tuples of the dimension relation in the catalog.
+   * @return the operators of the query that joins the fact relation with the dimension relation.
+   * @throws CatalogException if there is an error in the catalog.
+   */
+  private List<OperatorEncoding<? extends Operator>> joinFactWithDimension(final long dimensionTuples)
+      throws CatalogException {
+    MasterCatalog catalog = MasterCatalog.createInMemory();
+    QueryEncoding ingest = new QueryEncoding();
+    ingest.rawQuery = "ingest dimension";
+    ingest.logicalRa = "ingest dimension";
+    catalog.addRelationMetadata(DIMENSION, Schema.ofFields("key", Type.LONG_TYPE, "value", Type.LONG_TYPE),
+        dimensionTuples, catalog.newQuery(ingest));
+    return joinFactWithDimension(new JsonQueryBaseBuilder().workers(new int[] { 1, 2 }).catalog(catalog));
+  }
+
+  /**
+   * @param builder the builder of the query.
+   * @return the operators of the query that joins the fact relation with the dimension relation.
+   */
+  private List<OperatorEncoding<? extends Operator>> joinFactWithDimension(final JsonQueryBaseBuilder builder) {
+    JsonQueryBaseBuilder dimension = builder.scan(DIMENSION);
+    QueryEncoding query =
+        builder.scan(FACT).hashEquiJoin(dimension, new int[] { 1 }, new int[] { 0, 1 }, new int[] { 0 },
+            new int[] { 1 }).build();
+    List<OperatorEncoding<? extends Operator>> operators = new ArrayList<>();
+    /* the query is validated when it is built, which converts its fragments to a plan. */
+    for (PlanFragmentEncoding fragment : ((SubQueryEncoding) query.plan).fragments) {
+      operators.addAll(fragment.operators);
+    }
+    return operators;
+  }
+
+  /**
+   * @param operators the operators of a query.
+   * @param operatorClass a class of operators.
+   * @return the operators of the given class.
+   */
+  private <T> List<T> find(final List<OperatorEncoding<? extends Operator>> operators, final Class<T> operatorClass) {
+    List<T> ret = new ArrayList<>();
+    for (OperatorEncoding<? extends Operator> operator : operators) {
+      if (operatorClass.isInstance(operator)) {
+        ret.add(operatorClass.cast(operator));
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * @param operators the operators of a query.
+   * @param opId the id of an operator.
+   * @return the operator with the given id.
+   */
+  private OperatorEncoding<? extends Operator> get(final List<OperatorEncoding<? extends Operator>> operators,
+      final int opId) {
+    for (OperatorEncoding<? extends Operator> operator : operators) {
+      if (operator.opId == opId) {
+        return operator;
+      }
+    }
+    throw new AssertionError("no operator " + opId);
+  }
+
+  /**
+   * @param operators the operators of a query.
+   * @param opId the id of an operator.
+   * @return the relation scanned by the operator, looking through the forks of the scan.
+   */
+  private RelationKey scanned(final List<OperatorEncoding<? extends Operator>> operators, final int opId) {
+    OperatorEncoding<? extends Operator> operator = get(operators, opId);
+    if (operator instanceof LocalMultiwayConsumerEncoding) {
+      int producer = ((LocalMultiwayConsumerEncoding) operator).argOperatorId;
+      return scanned(operators, ((LocalMultiwayProducerEncoding) get(operators, producer)).argChild);
+    }
+    return ((TableScanEncoding) operator).relationKey;
+  }
+
+  @Test
+  public void testBloomFilterReduceOfSmallBuildSide() throws CatalogException {
+    List<OperatorEncoding<? extends Operator>> operators =
+        joinFactWithDimension(MyriaConstants.BLOOM_FILTER_MAX_BUILD_TUPLES);
+
+    List<BloomFilterBuildEncoding> builds = find(operators, BloomFilterBuildEncoding.class);
+    List<BloomFilterProbeEncoding> probes = find(operators, BloomFilterProbeEncoding.class);
+    assertEquals(1, builds.size());
+    assertEquals(1, probes.size());
+    BloomFilterBuildEncoding build = builds.get(0);
+    BloomFilterProbeEncoding probe = probes.get(0);
+
+    /* the filter is built on the dimension keys, and the fact tuples are probed on theirs before the join. */
+    assertEquals(DIMENSION, scanned(operators, build.argChild));
+    assertEquals(0, build.argKeyColumns[0]);
+    assertEquals(FACT, scanned(operators, probe.argChild1));
+    assertEquals(1, probe.argKeyColumns[0]);
+    assertTrue(get(operators, probe.argChild2) instanceof BroadcastConsumerEncoding);
+    assertEquals(build.argNumWords, probe.argNumWords);
+    assertEquals(build.argNumHashFunctions, probe.argNumHashFunctions);
+
+    SymmetricHashJoinEncoding join = find(operators, SymmetricHashJoinEncoding.class).get(0);
+    assertEquals(probe.opId, join.argChild1);
+  }
+
+  @Test
+  public void testNoBloomFilterReduceOfLargeBuildSide() throws CatalogException {
+    List<OperatorEncoding<? extends Operator>> operators =
+        joinFactWithDimension(MyriaConstants.BLOOM_FILTER_MAX_BUILD_TUPLES + 1);
+
+    assertTrue(find(operators, BloomFilterBuildEncoding.class).isEmpty());
+    assertTrue(find(operators, BloomFilterProbeEncoding.class).isEmpty());
+    SymmetricHashJoinEncoding join = find(operators, SymmetricHashJoinEncoding.class).get(0);
+    assertEquals(FACT, scanned(operators, join.argChild1));
+  }
+
+  @Test
+  public void testNoBloomFilterReduceWithoutStatistics() throws CatalogException {
+    /* Imported relations are recorded with an unknown number of tuples. */
+    List<OperatorEncoding<? extends Operator>> operators = joinFactWithDimension(-1);
+    assertTrue(find(operators, BloomFilterBuildEncoding.class).isEmpty());
+
+    operators = joinFactWithDimension(new JsonQueryBaseBuilder().workers(new int[] { 1, 2 }));
+    assertTrue(find(operators, BloomFilterBuildEncoding.class).isEmpty());
+    SymmetricHashJoinEncoding join = find(operators, SymmetricHashJoinEncoding.class).get(0);
+    assertEquals(FACT, scanned(operators, join.argChild1));
+  }
+}
@@ -0,0 +1,95 @@
+package edu.washington.escience.myria.expression.evaluate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.expression.AndExpression;
+import edu.washington.escience.myria.expression.ConstantExpression;
+import edu.washington.escience.myria.expression.DivideExpression;
+import edu.washington.escience.myria.expression.EqualsExpression;
+import edu.washington.escience.myria.expression.ExpressionOperator;
+import edu.washington.escience.myria.expression.LessThanExpression;
+import edu.washington.escience.myria.expression.NegateExpression;
+import edu.washington.escience.myria.expression.NotExpression;
+import edu.washington.escience.myria.expression.OrExpression;
+import edu.washington.escience.myria.expression.PlusExpression;
+import edu.washington.escience.myria.expression.TimesExpression;
+import edu.washington.escience.myria.expression.VariableExpression;
+
+public class SqlExpressionTranslatorTest {
+
+  /** The schema of the relation. */
+  private static final Schema SCHEMA = Schema.ofFields("i", Type.INT_TYPE, "l", Type.LONG_TYPE, "f", Type.FLOAT_TYPE,
+      "d", Type.DOUBLE_TYPE, "s", Type.STRING_TYPE, "b", Type.BOOLEAN_TYPE, "t", Type.DATETIME_TYPE);
+
+  /** The database system whose access method creates tables with unquoted column names. */
+  private static final String POSTGRES = MyriaConstants.STORAGE_SYSTEM_POSTGRESQL;
+
+  @Test
+  public void testConditions() {
+    ExpressionOperator i = new VariableExpression(0);
+    ExpressionOperator l = new VariableExpression(1);
+    ExpressionOperator s = new VariableExpression(4);
+    assertEquals("((i + l) < 10)", SqlExpressionTranslator.toSqlCondition(new LessThanExpression(new PlusExpression(
+        i, l), new ConstantExpression(10)), SCHEMA, POSTGRES));
+    assertEquals("((NOT (l < 5)) OR (s = 'it''s'))", SqlExpressionTranslator.toSqlCondition(new OrExpression(
+        new NotExpression(new LessThanExpression(l, new ConstantExpression(5L))), new EqualsExpression(s,
+            new ConstantExpression("it's"))), SCHEMA, POSTGRES));
+    assertEquals("((d < 2.5) AND (f = 0.10000000149011612))", SqlExpressionTranslator.toSqlCondition(
+        new AndExpression(new LessThanExpression(new VariableExpression(3), new ConstantExpression(2.5)),
+            new EqualsExpression(new VariableExpression(2), new ConstantExpression(0.1f))), SCHEMA, POSTGRES));
+  }
+
+  @Test
+  public void testUntranslatableConditions() {
+    ExpressionOperator i = new VariableExpression(0);
+    /* Strings may be ordered differently by the database. */
+    assertNull(SqlExpressionTranslator.toSqlCondition(new LessThanExpression(new VariableExpression(4),
+        new ConstantExpression("a")), SCHEMA, POSTGRES));
+    /* Division has different semantics. */
+    assertNull(SqlExpressionTranslator.toSqlCondition(new LessThanExpression(new DivideExpression(i,
+        new ConstantExpression(2)), new ConstantExpression(1)), SCHEMA, POSTGRES));
+    /* Booleans are stored differently. */
+    assertNull(SqlExpressionTranslator.toSqlCondition(new NotExpression(new VariableExpression(5)), SCHEMA, POSTGRES));
+    /* Not a predicate. */
+    assertNull(SqlExpressionTranslator.toSqlCondition(i, SCHEMA, POSTGRES));
+    /* Does not type check. */
+    assertNull(SqlExpressionTranslator.toSqlCondition(new LessThanExpression(new VariableExpression(4), i), SCHEMA,
+        POSTGRES));
+  }
+
+  @Test
+  public void testColumns() {
+    assertEquals("s", SqlExpressionTranslator.toSqlColumn(new VariableExpression(4), SCHEMA, POSTGRES));
+    assertEquals("(l * -3)", SqlExpressionTranslator.toSqlColumn(new TimesExpression(new VariableExpression(1),
+        new ConstantExpression(-3)), SCHEMA, POSTGRES));
+    assertEquals("(i * 3)", SqlExpressionTranslator.toSqlColumn(new TimesExpression(new VariableExpression(0),
+        new ConstantExpression(3L)), SCHEMA, POSTGRES));
+    /* Java wraps around at 32 bits, the databases do not. */
+    assertNull(SqlExpressionTranslator.toSqlColumn(new TimesExpression(new VariableExpression(0),
+        new ConstantExpression(-3)), SCHEMA, POSTGRES));
+    assertNull(SqlExpressionTranslator.toSqlColumn(new NegateExpression(new VariableExpression(0)), SCHEMA, POSTGRES));
+    /* Floating point arithmetic may round differently. */
+    assertNull(SqlExpressionTranslator.toSqlColumn(new PlusExpression(new VariableExpression(2),
+        new ConstantExpression(1.0f)), SCHEMA, POSTGRES));
+    assertNull(SqlExpressionTranslator.toSqlColumn(new VariableExpression(6), SCHEMA, POSTGRES));
+    assertNull(SqlExpressionTranslator.toSqlColumn(new LessThanExpression(new VariableExpression(0),
+        new ConstantExpression(1)), SCHEMA, POSTGRES));
+  }
+
+  @Test
+  public void testQuotedColumns() {
+    Schema schema = Schema.ofFields("group", Type.LONG_TYPE, "from", Type.STRING_TYPE);
+    ExpressionOperator predicate =
+        new AndExpression(new LessThanExpression(new VariableExpression(0), new ConstantExpression(5L)),
+            new EqualsExpression(new VariableExpression(1), new ConstantExpression("x")));
+    /* SQLite tables are created with bracketed column names. */
+    assertEquals("(([group] < 5) AND ([from] = 'x'))", SqlExpressionTranslator.toSqlCondition(predicate, schema,
+        MyriaConstants.STORAGE_SYSTEM_SQLITE));
+  }
+}
@@ -0,0 +1,55 @@
+package edu.washington.escience.myria.hash;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import edu.washington.escience.myria.operator.network.partition.HyperCubeOptimizer;
+
+public class HyperCubeOptimizerTest {
+
+  /** The triangle query R(x,y), S(y,z), T(z,x). */
+  private static final int[][] TRIANGLE = new int[][] { { 0, 1 }, { 1, 2 }, { 2, 0 } };
+
+  @Test
+  public void testTriangleShares() {
+    long[] cardinalities = new long[] { 1000000, 1000000, 1000000 };
+    assertArrayEquals(new int[] { 4, 4, 4 }, HyperCubeOptimizer.optimalShares(3, TRIANGLE, cardinalities, 64));
+    assertArrayEquals(new int[] { 2, 2, 2 }, HyperCubeOptimizer.optimalShares(3, TRIANGLE, cardinalities, 8));
+    /* 10 workers cannot be used evenly, but the best shares still use 8 or more of them. */
+    int[] shares = HyperCubeOptimizer.optimalShares(3, TRIANGLE, cardinalities, 10);
+    assertEquals(3, shares.length);
+    assertTrue(HyperCubeOptimizer.numCells(shares) >= 8 && HyperCubeOptimizer.numCells(shares) <= 10);
+  }
+
+  @Test
+  public void testSmallRelationIsBroadcast() {
+    /* With a tiny T, it is cheaper to replicate T and partition R and S on y only. */
+    long[] cardinalities = new long[] { 1000000, 1000000, 10 };
+    assertArrayEquals(new int[] { 1, 16, 1 }, HyperCubeOptimizer.optimalShares(3, TRIANGLE, cardinalities, 16));
+  }
+
+  @Test
+  public void testCellPartition() {
+    int[] shares = new int[] { 2, 3 };
+    /* A relation hashed on both dimensions sends every partition to exactly one cell. */
+    int[][] full = HyperCubeOptimizer.cellPartition(shares, new int[] { 0, 1 });
+    assertEquals(6, full.length);
+    for (int p = 0; p < full.length; ++p) {
+      assertArrayEquals(new int[] { p }, full[p]);
+    }
+    /* In the order of its columns. */
+    int[][] swapped = HyperCubeOptimizer.cellPartition(shares, new int[] { 1, 0 });
+    assertArrayEquals(new int[] { 0 }, swapped[0]);
+    assertArrayEquals(new int[] { 3 }, swapped[1]);
+    assertArrayEquals(new int[] { 1 }, swapped[2]);
+    /* A relation hashed on the second dimension only is replicated along the first. */
+    int[][] partial = HyperCubeOptimizer.cellPartition(shares, new int[] { 1 });
+    assertEquals(3, partial.length);
+    assertEquals("[[0, 3], [1, 4], [2, 5]]", Arrays.deepToString(partial));
+  }
+}
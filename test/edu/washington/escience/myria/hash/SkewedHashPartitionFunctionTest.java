@@ -0,0 +1,156 @@
+package edu.washington.escience.myria.hash;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.operator.FindHeavyHitters;
+import edu.washington.escience.myria.operator.TupleSource;
+import edu.washington.escience.myria.operator.network.partition.SkewedHashPartitionFunction;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.HashUtils;
+import edu.washington.escience.myria.util.HeavyHitterSketch;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+
+public class SkewedHashPartitionFunctionTest {
+
+  private static final int NUM_WORKERS = 4;
+  private static final int[] KEY = new int[] { 0 };
+
+  /**
+   * @return a batch in which 40% of the tuples have key 7, and the other keys are uniform.
+   */
+  private TupleBatch makeSkewedBatch() {
+    return makeSkewedBatch(7);
+  }
+
+  /**
+   * @param heavyKey the heavy hitter.
+   * @return a batch in which 40% of the tuples have the specified key, and the other keys are uniform.
+   */
+  private TupleBatch makeSkewedBatch(final long heavyKey) {
+    Random rand = new Random(1);
+    TupleBatchBuffer tbb = new TupleBatchBuffer(Schema.ofFields("key", Type.LONG_TYPE, "value", Type.INT_TYPE));
+    for (int i = 0; i < TupleBatch.BATCH_SIZE; ++i) {
+      tbb.putLong(0, rand.nextInt(10) < 4 ? heavyKey : rand.nextInt(100000) + 100);
+      tbb.putInt(1, i);
+    }
+    return tbb.popAny();
+  }
+
+  @Test
+  public void testSketchFindsHeavyHitter() {
+    TupleBatch tb = makeSkewedBatch();
+    HeavyHitterSketch sketch = new HeavyHitterSketch(32);
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      sketch.add(tb, KEY, row);
+    }
+    assertEquals(tb.numTuples(), sketch.getNumAdded());
+    int[] heavyHitters = sketch.getHeavyHitters(0.1);
+    assertArrayEquals(new int[] { HashUtils.hashSubRow(tb, KEY, firstRowWithKey(tb, 7)) }, heavyHitters);
+  }
+
+  @Test
+  public void testSketchDropsDecrementedCounters() {
+    HeavyHitterSketch sketch = new HeavyHitterSketch(2);
+    for (int key : new int[] { 1, 1, 2, 3, 1 }) {
+      sketch.add(key);
+    }
+    /* 3 did not fit: every counter was decremented, and the one of 2 dropped. */
+    assertArrayEquals(new int[] { 1 }, sketch.getHeavyHitters(Double.MIN_VALUE));
+    for (int key : new int[] { 4, 5, 6 }) {
+      sketch.add(key);
+    }
+    assertArrayEquals(new int[] { 1, 6 }, sketch.getHeavyHitters(Double.MIN_VALUE));
+    assertEquals(8, sketch.getNumAdded());
+  }
+
+  @Test
+  public void testFindHeavyHittersOfEveryWorker() throws DbException {
+    TIntSet heavyHitters = new TIntHashSet();
+    for (long heavyKey : new long[] { 7, 8 }) {
+      FindHeavyHitters find = new FindHeavyHitters(new TupleSource(makeSkewedBatch(heavyKey)), KEY, 0.1, 1);
+      find.open(null);
+      while (!find.eos()) {
+        TupleBatch tb = find.nextReady();
+        if (tb != null) {
+          for (int row = 0; row < tb.numTuples(); ++row) {
+            heavyHitters.add(tb.getInt(0, row));
+          }
+        }
+      }
+      find.close();
+    }
+
+    TupleBatch tb = makeSkewedBatch(7);
+    TupleBatch other = makeSkewedBatch(8);
+    int[] expected =
+        new int[] { HashUtils.hashSubRow(tb, KEY, firstRowWithKey(tb, 7)),
+            HashUtils.hashSubRow(other, KEY, firstRowWithKey(other, 8)) };
+    Arrays.sort(expected);
+    int[] found = heavyHitters.toArray();
+    Arrays.sort(found);
+    assertArrayEquals(expected, found);
+
+    SkewedHashPartitionFunction pf =
+        new SkewedHashPartitionFunction(null, KEY, null, true).withHeavyHitters(found);
+    pf.setNumPartitions(pf.getNumPartitions(NUM_WORKERS));
+    assertEquals(NUM_WORKERS, pf.partition(tb)[firstRowWithKey(tb, 7)]);
+  }
+
+  @Test
+  public void testSplitAndReplicate() {
+    TupleBatch tb = makeSkewedBatch();
+    int[] heavyHitters = new int[] { HashUtils.hashSubRow(tb, KEY, firstRowWithKey(tb, 7)) };
+
+    SkewedHashPartitionFunction split = new SkewedHashPartitionFunction(NUM_WORKERS, KEY, heavyHitters, false);
+    SkewedHashPartitionFunction replicate =
+        new SkewedHashPartitionFunction(NUM_WORKERS + 1, KEY, heavyHitters, true);
+    int[] splitPartitions = split.partition(tb);
+    int[] replicatePartitions = replicate.partition(tb);
+
+    int[] heavyPerWorker = new int[NUM_WORKERS];
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      if (tb.getLong(0, row) == 7) {
+        heavyPerWorker[splitPartitions[row]]++;
+        assertEquals(NUM_WORKERS, replicatePartitions[row]);
+      } else {
+        /* Light keys are hash partitioned the same way on both sides. */
+        assertEquals(splitPartitions[row], replicatePartitions[row]);
+        assertTrue(splitPartitions[row] < NUM_WORKERS);
+      }
+    }
+    /* The heavy hitter is spread evenly over the workers. */
+    for (int count : heavyPerWorker) {
+      assertTrue(Math.abs(count - heavyPerWorker[0]) <= 1);
+    }
+
+    int[][] cellPartition = SkewedHashPartitionFunction.replicatingCellPartition(NUM_WORKERS);
+    assertEquals(NUM_WORKERS + 1, cellPartition.length);
+    assertArrayEquals(new int[] { 0, 1, 2, 3 }, cellPartition[NUM_WORKERS]);
+  }
+
+  /**
+   * @param tb a batch.
+   * @param key a key.
+   * @return the first row of the batch with that key.
+   */
+  private int firstRowWithKey(final TupleBatch tb, final long key) {
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      if (tb.getLong(0, row) == key) {
+        return row;
+      }
+    }
+    throw new IllegalArgumentException("no row with key " + key);
+  }
+}
@@ -0,0 +1,83 @@
+package edu.washington.escience.myria.operator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.BloomFilter;
+
+public class BloomFilterProbeTest {
+
+  /** The schema of the tests: a key and a payload. */
+  private static final Schema SCHEMA = Schema.ofFields("key", Type.LONG_TYPE, "value", Type.STRING_TYPE);
+
+  /**
+   * @param from the first key.
+   * @param to one past the last key.
+   * @param step the distance between the keys.
+   * @return a relation with the keys from <code>from</code> to <code>to</code>.
+   */
+  private TupleBatchBuffer makeRelation(final long from, final long to, final long step) {
+    TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA);
+    for (long key = from; key < to; key += step) {
+      tbb.putLong(0, key);
+      tbb.putString(1, "v" + key);
+    }
+    return tbb;
+  }
+
+  /**
+   * @param op an operator.
+   * @param output where the tuples returned by the operator are appended.
+   * @throws DbException if something goes wrong.
+   */
+  private void drain(final Operator op, final TupleBatchBuffer output) throws DbException {
+    op.open(null);
+    while (!op.eos()) {
+      TupleBatch tb = op.nextReady();
+      if (tb != null) {
+        output.appendTB(tb);
+      }
+    }
+    op.close();
+  }
+
+  @Test
+  public void testSemiJoinReduction() throws DbException {
+    final long numBuildKeys = 20000;
+    final int numWords = BloomFilter.optimalNumWords(numBuildKeys, 0.01);
+    final int numHashFunctions = BloomFilter.optimalNumHashFunctions(numBuildKeys, numWords);
+    final int[] keys = new int[] { 0 };
+
+    /* Two workers, each with half of the multiples of 5 below 100000, broadcast the words of their filters. */
+    TupleBatchBuffer words = new TupleBatchBuffer(BloomFilterBuild.FILTER_SCHEMA);
+    drain(new BloomFilterBuild(new TupleSource(makeRelation(0, 50000, 5)), keys, numWords, numHashFunctions), words);
+    drain(new BloomFilterBuild(new TupleSource(makeRelation(50000, 100000, 5)), keys, numWords, numHashFunctions),
+        words);
+    assertTrue(words.numTuples() <= 2 * numWords);
+
+    TupleBatchBuffer probed = new TupleBatchBuffer(SCHEMA);
+    drain(new BloomFilterProbe(new TupleSource(makeRelation(0, 100000, 1)), new TupleSource(words), keys, numWords,
+        numHashFunctions), probed);
+
+    long matches = 0;
+    for (TupleBatch tb : probed.getAll()) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        long key = tb.getLong(0, row);
+        assertEquals("v" + key, tb.getString(1, row));
+        if (key % 5 == 0) {
+          ++matches;
+        }
+      }
+    }
+    /* No false negatives, and roughly 1% of the 80000 keys without a match as false positives. */
+    assertEquals(numBuildKeys, matches);
+    assertTrue(probed.numTuples() - matches < 80000 * 0.02);
+  }
+}
@@ -10,12 +10,16 @@ import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.expression.AndExpression;
+import edu.washington.escience.myria.expression.ConstantExpression;
 import edu.washington.escience.myria.expression.Expression;
 import edu.washington.escience.myria.expression.ExpressionOperator;
+import edu.washington.escience.myria.expression.IntDivideExpression;
 import edu.washington.escience.myria.expression.LessThanExpression;
 import edu.washington.escience.myria.expression.MinusExpression;
+import edu.washington.escience.myria.expression.NotEqualsExpression;
 import edu.washington.escience.myria.expression.PlusExpression;
 import edu.washington.escience.myria.expression.VariableExpression;
+import edu.washington.escience.myria.expression.evaluate.CompiledExpressionCache;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.storage.TupleBatchBuffer;
 import edu.washington.escience.myria.util.TestEnvVars;
@@ -140,6 +144,92 @@ public class FilterTest {
     assertEquals(2, getRowCount(filter));
   }
 
+  @Test
+  public void testConjunctsEvaluatedInOrder() throws DbException {
+    final Schema schema = Schema.ofFields("a", Type.LONG_TYPE, "b", Type.LONG_TYPE);
+    final TupleBatchBuffer testBase = new TupleBatchBuffer(schema);
+    for (long i = 0; i < 3 * TupleBatch.BATCH_SIZE; ++i) {
+      testBase.putLong(0, i % 4);
+      testBase.putLong(1, i);
+    }
+    /* b / a would fail with a division by zero if the second conjunct were evaluated on rows where a is 0. */
+    ExpressionOperator nonZero = new NotEqualsExpression(new VariableExpression(0), new ConstantExpression(0L));
+    ExpressionOperator quotient =
+        new LessThanExpression(new IntDivideExpression(new VariableExpression(1), new VariableExpression(0)),
+            new ConstantExpression(100L));
+    Filter filter =
+        new Filter(new Expression("guarded", new AndExpression(nonZero, quotient)), new TupleSource(testBase));
+    /* a=1: b < 100; a=2: b < 200; a=3: b < 300. */
+    assertEquals(25 + 50 + 75, getRowCount(filter));
+  }
+
+  @Test
+  public void testConstantPredicates() throws DbException {
+    final Schema schema = Schema.ofFields("a", Type.LONG_TYPE);
+    final TupleBatchBuffer testBase = new TupleBatchBuffer(schema);
+    for (long i = 0; i < 2 * TupleBatch.BATCH_SIZE + 5; ++i) {
+      testBase.putLong(0, i);
+    }
+    ExpressionOperator isTrue = new LessThanExpression(new ConstantExpression(1L), new ConstantExpression(2L));
+    ExpressionOperator isFalse = new LessThanExpression(new ConstantExpression(2L), new ConstantExpression(1L));
+    ExpressionOperator small = new LessThanExpression(new VariableExpression(0), new ConstantExpression(10L));
+
+    assertEquals(2 * TupleBatch.BATCH_SIZE + 5, getRowCount(new Filter(new Expression("true", isTrue),
+        new TupleSource(testBase))));
+    assertEquals(10, getRowCount(new Filter(new Expression("trueAndSmall", new AndExpression(isTrue, small)),
+        new TupleSource(testBase))));
+    assertEquals(0, getRowCount(new Filter(new Expression("smallAndFalse", new AndExpression(small, isFalse)),
+        new TupleSource(testBase))));
+  }
+
+  @Test
+  public void testSelectedValues() throws DbException {
+    final Schema schema = Schema.ofFields("a", Type.LONG_TYPE, "b", Type.STRING_TYPE);
+    final TupleBatchBuffer testBase = new TupleBatchBuffer(schema);
+    for (long i = 0; i < 20; ++i) {
+      testBase.putLong(0, i);
+      testBase.putString(1, "s" + i);
+    }
+    ExpressionOperator small = new LessThanExpression(new VariableExpression(0), new ConstantExpression(15L));
+    ExpressionOperator large = new LessThanExpression(new ConstantExpression(4L), new VariableExpression(0));
+    Filter filter =
+        new Filter(new Expression("between", new AndExpression(small, large)), new TupleSource(testBase));
+    filter.open(TestEnvVars.get());
+    long expected = 5;
+    while (!filter.eos()) {
+      TupleBatch tb = filter.nextReady();
+      if (tb == null) {
+        continue;
+      }
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        assertEquals(expected, tb.getLong(0, row));
+        assertEquals("s" + expected, tb.getString(1, row));
+        ++expected;
+      }
+    }
+    assertEquals(15, expected);
+  }
+
+  @Test
+  public void testCompiledPredicateIsCached() throws DbException {
+    final Schema schema = Schema.ofFields("a", Type.LONG_TYPE);
+    final TupleBatchBuffer testBase = new TupleBatchBuffer(schema);
+    for (long i = 0; i < 20; ++i) {
+      testBase.putLong(0, i);
+    }
+    ExpressionOperator small = new LessThanExpression(new VariableExpression(0), new ConstantExpression(10L));
+
+    CompiledExpressionCache.clear();
+    long hits = CompiledExpressionCache.getStats().hitCount();
+    assertEquals(10, getRowCount(new Filter(new Expression("small", small), new TupleSource(testBase))));
+    assertEquals(1, CompiledExpressionCache.size());
+    assertEquals(hits, CompiledExpressionCache.getStats().hitCount());
+    /* A different name does not change the generated code. */
+    assertEquals(10, getRowCount(new Filter(new Expression("alsoSmall", small), new TupleSource(testBase))));
+    assertEquals(1, CompiledExpressionCache.size());
+    assertEquals(hits + 1, CompiledExpressionCache.getStats().hitCount());
+  }
+
   /*
    * helper method for getting the row count
    */
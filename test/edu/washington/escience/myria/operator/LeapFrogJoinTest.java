@@ -1,8 +1,13 @@
 package edu.washington.escience.myria.operator;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -347,4 +352,259 @@ public class LeapFrogJoinTest {
     join.close();
     assertEquals(9, batches.numTuples());
   }
+
+  @Test
+  public void parallelTwitterTriangularJoin() throws DbException {
+    final Schema r_schema =
+        new Schema(ImmutableList.of(Type.LONG_TYPE, Type.LONG_TYPE), ImmutableList.of("r_x", "r_y"));
+    final Schema s_schema =
+        new Schema(ImmutableList.of(Type.LONG_TYPE, Type.LONG_TYPE), ImmutableList.of("s_y", "s_z"));
+    final Schema t_schema =
+        new Schema(ImmutableList.of(Type.LONG_TYPE, Type.LONG_TYPE), ImmutableList.of("t_z", "t_x"));
+    final String realFilename = Paths.get("testdata", "twitter", "TwitterK.csv").toString();
+    int[][][] fieldMap = new int[][][] { { { 0, 0 }, { 2, 1 } }, { { 0, 1 }, { 1, 0 } }, { { 1, 1 }, { 2, 0 } } };
+    int[][] outputMap = new int[][] { { 0, 0 }, { 0, 1 }, { 1, 1 } };
+    List<String> expected = null;
+    for (int numThreads : new int[] { 1, 4 }) {
+      Operator[] children =
+          new Operator[] {
+              new FileScan(realFilename, r_schema), new FileScan(realFilename, s_schema),
+              new FileScan(realFilename, t_schema) };
+      LeapFrogJoin join =
+          new LeapFrogJoin(children, fieldMap, outputMap, ImmutableList.of("x", "y", "z"), null, numThreads);
+      List<String> actual = collectSorted(join);
+      if (expected == null) {
+        assertEquals(16826, actual.size());
+        expected = actual;
+      } else {
+        assertEquals(expected, actual);
+      }
+    }
+  }
+
+  @Test
+  public void parallelSkewedTriangularJoin() throws DbException {
+    /* A graph with a hub that has an edge to and from every vertex, plus a few random edges. */
+    final Schema schema = Schema.ofFields("src", Type.INT_TYPE, "dst", Type.INT_TYPE);
+    final int numVertices = 2000;
+    TupleBatchBuffer edges = new TupleBatchBuffer(schema);
+    Random r = new Random(1);
+    for (int v = 1; v < numVertices; ++v) {
+      edges.putInt(0, 0);
+      edges.putInt(1, v);
+      edges.putInt(0, v);
+      edges.putInt(1, 0);
+      for (int i = 0; i < 3; ++i) {
+        edges.putInt(0, v);
+        edges.putInt(1, 1 + r.nextInt(numVertices - 1));
+      }
+    }
+    int[][][] fieldMap = new int[][][] { { { 0, 0 }, { 2, 1 } }, { { 0, 1 }, { 1, 0 } }, { { 1, 1 }, { 2, 0 } } };
+    int[][] outputMap = new int[][] { { 0, 0 }, { 0, 1 }, { 1, 1 } };
+    List<String> expected = null;
+    for (int numThreads : new int[] { 1, 3, 8 }) {
+      Operator[] children =
+          new Operator[] { new TupleSource(edges), new TupleSource(edges), new TupleSource(edges) };
+      LeapFrogJoin join =
+          new LeapFrogJoin(children, fieldMap, outputMap, ImmutableList.of("x", "y", "z"), null, numThreads);
+      List<String> actual = collectSorted(join);
+      if (expected == null) {
+        expected = actual;
+      } else {
+        assertEquals(expected, actual);
+      }
+    }
+  }
+
+  @Test
+  public void parallelDisjointKeyRanges() throws DbException {
+    /* most ranges of the pivot table have no key of the small table. */
+    final Schema schema = Schema.ofFields("key", Type.LONG_TYPE);
+    TupleBatchBuffer large = new TupleBatchBuffer(schema);
+    for (int i = 0; i < 1000; ++i) {
+      large.putLong(0, i);
+    }
+    TupleBatchBuffer small = new TupleBatchBuffer(schema);
+    small.putLong(0, 0);
+    small.putLong(0, 1);
+    int[][][] fieldMap = new int[][][] { { { 0, 0 }, { 1, 0 } } };
+    int[][] outputMap = new int[][] { { 0, 0 }, { 1, 0 } };
+    List<String> expected = null;
+    for (int numThreads : new int[] { 1, 4 }) {
+      LeapFrogJoin join =
+          new LeapFrogJoin(new Operator[] { new TupleSource(large), new TupleSource(small) }, fieldMap, outputMap,
+              ImmutableList.of("left", "right"), null, numThreads);
+      List<String> actual = collectSorted(join);
+      if (expected == null) {
+        assertEquals(2, actual.size());
+        expected = actual;
+      } else {
+        assertEquals(expected, actual);
+      }
+    }
+  }
+
+  @Test
+  public void pipelinedTwitterTriangularJoin() throws DbException {
+    final Schema r_schema =
+        new Schema(ImmutableList.of(Type.LONG_TYPE, Type.LONG_TYPE), ImmutableList.of("r_x", "r_y"));
+    final Schema s_schema =
+        new Schema(ImmutableList.of(Type.LONG_TYPE, Type.LONG_TYPE), ImmutableList.of("s_y", "s_z"));
+    final Schema t_schema =
+        new Schema(ImmutableList.of(Type.LONG_TYPE, Type.LONG_TYPE), ImmutableList.of("t_z", "t_x"));
+    final String realFilename = Paths.get("testdata", "twitter", "TwitterK.csv").toString();
+    /* R and T have x, the first join variable, and must be sorted on it. S is read in full. */
+    InMemoryOrderBy orderR =
+        new InMemoryOrderBy(new FileScan(realFilename, r_schema), new int[] { 0 }, new boolean[] { true });
+    InMemoryOrderBy orderT =
+        new InMemoryOrderBy(new FileScan(realFilename, t_schema), new int[] { 1 }, new boolean[] { true });
+    int[][][] fieldMap = new int[][][] { { { 0, 0 }, { 2, 1 } }, { { 0, 1 }, { 1, 0 } }, { { 1, 1 }, { 2, 0 } } };
+    int[][] outputMap = new int[][] { { 0, 0 }, { 0, 1 }, { 1, 1 } };
+    LeapFrogJoin join =
+        new LeapFrogJoin(new Operator[] { orderR, new FileScan(realFilename, s_schema), orderT }, fieldMap,
+            outputMap, ImmutableList.of("x", "y", "z"), null, 1, true);
+    assertEquals(16826, collectSorted(join).size());
+  }
+
+  @Test
+  public void pipelinedOutputBeforeEOS() throws DbException {
+    final Schema schema = Schema.ofFields("key", Type.LONG_TYPE, "value", Type.LONG_TYPE);
+    final int numTuples = 10 * TupleBatch.BATCH_SIZE;
+    TupleBatchBuffer left = new TupleBatchBuffer(schema);
+    TupleBatchBuffer right = new TupleBatchBuffer(schema);
+    for (int i = 0; i < numTuples; ++i) {
+      left.putLong(0, i / 2);
+      left.putLong(1, i);
+      right.putLong(0, i / 3);
+      right.putLong(1, -i);
+    }
+    TupleSource[] children = new TupleSource[] { new TupleSource(left), new TupleSource(right) };
+    int[][][] fieldMap = new int[][][] { { { 0, 0 }, { 1, 0 } } };
+    int[][] outputMap = new int[][] { { 0, 0 }, { 0, 1 }, { 1, 1 } };
+    LeapFrogJoin join =
+        new LeapFrogJoin(children, fieldMap, outputMap, ImmutableList.of("key", "left", "right"), null, 1, true);
+    join.open(TestEnvVars.get());
+    long count = 0;
+    boolean outputBeforeEOS = false;
+    while (!join.eos()) {
+      TupleBatch tb = join.nextReady();
+      if (tb == null) {
+        continue;
+      }
+      if (count == 0) {
+        outputBeforeEOS = !children[0].eos() && !children[1].eos();
+      }
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        assertEquals(tb.getLong(0, row), tb.getLong(1, row) / 2);
+        assertEquals(tb.getLong(0, row), -tb.getLong(2, row) / 3);
+      }
+      count += tb.numTuples();
+    }
+    join.close();
+    assertTrue(outputBeforeEOS);
+    /* every key on the right has two tuples on the left. */
+    assertEquals(2 * numTuples, count);
+  }
+
+  @Test
+  public void pipelinedLongIncompleteTail() throws DbException {
+    /* the left child runs far ahead of the right one, so most of its pending tuples stay incomplete. */
+    final Schema schema = Schema.ofFields("key", Type.LONG_TYPE, "value", Type.LONG_TYPE);
+    final int numTuples = 20 * TupleBatch.BATCH_SIZE;
+    List<String> expected = null;
+    for (boolean pipelined : new boolean[] { false, true }) {
+      TupleBatchBuffer left = new TupleBatchBuffer(schema);
+      TupleBatchBuffer right = new TupleBatchBuffer(schema);
+      for (int i = 0; i < numTuples; ++i) {
+        left.putLong(0, i / 2);
+        left.putLong(1, i);
+        right.putLong(0, i / 7);
+        right.putLong(1, -i);
+      }
+      int[][][] fieldMap = new int[][][] { { { 0, 0 }, { 1, 0 } } };
+      int[][] outputMap = new int[][] { { 0, 0 }, { 0, 1 }, { 1, 1 } };
+      LeapFrogJoin join =
+          new LeapFrogJoin(new Operator[] { new TupleSource(left), new TupleSource(right) }, fieldMap, outputMap,
+              ImmutableList.of("key", "left", "right"), null, 1, pipelined);
+      List<String> result = collectSorted(join);
+      if (expected == null) {
+        expected = result;
+      } else {
+        assertEquals(expected, result);
+      }
+    }
+    /* every key on the right has two tuples on the left. */
+    assertEquals(2 * numTuples, expected.size());
+  }
+
+  @Test
+  public void pipelinedDisjointKeyRanges() throws DbException {
+    /* every key of the left child is below the keys of the right one, so no segment has tuples of both. */
+    final Schema schema = Schema.ofFields("key", Type.LONG_TYPE);
+    TupleBatchBuffer left = new TupleBatchBuffer(schema);
+    for (int i = 0; i < 30000; ++i) {
+      left.putLong(0, i);
+    }
+    TupleBatchBuffer right = new TupleBatchBuffer(schema);
+    for (int i = 50000; i < 50010; ++i) {
+      right.putLong(0, i);
+    }
+    int[][][] fieldMap = new int[][][] { { { 0, 0 }, { 1, 0 } } };
+    int[][] outputMap = new int[][] { { 0, 0 }, { 1, 0 } };
+    LeapFrogJoin join =
+        new LeapFrogJoin(new Operator[] { new TupleSource(left), new TupleSource(right) }, fieldMap, outputMap,
+            ImmutableList.of("left", "right"), null, 1, true);
+    assertEquals(0, collectSorted(join).size());
+  }
+
+  @Test(expected = DbException.class)
+  public void pipelinedUnsortedInput() throws DbException {
+    final Schema schema = Schema.ofFields("key", Type.LONG_TYPE);
+    TupleBatchBuffer left = new TupleBatchBuffer(schema);
+    TupleBatchBuffer right = new TupleBatchBuffer(schema);
+    for (int i = 0; i < 10; ++i) {
+      left.putLong(0, i % 3);
+      right.putLong(0, i);
+    }
+    LeapFrogJoin join =
+        new LeapFrogJoin(new Operator[] { new TupleSource(left), new TupleSource(right) },
+            new int[][][] { { { 0, 0 }, { 1, 0 } } }, new int[][] { { 0, 0 } }, null, null, 1, true);
+    collectSorted(join);
+  }
+
+  /**
+   * @param join a join.
+   * @return the result tuples, as sorted strings.
+   * @throws DbException if any error occurs.
+   */
+  private List<String> collectSorted(final Operator join) throws DbException {
+    List<String> ret = new ArrayList<>();
+    join.open(TestEnvVars.get());
+    while (!join.eos()) {
+      TupleBatch tb = join.nextReady();
+      if (tb == null) {
+        continue;
+      }
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        StringBuilder tuple = new StringBuilder();
+        for (int column = 0; column < tb.numColumns(); ++column) {
+          switch (tb.getSchema().getColumnType(column)) {
+            case INT_TYPE:
+              tuple.append(tb.getInt(column, row));
+              break;
+            case LONG_TYPE:
+              tuple.append(tb.getLong(column, row));
+              break;
+            default:
+              throw new IllegalArgumentException("unexpected type " + tb.getSchema().getColumnType(column));
+          }
+          tuple.append(',');
+        }
+        ret.add(tuple.toString());
+      }
+    }
+    join.close();
+    Collections.sort(ret);
+    return ret;
+  }
 }
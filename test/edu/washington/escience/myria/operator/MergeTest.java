@@ -7,10 +7,13 @@ import java.util.AbstractMap.SimpleEntry;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Map.Entry;
+import java.util.Random;
 
 import org.junit.Test;
 
 import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.storage.TupleBatchBuffer;
 import edu.washington.escience.myria.util.TestUtils;
@@ -85,4 +88,50 @@ public class MergeTest {
 
   }
 
+  @Test
+  public void testMergeManyInputs() throws DbException {
+    Schema schema = Schema.ofFields("key", Type.LONG_TYPE, "input", Type.INT_TYPE);
+    Random random = new Random(0);
+    int numInputs = 64;
+    TupleSource[] children = new TupleSource[numInputs];
+    int expectedCount = 0;
+    for (int i = 0; i < numInputs; ++i) {
+      TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+      /* Some inputs are empty, and long runs of equal keys are common. */
+      int numTuples = (i % 8 == 0) ? 0 : random.nextInt(3 * TupleBatch.BATCH_SIZE);
+      long key = 1000000;
+      for (int j = 0; j < numTuples; ++j) {
+        key -= random.nextInt(3);
+        tbb.putLong(0, key);
+        tbb.putInt(1, i);
+      }
+      expectedCount += numTuples;
+      children[i] = new TupleSource(tbb);
+    }
+
+    NAryOperator merge = new Merge(children, new int[] { 0 }, new boolean[] { false });
+    merge.open(null);
+    int count = 0;
+    long previousKey = Long.MAX_VALUE;
+    int previousInput = -1;
+    while (!merge.eos()) {
+      TupleBatch tb = merge.nextReady();
+      if (tb == null) {
+        continue;
+      }
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        long key = tb.getLong(0, row);
+        int input = tb.getInt(1, row);
+        assertTrue(key <= previousKey);
+        /* The merge is stable: equal keys come out in input order. */
+        assertTrue(key < previousKey || input >= previousInput);
+        previousKey = key;
+        previousInput = input;
+        ++count;
+      }
+    }
+    merge.close();
+    assertEquals(expectedCount, count);
+  }
+
 }
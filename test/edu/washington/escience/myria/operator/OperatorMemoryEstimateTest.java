@@ -0,0 +1,78 @@
+package edu.washington.escience.myria.operator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.storage.TupleUtils;
+import edu.washington.escience.myria.util.TestEnvVars;
+
+public class OperatorMemoryEstimateTest {
+
+  /** The number of distinct input tuples. */
+  private static final int NUM_TUPLES = 3 * TupleBatch.BATCH_SIZE;
+
+  /** The schema of the input tuples. */
+  private static final Schema SCHEMA = Schema.ofFields("key", Type.LONG_TYPE, "value", Type.INT_TYPE);
+
+  /**
+   * @return a source of {@link #NUM_TUPLES} distinct tuples.
+   */
+  private TupleSource makeSource() {
+    TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA);
+    for (int i = 0; i < NUM_TUPLES; ++i) {
+      tbb.putLong(0, i);
+      tbb.putInt(1, i);
+    }
+    return new TupleSource(tbb);
+  }
+
+  /**
+   * Drain the operator without closing it.
+   * 
+   * @param op the operator.
+   * @throws DbException if any error occurs.
+   */
+  private void drain(final Operator op) throws DbException {
+    op.open(TestEnvVars.get());
+    while (!op.eos()) {
+      op.nextReady();
+    }
+  }
+
+  @Test
+  public void testStatelessOperator() throws DbException {
+    TupleSource source = makeSource();
+    drain(source);
+    assertEquals(0, source.getEstimatedMemoryBytes());
+    source.close();
+  }
+
+  @Test
+  public void testDupElim() throws DbException {
+    StreamingStateWrapper dupElim = new StreamingStateWrapper(makeSource(), new DupElim());
+    drain(dupElim);
+    long tupleBytes = (long) NUM_TUPLES * TupleUtils.estimateTupleBytes(SCHEMA);
+    assertTrue(dupElim.getEstimatedMemoryBytes() > tupleBytes);
+    dupElim.close();
+    assertEquals(0, dupElim.getEstimatedMemoryBytes());
+  }
+
+  @Test
+  public void testSymmetricHashJoin() throws DbException {
+    SymmetricHashJoin join =
+        new SymmetricHashJoin(makeSource(), makeSource(), new int[] { 0 }, new int[] { 0 }, new int[] { 0 },
+            new int[] { 1 });
+    drain(join);
+    long tupleBytes = 2L * NUM_TUPLES * TupleUtils.estimateTupleBytes(SCHEMA);
+    assertTrue(join.getEstimatedMemoryBytes() > tupleBytes);
+    join.close();
+    assertEquals(0, join.getEstimatedMemoryBytes());
+  }
+}
@@ -0,0 +1,176 @@
+package edu.washington.escience.myria.operator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.expression.ConstantExpression;
+import edu.washington.escience.myria.expression.Expression;
+import edu.washington.escience.myria.expression.LessThanExpression;
+import edu.washington.escience.myria.expression.TimesExpression;
+import edu.washington.escience.myria.expression.VariableExpression;
+import edu.washington.escience.myria.operator.agg.AggregatorFactory;
+import edu.washington.escience.myria.operator.agg.PrimitiveAggregator.AggregationOp;
+import edu.washington.escience.myria.operator.agg.SingleColumnAggregatorFactory;
+import edu.washington.escience.myria.operator.agg.SingleGroupByAggregate;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.storage.TupleUtils;
+import edu.washington.escience.myria.util.TestEnvVars;
+import edu.washington.escience.myria.util.concurrent.IntraFragmentExecutor;
+
+public class ParallelPipelineTest {
+
+  /** The number of input tuples. */
+  private static final int NUM_TUPLES = 20 * TupleBatch.BATCH_SIZE + 17;
+  /** The number of distinct groups in the input. */
+  private static final int NUM_GROUPS = 10;
+
+  /**
+   * @return a source of (group, value) tuples, where value goes from 0 to {@link #NUM_TUPLES}-1.
+   */
+  private TupleSource makeSource() {
+    TupleBatchBuffer tbb = new TupleBatchBuffer(Schema.ofFields("group", Type.LONG_TYPE, "value", Type.LONG_TYPE));
+    for (long i = 0; i < NUM_TUPLES; ++i) {
+      tbb.putLong(0, i % NUM_GROUPS);
+      tbb.putLong(1, i);
+    }
+    return new TupleSource(tbb);
+  }
+
+  /**
+   * @return a filter that keeps the tuples whose value is less than half of {@link #NUM_TUPLES}.
+   */
+  private Filter makeFilter() {
+    return new Filter(new Expression("filter", new LessThanExpression(new VariableExpression(1),
+        new ConstantExpression((long) NUM_TUPLES / 2))), null);
+  }
+
+  /**
+   * @return an apply that keeps the group and doubles the value.
+   */
+  private Apply makeApply() {
+    return new Apply(null, ImmutableList.of(new Expression("group", new VariableExpression(0)), new Expression(
+        "doubled", new TimesExpression(new VariableExpression(1), new ConstantExpression(2L)))));
+  }
+
+  /**
+   * Drain the operator.
+   * 
+   * @param op the operator.
+   * @return all the output tuples.
+   * @throws DbException if any error occurs.
+   */
+  private TupleBatchBuffer drain(final Operator op) throws DbException {
+    TupleBatchBuffer result = new TupleBatchBuffer(op.getSchema());
+    op.open(TestEnvVars.get());
+    while (!op.eos()) {
+      TupleBatch tb = op.nextReady();
+      if (tb != null) {
+        result.appendTB(tb);
+      }
+    }
+    op.close();
+    return result;
+  }
+
+  @Test
+  public void testFilterApply() throws DbException {
+    ParallelPipeline pipeline =
+        new ParallelPipeline(makeSource(), ImmutableList.of(makeFilter(), makeApply()), null, 4);
+    assertEquals(Schema.ofFields("group", Type.LONG_TYPE, "doubled", Type.LONG_TYPE), pipeline.getSchema());
+
+    TupleBatchBuffer result = drain(pipeline);
+    long n = NUM_TUPLES / 2;
+    assertEquals(n, result.numTuples());
+    long sum = 0;
+    for (TupleBatch tb : result.getAll()) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        sum += tb.getLong(1, row);
+      }
+    }
+    assertEquals(n * (n - 1), sum);
+  }
+
+  @Test
+  public void testMoreCopiesThanThreads() throws DbException {
+    /* the copies that wait for morsels give their threads back to the others. */
+    int degreeOfParallelism = 4 * IntraFragmentExecutor.getParallelism();
+    ParallelPipeline pipeline =
+        new ParallelPipeline(makeSource(), ImmutableList.of(makeFilter(), makeApply()), null, degreeOfParallelism);
+    assertEquals(NUM_TUPLES / 2, drain(pipeline).numTuples());
+  }
+
+  @Test
+  public void testTemplatesUnchanged() throws DbException {
+    Filter filter = makeFilter();
+    Apply apply = makeApply();
+    SingleGroupByAggregate merge =
+        new SingleGroupByAggregate(null, 0, new SingleColumnAggregatorFactory(1, AggregationOp.COUNT));
+    ParallelPipeline pipeline = new ParallelPipeline(makeSource(), ImmutableList.of(filter, apply), merge);
+    assertEquals(IntraFragmentExecutor.getParallelism(), pipeline.getDegreeOfParallelism());
+    assertEquals(NUM_GROUPS, drain(pipeline).numTuples());
+    assertNull(filter.getChild());
+    assertNull(apply.getChild());
+    assertNull(merge.getChild());
+  }
+
+  @Test
+  public void testPartialAggregateWithMerge() throws DbException {
+    SingleGroupByAggregate partial =
+        new SingleGroupByAggregate(null, 0, new SingleColumnAggregatorFactory(1, AggregationOp.SUM,
+            AggregationOp.COUNT));
+    SingleGroupByAggregate merge =
+        new SingleGroupByAggregate(null, 0, new AggregatorFactory[] {
+            new SingleColumnAggregatorFactory(1, AggregationOp.SUM),
+            new SingleColumnAggregatorFactory(2, AggregationOp.SUM) });
+    ParallelPipeline pipeline = new ParallelPipeline(makeSource(), ImmutableList.of(partial), merge, 3);
+
+    TupleBatchBuffer result = drain(pipeline);
+    assertEquals(NUM_GROUPS, result.numTuples());
+    long totalSum = 0;
+    long totalCount = 0;
+    for (TupleBatch tb : result.getAll()) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        totalSum += tb.getLong(1, row);
+        totalCount += tb.getLong(2, row);
+      }
+    }
+    assertEquals((long) NUM_TUPLES * (NUM_TUPLES - 1) / 2, totalSum);
+    assertEquals(NUM_TUPLES, totalCount);
+  }
+
+  @Test
+  public void testMemoryOfPipelineCopies() throws Exception {
+    InMemoryOrderBy sort = new InMemoryOrderBy(null, new int[] { 1 }, new boolean[] { false });
+    ParallelPipeline pipeline = new ParallelPipeline(makeSource(), ImmutableList.of(sort), null, 2);
+    long expected = 4L * TupleBatch.BATCH_SIZE * TupleUtils.estimateTupleBytes(pipeline.getSchema());
+    pipeline.open(TestEnvVars.get());
+    /* hand out the first morsels, two per copy. The sorts in the pipeline copies keep them until the input ends. */
+    pipeline.nextReady();
+    Thread.sleep(MyriaConstants.SHORT_WAITING_INTERVAL_100_MS);
+    long deadline = System.currentTimeMillis() + MyriaConstants.WAITING_INTERVAL_1_SECOND_IN_MS;
+    while (pipeline.getEstimatedMemoryBytes() < expected && System.currentTimeMillis() < deadline) {
+      Thread.sleep(MyriaConstants.SHORT_WAITING_INTERVAL_1_MS);
+    }
+    assertTrue(pipeline.getEstimatedMemoryBytes() >= expected);
+
+    long numTuples = 0;
+    while (!pipeline.eos()) {
+      TupleBatch tb = pipeline.nextReady();
+      if (tb != null) {
+        numTuples += tb.numTuples();
+      }
+    }
+    pipeline.close();
+    assertEquals(NUM_TUPLES, numTuples);
+  }
+}
@@ -0,0 +1,231 @@
+package edu.washington.escience.myria.operator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.MyriaSystemConfigKeys;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.FSUtils;
+
+public class SpillingAppenderTest {
+
+  private static final Schema SCHEMA = new Schema(ImmutableList.of(Type.LONG_TYPE, Type.STRING_TYPE), ImmutableList
+      .of("id", "name"));
+
+  private File workingDir;
+
+  @Before
+  public void setUp() throws Exception {
+    workingDir = Files.createTempDirectory(MyriaConstants.SYSTEM_NAME + "_SpillingAppenderTest").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    FSUtils.blockingDeleteDirectory(workingDir.getAbsolutePath());
+  }
+
+  /**
+   * Feed tuples with consecutive ids through a {@link SpillingAppender} that keeps at most one batch in memory.
+   */
+  private StreamingStateWrapper fill(final int numTuples) throws DbException {
+    return fill(numTuples, MyriaConstants.FT_BACKUP_BUFFER_MAX_SEGMENTS_DEFAULT_VALUE);
+  }
+
+  /**
+   * Feed tuples with consecutive ids through a {@link SpillingAppender} that keeps at most one batch in memory and the
+   * given number of segments.
+   */
+  private StreamingStateWrapper fill(final int numTuples, final int maxSegments) throws DbException {
+    TupleBatchBuffer input = new TupleBatchBuffer(SCHEMA);
+    for (int i = 0; i < numTuples; ++i) {
+      input.putLong(0, i);
+      input.putString(1, "tuple " + i);
+    }
+    StreamingStateWrapper wrapper = new StreamingStateWrapper(new TupleSource(input), new SpillingAppender());
+    wrapper.open(ImmutableMap.<String, Object> of(MyriaSystemConfigKeys.FT_BACKUP_BUFFER_MEMORY_TUPLES, String
+        .valueOf(TupleBatch.BATCH_SIZE), MyriaSystemConfigKeys.FT_BACKUP_BUFFER_MAX_SEGMENTS, String
+        .valueOf(maxSegments), MyriaSystemConfigKeys.WORKING_DIRECTORY, workingDir.getAbsolutePath()));
+    while (!wrapper.eos()) {
+      wrapper.nextReady();
+    }
+    return wrapper;
+  }
+
+  private File[] segmentFiles() {
+    File[] files = new File(workingDir, MyriaConstants.FT_BACKUP_BUFFER_DIRECTORY).listFiles();
+    if (files == null) {
+      return new File[0];
+    }
+    return files;
+  }
+
+  private long checkConsecutive(final List<TupleBatch> batches, final long firstId) {
+    long id = firstId;
+    for (TupleBatch tb : batches) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        assertEquals(id, tb.getLong(0, row));
+        assertEquals("tuple " + id, tb.getString(1, row));
+        ++id;
+      }
+    }
+    return id;
+  }
+
+  @Test
+  public void testReplay() throws Exception {
+    final int numTuples = 5 * TupleBatch.BATCH_SIZE;
+    StreamingStateWrapper wrapper = fill(numTuples);
+    SpillingAppender appender = (SpillingAppender) wrapper.getStreamingState();
+
+    /* Every two batches exceed the memory limit, so the last batch is the only one still in memory. */
+    assertEquals(2, appender.numSegments());
+    assertEquals(2, segmentFiles().length);
+    assertEquals(numTuples, appender.numTuples());
+    assertEquals(appender.getEstimatedMemoryBytes(), wrapper.getEstimatedMemoryBytes());
+
+    List<TupleBatch> replay = appender.exportState();
+    assertEquals(5, replay.size());
+    assertEquals(numTuples, checkConsecutive(replay, 0));
+    /* Going back reads the segment again. */
+    assertEquals(0, replay.get(0).getLong(0, 0));
+    assertEquals(3 * TupleBatch.BATCH_SIZE, replay.get(3).getLong(0, 0));
+    assertEquals(TupleBatch.BATCH_SIZE, replay.get(1).getLong(0, 0));
+
+    /* The replay keeps its segments after the backup is cleaned up. */
+    wrapper.close();
+    assertEquals(2, segmentFiles().length);
+    assertEquals(numTuples, checkConsecutive(replay, 0));
+    ((Closeable) replay).close();
+    assertEquals(0, segmentFiles().length);
+  }
+
+  @Test
+  public void testCheckpoint() throws Exception {
+    final int numTuples = 5 * TupleBatch.BATCH_SIZE;
+    StreamingStateWrapper wrapper = fill(numTuples);
+    SpillingAppender appender = (SpillingAppender) wrapper.getStreamingState();
+
+    /* Tuples are only dropped with the whole segment that holds them. */
+    appender.checkpoint(TupleBatch.BATCH_SIZE);
+    assertEquals(2, appender.numSegments());
+    assertEquals(numTuples, appender.numTuples());
+
+    appender.checkpoint(2 * TupleBatch.BATCH_SIZE + 1);
+    assertEquals(1, appender.numSegments());
+    assertEquals(1, segmentFiles().length);
+    assertEquals(numTuples - 2 * TupleBatch.BATCH_SIZE, appender.numTuples());
+    List<TupleBatch> replay = appender.exportState();
+    assertEquals(numTuples, checkConsecutive(replay, 2 * TupleBatch.BATCH_SIZE));
+
+    /* The segment read by the replay is kept until the replay is closed. */
+    appender.checkpoint(numTuples);
+    assertEquals(1, segmentFiles().length);
+    ((Closeable) replay).close();
+    assertEquals(0, segmentFiles().length);
+
+    assertEquals(0, appender.numSegments());
+    assertEquals(0, appender.numTuples());
+    assertTrue(appender.exportState().isEmpty());
+
+    wrapper.close();
+    assertEquals(0, segmentFiles().length);
+  }
+
+  @Test
+  public void testMaxSegments() throws Exception {
+    final int numTuples = 9 * TupleBatch.BATCH_SIZE;
+    StreamingStateWrapper wrapper = fill(numTuples, 2);
+    SpillingAppender appender = (SpillingAppender) wrapper.getStreamingState();
+
+    /* Four segments of two batches were written, and the two oldest were deleted. */
+    assertEquals(2, appender.numSegments());
+    assertEquals(2, segmentFiles().length);
+    assertEquals(4 * TupleBatch.BATCH_SIZE, appender.numDiscarded());
+    assertEquals(numTuples - 4 * TupleBatch.BATCH_SIZE, appender.numTuples());
+
+    /* The dropped tuples were not acknowledged, so they cannot be replayed. */
+    List<TupleBatch> replay = appender.exportState();
+    try {
+      replay.get(0);
+      fail("the replay must fail");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("not acknowledged"));
+    }
+    ((Closeable) replay).close();
+
+    wrapper.close();
+    assertEquals(0, segmentFiles().length);
+  }
+
+  @Test
+  public void testMaxSegmentsAcknowledged() throws Exception {
+    final int numTuples = 9 * TupleBatch.BATCH_SIZE;
+    TupleBatchBuffer input = new TupleBatchBuffer(SCHEMA);
+    for (int i = 0; i < numTuples; ++i) {
+      input.putLong(0, i);
+      input.putString(1, "tuple " + i);
+    }
+    SpillingAppender appender = new SpillingAppender();
+    appender.setAttachedOperator(new TupleSource(input));
+    appender.init(ImmutableMap.<String, Object> of(MyriaSystemConfigKeys.FT_BACKUP_BUFFER_MEMORY_TUPLES, String
+        .valueOf(TupleBatch.BATCH_SIZE), MyriaSystemConfigKeys.FT_BACKUP_BUFFER_MAX_SEGMENTS, "2",
+        MyriaSystemConfigKeys.WORKING_DIRECTORY, workingDir.getAbsolutePath()));
+    /* Every tuple is acknowledged as soon as it is added, so the limit drops nothing that must be replayed. */
+    long numAdded = 0;
+    for (TupleBatch tb : input.getAll()) {
+      appender.update(tb);
+      numAdded += tb.numTuples();
+      appender.checkpoint(numAdded);
+    }
+    assertEquals(numTuples, appender.numDiscarded());
+    assertTrue(appender.exportState().isEmpty());
+    appender.cleanup();
+    assertEquals(0, segmentFiles().length);
+  }
+
+  @Test
+  public void testTruncatedSegment() throws Exception {
+    final int numTuples = 5 * TupleBatch.BATCH_SIZE;
+    StreamingStateWrapper wrapper = fill(numTuples);
+    SpillingAppender appender = (SpillingAppender) wrapper.getStreamingState();
+    for (File file : segmentFiles()) {
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        raf.setLength(raf.length() / 2);
+      }
+    }
+
+    List<TupleBatch> replay = appender.exportState();
+    try {
+      checkConsecutive(replay, 0);
+      fail("the replay must fail");
+    } catch (RuntimeException e) {
+      assertTrue(e.getCause() instanceof IOException);
+    }
+    /* The last batch is in memory. */
+    assertEquals(4 * TupleBatch.BATCH_SIZE, replay.get(4).getLong(0, 0));
+    ((Closeable) replay).close();
+
+    wrapper.close();
+    assertEquals(0, segmentFiles().length);
+  }
+}
@@ -0,0 +1,82 @@
+package edu.washington.escience.myria.operator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.TestUtils;
+
+public class TopKTest {
+
+  /** The sort columns of the tests. */
+  private static final int[] SORT_COLUMNS = new int[] { 0, 1 };
+  /** The sort order of the tests. */
+  private static final boolean[] ASCENDING = new boolean[] { false, true };
+
+  /**
+   * @param op an operator.
+   * @return all tuples returned by the operator, formatted as strings, in order.
+   * @throws DbException if something goes wrong.
+   */
+  private List<String> drain(final Operator op) throws DbException {
+    List<String> ret = new ArrayList<String>();
+    op.open(null);
+    while (!op.eos()) {
+      TupleBatch tb = op.nextReady();
+      if (tb != null) {
+        for (int i = 0; i < tb.numTuples(); i++) {
+          ret.add(tb.getLong(0, i) + "|" + tb.getString(1, i));
+        }
+      }
+    }
+    op.close();
+    return ret;
+  }
+
+  @Test
+  public void testTopK() throws DbException {
+    TupleBatchBuffer randomTuples = TestUtils.generateRandomTuples(52300, 5000, false);
+    List<String> sorted =
+        drain(new InMemoryOrderBy(new TupleSource(randomTuples.getAll()), SORT_COLUMNS, ASCENDING));
+
+    for (int k : new int[] { 0, 1, 100, 52300, 60000 }) {
+      List<String> top = drain(new TopK(new TupleSource(randomTuples.getAll()), SORT_COLUMNS, ASCENDING, k));
+      assertEquals(sorted.subList(0, Math.min(k, sorted.size())), top);
+    }
+  }
+
+  @Test
+  public void testTwoPhaseTopK() throws DbException {
+    final int k = 250;
+    final int numWorkers = 3;
+    TupleBatchBuffer all = new TupleBatchBuffer(TestUtils.generateRandomTuples(1, 1, false).getSchema());
+    TupleBatchBuffer partials = new TupleBatchBuffer(all.getSchema());
+    for (int worker = 0; worker < numWorkers; ++worker) {
+      TupleBatchBuffer workerTuples = TestUtils.generateRandomTuples(20000, 5000, false);
+      for (TupleBatch tb : workerTuples.getAll()) {
+        all.appendTB(tb);
+      }
+      TopK local = new TopK(new TupleSource(workerTuples), SORT_COLUMNS, ASCENDING, k);
+      local.open(null);
+      int sent = 0;
+      while (!local.eos()) {
+        TupleBatch tb = local.nextReady();
+        if (tb != null) {
+          sent += tb.numTuples();
+          partials.appendTB(tb);
+        }
+      }
+      local.close();
+      assertEquals(k, sent);
+    }
+
+    List<String> expected = drain(new TopK(new TupleSource(all), SORT_COLUMNS, ASCENDING, k));
+    assertEquals(expected, drain(new TopK(new TupleSource(partials), SORT_COLUMNS, ASCENDING, k)));
+  }
+}
@@ -0,0 +1,80 @@
+package edu.washington.escience.myria.operator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.MutableTupleBuffer;
+
+public class TrieIndexTest {
+
+  /**
+   * @param keys the keys, one row per tuple.
+   * @return a table with an int, a long and a string key column holding the keys.
+   */
+  private MutableTupleBuffer makeTable(final int[][] keys) {
+    MutableTupleBuffer tbb =
+        new MutableTupleBuffer(Schema.ofFields("a", Type.INT_TYPE, "b", Type.LONG_TYPE, "c", Type.STRING_TYPE));
+    for (int[] key : keys) {
+      tbb.putInt(0, key[0]);
+      tbb.putLong(1, key[1]);
+      tbb.putString(2, String.format("%05d", key[1]));
+    }
+    return tbb;
+  }
+
+  @Test
+  public void testLevels() {
+    /* Not sorted, with a duplicate. */
+    int[][] keys = new int[][] { { 2, 7 }, { 1, 5 }, { 1, 3 }, { 2, 7 }, { 1, 5 }, { 3, 1 } };
+    MutableTupleBuffer tbb = makeTable(keys);
+    TrieIndex trie = new TrieIndex(tbb, new int[] { 0, 1 });
+    assertEquals(2, trie.numLevels());
+    assertEquals(3, trie.numNodes(0));
+    assertEquals(4, trie.numNodes(1));
+    /* a = 1 has the children b = 3 and b = 5. */
+    assertEquals(0, trie.firstChild(0, 0));
+    assertEquals(2, trie.firstChild(0, 1));
+    /* b = 5 under a = 1 has two tuples. */
+    assertEquals(1, trie.firstPosition(1, 1));
+    assertEquals(3, trie.firstPosition(1, 2));
+    for (int position = 1; position < 3; ++position) {
+      assertEquals(5, tbb.getLong(1, trie.row(position)));
+    }
+    assertEquals(keys.length, trie.firstPosition(1, trie.numNodes(1)));
+  }
+
+  @Test
+  public void testSeek() {
+    Random r = new Random(3);
+    final int numTuples = 5000;
+    int[][] keys = new int[numTuples][];
+    for (int i = 0; i < numTuples; ++i) {
+      keys[i] = new int[] { 0, r.nextInt(20000) };
+    }
+    /* The same keys, as longs and as strings that sort the same way. */
+    TrieIndex longTrie = new TrieIndex(makeTable(keys), new int[] { 1 });
+    TrieIndex stringTrie = new TrieIndex(makeTable(keys), new int[] { 2 });
+    MutableTupleBuffer targets =
+        makeTable(new int[][] { { 0, 0 }, { 0, 777 }, { 0, 12345 }, { 0, 19999 }, { 0, 20001 } });
+    TrieIndex longTargets = new TrieIndex(targets, new int[] { 1 });
+    TrieIndex stringTargets = new TrieIndex(targets, new int[] { 2 });
+
+    final int numNodes = longTrie.numNodes(0);
+    for (int from : new int[] { 0, 1, 100, numNodes / 2, numNodes - 1 }) {
+      for (int target = 0; target < longTargets.numNodes(0); ++target) {
+        /* The naive answer. */
+        int expected = from;
+        while (expected < numNodes && longTrie.compare(0, expected, longTargets, 0, target) < 0) {
+          ++expected;
+        }
+        assertEquals(expected, longTrie.seek(0, from, numNodes, longTargets, 0, target));
+        assertEquals(expected, stringTrie.seek(0, from, numNodes, stringTargets, 0, target));
+      }
+    }
+  }
+}
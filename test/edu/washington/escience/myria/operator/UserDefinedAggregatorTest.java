@@ -1,6 +1,13 @@
 package edu.washington.escience.myria.operator;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -18,8 +25,10 @@ import edu.washington.escience.myria.expression.ExpressionOperator;
 import edu.washington.escience.myria.expression.GreaterThanExpression;
 import edu.washington.escience.myria.expression.PlusExpression;
 import edu.washington.escience.myria.expression.StateExpression;
+import edu.washington.escience.myria.expression.TimesExpression;
 import edu.washington.escience.myria.expression.VariableExpression;
 import edu.washington.escience.myria.operator.agg.Aggregate;
+import edu.washington.escience.myria.operator.agg.Aggregator;
 import edu.washington.escience.myria.operator.agg.AggregatorFactory;
 import edu.washington.escience.myria.operator.agg.UserDefinedAggregatorFactory;
 import edu.washington.escience.myria.storage.TupleBatch;
@@ -192,4 +201,131 @@ public class UserDefinedAggregatorTest {
     assertEquals(1, resultSize);
     agg.close();
   }
+
+  /**
+   * Tests computing a sum and a count in two phases: partial aggregates over parts of the input, and a final aggregate
+   * that combines their states. Also tests serialization and deserialization of the combiners.
+   * 
+   * @throws Exception if something goes wrong.
+   */
+  @Test
+  public void testCombine() throws Exception {
+    final Schema schema = new Schema(ImmutableList.of(Type.LONG_TYPE), ImmutableList.of("value"));
+
+    ImmutableList.Builder<Expression> Initializers = ImmutableList.builder();
+    Initializers.add(new Expression("sum", new ConstantExpression(0L)));
+    Initializers.add(new Expression("count", new ConstantExpression(0L)));
+
+    ImmutableList.Builder<Expression> Updaters = ImmutableList.builder();
+    Updaters.add(new Expression("sum", new PlusExpression(new StateExpression(0), new VariableExpression(0))));
+    Updaters.add(new Expression("count", new PlusExpression(new StateExpression(1), new ConstantExpression(1L))));
+
+    ImmutableList.Builder<Expression> Emitters = ImmutableList.builder();
+    Emitters.add(new Expression("sum", new StateExpression(0)));
+    Emitters.add(new Expression("count", new StateExpression(1)));
+
+    // The partial states arrive as the columns (sum, count) of the input of the final aggregate.
+    ImmutableList.Builder<Expression> Combiners = ImmutableList.builder();
+    Combiners.add(new Expression("sum", new PlusExpression(new StateExpression(0), new VariableExpression(0))));
+    Combiners.add(new Expression("count", new PlusExpression(new StateExpression(1), new VariableExpression(1))));
+
+    UserDefinedAggregatorFactory factory =
+        new UserDefinedAggregatorFactory(Initializers.build(), Updaters.build(), Emitters.build(), Combiners.build());
+    factory = (UserDefinedAggregatorFactory) reader.readValue(writer.writeValueAsString(factory));
+    assertTrue(factory.isCombinable());
+
+    final int numParts = 3;
+    TupleBatchBuffer partialStates = null;
+    long expectedSum = 0;
+    for (int part = 0; part < numParts; ++part) {
+      final TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+      for (long i = 0; i < NUM_TUPLES; i++) {
+        tbb.putLong(0, part * NUM_TUPLES + i);
+        expectedSum += part * NUM_TUPLES + i;
+      }
+      Aggregate partial = new Aggregate(new TupleSource(tbb), factory.getPartialFactory());
+      TupleBatchBuffer states = drain(partial);
+      if (partialStates == null) {
+        partialStates = new TupleBatchBuffer(states.getSchema());
+      }
+      partialStates.appendTB(states.popAny());
+    }
+
+    TupleBatchBuffer result = drain(new Aggregate(new TupleSource(partialStates), factory.getFinalFactory()));
+    assertEquals(1, result.numTuples());
+    TupleBatch tb = result.popAny();
+    assertEquals(expectedSum, tb.getLong(0, 0));
+    assertEquals(numParts * NUM_TUPLES, tb.getLong(1, 0));
+  }
+
+  /**
+   * Tests that an aggregator keeps its state through Java serialization.
+   * 
+   * @throws Exception if something goes wrong.
+   */
+  @Test
+  public void testSerializeAggregator() throws Exception {
+    final Schema schema = new Schema(ImmutableList.of(Type.LONG_TYPE), ImmutableList.of("value"));
+    UserDefinedAggregatorFactory factory =
+        new UserDefinedAggregatorFactory(ImmutableList.of(new Expression("sum", new ConstantExpression(0L)),
+            new Expression("half", new ConstantExpression(0.0))), ImmutableList.of(new Expression("sum",
+            new PlusExpression(new StateExpression(0), new VariableExpression(0))), new Expression("half",
+            new PlusExpression(new StateExpression(1), new TimesExpression(new VariableExpression(0),
+                new ConstantExpression(0.5))))), ImmutableList.of(new Expression("sum", new StateExpression(0)),
+            new Expression("half", new StateExpression(1))));
+
+    final TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (long i = 0; i < NUM_TUPLES; i++) {
+      tbb.putLong(0, i);
+    }
+    Aggregator aggregator = factory.get(schema);
+    List<TupleBatch> batches = tbb.getAll();
+    aggregator.add(batches.get(0));
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(aggregator);
+    }
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      aggregator = (Aggregator) in.readObject();
+    }
+    for (TupleBatch tb : batches.subList(1, batches.size())) {
+      aggregator.add(tb);
+    }
+
+    TupleBatchBuffer result = new TupleBatchBuffer(aggregator.getResultSchema());
+    aggregator.getResult(result, 0);
+    long expectedSum = (long) NUM_TUPLES * (NUM_TUPLES - 1) / 2;
+    assertEquals(expectedSum, result.getAll().get(0).getLong(0, 0));
+    assertEquals(expectedSum / 2.0, result.getAll().get(0).getDouble(1, 0), 0.0);
+  }
+
+  /**
+   * Tests that the emitters of an aggregate cannot read the input, since there is no input row to read when the result
+   * is emitted.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testEmitterReadsInput() {
+    new UserDefinedAggregatorFactory(ImmutableList.of(new Expression("sum", new ConstantExpression(0L))),
+        ImmutableList.of(new Expression("sum", new PlusExpression(new StateExpression(0), new VariableExpression(0)))),
+        ImmutableList.of(new Expression("sum", new PlusExpression(new StateExpression(0), new VariableExpression(0)))));
+  }
+
+  /**
+   * @param agg an aggregate.
+   * @return all tuples produced by the aggregate.
+   * @throws Exception if something goes wrong.
+   */
+  private TupleBatchBuffer drain(final Aggregate agg) throws Exception {
+    agg.open(TestEnvVars.get());
+    TupleBatchBuffer ret = new TupleBatchBuffer(agg.getSchema());
+    while (!agg.eos()) {
+      TupleBatch tb = agg.nextReady();
+      if (tb != null) {
+        ret.appendTB(tb);
+      }
+    }
+    agg.close();
+    return ret;
+  }
 }
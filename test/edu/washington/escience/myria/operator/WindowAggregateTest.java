@@ -0,0 +1,158 @@
+package edu.washington.escience.myria.operator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.operator.agg.WindowAggregate;
+import edu.washington.escience.myria.operator.agg.WindowFunction;
+import edu.washington.escience.myria.operator.agg.WindowFunction.WindowOp;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.TestEnvVars;
+
+public class WindowAggregateTest {
+
+  /** The schema of the input: a partition key, a time, and a value. */
+  private static final Schema SCHEMA = Schema.ofFields("key", Type.INT_TYPE, "time", Type.LONG_TYPE, "value",
+      Type.LONG_TYPE);
+
+  /**
+   * @param keys the partition keys, sorted.
+   * @param values the values.
+   * @return the input tuples, sorted by key and time.
+   */
+  private TupleBatchBuffer makeInput(final int[] keys, final long[] values) {
+    TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA);
+    for (int i = 0; i < keys.length; ++i) {
+      tbb.putInt(0, keys[i]);
+      tbb.putLong(1, i);
+      tbb.putLong(2, values[i]);
+    }
+    return tbb;
+  }
+
+  /**
+   * @param op an aggregate.
+   * @param values the values.
+   * @param from the first row of the frame.
+   * @param to the last row of the frame.
+   * @return the aggregate over the frame.
+   */
+  private double aggregate(final WindowOp op, final long[] values, final int from, final int to) {
+    double ret = op == WindowOp.MIN ? Long.MAX_VALUE : (op == WindowOp.MAX ? Long.MIN_VALUE : 0);
+    for (int i = from; i <= to; ++i) {
+      switch (op) {
+        case MIN:
+          ret = Math.min(ret, values[i]);
+          break;
+        case MAX:
+          ret = Math.max(ret, values[i]);
+          break;
+        case COUNT:
+          ret += 1;
+          break;
+        default:
+          ret += values[i];
+          break;
+      }
+    }
+    if (op == WindowOp.AVG) {
+      ret /= to - from + 1;
+    }
+    return ret;
+  }
+
+  @Test
+  public void testSlidingFrames() throws DbException {
+    final int numTuples = 3 * TupleBatch.BATCH_SIZE + 17;
+    Random r = new Random(42);
+    int[] keys = new int[numTuples];
+    long[] values = new long[numTuples];
+    for (int i = 1; i < numTuples; ++i) {
+      /* Mostly long partitions, some spanning batches, and a few partitions with a single row. */
+      keys[i] = keys[i - 1] + (r.nextInt(200) == 0 || i % 1500 == 0 ? 1 : 0);
+      values[i] = r.nextInt(1000) - 500;
+    }
+
+    WindowFunction[] functions =
+        new WindowFunction[] {
+            new WindowFunction("rownum", WindowOp.ROW_NUMBER, null, null, null, null),
+            new WindowFunction("lag", WindowOp.LAG, 2, null, null, 1),
+            new WindowFunction("lead", WindowOp.LEAD, 2, null, null, 2),
+            new WindowFunction("movingSum", WindowOp.SUM, 2, 3, 1, null),
+            new WindowFunction("movingMin", WindowOp.MIN, 2, 4, null, null),
+            new WindowFunction("movingMax", WindowOp.MAX, 2, 2, 3, null),
+            new WindowFunction("runningMax", WindowOp.MAX, 2, null, null, null),
+            new WindowFunction("movingAvg", WindowOp.AVG, 2, 2, 2, null),
+            new WindowFunction("count", WindowOp.COUNT, null, 5, 5, null) };
+    WindowAggregate window =
+        new WindowAggregate(new TupleSource(makeInput(keys, values)), new int[] { 0 }, new int[] { 1 },
+            new boolean[] { true }, functions);
+
+    window.open(TestEnvVars.get());
+    assertEquals(SCHEMA.numColumns() + functions.length, window.getSchema().numColumns());
+    assertEquals(Type.LONG_TYPE, window.getSchema().getColumnType(6));
+    assertEquals(Type.DOUBLE_TYPE, window.getSchema().getColumnType(10));
+    int pos = 0;
+    int partitionStart = 0;
+    while (!window.eos()) {
+      TupleBatch tb = window.nextReady();
+      if (tb == null) {
+        continue;
+      }
+      for (int row = 0; row < tb.numTuples(); ++row, ++pos) {
+        if (keys[pos] != keys[partitionStart]) {
+          partitionStart = pos;
+        }
+        int partitionEnd = pos;
+        while (partitionEnd < numTuples && keys[partitionEnd] == keys[pos]) {
+          ++partitionEnd;
+        }
+        assertEquals(keys[pos], tb.getInt(0, row));
+        assertEquals(pos, tb.getLong(1, row));
+        assertEquals(pos - partitionStart + 1, tb.getLong(3, row));
+        assertEquals(pos - 1 >= partitionStart ? values[pos - 1] : 0, tb.getLong(4, row));
+        assertEquals(pos + 2 < partitionEnd ? values[pos + 2] : 0, tb.getLong(5, row));
+        for (int f = 3; f < functions.length; ++f) {
+          WindowFunction function = functions[f];
+          int from = partitionStart;
+          if (function.getPreceding() >= 0) {
+            from = Math.max(partitionStart, pos - function.getPreceding());
+          }
+          int to = Math.min(partitionEnd - 1, pos + function.getFollowing());
+          double expected = aggregate(function.getOp(), values, from, to);
+          if (function.getOp() == WindowOp.AVG) {
+            assertEquals(expected, tb.getDouble(3 + f, row), 1e-9);
+          } else {
+            assertEquals(function.getName(), (long) expected, tb.getLong(3 + f, row));
+          }
+        }
+      }
+    }
+    window.close();
+    assertEquals(numTuples, pos);
+  }
+
+  @Test(expected = DbException.class)
+  public void testUnsortedInput() throws DbException {
+    TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA);
+    for (int i = 0; i < 10; ++i) {
+      tbb.putInt(0, 0);
+      tbb.putLong(1, i % 3);
+      tbb.putLong(2, i);
+    }
+    WindowAggregate window =
+        new WindowAggregate(new TupleSource(tbb), new int[] { 0 }, new int[] { 1 }, new boolean[] { true },
+            new WindowFunction("rownum", WindowOp.ROW_NUMBER, null, null, null, null));
+    window.open(TestEnvVars.get());
+    while (!window.eos()) {
+      window.nextReady();
+    }
+  }
+}
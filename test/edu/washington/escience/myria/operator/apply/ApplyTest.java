@@ -3,7 +3,9 @@ package edu.washington.escience.myria.operator.apply;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.lang.reflect.InvocationTargetException;
 import java.nio.charset.Charset;
+import java.util.BitSet;
 
 import org.junit.Test;
 
@@ -13,6 +15,7 @@ import com.google.common.hash.Hashing;
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.Column;
 import edu.washington.escience.myria.expression.AbsExpression;
 import edu.washington.escience.myria.expression.AndExpression;
 import edu.washington.escience.myria.expression.CeilExpression;
@@ -625,6 +628,51 @@ public class ApplyTest {
     apply.close();
   }
 
+  @Test
+  public void testVectorizedApply() throws DbException, InvocationTargetException {
+    final Schema schema = Schema.ofFields("a", Type.INT_TYPE, "f", Type.FLOAT_TYPE, "d", Type.DOUBLE_TYPE);
+    final TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (int i = 0; i < TupleBatch.BATCH_SIZE; i++) {
+      tbb.putInt(0, i);
+      tbb.putFloat(1, i / 4.0f);
+      tbb.putDouble(2, i * 1.5);
+    }
+    TupleBatch tb = tbb.popAny();
+    /* Also read the columns of a filtered batch, which are not backed by arrays. */
+    BitSet odd = new BitSet(tb.numTuples());
+    for (int i = 1; i < tb.numTuples(); i += 2) {
+      odd.set(i);
+    }
+    TupleBatch filtered = tb.filter(odd);
+
+    ExpressionOperator vara = new VariableExpression(0);
+    ExpressionOperator varf = new VariableExpression(1);
+    ExpressionOperator vard = new VariableExpression(2);
+    ExpressionOperatorParameter parameters = new ExpressionOperatorParameter(schema);
+    GenericEvaluator intEvaluator =
+        new GenericEvaluator(new Expression("a2", new PlusExpression(new TimesExpression(vara, new ConstantExpression(
+            2)), new ConstantExpression(1))), parameters);
+    GenericEvaluator doubleEvaluator =
+        new GenericEvaluator(new Expression("fd", new MinusExpression(new TimesExpression(varf, vard), vara)),
+            parameters);
+    intEvaluator.compile();
+    doubleEvaluator.compile();
+
+    for (TupleBatch input : ImmutableList.of(tb, filtered)) {
+      Column<?> ints = intEvaluator.evaluateColumn(input);
+      Column<?> doubles = doubleEvaluator.evaluateColumn(input);
+      assertEquals(Type.INT_TYPE, ints.getType());
+      assertEquals(Type.DOUBLE_TYPE, doubles.getType());
+      assertEquals(input.numTuples(), ints.size());
+      assertEquals(input.numTuples(), doubles.size());
+      for (int row = 0; row < input.numTuples(); ++row) {
+        int a = input.getInt(0, row);
+        assertEquals(a * 2 + 1, ints.getInt(row));
+        assertEquals(input.getFloat(1, row) * input.getDouble(2, row) - a, doubles.getDouble(row), 0.0);
+      }
+    }
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void conditionalNeedsBooleancondition() throws IllegalArgumentException {
     ExpressionOperator a = new ConstantExpression(Type.INT_TYPE, "1");
@@ -15,6 +15,7 @@ import edu.washington.escience.myria.expression.IntDivideExpression;
 import edu.washington.escience.myria.expression.PlusExpression;
 import edu.washington.escience.myria.expression.StateExpression;
 import edu.washington.escience.myria.expression.VariableExpression;
+import edu.washington.escience.myria.operator.KeyedStatefulApply;
 import edu.washington.escience.myria.operator.SingletonRelation;
 import edu.washington.escience.myria.operator.StatefulApply;
 import edu.washington.escience.myria.operator.TupleSource;
@@ -186,4 +187,91 @@ public class StatefulApplyTest {
     assertEquals(2, old);
   }
 
+  @Test
+  public void testKeyedRunningTotal() throws DbException {
+    final int numKeys = 7;
+    final Schema schema = Schema.ofFields("sensor", Type.INT_TYPE, "value", Type.LONG_TYPE);
+    final TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (long i = 0; i < NUM_TUPLES; i++) {
+      tbb.putInt(0, (int) (i % numKeys));
+      tbb.putLong(1, i);
+    }
+
+    Expression initializeSum = new Expression("sum", new ConstantExpression(Type.LONG_TYPE, "0"));
+    Expression updateSum = new Expression("sum", new PlusExpression(new StateExpression(0), new VariableExpression(1)));
+
+    ImmutableList.Builder<Expression> Expressions = ImmutableList.builder();
+    Expressions.add(new Expression("sensor", new VariableExpression(0)));
+    Expressions.add(new Expression("total", new StateExpression(0)));
+
+    KeyedStatefulApply apply =
+        new KeyedStatefulApply(new TupleSource(tbb), new int[] { 0 }, Expressions.build(), ImmutableList
+            .of(initializeSum), ImmutableList.of(updateSum));
+
+    long[] expected = new long[numKeys];
+    apply.open(TestEnvVars.get());
+    int resultSize = 0;
+    while (!apply.eos()) {
+      TupleBatch result = apply.nextReady();
+      if (result == null) {
+        continue;
+      }
+      assertEquals(Type.LONG_TYPE, result.getSchema().getColumnType(1));
+      for (int row = 0; row < result.numTuples(); row++) {
+        long i = resultSize + row;
+        int sensor = result.getInt(0, row);
+        assertEquals(i % numKeys, sensor);
+        expected[sensor] += i;
+        assertEquals(expected[sensor], result.getLong(1, row));
+      }
+      resultSize += result.numTuples();
+    }
+    apply.close();
+    assertEquals(NUM_TUPLES, resultSize);
+  }
+  @Test
+  public void testKeyedEmitReadsInputAndState() throws DbException {
+    final int numKeys = 5;
+    final Schema schema = Schema.ofFields("sensor", Type.INT_TYPE, "value", Type.LONG_TYPE);
+    final TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (long i = 0; i < NUM_TUPLES; i++) {
+      tbb.putInt(0, (int) (i % numKeys));
+      tbb.putLong(1, i);
+    }
+
+    /* The number of tuples of the key so far, and the value of the last tuple of the key. */
+    ImmutableList.Builder<Expression> Initializers = ImmutableList.builder();
+    Initializers.add(new Expression("count", new ConstantExpression(0L)));
+    Initializers.add(new Expression("last", new ConstantExpression(-1L)));
+    ImmutableList.Builder<Expression> Updaters = ImmutableList.builder();
+    Updaters.add(new Expression("count", new PlusExpression(new StateExpression(0), new ConstantExpression(1L))));
+    Updaters.add(new Expression("last", new VariableExpression(1)));
+    ImmutableList.Builder<Expression> Expressions = ImmutableList.builder();
+    Expressions.add(new Expression("count", new StateExpression(0)));
+    Expressions.add(new Expression("value_plus_count", new PlusExpression(new VariableExpression(1),
+        new StateExpression(0))));
+    Expressions.add(new Expression("last", new PlusExpression(new StateExpression(1), new ConstantExpression(0L))));
+
+    KeyedStatefulApply apply =
+        new KeyedStatefulApply(new TupleSource(tbb), new int[] { 0 }, Expressions.build(), Initializers.build(),
+            Updaters.build());
+    apply.open(TestEnvVars.get());
+    int resultSize = 0;
+    while (!apply.eos()) {
+      TupleBatch result = apply.nextReady();
+      if (result == null) {
+        continue;
+      }
+      for (int row = 0; row < result.numTuples(); row++) {
+        long i = resultSize + row;
+        long count = i / numKeys + 1;
+        assertEquals(count, result.getLong(0, row));
+        assertEquals(i + count, result.getLong(1, row));
+        assertEquals(i, result.getLong(2, row));
+      }
+      resultSize += result.numTuples();
+    }
+    apply.close();
+    assertEquals(NUM_TUPLES, resultSize);
+  }
 }
@@ -0,0 +1,308 @@
+package edu.washington.escience.myria.parallel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.api.encoding.ApplyEncoding;
+import edu.washington.escience.myria.api.encoding.BroadcastConsumerEncoding;
+import edu.washington.escience.myria.api.encoding.BroadcastProducerEncoding;
+import edu.washington.escience.myria.api.encoding.DatasetStatus;
+import edu.washington.escience.myria.api.encoding.DupElimEncoding;
+import edu.washington.escience.myria.api.encoding.PlanFragmentEncoding;
+import edu.washington.escience.myria.api.encoding.QueryEncoding;
+import edu.washington.escience.myria.api.encoding.RightHashJoinEncoding;
+import edu.washington.escience.myria.api.encoding.StatefulApplyEncoding;
+import edu.washington.escience.myria.api.encoding.SymmetricHashJoinEncoding;
+import edu.washington.escience.myria.api.encoding.TableScanEncoding;
+import edu.washington.escience.myria.api.encoding.TopKEncoding;
+import edu.washington.escience.myria.api.encoding.UnaryOperatorEncoding;
+import edu.washington.escience.myria.api.encoding.WindowAggregateEncoding;
+import edu.washington.escience.myria.api.encoding.plan.SubQueryEncoding;
+import edu.washington.escience.myria.storage.TupleUtils;
+
+public class AdmissionControllerTest {
+
+  /** The workers used by the queries. */
+  private static final Set<Integer> WORKERS = ImmutableSet.of(1, 2);
+
+  @Test
+  public void testBudget() {
+    AdmissionController controller = new AdmissionController(100, 5, 10);
+    assertEquals(ImmutableList.of(1L), controller.submit(1, 0, 60, WORKERS));
+    /* Does not fit next to query 1. */
+    assertEquals(ImmutableList.of(), controller.submit(2, 0, 60, WORKERS));
+    /* Fits, and is not held up by query 2. */
+    assertEquals(ImmutableList.of(3L), controller.submit(3, 0, 30, WORKERS));
+    assertEquals(ImmutableList.of(4L), controller.submit(4, 0, 0, WORKERS));
+    assertEquals(1, controller.getStatus().queuedQueries.size());
+    assertEquals(ImmutableList.of(2L), controller.release(1));
+    assertEquals(Long.valueOf(90), controller.getStatus().workerReservedBytes.get(1));
+  }
+
+  @Test
+  public void testOvertakeLimit() {
+    AdmissionController controller = new AdmissionController(100, 20, 10);
+    assertEquals(ImmutableList.of(1L), controller.submit(1, 0, 60, WORKERS));
+    assertEquals(ImmutableList.of(), controller.submit(2, 0, 60, WORKERS));
+    for (long queryId = 3; queryId < 11; ++queryId) {
+      assertEquals(ImmutableList.of(queryId), controller.submit(queryId, 0, 0, ImmutableSet.of(2)));
+    }
+    /* Query 2 has been overtaken often enough: the queries behind it wait for it. */
+    assertEquals(ImmutableList.of(), controller.submit(11, 0, 0, WORKERS));
+    assertEquals(ImmutableList.of(), controller.release(3));
+    assertEquals(ImmutableList.of(2L, 11L), controller.release(1));
+  }
+
+  @Test
+  public void testStatelessQueriesCountTowardsActiveQueries() {
+    AdmissionController controller = new AdmissionController(100, 2, 10);
+    assertEquals(ImmutableList.of(1L), controller.submit(1, 0, 0, WORKERS));
+    assertEquals(ImmutableList.of(2L), controller.submit(2, 0, 0, WORKERS));
+    assertEquals(ImmutableList.of(), controller.submit(3, 0, 0, WORKERS));
+    assertEquals(ImmutableList.of(3L), controller.release(1));
+  }
+
+  @Test
+  public void testReportedWorkerUsage() {
+    AdmissionController controller = new AdmissionController(100, 5, 10);
+    assertEquals(ImmutableList.of(1L), controller.submit(1, 0, 10, WORKERS));
+    /* Worker 1 reports more memory in use than query 1 was estimated to need. */
+    assertEquals(ImmutableList.of(), controller.updateWorkerUsage(1, 80));
+    assertEquals(ImmutableList.of(), controller.submit(2, 0, 30, WORKERS));
+    /* Even a query without state waits while its workers are over budget. */
+    assertEquals(ImmutableList.of(), controller.updateWorkerUsage(2, 120));
+    assertEquals(ImmutableList.of(), controller.submit(3, 1, 0, ImmutableSet.of(2)));
+    assertEquals(Long.valueOf(120), controller.getStatus().workerUsedBytes.get(2));
+    /* Worker 1 frees some memory, but worker 2 still blocks the head of the queue. */
+    assertEquals(ImmutableList.of(), controller.updateWorkerUsage(1, 50));
+    assertEquals(ImmutableList.of(3L, 2L), controller.updateWorkerUsage(2, 40));
+    assertEquals(ImmutableList.of(), controller.updateWorkerUsage(2, 110));
+    assertEquals(ImmutableList.of(), controller.submit(4, 0, 0, ImmutableSet.of(2)));
+    /* A dead worker no longer reports any usage. */
+    assertEquals(ImmutableList.of(4L), controller.removeWorker(2));
+  }
+
+  @Test
+  public void testEstimateSkipsRelationsOfUnknownSize() throws DbException {
+    final Schema schema = Schema.ofFields(Type.LONG_TYPE, Type.LONG_TYPE);
+    final RelationKey known = RelationKey.of("public", "adhoc", "known");
+    final RelationKey imported = RelationKey.of("public", "adhoc", "imported");
+    AdmissionController.RelationCatalog catalog = new AdmissionController.RelationCatalog() {
+      @Override
+      public DatasetStatus getDatasetStatus(final RelationKey relationKey) {
+        /* Imported relations are recorded with -1 tuples. */
+        long numTuples = relationKey.equals(imported) ? -1 : 100;
+        return new DatasetStatus(relationKey, schema, numTuples, 0, null);
+      }
+
+      @Override
+      public Set<Integer> getWorkersForRelation(final RelationKey relationKey, final Integer storedRelationId) {
+        return WORKERS;
+      }
+    };
+
+    QueryEncoding query = makeScanQuery(imported);
+    assertEquals(0, AdmissionController.estimateMemoryPerWorker(query, catalog));
+    AdmissionController controller = new AdmissionController(100, 5, 10);
+    assertEquals(ImmutableList.of(1L), controller.submit(1, 0, AdmissionController.estimateMemoryPerWorker(query,
+        catalog), WORKERS));
+
+    long expected = 100 * TupleUtils.estimateTupleBytes(schema) / WORKERS.size() * 3;
+    assertEquals(expected, AdmissionController.estimateMemoryPerWorker(makeScanQuery(known), catalog));
+  }
+
+  /**
+   * @param relationKey the relation to scan.
+   * @return a query that removes the duplicates of a relation.
+   */
+  private QueryEncoding makeScanQuery(final RelationKey relationKey) {
+    TableScanEncoding scan = new TableScanEncoding();
+    scan.opId = 0;
+    scan.relationKey = relationKey;
+    DupElimEncoding dupElim = new DupElimEncoding();
+    dupElim.opId = 1;
+    dupElim.argChild = 0;
+    QueryEncoding query = new QueryEncoding();
+    query.plan = new SubQueryEncoding(ImmutableList.of(PlanFragmentEncoding.of(scan, dupElim)));
+    return query;
+  }
+
+  /** The schema of the relations in {@link #SIZED_CATALOG}. */
+  private static final Schema SCHEMA = Schema.ofFields(Type.LONG_TYPE, Type.LONG_TYPE);
+  /** A relation of 1000 tuples. */
+  private static final RelationKey BIG = RelationKey.of("public", "adhoc", "big");
+  /** A relation of 10 tuples. */
+  private static final RelationKey SMALL = RelationKey.of("public", "adhoc", "small");
+  /** Stores {@link #BIG} and {@link #SMALL} on {@link #WORKERS}. */
+  private static final AdmissionController.RelationCatalog SIZED_CATALOG = new AdmissionController.RelationCatalog() {
+    @Override
+    public DatasetStatus getDatasetStatus(final RelationKey relationKey) {
+      return new DatasetStatus(relationKey, SCHEMA, relationKey.equals(BIG) ? 1000 : 10, 0, null);
+    }
+
+    @Override
+    public Set<Integer> getWorkersForRelation(final RelationKey relationKey, final Integer storedRelationId) {
+      return WORKERS;
+    }
+  };
+
+  /**
+   * @param numTuples a number of tuples of {@link #SCHEMA}, over all the workers.
+   * @return the estimated memory that an operator holding these tuples needs on each worker.
+   */
+  private static long stateBytes(final long numTuples) {
+    return numTuples * TupleUtils.estimateTupleBytes(SCHEMA) / WORKERS.size() * 3;
+  }
+
+  /**
+   * @param opId the id of the scan.
+   * @param relationKey the relation to scan.
+   * @return the scan.
+   */
+  private static TableScanEncoding makeScan(final int opId, final RelationKey relationKey) {
+    TableScanEncoding scan = new TableScanEncoding();
+    scan.opId = opId;
+    scan.relationKey = relationKey;
+    return scan;
+  }
+
+  /**
+   * @param fragments the fragments of the query.
+   * @return the query.
+   */
+  private static QueryEncoding makeQuery(final PlanFragmentEncoding... fragments) {
+    QueryEncoding query = new QueryEncoding();
+    query.plan = new SubQueryEncoding(ImmutableList.copyOf(fragments));
+    return query;
+  }
+
+  @Test
+  public void testEstimateJoinState() throws DbException {
+    RightHashJoinEncoding right = new RightHashJoinEncoding();
+    right.opId = 2;
+    right.argChild1 = 0;
+    right.argChild2 = 1;
+    /* Only the small right child is kept in memory. */
+    QueryEncoding query = makeQuery(PlanFragmentEncoding.of(makeScan(0, BIG), makeScan(1, SMALL), right));
+    assertEquals(stateBytes(10), AdmissionController.estimateMemoryPerWorker(query, SIZED_CATALOG));
+
+    SymmetricHashJoinEncoding symmetric = new SymmetricHashJoinEncoding();
+    symmetric.opId = 2;
+    symmetric.argChild1 = 0;
+    symmetric.argChild2 = 1;
+    query = makeQuery(PlanFragmentEncoding.of(makeScan(0, BIG), makeScan(1, SMALL), symmetric));
+    assertEquals(stateBytes(1010), AdmissionController.estimateMemoryPerWorker(query, SIZED_CATALOG));
+  }
+
+  @Test
+  public void testEstimateAcrossExchanges() throws DbException {
+    BroadcastProducerEncoding producer = new BroadcastProducerEncoding();
+    producer.opId = 1;
+    producer.argChild = 0;
+    PlanFragmentEncoding sender = PlanFragmentEncoding.of(makeScan(0, SMALL), producer);
+    sender.workers = ImmutableList.copyOf(WORKERS);
+    BroadcastConsumerEncoding consumer = new BroadcastConsumerEncoding();
+    consumer.opId = 2;
+    consumer.argOperatorId = 1;
+    RightHashJoinEncoding join = new RightHashJoinEncoding();
+    join.opId = 4;
+    join.argChild1 = 3;
+    join.argChild2 = 2;
+    /* Every worker receives the whole small relation. */
+    QueryEncoding query = makeQuery(sender, PlanFragmentEncoding.of(consumer, makeScan(3, BIG), join));
+    assertEquals(stateBytes(10 * WORKERS.size()), AdmissionController.estimateMemoryPerWorker(query,
+        SIZED_CATALOG));
+  }
+
+  @Test
+  public void testEstimateStatefulOperators() throws DbException {
+    StatefulApplyEncoding keyed = new StatefulApplyEncoding();
+    keyed.keyColumns = new int[] { 0 };
+    List<UnaryOperatorEncoding<?>> stateful =
+        ImmutableList.<UnaryOperatorEncoding<?>> of(new TopKEncoding(), new WindowAggregateEncoding(), keyed);
+    for (UnaryOperatorEncoding<?> op : stateful) {
+      op.opId = 1;
+      op.argChild = 0;
+      QueryEncoding query = makeQuery(PlanFragmentEncoding.of(makeScan(0, SMALL), op));
+      assertEquals(op.getClass().getSimpleName(), stateBytes(10), AdmissionController.estimateMemoryPerWorker(
+          query, SIZED_CATALOG));
+    }
+
+    List<UnaryOperatorEncoding<?>> stateless =
+        ImmutableList.<UnaryOperatorEncoding<?>> of(new ApplyEncoding(), new StatefulApplyEncoding());
+    for (UnaryOperatorEncoding<?> op : stateless) {
+      op.opId = 1;
+      op.argChild = 0;
+      QueryEncoding query = makeQuery(PlanFragmentEncoding.of(makeScan(0, BIG), op));
+      assertEquals(op.getClass().getSimpleName(), 0, AdmissionController.estimateMemoryPerWorker(query,
+          SIZED_CATALOG));
+    }
+  }
+
+  @Test
+  public void testDisjointWorkers() {
+    AdmissionController controller = new AdmissionController(100, 5, 10);
+    assertEquals(ImmutableList.of(1L), controller.submit(1, 0, 80, ImmutableSet.of(1)));
+    assertEquals(ImmutableList.of(2L), controller.submit(2, 0, 80, ImmutableSet.of(2)));
+    assertEquals(ImmutableList.of(), controller.submit(3, 0, 80, ImmutableSet.of(1)));
+  }
+
+  @Test
+  public void testPriority() {
+    AdmissionController controller = new AdmissionController(100, 5, 10);
+    assertEquals(ImmutableList.of(1L), controller.submit(1, 0, 100, WORKERS));
+    assertEquals(ImmutableList.of(), controller.submit(2, 0, 100, WORKERS));
+    assertEquals(ImmutableList.of(), controller.submit(3, 5, 100, WORKERS));
+    assertEquals(ImmutableList.of(3L), controller.release(1));
+    assertEquals(ImmutableList.of(2L), controller.release(3));
+  }
+
+  @Test
+  public void testOversizedQueryRunsAlone() {
+    AdmissionController controller = new AdmissionController(100, 5, 10);
+    assertEquals(ImmutableList.of(1L), controller.submit(1, 0, 1000, WORKERS));
+    assertEquals(ImmutableList.of(), controller.submit(2, 0, 1, WORKERS));
+    assertEquals(ImmutableList.of(2L), controller.release(1));
+  }
+
+  @Test
+  public void testMaxActiveQueries() {
+    AdmissionController controller = new AdmissionController(100, 2, 10);
+    assertEquals(ImmutableList.of(1L), controller.submit(1, 0, 1, WORKERS));
+    assertEquals(ImmutableList.of(2L), controller.submit(2, 0, 1, WORKERS));
+    assertEquals(ImmutableList.of(), controller.submit(3, 0, 1, WORKERS));
+    assertEquals(ImmutableList.of(3L), controller.release(2));
+  }
+
+  @Test
+  public void testRemoveAndQueueLimit() {
+    AdmissionController controller = new AdmissionController(100, 1, 1);
+    controller.submit(1, 0, 10, WORKERS);
+    assertTrue(controller.canAccept());
+    controller.submit(2, 0, 10, WORKERS);
+    assertFalse(controller.canAccept());
+    assertTrue(controller.remove(2));
+    assertFalse(controller.remove(2));
+    assertTrue(controller.canAccept());
+    assertEquals(ImmutableList.of(), controller.release(1));
+  }
+
+  @Test
+  public void testEstimateTupleBytes() {
+    Schema schema = Schema.ofFields(Type.INT_TYPE, Type.LONG_TYPE, Type.STRING_TYPE, Type.BOOLEAN_TYPE);
+    assertEquals(4 + 8 + 32 + 1, TupleUtils.estimateTupleBytes(schema));
+  }
+}
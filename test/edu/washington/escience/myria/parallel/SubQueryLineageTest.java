@@ -0,0 +1,99 @@
+package edu.washington.escience.myria.parallel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import edu.washington.escience.myria.CsvTupleWriter;
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.operator.DataOutput;
+import edu.washington.escience.myria.operator.DbInsert;
+import edu.washington.escience.myria.operator.RootOperator;
+import edu.washington.escience.myria.operator.SinkRoot;
+import edu.washington.escience.myria.operator.TupleSource;
+import edu.washington.escience.myria.operator.network.CollectConsumer;
+import edu.washington.escience.myria.operator.network.CollectProducer;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+public class SubQueryLineageTest {
+
+  private static final Schema SCHEMA = new Schema(ImmutableList.of(Type.LONG_TYPE), ImmutableList.of("x"));
+
+  /** The exchange from worker 4 to the master. */
+  private static final ExchangePairID MASTER_INPUT = ExchangePairID.newID();
+
+  private static TupleSource source() {
+    return new TupleSource(new TupleBatchBuffer(SCHEMA));
+  }
+
+  private static DbInsert insert(final boolean overwrite) {
+    return new DbInsert(source(), RelationKey.of("test", "lineage", "r"), overwrite);
+  }
+
+  /**
+   * Worker 1 only writes its own data, worker 2 sends to worker 3, and worker 4 sends to the master.
+   */
+  private static Map<Integer, SubQueryPlan> workerPlans() {
+    Map<Integer, SubQueryPlan> plans = new HashMap<>();
+    plans.put(1, new SubQueryPlan(insert(true)));
+    ExchangePairID shuffle = ExchangePairID.newID();
+    plans.put(2, new SubQueryPlan(new CollectProducer(source(), shuffle, 3)));
+    plans.put(3, new SubQueryPlan(new DbInsert(new CollectConsumer(SCHEMA, shuffle, ImmutableSet.of(2)), RelationKey
+        .of("test", "lineage", "s"), true)));
+    plans.put(4, new SubQueryPlan(new CollectProducer(source(), MASTER_INPUT, MyriaConstants.MASTER_ID)));
+    return plans;
+  }
+
+  private static SubQueryPlan masterPlan(final boolean streamOut) {
+    CollectConsumer consumer = new CollectConsumer(SCHEMA, MASTER_INPUT, ImmutableSet.of(4));
+    RootOperator root;
+    if (streamOut) {
+      root = new DataOutput(consumer, new CsvTupleWriter(new ByteArrayOutputStream()));
+    } else {
+      root = new SinkRoot(consumer);
+    }
+    return new SubQueryPlan(root);
+  }
+
+  @Test
+  public void testAffected() {
+    SubQueryLineage lineage = new SubQueryLineage(masterPlan(false), workerPlans());
+    assertEquals(ImmutableSet.of(1), lineage.getAffected(1));
+    assertEquals(ImmutableSet.of(2, 3), lineage.getAffected(2));
+    assertEquals(ImmutableSet.of(2, 3), lineage.getAffected(3));
+    assertEquals(ImmutableSet.of(4, MyriaConstants.MASTER_ID), lineage.getAffected(4));
+
+    assertTrue(lineage.canRerunAlone(1));
+    assertFalse(lineage.canRerunAlone(2));
+    assertFalse(lineage.canRerunAlone(4));
+    assertTrue(lineage.isReplayable());
+  }
+
+  @Test
+  public void testNotReplayable() {
+    /* Appending twice would duplicate the tuples of the first, partial run. */
+    Map<Integer, SubQueryPlan> plans = workerPlans();
+    plans.put(5, new SubQueryPlan(insert(false)));
+    SubQueryLineage lineage = new SubQueryLineage(masterPlan(false), plans);
+    assertFalse(lineage.canRerunAlone(5));
+    assertTrue(lineage.canRerunAlone(1));
+    assertFalse(lineage.isReplayable());
+
+    /* The results that were streamed out cannot be taken back. */
+    lineage = new SubQueryLineage(masterPlan(true), workerPlans());
+    assertTrue(lineage.canRerunAlone(1));
+    assertFalse(lineage.isReplayable());
+  }
+}
@@ -0,0 +1,111 @@
+package edu.washington.escience.myria.profiling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.operator.SinkRoot;
+import edu.washington.escience.myria.operator.TupleSource;
+import edu.washington.escience.myria.parallel.LocalFragment;
+import edu.washington.escience.myria.parallel.SubQueryId;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+public class CpuSamplerTest {
+
+  /** The subquery of the samples. */
+  private static final SubQueryId SUBQUERY = new SubQueryId(7, 3);
+
+  /**
+   * @return a root operator whose name contains the separator of the folded stacks.
+   */
+  private SinkRoot makeRoot() {
+    SinkRoot root = new SinkRoot(new TupleSource(new TupleBatchBuffer(Schema.ofFields("x", Type.LONG_TYPE))));
+    root.setOpName("sink;1");
+    return root;
+  }
+
+  /**
+   * @param className the class of the frame.
+   * @param methodName the method of the frame.
+   * @return the frame.
+   */
+  private StackTraceElement frame(final String className, final String methodName) {
+    return new StackTraceElement(className, methodName, null, -1);
+  }
+
+  @Test
+  public void testFoldStackDropsExecutorFrames() {
+    StackTraceElement[] frames =
+        new StackTraceElement[] {
+            frame("edu.washington.escience.myria.operator.Filter", "fetchNextReady"),
+            frame("edu.washington.escience.myria.operator.Operator", "nextReady"),
+            frame(LocalFragment.class.getName(), "executeActually"),
+            frame(LocalFragment.class.getName() + "$1", "call"),
+            frame("java.util.concurrent.ThreadPoolExecutor", "runWorker"), frame("java.lang.Thread", "run") };
+    assertEquals("subquery 3;SinkRoot sink,1;" + LocalFragment.class.getName() + ".executeActually;"
+        + "edu.washington.escience.myria.operator.Operator.nextReady;"
+        + "edu.washington.escience.myria.operator.Filter.fetchNextReady", CpuSampler.foldStack(SUBQUERY, makeRoot(),
+        frames));
+  }
+
+  @Test
+  public void testFoldStackMarksDeepStacks() {
+    /* the stack was cut before the frame that starts the fragment. */
+    StackTraceElement[] frames =
+        new StackTraceElement[] {
+            frame("edu.washington.escience.myria.operator.Filter", "fetchNextReady"),
+            frame("edu.washington.escience.myria.operator.Operator", "nextReady") };
+    assertEquals("subquery 3;SinkRoot sink,1;[deep];edu.washington.escience.myria.operator.Operator.nextReady;"
+        + "edu.washington.escience.myria.operator.Filter.fetchNextReady", CpuSampler.foldStack(SUBQUERY, makeRoot(),
+        frames));
+  }
+
+  @Test
+  public void testTruncateStacks() {
+    CpuSampler sampler = new CpuSampler(1);
+    final int numExtra = 5;
+    for (int i = 0; i < MyriaConstants.CPU_PROFILER_MAX_STACKS_PER_QUERY + numExtra; ++i) {
+      /* the stacks are spread over two fragments, but limited per query. */
+      sampler.record(SUBQUERY.getQueryId(), i % 2, "stack " + i);
+    }
+    /* a stack that is already counted is still counted on its own. */
+    sampler.record(SUBQUERY.getQueryId(), 0, "stack 0");
+
+    Map<Integer, Map<String, Long>> profile = sampler.getProfile(SUBQUERY.getQueryId());
+    long numSamples = 0;
+    int numStacks = 0;
+    long numTruncated = 0;
+    for (Map<String, Long> fragment : profile.values()) {
+      for (Map.Entry<String, Long> stack : fragment.entrySet()) {
+        numSamples += stack.getValue();
+        if (stack.getKey().equals(CpuSampler.TRUNCATED_STACK)) {
+          numTruncated += stack.getValue();
+        } else {
+          numStacks++;
+        }
+      }
+    }
+    assertEquals(MyriaConstants.CPU_PROFILER_MAX_STACKS_PER_QUERY, numStacks);
+    assertEquals(numExtra, numTruncated);
+    assertEquals(MyriaConstants.CPU_PROFILER_MAX_STACKS_PER_QUERY + numExtra + 1, numSamples);
+    assertEquals(Long.valueOf(2), profile.get(0).get("stack 0"));
+  }
+
+  @Test
+  public void testEvictOldestQuery() {
+    CpuSampler sampler = new CpuSampler(1);
+    for (long queryId = 0; queryId <= MyriaConstants.CPU_PROFILER_MAX_QUERIES; ++queryId) {
+      sampler.record(queryId, 0, "stack");
+    }
+    assertTrue(sampler.getProfile(0).isEmpty());
+    for (long queryId = 1; queryId <= MyriaConstants.CPU_PROFILER_MAX_QUERIES; ++queryId) {
+      assertEquals(Long.valueOf(1), sampler.getProfile(queryId).get(0).get("stack"));
+    }
+  }
+}
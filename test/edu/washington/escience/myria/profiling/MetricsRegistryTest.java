@@ -0,0 +1,151 @@
+package edu.washington.escience.myria.profiling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.junit.Test;
+
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.api.encoding.NodeMetricsEncoding;
+import edu.washington.escience.myria.api.encoding.NodeMetricsEncoding.CacheStatistics;
+import edu.washington.escience.myria.api.encoding.NodeMetricsEncoding.ChannelStatistics;
+import edu.washington.escience.myria.api.encoding.NodeMetricsEncoding.OperatorStatistics;
+import edu.washington.escience.myria.expression.evaluate.CompiledExpressionCache;
+import edu.washington.escience.myria.operator.Operator;
+import edu.washington.escience.myria.operator.TupleSource;
+import edu.washington.escience.myria.parallel.SubQueryId;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.storage.TupleUtils;
+
+public class MetricsRegistryTest {
+
+  /** The schema of the test tuples. */
+  private static final Schema SCHEMA = Schema.ofFields("key", Type.LONG_TYPE, "value", Type.INT_TYPE);
+
+  /**
+   * @param numTuples the number of tuples.
+   * @return a batch of that many tuples.
+   */
+  private TupleBatch makeBatch(final int numTuples) {
+    TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA);
+    for (int i = 0; i < numTuples; ++i) {
+      tbb.putLong(0, i);
+      tbb.putInt(1, i);
+    }
+    return tbb.popAny();
+  }
+
+  /**
+   * @param opId the ID of the operator.
+   * @return an operator with that ID.
+   */
+  private Operator makeOperator(final int opId) {
+    Operator op = new TupleSource(new TupleBatchBuffer(SCHEMA));
+    op.setOpId(opId);
+    return op;
+  }
+
+  /**
+   * @return a registry for node 1.
+   */
+  private MetricsRegistry makeRegistry() {
+    Map<String, Integer> queueDepths = ImmutableMap.of("queryExecutor", 0);
+    return new MetricsRegistry(1, Suppliers.ofInstance(queueDepths));
+  }
+
+  @Test
+  public void testSnapshot() {
+    MetricsRegistry registry = makeRegistry();
+    SubQueryMetrics subQuery = new SubQueryMetrics(new SubQueryId(7, 0));
+    OperatorMetrics child = subQuery.register(makeOperator(1), Collections.<OperatorMetrics> emptyList());
+    OperatorMetrics parent = subQuery.register(makeOperator(2), ImmutableList.of(child));
+    registry.subQueryStarted(subQuery);
+
+    child.record(makeBatch(10), 300);
+    child.record(null, 100);
+    parent.record(makeBatch(4), 1000);
+    parent.getChannel(2, Direction.SEND).record(makeBatch(4));
+
+    assertNull(registry.snapshot(8));
+    NodeMetricsEncoding metrics = registry.snapshot(7);
+    assertNotNull(metrics);
+    assertEquals(1, metrics.nodeId);
+    assertEquals(2, metrics.operators.size());
+    assertEquals(1, metrics.channels.size());
+
+    int tupleBytes = TupleUtils.estimateTupleBytes(SCHEMA);
+    for (OperatorStatistics op : metrics.operators) {
+      if (op.opId == 1) {
+        assertEquals(10, op.tuplesOut);
+        assertEquals(1, op.batchesOut);
+        assertEquals(10 * tupleBytes, op.bytesOut);
+        assertEquals(400, op.selfNanos);
+      } else {
+        assertEquals(10, op.tuplesIn);
+        assertEquals(4, op.tuplesOut);
+        assertEquals(600, op.selfNanos);
+      }
+    }
+    ChannelStatistics channel = metrics.channels.get(0);
+    assertEquals(2, channel.opId);
+    assertEquals(2, channel.remoteId);
+    assertEquals(Direction.SEND, channel.direction);
+    assertEquals(4 * tupleBytes, channel.bytes);
+    assertEquals(4 * tupleBytes, registry.getBytesSent());
+    assertEquals(0, registry.getBytesReceived());
+  }
+
+  @Test
+  public void testFinishedSubQueriesAreRetained() {
+    MetricsRegistry registry = makeRegistry();
+    for (int i = 0; i <= MetricsRegistry.MAX_FINISHED_SUBQUERIES; ++i) {
+      SubQueryMetrics subQuery = new SubQueryMetrics(new SubQueryId(i, 0));
+      subQuery.register(makeOperator(1), Collections.<OperatorMetrics> emptyList()).record(makeBatch(1), 1);
+      registry.subQueryStarted(subQuery);
+      assertEquals(1, registry.getRunningSubQueries());
+      registry.subQueryFinished(subQuery);
+      assertEquals(0, registry.getRunningSubQueries());
+    }
+    assertNull(registry.snapshot(0));
+    assertNotNull(registry.snapshot(1));
+    assertNotNull(registry.snapshot(MetricsRegistry.MAX_FINISHED_SUBQUERIES));
+  }
+
+  @Test
+  public void testCompiledExpressionCache() throws DbException {
+    MetricsRegistry registry = makeRegistry();
+    long misses = registry.getCompiledExpressionCacheMisses();
+    long hits = registry.getCompiledExpressionCacheHits();
+    Callable<Runnable> compiler = new Callable<Runnable>() {
+      @Override
+      public Runnable call() {
+        return new Runnable() {
+          @Override
+          public void run() {
+          }
+        };
+      }
+    };
+    String code = "metrics test " + System.nanoTime();
+    CompiledExpressionCache.get(Runnable.class, new String[] {}, code, compiler);
+    CompiledExpressionCache.get(Runnable.class, new String[] {}, code, compiler);
+
+    CacheStatistics stats = registry.snapshot().compiledExpressionCache;
+    assertEquals(misses + 1, stats.misses);
+    assertEquals(hits + 1, stats.hits);
+    assertEquals(CompiledExpressionCache.size(), stats.size);
+    assertEquals(stats.misses, registry.getCompiledExpressionCacheMisses());
+  }
+}
@@ -0,0 +1,111 @@
+package edu.washington.escience.myria.storage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+
+public class TupleSorterTest {
+
+  /** The number of rows in the test tables. */
+  private static final int NUM_TUPLES = 3 * TupleBatch.BATCH_SIZE + 123;
+
+  /** The schema of the test tables. */
+  private static final Schema SCHEMA = Schema.ofFields("int", Type.INT_TYPE, "long", Type.LONG_TYPE, "double",
+      Type.DOUBLE_TYPE, "float", Type.FLOAT_TYPE, "string", Type.STRING_TYPE, "datetime", Type.DATETIME_TYPE,
+      "boolean", Type.BOOLEAN_TYPE);
+
+  /**
+   * @return a table of random tuples with few distinct values per column, so that there are many ties.
+   */
+  private MutableTupleBuffer makeTable() {
+    Random random = new Random(42);
+    double[] doubles = { Double.NEGATIVE_INFINITY, -1.5, -0.0, 0.0, 2.25, Double.MAX_VALUE, Double.NaN };
+    MutableTupleBuffer table = new MutableTupleBuffer(SCHEMA);
+    for (int i = 0; i < NUM_TUPLES; ++i) {
+      table.putInt(0, random.nextInt(7) - 3);
+      table.putLong(1, random.nextBoolean() ? random.nextLong() : random.nextInt(5) - 2);
+      table.putDouble(2, doubles[random.nextInt(doubles.length)]);
+      table.putFloat(3, (float) doubles[random.nextInt(doubles.length)]);
+      table.putString(4, "s" + random.nextInt(20));
+      table.putDateTime(5, new DateTime(random.nextInt(1000) * 1000000L));
+      table.putBoolean(6, random.nextBoolean());
+    }
+    return table;
+  }
+
+  /**
+   * Sort the rows with a stable reference sort and compare with {@link TupleSorter}.
+   * 
+   * @param table the table.
+   * @param columns the key columns.
+   * @param ascending the sort directions.
+   */
+  private void checkSort(final MutableTupleBuffer table, final int[] columns, final boolean[] ascending) {
+    final TupleComparator comparator = new TupleComparator(SCHEMA, columns, ascending);
+    Integer[] expected = new Integer[table.numTuples()];
+    for (int i = 0; i < expected.length; ++i) {
+      expected[i] = i;
+    }
+    Arrays.sort(expected, new Comparator<Integer>() {
+      @Override
+      public int compare(final Integer left, final Integer right) {
+        return comparator.compare(table, left, table, right);
+      }
+    });
+    int[] expectedOrder = new int[expected.length];
+    for (int i = 0; i < expected.length; ++i) {
+      expectedOrder[i] = expected[i];
+    }
+    assertArrayEquals(expectedOrder, TupleSorter.sort(table, columns, ascending));
+  }
+
+  @Test
+  public void testSingleColumns() {
+    MutableTupleBuffer table = makeTable();
+    for (int column = 0; column < SCHEMA.numColumns(); ++column) {
+      checkSort(table, new int[] { column }, new boolean[] { true });
+      checkSort(table, new int[] { column }, new boolean[] { false });
+    }
+  }
+
+  @Test
+  public void testNumericColumns() {
+    MutableTupleBuffer table = makeTable();
+    checkSort(table, new int[] { 0, 1 }, new boolean[] { true, false });
+    checkSort(table, new int[] { 6, 2, 3, 5 }, new boolean[] { false, true, false, true });
+  }
+
+  @Test
+  public void testStringColumns() {
+    MutableTupleBuffer table = makeTable();
+    checkSort(table, new int[] { 4, 0 }, new boolean[] { false, true });
+    checkSort(table, new int[] { 0, 4, 2 }, new boolean[] { true, true, false });
+  }
+
+  @Test
+  public void testAppendInOrder() {
+    MutableTupleBuffer table = makeTable();
+    int[] order = TupleSorter.sort(table, new int[] { 1 }, new boolean[] { true });
+    TupleBatchBuffer sorted = new TupleBatchBuffer(SCHEMA);
+    TupleSorter.appendInOrder(table, order, sorted);
+    assertEquals(NUM_TUPLES, sorted.numTuples());
+    long previous = Long.MIN_VALUE;
+    for (TupleBatch tb : sorted.getAll()) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        long value = tb.getLong(1, row);
+        assertTrue(previous <= value);
+        previous = value;
+      }
+    }
+  }
+}